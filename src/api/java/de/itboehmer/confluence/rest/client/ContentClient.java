@@ -17,20 +17,29 @@
 package de.itboehmer.confluence.rest.client;
 
 import de.itboehmer.confluence.rest.core.domain.content.AttachmentBean;
+import de.itboehmer.confluence.rest.core.domain.content.AttachmentResultsBean;
 import de.itboehmer.confluence.rest.core.domain.content.ContentBean;
 import de.itboehmer.confluence.rest.core.domain.content.ContentResultsBean;
 import de.itboehmer.confluence.rest.core.domain.content.LabelBean;
 import de.itboehmer.confluence.rest.core.domain.content.LabelsBean;
+import de.itboehmer.confluence.rest.core.misc.AttachmentComparison;
 import de.itboehmer.confluence.rest.core.misc.ContentStatus;
 import de.itboehmer.confluence.rest.core.misc.ContentType;
 import java.io.InputStream;
+import java.nio.file.Path;
 
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 /**
  * Client to receive Content from a confluence server.
+ * <p>
+ * Every method is available in two flavours: one returning a {@link Future}
+ * and one, suffixed with <code>Async</code>, returning a
+ * {@link CompletionStage} that allows to chain further calls without blocking.
  *
  * @author Christian Schulze (c.schulze@micromata.de)
  * @author Martin Böhmer
@@ -47,6 +56,17 @@ public interface ContentClient {
      */
     Future<ContentBean> getContentById(String id, int version, List<String> expand);
 
+    /**
+     * Get Content by ID
+     *
+     * @param id The ID of the content
+     * @param version The Version of the content
+     * @param expand A List of Fields to expand
+     * @return A {@link CompletionStage} with the {@link ContentBean}
+     * @see #getContentById(String, int, List)
+     */
+    CompletionStage<ContentBean> getContentByIdAsync(String id, int version, List<String> expand);
+
     /**
      * Returns a paginated list of Content.
      *
@@ -75,6 +95,52 @@ public interface ContentClient {
             int start,
             int limit);
 
+    /**
+     * Returns a paginated list of Content.
+     *
+     * @return A {@link CompletionStage} with the {@link ContentResultsBean}
+     * @see #getContent(ContentType, String, String, ContentStatus, Date, List,
+     * int, int)
+     */
+    CompletionStage<ContentResultsBean> getContentAsync(ContentType type,
+            String spacekey,
+            String title,
+            ContentStatus status,
+            Date postingDay,
+            List<String> expand,
+            int start,
+            int limit);
+
+    /**
+     * Streams all content matching the given filters. Pages of
+     * <code>pageSize</code> elements are fetched lazily while the stream is
+     * consumed, and up to <code>prefetchPages</code> further pages are
+     * requested in the background. Only the current and the prefetched pages
+     * are held in memory. Close the stream to cancel prefetched pages if it is
+     * not consumed completely. Failed requests are rethrown as
+     * {@link java.util.concurrent.CompletionException}.
+     *
+     * @param type the content type to return.
+     * @param spacekey the space key to find content under.
+     * @param title the title of the page to find.
+     * @param status the status of the content to be found.
+     * @param postingDay the posting day of the blog post.
+     * @param expand a list of properties to expand on the content.
+     * @param pageSize the number of items to fetch per request, this may be
+     * restricted by fixed system limits
+     * @param prefetchPages the number of pages to request ahead; 0 fetches
+     * pages only when needed
+     * @return a lazy, sequential {@link Stream} of {@link ContentBean}s
+     */
+    Stream<ContentBean> streamContent(ContentType type,
+            String spacekey,
+            String title,
+            ContentStatus status,
+            Date postingDay,
+            List<String> expand,
+            int pageSize,
+            int prefetchPages);
+
     /**
      * Creates the provided content.
      *
@@ -84,6 +150,16 @@ public interface ContentClient {
      */
     public Future<ContentBean> createContent(ContentBean content);
 
+    /**
+     * Creates the provided content.
+     *
+     * @param content The content to create.
+     * @return A {@link CompletionStage} with the {@link ContentBean}
+     * representing the created content.
+     * @see #createContent(ContentBean)
+     */
+    public CompletionStage<ContentBean> createContentAsync(ContentBean content);
+
     /**
      * Updates the provided content.
      *
@@ -93,6 +169,16 @@ public interface ContentClient {
      */
     public Future<ContentBean> updateContent(ContentBean content);
 
+    /**
+     * Updates the provided content.
+     *
+     * @param content The content to update.
+     * @return A {@link CompletionStage} with the {@link ContentBean}
+     * representing the updated content.
+     * @see #updateContent(ContentBean)
+     */
+    public CompletionStage<ContentBean> updateContentAsync(ContentBean content);
+
     /**
      * Uploads the provided attachment to content (page or blogpost).
      *
@@ -105,6 +191,75 @@ public interface ContentClient {
      */
     public Future<AttachmentBean> uploadAttachment(AttachmentBean attachment, ContentBean parentContent);
 
+    /**
+     * Uploads the provided attachment to content (page or blogpost).
+     *
+     * @param attachment The attachement to upload.
+     * @param parentContent The content (page or blogpost) to upload the
+     * attachment to.
+     * @return A {@link CompletionStage} with the {@link AttachmentBean}
+     * representing the uploaded attachement.
+     * @see #uploadAttachment(AttachmentBean, ContentBean)
+     */
+    public CompletionStage<AttachmentBean> uploadAttachmentAsync(AttachmentBean attachment, ContentBean parentContent);
+
+    /**
+     * Gets the attachments of a given content.
+     *
+     * @param parentContent the content (page or blogpost) to list the
+     * attachments of.
+     * @param start the index of the first attachment to return.
+     * @param limit the maximum number of attachments to return.
+     * @return an {@link AttachmentResultsBean} with the attachments, including
+     * their file sizes.
+     */
+    public Future<AttachmentResultsBean> getAttachments(ContentBean parentContent, int start, int limit);
+
+    /**
+     * Gets the attachments of a given content.
+     *
+     * @param parentContent the content (page or blogpost) to list the
+     * attachments of.
+     * @param start the index of the first attachment to return.
+     * @param limit the maximum number of attachments to return.
+     * @return a {@link CompletionStage} with the attachments.
+     * @see #getAttachments(ContentBean, int, int)
+     */
+    public CompletionStage<AttachmentResultsBean> getAttachmentsAsync(ContentBean parentContent, int start, int limit);
+
+    /**
+     * Uploads a set of attachments to a given content, skipping those which
+     * are already attached unchanged. The existing attachments are listed once
+     * and matched by file name; changed ones are uploaded as a new version of
+     * the existing attachment. Uploads run concurrently, up to the given
+     * number at a time.
+     *
+     * @param parentContent the content (page or blogpost) to upload the
+     * attachments to.
+     * @param attachments the attachments to upload, preferably created from a
+     * file or byte array so that their size is known.
+     * @param comparison how unchanged attachments are detected.
+     * @param parallelism the maximum number of concurrent uploads.
+     * @return the attachments in the given order, either as uploaded or as
+     * found unchanged.
+     */
+    public Future<List<AttachmentBean>> uploadAttachments(ContentBean parentContent, List<AttachmentBean> attachments, AttachmentComparison comparison, int parallelism);
+
+    /**
+     * Uploads a set of attachments to a given content, skipping those which
+     * are already attached unchanged.
+     *
+     * @param parentContent the content (page or blogpost) to upload the
+     * attachments to.
+     * @param attachments the attachments to upload.
+     * @param comparison how unchanged attachments are detected.
+     * @param parallelism the maximum number of concurrent uploads.
+     * @return a {@link CompletionStage} with the attachments in the given
+     * order.
+     * @see #uploadAttachments(ContentBean, List, AttachmentComparison, int)
+     */
+    public CompletionStage<List<AttachmentBean>> uploadAttachmentsAsync(ContentBean parentContent, List<AttachmentBean> attachments, AttachmentComparison comparison, int parallelism);
+
     /**
      * Downalds the given attachment.
      *
@@ -114,6 +269,42 @@ public interface ContentClient {
      */
     public Future<InputStream> downloadAttachement(AttachmentBean attachment);
 
+    /**
+     * Downalds the given attachment. If the attachment does not provide a
+     * download link, it is looked up first without blocking.
+     *
+     * @param attachment the attachment to downlad, represented by an
+     * {@link AttachmentBean}
+     * @return {@link CompletionStage} providing the attachment's data.
+     * @see #downloadAttachement(AttachmentBean)
+     */
+    public CompletionStage<InputStream> downloadAttachementAsync(AttachmentBean attachment);
+
+    /**
+     * Downloads the given attachment into a file. The data is written to a
+     * temporary file next to the target, which replaces the target once the
+     * download is complete, so the target never holds a partial download. The
+     * connection is released when the returned future completes.
+     *
+     * @param attachment the attachment to download, represented by an
+     * {@link AttachmentBean}
+     * @param target the file to write the attachment's data to
+     * @return the number of bytes written
+     */
+    public Future<Long> downloadAttachment(AttachmentBean attachment, Path target);
+
+    /**
+     * Downloads the given attachment into a file. If the attachment does not
+     * provide a download link, it is looked up first without blocking.
+     *
+     * @param attachment the attachment to download, represented by an
+     * {@link AttachmentBean}
+     * @param target the file to write the attachment's data to
+     * @return {@link CompletionStage} with the number of bytes written
+     * @see #downloadAttachment(AttachmentBean, Path)
+     */
+    public CompletionStage<Long> downloadAttachmentAsync(AttachmentBean attachment, Path target);
+
     /**
      * Adds a set of labels to a given content.
      *
@@ -123,4 +314,15 @@ public interface ContentClient {
      */
     public Future<LabelsBean> addLabels(ContentBean content, List<LabelBean> labels);
 
+    /**
+     * Adds a set of labels to a given content.
+     *
+     * @param content the content to add the labels to.
+     * @param labels the label to add, represetned as {@link LabelBean}s
+     * @return a {@link CompletionStage} with the updated labels as a
+     * {@link LabelsBean}
+     * @see #addLabels(ContentBean, List)
+     */
+    public CompletionStage<LabelsBean> addLabelsAsync(ContentBean content, List<LabelBean> labels);
+
 }
@@ -18,8 +18,11 @@ package de.itboehmer.confluence.rest.client;
 
 import de.itboehmer.confluence.rest.core.cql.CqlSearchBean;
 import de.itboehmer.confluence.rest.core.domain.cql.CqlSearchResult;
+import de.itboehmer.confluence.rest.core.domain.cql.SearchResultEntry;
 
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 /**
  * Client to query content by CQL.
@@ -30,4 +33,29 @@ import java.util.concurrent.Future;
 public interface SearchClient {
 
     Future<CqlSearchResult> searchContent(CqlSearchBean searchBean);
+
+    /**
+     * Non-blocking variant of {@link #searchContent(CqlSearchBean)}.
+     *
+     * @param searchBean the query
+     * @return CompletionStage with the search result
+     */
+    CompletionStage<CqlSearchResult> searchContentAsync(CqlSearchBean searchBean);
+
+    /**
+     * Returns all results of a query, starting at the start index of the search
+     * bean. After the first page has been received, its total size determines
+     * the remaining pages, which are then requested concurrently. At most
+     * <code>maxPagesInFlight</code> pages are requested but not yet consumed at
+     * any time. Close the stream to cancel outstanding requests if it is not
+     * consumed completely. Failed requests are rethrown as
+     * {@link java.util.concurrent.CompletionException}.
+     *
+     * @param searchBean the query; its limit is used as page size
+     * @param maxPagesInFlight the maximum number of pages requested concurrently
+     * @param ordered <code>true</code> to return the results in the order of
+     * the query, <code>false</code> to return each page as soon as it arrives
+     * @return a lazy, sequential stream of the search results
+     */
+    Stream<SearchResultEntry> searchContentParallel(CqlSearchBean searchBean, int maxPagesInFlight, boolean ordered);
 }
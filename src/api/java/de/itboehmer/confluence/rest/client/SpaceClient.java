@@ -22,6 +22,7 @@ import de.itboehmer.confluence.rest.core.misc.SpaceType;
 
 import java.net.URISyntaxException;
 import java.util.List;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Future;
 
 /**
@@ -49,6 +50,14 @@ public interface SpaceClient {
      */
    Future<SpaceResultsBean> getSpaces(List<String> keys, SpaceType type, SpaceStatus status, List<String> label, List<String> expand, int start, int limit) throws URISyntaxException;
 
+    /**
+     * Non-blocking variant of
+     * {@link #getSpaces(List, SpaceType, SpaceStatus, List, List, int, int)}.
+     *
+     * @return CompletionStage with the ResultBean
+     */
+    CompletionStage<SpaceResultsBean> getSpacesAsync(List<String> keys, SpaceType type, SpaceStatus status, List<String> label, List<String> expand, int start, int limit);
+
     /**
      * Get a SpaceBean for the given key
      *
@@ -57,4 +66,13 @@ public interface SpaceClient {
      * @return Future with the SpaceBean
      */
     Future<SpaceBean> getSpaceByKey(String key, List<String> expand);
+
+    /**
+     * Non-blocking variant of {@link #getSpaceByKey(String, List)}.
+     *
+     * @param key the key
+     * @param expand a comma separated list of properties to expand on the spaces
+     * @return CompletionStage with the SpaceBean
+     */
+    CompletionStage<SpaceBean> getSpaceByKeyAsync(String key, List<String> expand);
 }
@@ -18,6 +18,7 @@ package de.itboehmer.confluence.rest.client;
 import de.itboehmer.confluence.rest.core.domain.UserBean;
 
 import java.net.URISyntaxException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Future;
 
 /**
@@ -36,6 +37,14 @@ public interface UserClient {
      */
     Future<UserBean> getUserByUsername(String username) throws URISyntaxException;
 
+    /**
+     * Non-blocking variant of {@link #getUserByUsername(String)}.
+     *
+     * @param username the username
+     * @return CompletionStage with the UserBean
+     */
+    CompletionStage<UserBean> getUserByUsernameAsync(String username);
+
     /**
      * Get the confluence user by key (example: 402880824ff933a4014ff9345d7c0002)
      *
@@ -45,6 +54,14 @@ public interface UserClient {
      */
     Future<UserBean> getUserByKey(String key) throws URISyntaxException;
 
+    /**
+     * Non-blocking variant of {@link #getUserByKey(String)}.
+     *
+     * @param key the key
+     * @return CompletionStage with the UserBean
+     */
+    CompletionStage<UserBean> getUserByKeyAsync(String key);
+
     /**
      * Get the current logged in user
      *
@@ -53,6 +70,13 @@ public interface UserClient {
      */
     Future<UserBean> getCurrentUser() throws URISyntaxException;
 
+    /**
+     * Non-blocking variant of {@link #getCurrentUser()}.
+     *
+     * @return CompletionStage with the UserBean
+     */
+    CompletionStage<UserBean> getCurrentUserAsync();
+
     /**
      * Get the Anonymous User
      *
@@ -60,4 +84,11 @@ public interface UserClient {
      * @throws java.net.URISyntaxException (never thrown due to future)
      */
     Future<UserBean> getAnonymousUser() throws URISyntaxException;
+
+    /**
+     * Non-blocking variant of {@link #getAnonymousUser()}.
+     *
+     * @return CompletionStage with the UserBean
+     */
+    CompletionStage<UserBean> getAnonymousUserAsync();
 }
@@ -0,0 +1,63 @@
+package de.itboehmer.confluence.rest.core;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Supports making non-blocking requests to a REST API. The returned futures
+ * are completed by the underlying HTTP engine once the response has arrived,
+ * so no thread is occupied while a request is in flight. Failures are reported
+ * by completing the future exceptionally with an {@link java.io.IOException}
+ * or a {@link RestException}.
+ */
+public interface AsyncRequestService extends StreamingRequestService {
+
+	<T> CompletableFuture<T> executeGetRequestAsync(URI uri, Class<T> resultClass);
+
+	/**
+	 * Asynchronous variant of
+	 * {@link RequestService#executeGetRequest(URI, Class, Set)}.
+	 */
+	<T> CompletableFuture<T> executeGetRequestAsync(URI uri, Class<T> resultClass, Set<String> projection);
+
+	/**
+	 * Asynchronous variant of
+	 * {@link StreamingRequestService#executeGetRequestForResults(URI, Class, Consumer)}.
+	 * The consumer is called on a thread of the implementation while the
+	 * response is received.
+	 */
+	<T> CompletableFuture<Integer> executeGetRequestForResultsAsync(URI uri, Class<T> elementClass,
+			Consumer<? super T> consumer);
+
+	CompletableFuture<InputStream> executeGetRequestForDownloadAsync(URI uri);
+
+	/**
+	 * Asynchronous variant of
+	 * {@link RequestService#executeGetRequestForDownload(URI, Path)}.
+	 */
+	CompletableFuture<Long> executeGetRequestForDownloadAsync(URI uri, Path target);
+
+	<T> CompletableFuture<T> executePostRequestAsync(URI uri, Object content, Class<T> resultClass);
+
+	<T> CompletableFuture<T> executePostRequestForUploadAsync(URI uri, InputStream inputStream, String title,
+			String comment, Class<T> resultClass);
+
+	/**
+	 * Asynchronous variant of
+	 * {@link RequestService#executePostRequestForUpload(URI, Path, String, String, Class)}.
+	 */
+	<T> CompletableFuture<T> executePostRequestForUploadAsync(URI uri, Path file, String title, String comment,
+			Class<T> resultClass);
+
+	/**
+	 * Asynchronous variant of
+	 * {@link RequestService#executePostRequestForUpload(URI, byte[], String, String, Class)}.
+	 */
+	<T> CompletableFuture<T> executePostRequestForUploadAsync(URI uri, byte[] data, String title, String comment,
+			Class<T> resultClass);
+
+}
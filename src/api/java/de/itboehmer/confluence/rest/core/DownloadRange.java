@@ -0,0 +1,53 @@
+package de.itboehmer.confluence.rest.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Body of a range request, together with the validator of the version of the
+ * resource it belongs to.
+ */
+public class DownloadRange implements Closeable {
+
+	private final InputStream content;
+	private final long offset;
+	private final String validator;
+
+	public DownloadRange(InputStream content, long offset, String validator) {
+		this.content = content;
+		this.offset = offset;
+		this.validator = validator;
+	}
+
+	/**
+	 * @return stream of the body, starting at the offset
+	 */
+	public InputStream getContent() {
+		return content;
+	}
+
+	/**
+	 * @return position of the first byte of the content within the resource.
+	 *         It is 0 instead of the requested offset if the resource did not
+	 *         match the validator of the request and was sent completely.
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @return the strong <code>ETag</code> or else the <code>Last-Modified</code>
+	 *         date of the resource, for requesting further ranges of the same
+	 *         version with <code>If-Range</code>; <code>null</code> if unknown
+	 */
+	public String getValidator() {
+		return validator;
+	}
+
+	@Override
+	public void close() throws IOException {
+		content.close();
+	}
+
+}
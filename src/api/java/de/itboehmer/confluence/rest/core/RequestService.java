@@ -1,8 +1,15 @@
 package de.itboehmer.confluence.rest.core;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import de.itboehmer.confluence.rest.core.util.FileHelper;
+import de.itboehmer.confluence.rest.core.util.RangeHelper;
 
 /**
  * Supports making requests to a REST API.
@@ -11,11 +18,84 @@ public interface RequestService {
 
 	<T> T executeGetRequest(URI uri, Class<T> resultClass) throws IOException, RestException;
 
+	/**
+	 * Like {@link #executeGetRequest(URI, Class)}, but only binds the given
+	 * projection of the response. A projection is a set of dot separated property
+	 * paths relative to the result, like <code>title</code> or
+	 * <code>results.version.number</code>; arrays do not add a path segment. All
+	 * other properties of the result stay <code>null</code>. Implementations not
+	 * supporting projections bind the complete response.
+	 */
+	default <T> T executeGetRequest(URI uri, Class<T> resultClass, Set<String> projection)
+			throws IOException, RestException {
+		return executeGetRequest(uri, resultClass);
+	}
+
 	InputStream executeGetRequestForDownload(URI uri) throws IOException, RestException;
 
+	/**
+	 * Downloads the part of the response body starting at the offset, of at
+	 * most the given length, or up to the end if the length is negative.
+	 * Implementations not supporting range requests download the complete body
+	 * and skip to the offset.
+	 */
+	default InputStream executeGetRequestForDownload(URI uri, long offset, long length)
+			throws IOException, RestException {
+		return RangeHelper.slice(executeGetRequestForDownload(uri), offset, length);
+	}
+
+	/**
+	 * Like {@link #executeGetRequestForDownload(URI, long, long)}, but only if
+	 * the resource still has the given validator, which is sent as
+	 * <code>If-Range</code>. If the resource has changed, the server sends it
+	 * completely, and the returned range starts at offset 0. Implementations not
+	 * supporting validators download the range unconditionally and return no
+	 * validator.
+	 *
+	 * @param validator validator of a range downloaded before, see
+	 *            {@link DownloadRange#getValidator()}, or <code>null</code> to
+	 *            download the range unconditionally
+	 */
+	default DownloadRange executeGetRequestForDownload(URI uri, long offset, long length, String validator)
+			throws IOException, RestException {
+		return new DownloadRange(executeGetRequestForDownload(uri, offset, length), offset, null);
+	}
+
+	/**
+	 * Downloads the response body into the target file. The body is written to a
+	 * temporary file next to the target, which replaces the target once the
+	 * download is complete. The connection is released before this method
+	 * returns.
+	 *
+	 * @return number of bytes written
+	 */
+	default long executeGetRequestForDownload(URI uri, Path target) throws IOException, RestException {
+		return FileHelper.write(executeGetRequestForDownload(uri), target);
+	}
+
 	<T> T executePostRequest(URI uri, Object content, Class<T> resultClass) throws IOException, RestException;
 
 	<T> T executePostRequestForUpload(URI uri, InputStream inputStream, String title, String comment,
 			Class<T> resultClass) throws IOException, RestException;
 
+	/**
+	 * Uploads a file. Implementations send it with a known length and can
+	 * repeat the request, e.g. to retry it.
+	 */
+	default <T> T executePostRequestForUpload(URI uri, Path file, String title, String comment, Class<T> resultClass)
+			throws IOException, RestException {
+		try (InputStream inputStream = Files.newInputStream(file)) {
+			return executePostRequestForUpload(uri, inputStream, title, comment, resultClass);
+		}
+	}
+
+	/**
+	 * Uploads data held in memory. Implementations send it with a known length
+	 * and can repeat the request, e.g. to retry it.
+	 */
+	default <T> T executePostRequestForUpload(URI uri, byte[] data, String title, String comment,
+			Class<T> resultClass) throws IOException, RestException {
+		return executePostRequestForUpload(uri, new ByteArrayInputStream(data), title, comment, resultClass);
+	}
+
 }
@@ -16,6 +16,11 @@
  */
 package de.itboehmer.confluence.rest.core;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,12 +42,25 @@ public class RestException extends Exception {
     
     private final String message;
     
+    private final HashMap<String, String> headers = new HashMap<>();
+    
     public RestException(int statusCode, String reasonphrase, String responseBody, String message, Throwable cause) {
+        this(statusCode, reasonphrase, responseBody, message, cause, Collections.<String, String> emptyMap());
+    }
+    
+    /**
+     * @param headers response headers by name, of which the first value is kept
+     */
+    public RestException(int statusCode, String reasonphrase, String responseBody, String message, Throwable cause,
+            Map<String, String> headers) {
         super(cause);
         this.statusCode = statusCode;
         this.reasonPhrase = reasonphrase;
         this.responseBody = responseBody;
         this.message = message;
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            this.headers.putIfAbsent(header.getKey().toLowerCase(Locale.ENGLISH), header.getValue());
+        }
     }
     
     @Override
@@ -62,4 +80,13 @@ public class RestException extends Exception {
         return responseBody;
     }
     
+    /**
+     * @param name case insensitive header name, e.g. <code>Retry-After</code>
+     * @return value of the response header, or <code>null</code> if the
+     *         response did not have this header
+     */
+    public String getHeader(String name) {
+        return headers.get(name.toLowerCase(Locale.ENGLISH));
+    }
+    
 }
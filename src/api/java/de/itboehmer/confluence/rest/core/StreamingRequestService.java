@@ -0,0 +1,28 @@
+package de.itboehmer.confluence.rest.core;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.function.Consumer;
+
+/**
+ * {@link RequestService} which can pass the elements of a result page on while
+ * they are parsed. Callers check for this capability with
+ * <code>instanceof</code>, like for {@link AsyncRequestService}.
+ */
+public interface StreamingRequestService extends RequestService {
+
+	/**
+	 * Passes the elements of the <code>results</code> array of a result page to
+	 * the consumer one by one, each as soon as it has been parsed, instead of
+	 * binding the complete page. Only one element is held in memory at a time.
+	 * Other members of the page are skipped. If the consumer throws an
+	 * exception, the request is aborted and the exception is rethrown.
+	 *
+	 * @param elementClass the class of the elements, e.g.
+	 *            <code>ContentBean.class</code>
+	 * @return number of elements passed to the consumer
+	 */
+	<T> int executeGetRequestForResults(URI uri, Class<T> elementClass, Consumer<? super T> consumer)
+			throws IOException, RestException;
+
+}
@@ -0,0 +1,105 @@
+package de.itboehmer.confluence.rest.core.custom;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * {@link TypeAdapter} binding a bean through explicitly registered properties,
+ * i.e. accessor method references instead of reflective field access. Each
+ * property is read and written with the JSON name of the bean field it maps to,
+ * so the JSON produced and accepted matches Gson's reflective binding of the
+ * <code>@Expose</code>d fields. Unknown properties are skipped.
+ */
+class BeanTypeAdapter<T> extends TypeAdapter<T> {
+
+	private final Supplier<T> constructor;
+	private final List<Property<T, ?>> properties = new ArrayList<>();
+	private final Map<String, Property<T, ?>> propertiesByName = new HashMap<>();
+
+	BeanTypeAdapter(Supplier<T> constructor) {
+		this.constructor = constructor;
+	}
+
+	/**
+	 * Registers a property. Properties are written in the order of their
+	 * registration.
+	 */
+	<V> BeanTypeAdapter<T> property(String name, TypeAdapter<V> adapter, Function<T, V> getter,
+			BiConsumer<T, V> setter) {
+		Property<T, V> property = new Property<>(name, adapter, getter, setter);
+		properties.add(property);
+		propertiesByName.put(name, property);
+		return this;
+	}
+
+	@Override
+	public void write(JsonWriter out, T value) throws IOException {
+		if (value == null) {
+			out.nullValue();
+			return;
+		}
+		out.beginObject();
+		for (Property<T, ?> property : properties) {
+			property.write(out, value);
+		}
+		out.endObject();
+	}
+
+	@Override
+	public T read(JsonReader in) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+		T bean = constructor.get();
+		in.beginObject();
+		while (in.hasNext()) {
+			Property<T, ?> property = propertiesByName.get(in.nextName());
+			if (property != null) {
+				property.read(in, bean);
+			} else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		return bean;
+	}
+
+	private static class Property<T, V> {
+
+		private final String name;
+		private final TypeAdapter<V> adapter;
+		private final Function<T, V> getter;
+		private final BiConsumer<T, V> setter;
+
+		Property(String name, TypeAdapter<V> adapter, Function<T, V> getter, BiConsumer<T, V> setter) {
+			this.name = name;
+			this.adapter = adapter;
+			this.getter = getter;
+			this.setter = setter;
+		}
+
+		void write(JsonWriter out, T bean) throws IOException {
+			// Null values are dropped by the writer unless nulls are serialized
+			out.name(name);
+			adapter.write(out, getter.apply(bean));
+		}
+
+		void read(JsonReader in, T bean) throws IOException {
+			setter.accept(bean, adapter.read(in));
+		}
+
+	}
+
+}
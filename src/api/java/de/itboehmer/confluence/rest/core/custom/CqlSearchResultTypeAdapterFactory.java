@@ -0,0 +1,180 @@
+/**
+ * Copyright 2016 Micromata GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.itboehmer.confluence.rest.core.custom;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import de.itboehmer.confluence.rest.core.domain.BaseBean;
+import de.itboehmer.confluence.rest.core.domain.common.LinksBean;
+import de.itboehmer.confluence.rest.core.domain.content.ContentBean;
+import de.itboehmer.confluence.rest.core.domain.cql.CqlSearchResult;
+import de.itboehmer.confluence.rest.core.domain.cql.SearchResultEntry;
+import de.itboehmer.confluence.rest.core.domain.space.SpaceBean;
+
+/**
+ * Reads a {@link CqlSearchResult} in a single pass over the JSON tokens. The
+ * <code>content</code> or <code>space</code> of each result is bound directly
+ * by the adapter Gson provides for {@link ContentBean} or {@link SpaceBean},
+ * without building an intermediate tree. Writing is delegated to Gson's
+ * default adapter.
+ */
+public class CqlSearchResultTypeAdapterFactory implements TypeAdapterFactory {
+
+	private static final String SPACE = "space";
+	private static final String CONTENT = "content";
+	private static final String LAST_MODIFIED = "lastModified";
+
+	private static final DateTimeFormatter INSTANT_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSX").withZone(ZoneId.of("UTC"));
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+		if (type.getRawType() != CqlSearchResult.class) {
+			return null;
+		}
+		TypeAdapter<CqlSearchResult> delegate = gson.getDelegateAdapter(this, TypeToken.get(CqlSearchResult.class));
+		return (TypeAdapter<T>) new CqlSearchResultTypeAdapter(gson, delegate);
+	}
+
+	private static class CqlSearchResultTypeAdapter extends TypeAdapter<CqlSearchResult> {
+
+		private final TypeAdapter<CqlSearchResult> delegate;
+		private final TypeAdapter<ContentBean> contentAdapter;
+		private final TypeAdapter<SpaceBean> spaceAdapter;
+		private final TypeAdapter<LinksBean> linksAdapter;
+
+		CqlSearchResultTypeAdapter(Gson gson, TypeAdapter<CqlSearchResult> delegate) {
+			this.delegate = delegate;
+			this.contentAdapter = gson.getAdapter(ContentBean.class);
+			this.spaceAdapter = gson.getAdapter(SpaceBean.class);
+			this.linksAdapter = gson.getAdapter(LinksBean.class);
+		}
+
+		@Override
+		public void write(JsonWriter out, CqlSearchResult value) throws IOException {
+			delegate.write(out, value);
+		}
+
+		@Override
+		public CqlSearchResult read(JsonReader in) throws IOException {
+			if (in.peek() == JsonToken.NULL) {
+				in.nextNull();
+				return null;
+			}
+			CqlSearchResult result = new CqlSearchResult();
+			in.beginObject();
+			while (in.hasNext()) {
+				String name = in.nextName();
+				if (in.peek() == JsonToken.NULL) {
+					in.skipValue();
+					continue;
+				}
+				switch (name) {
+				case "results":
+					result.setResults(readResults(in));
+					break;
+				case "start":
+					result.setStart(in.nextInt());
+					break;
+				case "limit":
+					result.setLimit(in.nextInt());
+					break;
+				case "size":
+					result.setSize(in.nextInt());
+					break;
+				case "totalSize":
+					result.setTotalSize(in.nextInt());
+					break;
+				case "cqlQuery":
+					result.setCqlQuery(in.nextString());
+					break;
+				case "searchDuration":
+					result.setSearchDuration(in.nextInt());
+					break;
+				case "_links":
+					result.set_links(linksAdapter.read(in));
+					break;
+				default:
+					in.skipValue();
+				}
+			}
+			in.endObject();
+			return result;
+		}
+
+		private List<SearchResultEntry> readResults(JsonReader in) throws IOException {
+			List<SearchResultEntry> entries = new ArrayList<>();
+			in.beginArray();
+			while (in.hasNext()) {
+				SearchResultEntry entry = readResult(in);
+				if (entry != null) {
+					entries.add(entry);
+				}
+			}
+			in.endArray();
+			return entries;
+		}
+
+		private SearchResultEntry readResult(JsonReader in) throws IOException {
+			ContentBean content = null;
+			SpaceBean space = null;
+			LocalDateTime lastModified = null;
+			in.beginObject();
+			while (in.hasNext()) {
+				String name = in.nextName();
+				if (in.peek() == JsonToken.NULL) {
+					in.skipValue();
+					continue;
+				}
+				switch (name) {
+				case CONTENT:
+					content = contentAdapter.read(in);
+					break;
+				case SPACE:
+					space = spaceAdapter.read(in);
+					break;
+				case LAST_MODIFIED:
+					lastModified = LocalDateTime.parse(in.nextString(), INSTANT_FORMATTER);
+					break;
+				default:
+					in.skipValue();
+				}
+			}
+			in.endObject();
+			BaseBean bean = (content != null) ? content : space;
+			if (bean == null) {
+				// Neither content nor space
+				return null;
+			}
+			return new SearchResultEntry(bean, lastModified);
+		}
+
+	}
+
+}
@@ -0,0 +1,381 @@
+package de.itboehmer.confluence.rest.core.custom;
+
+import java.util.Date;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+
+import de.itboehmer.confluence.rest.core.domain.BaseBean;
+import de.itboehmer.confluence.rest.core.domain.ProfilePictureBean;
+import de.itboehmer.confluence.rest.core.domain.UserBean;
+import de.itboehmer.confluence.rest.core.domain.common.ExpandableBean;
+import de.itboehmer.confluence.rest.core.domain.common.LinksBean;
+import de.itboehmer.confluence.rest.core.domain.common.PlainBean;
+import de.itboehmer.confluence.rest.core.domain.content.AncestorBean;
+import de.itboehmer.confluence.rest.core.domain.content.AttachmentBean;
+import de.itboehmer.confluence.rest.core.domain.content.AttachmentResultsBean;
+import de.itboehmer.confluence.rest.core.domain.content.BodyBean;
+import de.itboehmer.confluence.rest.core.domain.content.ChildTypesBean;
+import de.itboehmer.confluence.rest.core.domain.content.ChildrenBean;
+import de.itboehmer.confluence.rest.core.domain.content.ContainerBean;
+import de.itboehmer.confluence.rest.core.domain.content.ContentBean;
+import de.itboehmer.confluence.rest.core.domain.content.ContentResultsBean;
+import de.itboehmer.confluence.rest.core.domain.content.DescendantsBean;
+import de.itboehmer.confluence.rest.core.domain.content.ExtensionsBean;
+import de.itboehmer.confluence.rest.core.domain.content.HistoryBean;
+import de.itboehmer.confluence.rest.core.domain.content.LabelBean;
+import de.itboehmer.confluence.rest.core.domain.content.LabelsBean;
+import de.itboehmer.confluence.rest.core.domain.content.MetadataBean;
+import de.itboehmer.confluence.rest.core.domain.content.OperationBean;
+import de.itboehmer.confluence.rest.core.domain.content.RestrictionsBean;
+import de.itboehmer.confluence.rest.core.domain.content.StorageBean;
+import de.itboehmer.confluence.rest.core.domain.content.VersionBean;
+import de.itboehmer.confluence.rest.core.domain.content.ViewBean;
+import de.itboehmer.confluence.rest.core.domain.space.DescriptionBean;
+import de.itboehmer.confluence.rest.core.domain.space.SpaceBean;
+import de.itboehmer.confluence.rest.core.domain.space.SpaceResultsBean;
+
+/**
+ * Provides non-reflective {@link TypeAdapter}s for the domain beans with
+ * properties: the result pages of content, attachments and spaces, the beans
+ * on them like {@link ContentBean}, {@link AttachmentBean} and
+ * {@link SpaceBean}, and the beans these expand to like {@link BodyBean},
+ * {@link HistoryBean} or {@link LabelsBean}. They bind exactly the
+ * <code>@Expose</code>d fields under their field names, as Gson's reflective
+ * adapter does; JSON <code>null</code> leaves primitive fields unchanged.
+ * Beans without properties, like {@link ChildrenBean}, keep using reflection.
+ * Only the exact classes are handled, so subclasses defined elsewhere keep
+ * using reflection as well. When adding a field to one of these beans, add it
+ * here as well.
+ */
+public class DomainTypeAdapterFactory implements TypeAdapterFactory {
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+		Class<? super T> rawType = type.getRawType();
+		if (rawType == ContentBean.class) {
+			return (TypeAdapter<T>) createContentAdapter(gson);
+		}
+		if (rawType == AncestorBean.class) {
+			return (TypeAdapter<T>) createAncestorAdapter(gson);
+		}
+		if (rawType == SpaceBean.class) {
+			return (TypeAdapter<T>) createSpaceAdapter(gson);
+		}
+		if (rawType == UserBean.class) {
+			return (TypeAdapter<T>) createUserAdapter(gson);
+		}
+		if (rawType == VersionBean.class) {
+			return (TypeAdapter<T>) createVersionAdapter(gson);
+		}
+		if (rawType == LinksBean.class) {
+			return (TypeAdapter<T>) createLinksAdapter(gson);
+		}
+		if (rawType == ExpandableBean.class) {
+			return (TypeAdapter<T>) createExpandableAdapter(gson);
+		}
+		if (rawType == ContentResultsBean.class) {
+			return (TypeAdapter<T>) createContentResultsAdapter(gson);
+		}
+		if (rawType == AttachmentResultsBean.class) {
+			return (TypeAdapter<T>) createAttachmentResultsAdapter(gson);
+		}
+		if (rawType == SpaceResultsBean.class) {
+			return (TypeAdapter<T>) createSpaceResultsAdapter(gson);
+		}
+		if (rawType == AttachmentBean.class) {
+			return (TypeAdapter<T>) createAttachmentAdapter(gson);
+		}
+		if (rawType == ExtensionsBean.class) {
+			return (TypeAdapter<T>) createExtensionsAdapter(gson);
+		}
+		if (rawType == BodyBean.class) {
+			return (TypeAdapter<T>) createBodyAdapter(gson);
+		}
+		if (rawType == StorageBean.class) {
+			return (TypeAdapter<T>) createStorageAdapter(gson);
+		}
+		if (rawType == ViewBean.class) {
+			return (TypeAdapter<T>) createViewAdapter(gson);
+		}
+		if (rawType == HistoryBean.class) {
+			return (TypeAdapter<T>) createHistoryAdapter(gson);
+		}
+		if (rawType == ContainerBean.class) {
+			return (TypeAdapter<T>) createContainerAdapter(gson);
+		}
+		if (rawType == MetadataBean.class) {
+			return (TypeAdapter<T>) createMetadataAdapter(gson);
+		}
+		if (rawType == LabelsBean.class) {
+			return (TypeAdapter<T>) createLabelsAdapter(gson);
+		}
+		if (rawType == LabelBean.class) {
+			return (TypeAdapter<T>) createLabelAdapter(gson);
+		}
+		if (rawType == DescriptionBean.class) {
+			return (TypeAdapter<T>) createDescriptionAdapter(gson);
+		}
+		if (rawType == PlainBean.class) {
+			return (TypeAdapter<T>) createPlainAdapter(gson);
+		}
+		if (rawType == ProfilePictureBean.class) {
+			return (TypeAdapter<T>) createProfilePictureAdapter(gson);
+		}
+		return null;
+	}
+
+	private TypeAdapter<ContentBean> createContentAdapter(Gson gson) {
+		return addContentProperties(new BeanTypeAdapter<>(ContentBean::new), gson);
+	}
+
+	private TypeAdapter<AttachmentBean> createAttachmentAdapter(Gson gson) {
+		return addContentProperties(new BeanTypeAdapter<>(AttachmentBean::new), gson)
+				.property("extensions", gson.getAdapter(ExtensionsBean.class), AttachmentBean::getExtensions, AttachmentBean::setExtensions);
+	}
+
+	/**
+	 * Adds the properties of {@link ContentBean}, in the order of their fields.
+	 */
+	private <T extends ContentBean> BeanTypeAdapter<T> addContentProperties(BeanTypeAdapter<T> adapter, Gson gson) {
+		TypeAdapter<String> string = gson.getAdapter(String.class);
+		adapter.property("status", string, ContentBean::getStatus, ContentBean::setStatus)
+				.property("title", string, ContentBean::getTitle, ContentBean::setTitle)
+				.property("space", gson.getAdapter(SpaceBean.class), ContentBean::getSpace, ContentBean::setSpace)
+				.property("history", gson.getAdapter(HistoryBean.class), ContentBean::getHistory, ContentBean::setHistory)
+				.property("version", gson.getAdapter(VersionBean.class), ContentBean::getVersion, ContentBean::setVersion)
+				.property("ancestors", gson.getAdapter(new TypeToken<List<AncestorBean>>() {
+				}), ContentBean::getAncestors, ContentBean::setAncestors)
+				.property("operations", gson.getAdapter(new TypeToken<List<OperationBean>>() {
+				}), ContentBean::getOperations, ContentBean::setOperations)
+				.property("children", gson.getAdapter(ChildrenBean.class), ContentBean::getChildren, ContentBean::setChildren)
+				.property("childTypes", gson.getAdapter(ChildTypesBean.class), ContentBean::getChildTypes, ContentBean::setChildTypes)
+				.property("descendants", gson.getAdapter(DescendantsBean.class), ContentBean::getDescendants, ContentBean::setDescendants)
+				.property("container", gson.getAdapter(ContainerBean.class), ContentBean::getContainer, ContentBean::setContainer)
+				.property("body", gson.getAdapter(BodyBean.class), ContentBean::getBody, ContentBean::setBody)
+				.property("metadata", gson.getAdapter(MetadataBean.class), ContentBean::getMetadata, ContentBean::setMetadata)
+				.property("restrictions", gson.getAdapter(RestrictionsBean.class), ContentBean::getRestrictions, ContentBean::setRestrictions);
+		return addBaseBeanProperties(adapter, gson);
+	}
+
+	private TypeAdapter<ContentResultsBean> createContentResultsAdapter(Gson gson) {
+		TypeAdapter<Integer> integer = gson.getAdapter(Integer.class);
+		BeanTypeAdapter<ContentResultsBean> adapter = new BeanTypeAdapter<>(ContentResultsBean::new)
+				.property("results", gson.getAdapter(new TypeToken<List<ContentBean>>() {
+				}), ContentResultsBean::getResults, ContentResultsBean::setResults)
+				.property("start", integer, ContentResultsBean::getStart, ContentResultsBean::setStart)
+				.property("limit", integer, ContentResultsBean::getLimit, ContentResultsBean::setLimit)
+				.property("size", integer, ContentResultsBean::getSize, ContentResultsBean::setSize);
+		return addBaseBeanProperties(adapter, gson);
+	}
+
+	private TypeAdapter<AttachmentResultsBean> createAttachmentResultsAdapter(Gson gson) {
+		TypeAdapter<Integer> integer = gson.getAdapter(Integer.class);
+		return new BeanTypeAdapter<>(AttachmentResultsBean::new)
+				.property("results", gson.getAdapter(new TypeToken<List<AttachmentBean>>() {
+				}), AttachmentResultsBean::getResults, AttachmentResultsBean::setResults)
+				.property("start", integer, AttachmentResultsBean::getStart, AttachmentResultsBean::setStart)
+				.property("limit", integer, AttachmentResultsBean::getLimit, AttachmentResultsBean::setLimit)
+				.property("size", integer, AttachmentResultsBean::getSize, AttachmentResultsBean::setSize);
+	}
+
+	private TypeAdapter<SpaceResultsBean> createSpaceResultsAdapter(Gson gson) {
+		TypeAdapter<Integer> integer = gson.getAdapter(Integer.class);
+		return new BeanTypeAdapter<>(SpaceResultsBean::new)
+				.property("results", gson.getAdapter(new TypeToken<List<SpaceBean>>() {
+				}), SpaceResultsBean::getResults, SpaceResultsBean::setResults)
+				.property("start", integer, SpaceResultsBean::getStart, SpaceResultsBean::setStart)
+				.property("limit", integer, SpaceResultsBean::getLimit, SpaceResultsBean::setLimit)
+				.property("size", integer, SpaceResultsBean::getSize, SpaceResultsBean::setSize)
+				.property("links", gson.getAdapter(LinksBean.class), SpaceResultsBean::getLinks, SpaceResultsBean::setLinks);
+	}
+
+	private TypeAdapter<ExtensionsBean> createExtensionsAdapter(Gson gson) {
+		TypeAdapter<String> string = gson.getAdapter(String.class);
+		return new BeanTypeAdapter<>(ExtensionsBean::new)
+				.property("mediaType", string, ExtensionsBean::getMediaType, ExtensionsBean::setMediaType)
+				.property("fileSize", gson.getAdapter(Long.class), ExtensionsBean::getFileSize, ExtensionsBean::setFileSize)
+				.property("comment", string, ExtensionsBean::getComment, ExtensionsBean::setComment);
+	}
+
+	private TypeAdapter<BodyBean> createBodyAdapter(Gson gson) {
+		return new BeanTypeAdapter<>(BodyBean::new)
+				.property("view", gson.getAdapter(ViewBean.class), BodyBean::getView, BodyBean::setView)
+				.property("storage", gson.getAdapter(StorageBean.class), BodyBean::getStorage, BodyBean::setStorage);
+	}
+
+	private TypeAdapter<StorageBean> createStorageAdapter(Gson gson) {
+		TypeAdapter<String> string = gson.getAdapter(String.class);
+		return new BeanTypeAdapter<>(StorageBean::new)
+				.property("value", string, StorageBean::getValue, StorageBean::setValue)
+				.property("representation", string, StorageBean::getRepresentation, StorageBean::setRepresentation)
+				.property("expandable", gson.getAdapter(ExpandableBean.class), StorageBean::getExpandable, StorageBean::setExpandable);
+	}
+
+	private TypeAdapter<ViewBean> createViewAdapter(Gson gson) {
+		TypeAdapter<String> string = gson.getAdapter(String.class);
+		return new BeanTypeAdapter<>(ViewBean::new)
+				.property("value", string, ViewBean::getValue, ViewBean::setValue)
+				.property("representation", string, ViewBean::getRepresentation, ViewBean::setRepresentation)
+				.property("expandable", gson.getAdapter(ExpandableBean.class), ViewBean::getExpandable, ViewBean::setExpandable);
+	}
+
+	private TypeAdapter<HistoryBean> createHistoryAdapter(Gson gson) {
+		return new BeanTypeAdapter<>(HistoryBean::new)
+				.property("latest", gson.getAdapter(Boolean.class), HistoryBean::isLatest, unlessNull(HistoryBean::setLatest))
+				.property("createdBy", gson.getAdapter(UserBean.class), HistoryBean::getCreatedBy, HistoryBean::setCreatedBy)
+				.property("createdDate", gson.getAdapter(Date.class), HistoryBean::getCreatedDate, HistoryBean::setCreatedDate);
+	}
+
+	private TypeAdapter<ContainerBean> createContainerAdapter(Gson gson) {
+		TypeAdapter<String> string = gson.getAdapter(String.class);
+		return new BeanTypeAdapter<>(ContainerBean::new)
+				.property("id", gson.getAdapter(Integer.class), ContainerBean::getId, ContainerBean::setId)
+				.property("key", string, ContainerBean::getKey, ContainerBean::setKey)
+				.property("name", string, ContainerBean::getName, ContainerBean::setName)
+				.property("description", gson.getAdapter(DescriptionBean.class), ContainerBean::getDescription, ContainerBean::setDescription)
+				.property("metadata", gson.getAdapter(MetadataBean.class), ContainerBean::getMetadata, ContainerBean::setMetadata)
+				.property("links", gson.getAdapter(LinksBean.class), ContainerBean::getLinks, ContainerBean::setLinks);
+	}
+
+	private TypeAdapter<MetadataBean> createMetadataAdapter(Gson gson) {
+		TypeAdapter<String> string = gson.getAdapter(String.class);
+		return new BeanTypeAdapter<>(MetadataBean::new)
+				.property("labels", gson.getAdapter(LabelsBean.class), MetadataBean::getLabels, MetadataBean::setLabels)
+				.property("comment", string, MetadataBean::getComment, MetadataBean::setComment)
+				.property("mediaType", string, MetadataBean::getMediaType, MetadataBean::setMediaType);
+	}
+
+	private TypeAdapter<LabelsBean> createLabelsAdapter(Gson gson) {
+		TypeAdapter<Integer> integer = gson.getAdapter(Integer.class);
+		return new BeanTypeAdapter<>(LabelsBean::new)
+				.property("results", gson.getAdapter(new TypeToken<List<LabelBean>>() {
+				}), LabelsBean::getResults, LabelsBean::setResults)
+				.property("start", integer, LabelsBean::getStart, unlessNull(LabelsBean::setStart))
+				.property("limit", integer, LabelsBean::getLimit, unlessNull(LabelsBean::setLimit))
+				.property("size", integer, LabelsBean::getSize, unlessNull(LabelsBean::setSize));
+	}
+
+	private TypeAdapter<LabelBean> createLabelAdapter(Gson gson) {
+		TypeAdapter<String> string = gson.getAdapter(String.class);
+		return new BeanTypeAdapter<>(LabelBean::new)
+				.property("prefix", string, LabelBean::getPrefix, LabelBean::setPrefix)
+				.property("name", string, LabelBean::getName, LabelBean::setName)
+				.property("id", string, LabelBean::getId, LabelBean::setId);
+	}
+
+	private TypeAdapter<DescriptionBean> createDescriptionAdapter(Gson gson) {
+		return new BeanTypeAdapter<>(DescriptionBean::new)
+				.property("plain", gson.getAdapter(PlainBean.class), DescriptionBean::getPlain, DescriptionBean::setPlain);
+	}
+
+	private TypeAdapter<PlainBean> createPlainAdapter(Gson gson) {
+		TypeAdapter<String> string = gson.getAdapter(String.class);
+		return new BeanTypeAdapter<>(PlainBean::new)
+				.property("value", string, PlainBean::getValue, PlainBean::setValue)
+				.property("representation", string, PlainBean::getRepresentation, PlainBean::setRepresentation);
+	}
+
+	private TypeAdapter<ProfilePictureBean> createProfilePictureAdapter(Gson gson) {
+		TypeAdapter<Integer> integer = gson.getAdapter(Integer.class);
+		return new BeanTypeAdapter<>(ProfilePictureBean::new)
+				.property("path", gson.getAdapter(String.class), ProfilePictureBean::getPath, ProfilePictureBean::setPath)
+				.property("width", integer, ProfilePictureBean::getWidth, ProfilePictureBean::setWidth)
+				.property("height", integer, ProfilePictureBean::getHeight, ProfilePictureBean::setHeight)
+				.property("isDefault", gson.getAdapter(Boolean.class), ProfilePictureBean::getDefault, ProfilePictureBean::setDefault);
+	}
+
+	private TypeAdapter<AncestorBean> createAncestorAdapter(Gson gson) {
+		BeanTypeAdapter<AncestorBean> adapter = new BeanTypeAdapter<>(AncestorBean::new)
+				.property("status", gson.getAdapter(String.class), AncestorBean::getStatus, AncestorBean::setStatus)
+				.property("ancestors", gson.getAdapter(new TypeToken<List<AncestorBean>>() {
+				}), AncestorBean::getAncestors, AncestorBean::setAncestors)
+				.property("operations", gson.getAdapter(new TypeToken<List<OperationBean>>() {
+				}), AncestorBean::getOperations, AncestorBean::setOperations)
+				.property("children", gson.getAdapter(ChildrenBean.class), AncestorBean::getChildren, AncestorBean::setChildren)
+				.property("childTypes", gson.getAdapter(ChildTypesBean.class), AncestorBean::getChildTypes, AncestorBean::setChildTypes)
+				.property("descendants", gson.getAdapter(DescendantsBean.class), AncestorBean::getDescendants, AncestorBean::setDescendants)
+				.property("body", gson.getAdapter(BodyBean.class), AncestorBean::getBody, AncestorBean::setBody)
+				.property("metadata", gson.getAdapter(MetadataBean.class), AncestorBean::getMetadata, AncestorBean::setMetadata)
+				.property("restrictions", gson.getAdapter(RestrictionsBean.class), AncestorBean::getRestrictions, AncestorBean::setRestrictions);
+		return addBaseBeanProperties(adapter, gson);
+	}
+
+	private TypeAdapter<SpaceBean> createSpaceAdapter(Gson gson) {
+		TypeAdapter<String> string = gson.getAdapter(String.class);
+		BeanTypeAdapter<SpaceBean> adapter = new BeanTypeAdapter<>(SpaceBean::new)
+				.property("key", string, SpaceBean::getKey, SpaceBean::setKey)
+				.property("name", string, SpaceBean::getName, SpaceBean::setName)
+				.property("description", gson.getAdapter(DescriptionBean.class), SpaceBean::getDescription, SpaceBean::setDescription)
+				.property("expandable", gson.getAdapter(ExpandableBean.class), SpaceBean::getExpandable, SpaceBean::setExpandable);
+		return addBaseBeanProperties(adapter, gson);
+	}
+
+	private TypeAdapter<UserBean> createUserAdapter(Gson gson) {
+		TypeAdapter<String> string = gson.getAdapter(String.class);
+		return new BeanTypeAdapter<>(UserBean::new)
+				.property("type", string, UserBean::getType, UserBean::setType)
+				.property("username", string, UserBean::getUsername, UserBean::setUsername)
+				.property("userKey", string, UserBean::getUserKey, UserBean::setUserKey)
+				.property("profilePicture", gson.getAdapter(ProfilePictureBean.class), UserBean::getProfilePicture, UserBean::setProfilePicture)
+				.property("displayName", string, UserBean::getDisplayName, UserBean::setDisplayName)
+				.property("links", gson.getAdapter(LinksBean.class), UserBean::getLinks, UserBean::setLinks);
+	}
+
+	private TypeAdapter<VersionBean> createVersionAdapter(Gson gson) {
+		TypeAdapter<String> string = gson.getAdapter(String.class);
+		return new BeanTypeAdapter<>(VersionBean::new)
+				.property("by", gson.getAdapter(UserBean.class), VersionBean::getBy, VersionBean::setBy)
+				.property("when", string, VersionBean::getWhen, VersionBean::setWhen)
+				.property("message", string, VersionBean::getMessage, VersionBean::setMessage)
+				.property("number", gson.getAdapter(Integer.class), VersionBean::getNumber, VersionBean::setNumber)
+				.property("minorEdit", gson.getAdapter(Boolean.class), VersionBean::getMinorEdit, VersionBean::setMinorEdit);
+	}
+
+	private TypeAdapter<LinksBean> createLinksAdapter(Gson gson) {
+		TypeAdapter<String> string = gson.getAdapter(String.class);
+		return new BeanTypeAdapter<>(LinksBean::new)
+				.property("base", string, LinksBean::getBase, LinksBean::setBase)
+				.property("context", string, LinksBean::getContext, LinksBean::setContext)
+				.property("self", string, LinksBean::getSelf, LinksBean::setSelf)
+				.property("webui", string, LinksBean::getWebui, LinksBean::setWebui)
+				.property("collection", string, LinksBean::getCollection, LinksBean::setCollection)
+				.property("download", string, LinksBean::getDownload, LinksBean::setDownload);
+	}
+
+	private TypeAdapter<ExpandableBean> createExpandableAdapter(Gson gson) {
+		TypeAdapter<String> string = gson.getAdapter(String.class);
+		return new BeanTypeAdapter<>(ExpandableBean::new)
+				.property("content", string, ExpandableBean::getContent, ExpandableBean::setContent)
+				.property("details", string, ExpandableBean::getDetails, ExpandableBean::setDetails)
+				.property("metadata", string, ExpandableBean::getMetadata, ExpandableBean::setMetadata)
+				.property("icon", string, ExpandableBean::getIcon, ExpandableBean::setIcon)
+				.property("description", string, ExpandableBean::getDescription, ExpandableBean::setDescription)
+				.property("homepage", string, ExpandableBean::getHomepage, ExpandableBean::setHomepage);
+	}
+
+	/**
+	 * @return setter of a primitive field, which Gson's reflective adapter
+	 *         leaves unchanged on JSON <code>null</code>
+	 */
+	private static <T, V> BiConsumer<T, V> unlessNull(BiConsumer<T, V> setter) {
+		return (bean, value) -> {
+			if (value != null) {
+				setter.accept(bean, value);
+			}
+		};
+	}
+
+	private <T extends BaseBean> BeanTypeAdapter<T> addBaseBeanProperties(BeanTypeAdapter<T> adapter, Gson gson) {
+		TypeAdapter<String> string = gson.getAdapter(String.class);
+		return adapter.property("id", string, BaseBean::getId, BaseBean::setId)
+				.property("type", string, BaseBean::getType, BaseBean::setType)
+				.property("_links", gson.getAdapter(LinksBean.class), BaseBean::getLinks, BaseBean::setLinks);
+	}
+
+}
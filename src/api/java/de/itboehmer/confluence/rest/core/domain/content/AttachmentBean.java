@@ -15,19 +15,31 @@
  */
 package de.itboehmer.confluence.rest.core.domain.content;
 
+import com.google.gson.annotations.Expose;
 import de.itboehmer.confluence.rest.client.ContentClient;
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 /**
  * @author Martin Böhmer
  */
 public class AttachmentBean extends ContentBean {
 
+    @Expose
+    private ExtensionsBean extensions;
+
     private InputStream inputStream;
 
+    private Path file;
+
+    private byte[] data;
+
     private ContentClient contentClient;
 
     public AttachmentBean() {
@@ -38,21 +50,81 @@ public class AttachmentBean extends ContentBean {
     }
 
     public AttachmentBean(File f, String comment) throws FileNotFoundException {
-        this(new FileInputStream(f), f.getName(), comment);
+        this(toExistingPath(f), comment);
+    }
+
+    /**
+     * Creates an attachment uploaded from a file. The file is opened when it is
+     * uploaded, and sent with a known length so that the upload can be
+     * repeated.
+     */
+    public AttachmentBean(Path file, String comment) {
+        this(file.getFileName().toString(), comment);
+        this.file = file;
+    }
+
+    /**
+     * Creates an attachment uploaded from data in memory, which is sent with a
+     * known length so that the upload can be repeated.
+     */
+    public AttachmentBean(byte[] data, String filename, String comment) {
+        this(filename, comment);
+        this.data = data;
     }
 
     public AttachmentBean(InputStream inputStream, String filename, String comment) {
-        this.setTitle(filename);
+        this(filename, comment);
         this.inputStream = inputStream;
+    }
+
+    private AttachmentBean(String filename, String comment) {
+        this.setTitle(filename);
         if (comment != null) {
             this.setMetadata(new MetadataBean());
             this.getMetadata().setComment(comment);
         }
     }
 
+    private static Path toExistingPath(File f) throws FileNotFoundException {
+        if (!f.isFile()) {
+            throw new FileNotFoundException(f.getPath());
+        }
+        return f.toPath();
+    }
+
+    public ExtensionsBean getExtensions() {
+        return extensions;
+    }
+
+    public void setExtensions(ExtensionsBean extensions) {
+        this.extensions = extensions;
+    }
+
+    /**
+     * @return the file to upload, or <code>null</code>
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return the data to upload, or <code>null</code>
+     */
+    public byte[] getData() {
+        return data;
+    }
+
     public InputStream getInputStream() {
         if (this.inputStream != null) {
             return inputStream;
+        } else if (this.file != null) {
+            try {
+                return Files.newInputStream(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } else if (this.data != null) {
+            return new ByteArrayInputStream(data);
         } else if (this.contentClient != null) {
             //Future<InputStream> result = this.contentClient.downloadAttachement(this);
             //return result.get();
@@ -0,0 +1,46 @@
+package de.itboehmer.confluence.rest.core.domain.content;
+
+import com.google.gson.annotations.Expose;
+
+/**
+ * Attachment specific properties of content.
+ */
+public class ExtensionsBean {
+
+    @Expose
+    private String mediaType;
+
+    @Expose
+    private Long fileSize;
+
+    @Expose
+    private String comment;
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    public void setMediaType(String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    /**
+     * @return size of the attachment's data in bytes
+     */
+    public Long getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(Long fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    public String getComment() {
+        return comment;
+    }
+
+    public void setComment(String comment) {
+        this.comment = comment;
+    }
+
+}
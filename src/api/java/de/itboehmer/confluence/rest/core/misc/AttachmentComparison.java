@@ -0,0 +1,20 @@
+package de.itboehmer.confluence.rest.core.misc;
+
+/**
+ * How a bulk upload decides that an attachment is unchanged and skips it.
+ */
+public enum AttachmentComparison {
+
+    /**
+     * Unchanged if an attachment with the same name and size exists. Cheap, but
+     * misses edits which keep the size.
+     */
+    SIZE,
+
+    /**
+     * Unchanged if an attachment with the same name, size and SHA-256 hash
+     * exists. Attachments of the same size are downloaded to compute the hash.
+     */
+    CONTENT;
+
+}
@@ -40,6 +40,8 @@ public interface RestPathConstants {
 
     String CONTENT_ATTACHMENT = SPECIFIC_CONTENT + "/child/attachment";
 
+    String CONTENT_ATTACHMENT_DATA = CONTENT_ATTACHMENT + "/%2$s/data";
+
     String CONTENT_LABEL = SPECIFIC_CONTENT + "/label";
 
 }
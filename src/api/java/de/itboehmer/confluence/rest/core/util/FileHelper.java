@@ -0,0 +1,77 @@
+package de.itboehmer.confluence.rest.core.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes downloads to files, so that a file is either complete or not there at
+ * all.
+ */
+public class FileHelper {
+
+    /** Bytes transferred per call, bounding the native buffer of a transfer. */
+    private static final long TRANSFER_CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * Writes the stream to a temporary file next to the target through a
+     * {@link FileChannel} and then moves it to the target, replacing an existing
+     * file. The stream is closed, also on failure.
+     *
+     * @return number of bytes written
+     */
+    public static long write(InputStream inputStream, Path target) throws IOException {
+        try (ReadableByteChannel source = Channels.newChannel(inputStream)) {
+            Path temp = createTempFile(target);
+            try {
+                long size;
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                    size = transfer(source, channel);
+                    channel.force(false);
+                }
+                move(temp, target);
+                return size;
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /**
+     * Creates an empty temporary file in the directory of the target, from where
+     * it can be moved to the target atomically.
+     */
+    public static Path createTempFile(Path target) throws IOException {
+        Path absolute = target.toAbsolutePath();
+        return Files.createTempFile(absolute.getParent(), "." + absolute.getFileName(), ".part");
+    }
+
+    /**
+     * Moves the file to the target, atomically if the file system supports it.
+     */
+    public static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static long transfer(ReadableByteChannel source, FileChannel target) throws IOException {
+        long position = 0;
+        long transferred;
+        // A blocking source only transfers nothing at its end
+        while ((transferred = target.transferFrom(source, position, TRANSFER_CHUNK_SIZE)) > 0) {
+            position += transferred;
+        }
+        return position;
+    }
+
+}
@@ -0,0 +1,114 @@
+package de.itboehmer.confluence.rest.core.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Entity serializing an object to JSON while it is written, instead of
+ * building the body as a String first. Only the writer's buffers are held in
+ * memory. The entity is repeatable: the object is serialized again for each
+ * attempt, so it must not be modified while the request is executed.
+ */
+public class GsonEntity extends AbstractHttpEntity {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final Gson gson;
+    private final Object content;
+    private final boolean compress;
+
+    /**
+     * @param compress <code>true</code> to gzip the body
+     */
+    public GsonEntity(Gson gson, Object content, boolean compress) {
+        this.gson = gson;
+        this.content = content;
+        this.compress = compress;
+        setContentType("application/json; charset=UTF-8");
+        if (compress) {
+            setContentEncoding("gzip");
+        }
+        // The length is only known after serializing
+        setChunked(true);
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    /**
+     * Serializes the object into memory. Used by callers which pull the
+     * content, like the asynchronous client; {@link #writeTo(OutputStream)}
+     * streams instead.
+     */
+    @Override
+    public InputStream getContent() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+        writeTo(out);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    /**
+     * Writes the body without closing the stream. The native memory of the
+     * compressor is released before returning, also if writing fails.
+     */
+    @Override
+    public void writeTo(OutputStream outstream) throws IOException {
+        GzipStream gzip = compress ? new GzipStream(outstream) : null;
+        try {
+            Writer writer = new OutputStreamWriter((gzip != null) ? gzip : outstream, StandardCharsets.UTF_8);
+            // Same settings as Gson.toJson(Object)
+            JsonWriter jsonWriter = gson.newJsonWriter(writer);
+            gson.toJson(content, content.getClass(), jsonWriter);
+            jsonWriter.flush();
+            if (gzip != null) {
+                gzip.finish();
+            }
+            outstream.flush();
+        } finally {
+            if (gzip != null) {
+                gzip.end();
+            }
+        }
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    /**
+     * Gzip stream which releases its compressor without closing the underlying
+     * stream, unlike {@link GZIPOutputStream#close()}.
+     */
+    private static class GzipStream extends GZIPOutputStream {
+
+        GzipStream(OutputStream out) throws IOException {
+            super(out, BUFFER_SIZE);
+        }
+
+        void end() {
+            def.end();
+        }
+
+    }
+
+}
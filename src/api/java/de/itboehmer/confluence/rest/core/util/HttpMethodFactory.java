@@ -21,8 +21,10 @@ import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.nio.charset.Charset;
+import java.nio.file.Path;
 
 import org.apache.commons.codec.CharEncoding;
+import org.apache.commons.lang3.Validate;
 import org.apache.http.HttpHeaders;
 import org.apache.http.HttpMessage;
 import org.apache.http.client.methods.HttpGet;
@@ -31,8 +33,14 @@ import org.apache.http.client.methods.HttpPut;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.entity.mime.HttpMultipartMode;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.apache.http.entity.mime.content.ByteArrayBody;
+import org.apache.http.entity.mime.content.ContentBody;
+import org.apache.http.entity.mime.content.FileBody;
+import org.apache.http.entity.mime.content.InputStreamBody;
 import org.apache.http.message.BasicHeader;
 
+import com.google.gson.Gson;
+
 /**
  * @author Christian Schulze (c.schulze@micromata.de)
  * @author Martin Böhmer
@@ -44,6 +52,12 @@ public class HttpMethodFactory {
 
     /** "application/json" */
     private final static String APPLICATION_JSON = "application/json";
+
+    /** Content codings accepted for JSON responses */
+    private final static String JSON_ACCEPT_ENCODING = "gzip, deflate";
+
+    /** "identity" */
+    private final static String IDENTITY = "identity";
     
     public static HttpGet createGetMethod(URI uri) {
         HttpGet method = new HttpGet(uri);
@@ -51,10 +65,63 @@ public class HttpMethodFactory {
         return method;
     }
     
+    /**
+     * Creates a GET method which the server answers with 304 Not Modified if the
+     * resource still matches the given validators.
+     *
+     * @param etag the <code>ETag</code> of the known response, or
+     *            <code>null</code>
+     * @param lastModified the <code>Last-Modified</code> date of the known
+     *            response, or <code>null</code>
+     */
+    public static HttpGet createConditionalGetMethod(URI uri, String etag, String lastModified) {
+        HttpGet method = createGetMethod(uri);
+        if (etag != null) {
+            method.addHeader(HttpHeaders.IF_NONE_MATCH, etag);
+        }
+        if (lastModified != null) {
+            method.addHeader(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+        }
+        return method;
+    }
+    
+    /**
+     * Creates a GET method for a download. Attachments are requested without
+     * content coding, so that lengths and ranges refer to the attachment data.
+     */
     public static HttpGet createGetMethodForDownload(URI uri) {
         HttpGet method = new HttpGet(uri);
         method.addHeader(HttpHeaders.ACCEPT,
         		APPLICATION_OCTET_STREAM);
+        method.addHeader(HttpHeaders.ACCEPT_ENCODING, IDENTITY);
+        return method;
+    }
+
+    /**
+     * Creates a GET method for the part of a download starting at the offset,
+     * limited to the given length unless it is negative.
+     */
+    public static HttpGet createGetMethodForDownload(URI uri, long offset, long length) {
+        return createGetMethodForDownload(uri, offset, length, null);
+    }
+
+    /**
+     * Creates a GET method for the part of a download starting at the offset,
+     * limited to the given length unless it is negative. If a validator is
+     * given, the server only sends the part if the resource still matches it,
+     * and else the complete resource.
+     *
+     * @param validator strong <code>ETag</code> or <code>Last-Modified</code>
+     *            date for <code>If-Range</code>, or <code>null</code>
+     */
+    public static HttpGet createGetMethodForDownload(URI uri, long offset, long length, String validator) {
+        Validate.isTrue(offset >= 0 && length != 0, "Invalid range");
+        HttpGet method = createGetMethodForDownload(uri);
+        String last = (length < 0) ? "" : String.valueOf(offset + length - 1);
+        method.addHeader(HttpHeaders.RANGE, "bytes=" + offset + "-" + last);
+        if (validator != null) {
+            method.addHeader(HttpHeaders.IF_RANGE, validator);
+        }
         return method;
     }
     
@@ -68,6 +135,22 @@ public class HttpMethodFactory {
         method.setEntity(entity);
         return method;
     }
+
+    /**
+     * Creates a POST method with the content serialized to JSON while the body
+     * is sent, optionally gzip compressed, see {@link GsonEntity}. Only
+     * compress if the server, or a proxy in front of it, accepts compressed
+     * requests.
+     */
+    public static HttpPost createPostMethod(URI uri, Gson gson, Object content, boolean compress) {
+        if (uri == null) {
+            return null;
+        }
+        HttpPost method = new HttpPost(uri);
+        setHeadersForJsonExchange(method);
+        method.setEntity(new GsonEntity(gson, content, compress));
+        return method;
+    }
     
     public static HttpPut createPutMethod(URI uri, String body) throws UnsupportedEncodingException {
         if (uri == null) {
@@ -81,12 +164,35 @@ public class HttpMethodFactory {
     }
     
     public static HttpPost createPostMethodForUpload(URI uri, InputStream inputStream, String filename, String comment) throws FileNotFoundException {
+        return createPostMethodForUpload(uri,
+                new InputStreamBody(inputStream, org.apache.http.entity.ContentType.DEFAULT_BINARY, filename), comment);
+    }
+
+    /**
+     * Creates an upload of a file. The entity is repeatable and has a known
+     * content length.
+     */
+    public static HttpPost createPostMethodForUpload(URI uri, Path file, String filename, String comment) {
+        return createPostMethodForUpload(uri,
+                new FileBody(file.toFile(), org.apache.http.entity.ContentType.DEFAULT_BINARY, filename), comment);
+    }
+
+    /**
+     * Creates an upload of data in memory. The entity is repeatable and has a
+     * known content length.
+     */
+    public static HttpPost createPostMethodForUpload(URI uri, byte[] data, String filename, String comment) {
+        return createPostMethodForUpload(uri,
+                new ByteArrayBody(data, org.apache.http.entity.ContentType.DEFAULT_BINARY, filename), comment);
+    }
+
+    private static HttpPost createPostMethodForUpload(URI uri, ContentBody file, String comment) {
         HttpPost method = new HttpPost(uri);
         method.addHeader("X-Atlassian-Token", "no-check");
         MultipartEntityBuilder entityBuilder = MultipartEntityBuilder.create();
         entityBuilder.setMode(HttpMultipartMode.BROWSER_COMPATIBLE);
         entityBuilder.setCharset(Charset.forName("utf-8"));
-        entityBuilder.addBinaryBody("file", inputStream, org.apache.http.entity.ContentType.DEFAULT_BINARY, filename);
+        entityBuilder.addPart("file", file);
         if (comment != null) {
             entityBuilder.addTextBody("comment", comment);
         }
@@ -97,5 +203,6 @@ public class HttpMethodFactory {
     private static void setHeadersForJsonExchange(HttpMessage httpMessage) {
         httpMessage.addHeader(new BasicHeader(HttpHeaders.ACCEPT, APPLICATION_JSON));
         httpMessage.addHeader(new BasicHeader(HttpHeaders.CONTENT_TYPE, APPLICATION_JSON));
+        httpMessage.addHeader(new BasicHeader(HttpHeaders.ACCEPT_ENCODING, JSON_ACCEPT_ENCODING));
     }
 }
@@ -0,0 +1,148 @@
+package de.itboehmer.confluence.rest.core.util;
+
+/**
+ * Incremental 128 bit MurmurHash3, x64 variant. Not a cryptographic hash, but
+ * fast and well distributed, which makes it suitable for detecting changes.
+ * The result matches the reference implementation, and Guava's
+ * <code>Hashing.murmur3_128</code>, for the same bytes.
+ */
+final class MurmurHash3 {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private static final int BLOCK_SIZE = 16;
+
+    private final byte[] block = new byte[BLOCK_SIZE];
+    private int position;
+    private long length;
+    private long h1;
+    private long h2;
+
+    MurmurHash3() {
+        this(0);
+    }
+
+    MurmurHash3(int seed) {
+        this.h1 = seed & 0xffffffffL;
+        this.h2 = seed & 0xffffffffL;
+    }
+
+    MurmurHash3 update(byte b) {
+        block[position++] = b;
+        length++;
+        if (position == BLOCK_SIZE) {
+            mixBlock();
+            position = 0;
+        }
+        return this;
+    }
+
+    MurmurHash3 update(byte[] bytes) {
+        for (byte b : bytes) {
+            update(b);
+        }
+        return this;
+    }
+
+    /**
+     * Adds the value as four bytes, little-endian.
+     */
+    MurmurHash3 update(int value) {
+        update((byte) value);
+        update((byte) (value >>> 8));
+        update((byte) (value >>> 16));
+        return update((byte) (value >>> 24));
+    }
+
+    /**
+     * Adds the length of the characters followed by the characters as two
+     * bytes each, so that consecutive strings cannot be confused.
+     */
+    MurmurHash3 update(CharSequence chars) {
+        int count = chars.length();
+        update(count);
+        for (int i = 0; i < count; i++) {
+            char c = chars.charAt(i);
+            update((byte) c);
+            update((byte) (c >>> 8));
+        }
+        return this;
+    }
+
+    /**
+     * @return the 16 bytes of the hash; the hash cannot be updated afterwards
+     */
+    byte[] digest() {
+        mixTail();
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        h1 += h2;
+        h2 += h1;
+        byte[] result = new byte[BLOCK_SIZE];
+        for (int i = 0; i < 8; i++) {
+            result[i] = (byte) (h1 >>> (8 * i));
+            result[i + 8] = (byte) (h2 >>> (8 * i));
+        }
+        return result;
+    }
+
+    private void mixBlock() {
+        long k1 = getLong(0, 8);
+        long k2 = getLong(8, 8);
+        h1 ^= mixK1(k1);
+        h1 = Long.rotateLeft(h1, 27);
+        h1 += h2;
+        h1 = h1 * 5 + 0x52dce729;
+        h2 ^= mixK2(k2);
+        h2 = Long.rotateLeft(h2, 31);
+        h2 += h1;
+        h2 = h2 * 5 + 0x38495ab5;
+    }
+
+    private void mixTail() {
+        if (position > 8) {
+            h2 ^= mixK2(getLong(8, position - 8));
+        }
+        if (position > 0) {
+            h1 ^= mixK1(getLong(0, Math.min(position, 8)));
+        }
+    }
+
+    /**
+     * Reads up to 8 bytes of the block as little-endian value.
+     */
+    private long getLong(int offset, int count) {
+        long value = 0;
+        for (int i = 0; i < count; i++) {
+            value |= (block[offset + i] & 0xffL) << (8 * i);
+        }
+        return value;
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        return k1 * C2;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        return k2 * C1;
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+}
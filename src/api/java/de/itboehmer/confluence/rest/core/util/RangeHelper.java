@@ -0,0 +1,48 @@
+package de.itboehmer.confluence.rest.core.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+
+/**
+ * Supports downloading parts of a resource with HTTP range requests.
+ */
+public class RangeHelper {
+
+    /**
+     * Skips the stream to the offset and limits it to the given length, unless
+     * that is negative. Used when the server sent the complete resource instead
+     * of the requested range. The stream is closed if skipping fails.
+     */
+    public static InputStream slice(InputStream inputStream, long offset, long length) throws IOException {
+        try {
+            IOUtils.skipFully(inputStream, offset);
+        } catch (IOException e) {
+            IOUtils.closeQuietly(inputStream);
+            throw e;
+        }
+        return (length < 0) ? inputStream : new BoundedInputStream(inputStream, length);
+    }
+
+    /**
+     * @return the first byte position of a <code>Content-Range</code> header
+     *         like <code>bytes 100-199/1000</code>, or -1 if it cannot be parsed
+     */
+    public static long getFirstBytePosition(String contentRange) {
+        if (contentRange == null || !contentRange.startsWith("bytes ")) {
+            return -1;
+        }
+        int dash = contentRange.indexOf('-');
+        if (dash < 0) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentRange.substring("bytes ".length(), dash).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+}
@@ -15,15 +15,14 @@
  */
 package de.itboehmer.confluence.rest.core.util;
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import java.util.Arrays;
+import java.util.Objects;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.apache.commons.codec.binary.Hex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.xml.sax.SAXException;
 
 /**
  * Helper class for handling Confluence's storage format.
@@ -71,28 +70,205 @@ public final class StorageFormatHelper {
             return true;
         }
         // Compare XML
-        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-        dbf.setNamespaceAware(false);
-        dbf.setCoalescing(true);
-        dbf.setIgnoringElementContentWhitespace(true);
-        dbf.setIgnoringComments(true);
+        try (StorageFormatReader reader1 = StorageFormatReader.create(xml1);
+                StorageFormatReader reader2 = StorageFormatReader.create(xml2)) {
+            return xmlEquals(reader1, reader2);
+        } catch (XMLStreamException ex) {
+            LOG.error("Error comparing XML strings.\n--XML1--\n" + xml1 + "\n--XML2--\n" + xml2, ex);
+        }
 
-        try {
-            DocumentBuilder db = dbf.newDocumentBuilder();
+        return false;
+    }
 
-            Document doc1 = db.parse(new ByteArrayInputStream(xml1.getBytes()));
-            doc1.normalizeDocument();
+    /**
+     * Computes a fingerprint of the content, which stays the same as long as
+     * the content only changes in whitespace, comments or the order of
+     * attributes. Store it next to the content to detect changes without
+     * comparing the documents again. Named XHTML entities are resolved to
+     * their characters. Only content which is not well-formed XML, e.g. with
+     * unclosed tags, is fingerprinted as text ignoring all whitespace.
+     *
+     * @return 32 hex digits of a 128 bit MurmurHash3 over the canonical form
+     */
+    public static String fingerprint(String xml) {
+        if (xml == null) {
+            xml = "";
+        }
+        // Content is usually a fragment with several top-level elements
+        String document = xml.startsWith("<?xml") ? xml : "<fragment>" + xml + "</fragment>";
+        try (StorageFormatReader reader = StorageFormatReader.create(document)) {
+            MurmurHash3 hash = new MurmurHash3();
+            hash.update((byte) 'X');
+            hashCanonicalForm(reader, hash);
+            return Hex.encodeHexString(hash.digest());
+        } catch (XMLStreamException ex) {
+            LOG.debug("Fingerprinting content as text, it is not well-formed: " + ex.getMessage());
+            MurmurHash3 hash = new MurmurHash3();
+            hash.update((byte) 'T');
+            hash.update(xml.replaceAll("\\s", ""));
+            return Hex.encodeHexString(hash.digest());
+        }
+    }
 
-            Document doc2 = db.parse(new ByteArrayInputStream(xml2.getBytes()));
-            doc2.normalizeDocument();
+    /**
+     * Hashes the document as a stream of tagged events: elements with their
+     * attributes sorted by name, and text with whitespace runs collapsed to a
+     * single space and trimmed. Whitespace-only text is dropped.
+     */
+    private static void hashCanonicalForm(StorageFormatReader reader, MurmurHash3 hash)
+            throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        while (true) {
+            XMLStreamReader element = reader.getReader();
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    hash.update((byte) 'S');
+                    hash.update(getName(element.getPrefix(), element.getLocalName()));
+                    hashAttributes(element, hash);
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    hash.update((byte) 'E');
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                    collapseWhitespace(reader.getText(), text);
+                    if (text.length() > 0) {
+                        hash.update((byte) 'C');
+                        hash.update(text);
+                    }
+                    break;
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    hash.update((byte) 'P');
+                    hash.update(element.getPITarget());
+                    hash.update(String.valueOf(element.getPIData()));
+                    break;
+                case XMLStreamConstants.END_DOCUMENT:
+                    return;
+                default:
+                    break;
+            }
+        }
+    }
 
-            return doc1.isEqualNode(doc2);
+    private static void hashAttributes(XMLStreamReader element, MurmurHash3 hash) {
+        int count = element.getAttributeCount();
+        hash.update(count);
+        if (count == 0) {
+            return;
+        }
+        String[] names = new String[count];
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = getName(element.getAttributePrefix(i), element.getAttributeLocalName(i));
+            order[i] = i;
+        }
+        Arrays.sort(order, (i, j) -> names[i].compareTo(names[j]));
+        for (int i : order) {
+            hash.update(names[i]);
+            hash.update(element.getAttributeValue(i));
+        }
+    }
 
-        } catch (ParserConfigurationException | SAXException | IOException ex) {
-            LOG.error("Error comparing XML strings.\n--XML1--\n" + xml1 + "\n--XML2--\n" + xml2, ex);
+    private static String getName(String prefix, String localName) {
+        return (prefix == null || prefix.isEmpty()) ? localName : prefix + ":" + localName;
+    }
+
+    private static void collapseWhitespace(CharSequence text, StringBuilder collapsed) {
+        collapsed.setLength(0);
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+                space = collapsed.length() > 0;
+            } else {
+                if (space) {
+                    collapsed.append(' ');
+                    space = false;
+                }
+                collapsed.append(c);
+            }
         }
+    }
 
-        return false;
+    /**
+     * Walks both documents in lockstep and stops at the first difference.
+     * Comments are ignored, text and CDATA sections are compared as one text,
+     * attributes are compared regardless of their order.
+     */
+    private static boolean xmlEquals(StorageFormatReader reader1, StorageFormatReader reader2)
+            throws XMLStreamException {
+        while (true) {
+            int event = reader1.next();
+            if (event != reader2.next()) {
+                return false;
+            }
+            XMLStreamReader element1 = reader1.getReader();
+            XMLStreamReader element2 = reader2.getReader();
+            switch (event) {
+                case XMLStreamConstants.START_ELEMENT:
+                    if (!element1.getLocalName().equals(element2.getLocalName())
+                            || !Objects.equals(element1.getPrefix(), element2.getPrefix())
+                            || !attributesEqual(element1, element2)) {
+                        return false;
+                    }
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                    if (!contentEquals(reader1.getText(), reader2.getText())) {
+                        return false;
+                    }
+                    break;
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    if (!Objects.equals(element1.getPITarget(), element2.getPITarget())
+                            || !Objects.equals(element1.getPIData(), element2.getPIData())) {
+                        return false;
+                    }
+                    break;
+                case XMLStreamConstants.DTD:
+                    if (!element1.getText().equals(element2.getText())) {
+                        return false;
+                    }
+                    break;
+                case XMLStreamConstants.END_DOCUMENT:
+                    return true;
+                default:
+                    // End tags match if the start tags did
+                    break;
+            }
+        }
+    }
+
+    private static boolean attributesEqual(XMLStreamReader element1, XMLStreamReader element2) {
+        int count = element1.getAttributeCount();
+        if (count != element2.getAttributeCount()) {
+            return false;
+        }
+        outer: for (int i = 0; i < count; i++) {
+            String name = element1.getAttributeLocalName(i);
+            String prefix = element1.getAttributePrefix(i);
+            for (int j = 0; j < count; j++) {
+                if (name.equals(element2.getAttributeLocalName(j))
+                        && Objects.equals(prefix, element2.getAttributePrefix(j))) {
+                    if (!element1.getAttributeValue(i).equals(element2.getAttributeValue(j))) {
+                        return false;
+                    }
+                    continue outer;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean contentEquals(CharSequence text1, CharSequence text2) {
+        int length = text1.length();
+        if (length != text2.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (text1.charAt(i) != text2.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
     }
 
 }
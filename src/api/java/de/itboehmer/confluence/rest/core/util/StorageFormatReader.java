@@ -0,0 +1,280 @@
+package de.itboehmer.confluence.rest.core.util;
+
+import java.io.StringReader;
+
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Pull parser over Confluence's storage format, reporting the events which
+ * make up a document's content: comments and the document type are skipped,
+ * and adjacent text and
+ * CDATA sections are reported as one {@link XMLStreamConstants#CHARACTERS}
+ * event. Whitespace outside the root element is skipped. Namespace prefixes
+ * like <code>ac:</code> are kept as part of the names, since storage format
+ * does not declare them. The named character entities of XHTML, like
+ * <code>&amp;nbsp;</code> or <code>&amp;uuml;</code>, are declared for
+ * documents using them, since storage format uses them without a document
+ * type. Locations of parse errors refer to the document as given.
+ */
+final class StorageFormatReader implements AutoCloseable {
+
+    /** Configured once, creating readers is thread-safe. */
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    /** Names and code points of the entities of XHTML 1.0 not predefined by XML. */
+    private static final String XHTML_ENTITIES =
+            "nbsp 160 iexcl 161 cent 162 pound 163 curren 164 yen 165 brvbar 166 sect 167 uml 168 "
+            + "copy 169 ordf 170 laquo 171 not 172 shy 173 reg 174 macr 175 deg 176 plusmn 177 sup2 178 "
+            + "sup3 179 acute 180 micro 181 para 182 middot 183 cedil 184 sup1 185 ordm 186 raquo 187 "
+            + "frac14 188 frac12 189 frac34 190 iquest 191 Agrave 192 Aacute 193 Acirc 194 Atilde 195 "
+            + "Auml 196 Aring 197 AElig 198 Ccedil 199 Egrave 200 Eacute 201 Ecirc 202 Euml 203 Igrave 204 "
+            + "Iacute 205 Icirc 206 Iuml 207 ETH 208 Ntilde 209 Ograve 210 Oacute 211 Ocirc 212 Otilde 213 "
+            + "Ouml 214 times 215 Oslash 216 Ugrave 217 Uacute 218 Ucirc 219 Uuml 220 Yacute 221 THORN 222 "
+            + "szlig 223 agrave 224 aacute 225 acirc 226 atilde 227 auml 228 aring 229 aelig 230 ccedil 231 "
+            + "egrave 232 eacute 233 ecirc 234 euml 235 igrave 236 iacute 237 icirc 238 iuml 239 eth 240 "
+            + "ntilde 241 ograve 242 oacute 243 ocirc 244 otilde 245 ouml 246 divide 247 oslash 248 "
+            + "ugrave 249 uacute 250 ucirc 251 uuml 252 yacute 253 thorn 254 yuml 255 OElig 338 oelig 339 "
+            + "Scaron 352 scaron 353 Yuml 376 fnof 402 circ 710 tilde 732 Alpha 913 Beta 914 Gamma 915 "
+            + "Delta 916 Epsilon 917 Zeta 918 Eta 919 Theta 920 Iota 921 Kappa 922 Lambda 923 Mu 924 Nu 925 "
+            + "Xi 926 Omicron 927 Pi 928 Rho 929 Sigma 931 Tau 932 Upsilon 933 Phi 934 Chi 935 Psi 936 "
+            + "Omega 937 alpha 945 beta 946 gamma 947 delta 948 epsilon 949 zeta 950 eta 951 theta 952 "
+            + "iota 953 kappa 954 lambda 955 mu 956 nu 957 xi 958 omicron 959 pi 960 rho 961 sigmaf 962 "
+            + "sigma 963 tau 964 upsilon 965 phi 966 chi 967 psi 968 omega 969 thetasym 977 upsih 978 "
+            + "piv 982 ensp 8194 emsp 8195 thinsp 8201 zwnj 8204 zwj 8205 lrm 8206 rlm 8207 ndash 8211 "
+            + "mdash 8212 lsquo 8216 rsquo 8217 sbquo 8218 ldquo 8220 rdquo 8221 bdquo 8222 dagger 8224 "
+            + "Dagger 8225 bull 8226 hellip 8230 permil 8240 prime 8242 Prime 8243 lsaquo 8249 rsaquo 8250 "
+            + "oline 8254 frasl 8260 euro 8364 image 8465 weierp 8472 real 8476 trade 8482 alefsym 8501 "
+            + "larr 8592 uarr 8593 rarr 8594 darr 8595 harr 8596 crarr 8629 lArr 8656 uArr 8657 rArr 8658 "
+            + "dArr 8659 hArr 8660 forall 8704 part 8706 exist 8707 empty 8709 nabla 8711 isin 8712 "
+            + "notin 8713 ni 8715 prod 8719 sum 8721 minus 8722 lowast 8727 radic 8730 prop 8733 infin 8734 "
+            + "ang 8736 and 8743 or 8744 cap 8745 cup 8746 int 8747 there4 8756 sim 8764 cong 8773 "
+            + "asymp 8776 ne 8800 equiv 8801 le 8804 ge 8805 sub 8834 sup 8835 nsub 8836 sube 8838 "
+            + "supe 8839 oplus 8853 otimes 8855 perp 8869 sdot 8901 lceil 8968 rceil 8969 lfloor 8970 "
+            + "rfloor 8971 lang 9001 rang 9002 loz 9674 spades 9824 clubs 9827 hearts 9829 diams 9830";
+
+    /** Internal subset declaring {@link #XHTML_ENTITIES}. */
+    private static final String DOCTYPE = createDoctype();
+
+    /** Prefix of the messages of parse errors, which repeats their location. */
+    private static final String MESSAGE_SEPARATOR = "\nMessage: ";
+
+    private final XMLStreamReader reader;
+    /** Where {@link #DOCTYPE} was inserted, or <code>null</code>. */
+    private final Location preamble;
+    private final StringBuilder text = new StringBuilder();
+    private int depth;
+    /** Event read while collecting text, reported by the next call. */
+    private int pending = -1;
+
+    private StorageFormatReader(XMLStreamReader reader, Location preamble) {
+        this.reader = reader;
+        this.preamble = preamble;
+    }
+
+    static StorageFormatReader create(String xml) throws XMLStreamException {
+        int start = getPreambleStart(xml);
+        if (start < 0) {
+            return new StorageFormatReader(FACTORY.createXMLStreamReader(new StringReader(xml)), null);
+        }
+        int line = 1 + StringUtils.countMatches(xml.substring(0, start), '\n');
+        int column = start - xml.lastIndexOf('\n', start - 1);
+        Location preamble = new DocumentLocation(line, column, start);
+        String document = xml.substring(0, start) + DOCTYPE + xml.substring(start);
+        try {
+            return new StorageFormatReader(FACTORY.createXMLStreamReader(new StringReader(document)), preamble);
+        } catch (XMLStreamException e) {
+            throw removePreamble(e, preamble);
+        }
+    }
+
+    /**
+     * @return where to insert the document type declaring the XHTML entities,
+     *         after the XML declaration, or -1 if the document does not use
+     *         them or has a document type of its own
+     */
+    private static int getPreambleStart(String xml) {
+        if (!usesXhtmlEntities(xml) || xml.contains("<!DOCTYPE")) {
+            return -1;
+        }
+        if (!xml.startsWith("<?xml")) {
+            return 0;
+        }
+        int end = xml.indexOf("?>");
+        return (end < 0) ? -1 : end + 2;
+    }
+
+    /**
+     * @return whether the document refers to a named entity not predefined by
+     *         XML
+     */
+    private static boolean usesXhtmlEntities(String xml) {
+        for (int i = xml.indexOf('&'); i >= 0; i = xml.indexOf('&', i + 1)) {
+            int end = i + 1;
+            while (end < xml.length() && Character.isLetterOrDigit(xml.charAt(end))) {
+                end++;
+            }
+            if (end > i + 1 && end < xml.length() && xml.charAt(end) == ';') {
+                switch (xml.substring(i + 1, end)) {
+                case "amp":
+                case "lt":
+                case "gt":
+                case "quot":
+                case "apos":
+                    break;
+                default:
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the exception with its location moved back by the length of
+     *         {@link #DOCTYPE} if it lies behind the preamble
+     */
+    private static XMLStreamException removePreamble(XMLStreamException e, Location preamble) {
+        Location location = e.getLocation();
+        if (preamble == null || location == null || location.getCharacterOffset() < preamble.getCharacterOffset()) {
+            return e;
+        }
+        int column = location.getColumnNumber();
+        if (location.getLineNumber() == preamble.getLineNumber()) {
+            column -= DOCTYPE.length();
+        }
+        Location shifted = new DocumentLocation(location.getLineNumber(), column,
+                location.getCharacterOffset() - DOCTYPE.length());
+        String message = e.getMessage();
+        int separator = message.indexOf(MESSAGE_SEPARATOR);
+        if (separator >= 0) {
+            message = message.substring(separator + MESSAGE_SEPARATOR.length());
+        }
+        return new XMLStreamException(message, shifted, e);
+    }
+
+    private static String createDoctype() {
+        StringBuilder doctype = new StringBuilder("<!DOCTYPE fragment [");
+        String[] entities = XHTML_ENTITIES.split(" ");
+        for (int i = 0; i < entities.length; i += 2) {
+            doctype.append("<!ENTITY ").append(entities[i]).append(" \"&#").append(entities[i + 1]).append(";\">");
+        }
+        return doctype.append("]>").toString();
+    }
+
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    /**
+     * @return the next event, {@link XMLStreamConstants#END_DOCUMENT} at the
+     *         end
+     */
+    int next() throws XMLStreamException {
+        text.setLength(0);
+        while (true) {
+            int event;
+            try {
+                event = (pending >= 0) ? pending : reader.next();
+            } catch (XMLStreamException e) {
+                throw removePreamble(e, preamble);
+            }
+            pending = -1;
+            switch (event) {
+            case XMLStreamConstants.COMMENT:
+            case XMLStreamConstants.DTD:
+                continue;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                if (depth > 0) {
+                    text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                }
+                continue;
+            default:
+                if (text.length() > 0) {
+                    pending = event;
+                    return XMLStreamConstants.CHARACTERS;
+                }
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+                return event;
+            }
+        }
+    }
+
+    /**
+     * @return text of the current {@link XMLStreamConstants#CHARACTERS} event
+     */
+    StringBuilder getText() {
+        return text;
+    }
+
+    /**
+     * @return the underlying reader, positioned at the current event unless it
+     *         is {@link XMLStreamConstants#CHARACTERS}
+     */
+    XMLStreamReader getReader() {
+        return reader;
+    }
+
+    @Override
+    public void close() throws XMLStreamException {
+        reader.close();
+    }
+
+    /**
+     * Location in the document as given, without {@link #DOCTYPE}.
+     */
+    private static final class DocumentLocation implements Location {
+
+        private final int lineNumber;
+        private final int columnNumber;
+        private final int characterOffset;
+
+        DocumentLocation(int lineNumber, int columnNumber, int characterOffset) {
+            this.lineNumber = lineNumber;
+            this.columnNumber = columnNumber;
+            this.characterOffset = characterOffset;
+        }
+
+        @Override
+        public int getLineNumber() {
+            return lineNumber;
+        }
+
+        @Override
+        public int getColumnNumber() {
+            return columnNumber;
+        }
+
+        @Override
+        public int getCharacterOffset() {
+            return characterOffset;
+        }
+
+        @Override
+        public String getPublicId() {
+            return null;
+        }
+
+        @Override
+        public String getSystemId() {
+            return null;
+        }
+
+    }
+
+}
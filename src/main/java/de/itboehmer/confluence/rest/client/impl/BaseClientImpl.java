@@ -19,12 +19,18 @@ package de.itboehmer.confluence.rest.client.impl;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 
 import org.apache.http.client.utils.URIBuilder;
 
+import de.itboehmer.confluence.rest.core.AsyncRequestService;
 import de.itboehmer.confluence.rest.core.RequestService;
 import de.itboehmer.confluence.rest.core.RestException;
+import de.itboehmer.confluence.rest.core.domain.content.AttachmentBean;
 import de.itboehmer.confluence.rest.core.domain.content.AttachmentResultsBean;
 import de.itboehmer.confluence.rest.core.impl.APIUriProvider;
 import de.itboehmer.confluence.rest.core.util.URIHelper;
@@ -72,4 +78,137 @@ public abstract class BaseClientImpl {
 			String comment, Class<AttachmentResultsBean> resultClass) throws IOException, RestException {
 		return requestService.executePostRequestForUpload(uri, inputStream, title, comment, resultClass);
 	}
+
+	/**
+	 * Runs the given task on the {@link ExecutorService} and returns a future
+	 * that is completed with its result.
+	 */
+	protected <T> CompletableFuture<T> submit(Callable<T> task) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		executorService.execute(() -> {
+			if (future.isDone()) {
+				// Cancelled before it was started
+				return;
+			}
+			try {
+				future.complete(task.call());
+			} catch (Throwable t) {
+				future.completeExceptionally(t);
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Executes a GET request without blocking a thread if the
+	 * {@link RequestService} supports it, or on the {@link ExecutorService}
+	 * otherwise.
+	 */
+	protected <T> CompletableFuture<T> executeGetRequestAsync(URIBuilder uriBuilder, Class<T> resultClass) {
+		if (requestService instanceof AsyncRequestService) {
+			try {
+				URI uri = uriBuilder.build();
+				return ((AsyncRequestService) requestService).executeGetRequestAsync(uri, resultClass);
+			} catch (URISyntaxException e) {
+				return failed(e);
+			}
+		}
+		return submit(() -> executeGetRequest(uriBuilder.build(), resultClass));
+	}
+
+	protected CompletableFuture<InputStream> executeGetRequestForDownloadAsync(URIBuilder uriBuilder) {
+		if (requestService instanceof AsyncRequestService) {
+			try {
+				URI uri = uriBuilder.build();
+				return ((AsyncRequestService) requestService).executeGetRequestForDownloadAsync(uri);
+			} catch (URISyntaxException e) {
+				return failed(e);
+			}
+		}
+		return submit(() -> executeGetRequestForDownload(uriBuilder.build()));
+	}
+
+	protected CompletableFuture<Long> executeGetRequestForDownloadAsync(URIBuilder uriBuilder, Path target) {
+		if (requestService instanceof AsyncRequestService) {
+			try {
+				URI uri = uriBuilder.build();
+				return ((AsyncRequestService) requestService).executeGetRequestForDownloadAsync(uri, target);
+			} catch (URISyntaxException e) {
+				return failed(e);
+			}
+		}
+		return submit(() -> requestService.executeGetRequestForDownload(uriBuilder.build(), target));
+	}
+
+	protected <T> CompletableFuture<T> executePostRequestAsync(URIBuilder uriBuilder, Object content,
+			Class<T> resultClass) {
+		if (requestService instanceof AsyncRequestService) {
+			try {
+				URI uri = uriBuilder.build();
+				return ((AsyncRequestService) requestService).executePostRequestAsync(uri, content, resultClass);
+			} catch (URISyntaxException e) {
+				return failed(e);
+			}
+		}
+		return submit(() -> executePostRequest(uriBuilder.build(), content, resultClass));
+	}
+
+	protected CompletableFuture<AttachmentResultsBean> executePostRequestForUploadAsync(URIBuilder uriBuilder,
+			InputStream inputStream, String title, String comment) {
+		if (requestService instanceof AsyncRequestService) {
+			try {
+				URI uri = uriBuilder.build();
+				return ((AsyncRequestService) requestService).executePostRequestForUploadAsync(uri, inputStream, title,
+						comment, AttachmentResultsBean.class);
+			} catch (URISyntaxException e) {
+				return failed(e);
+			}
+		}
+		return submit(() -> executePostRequestForUpload(uriBuilder.build(), inputStream, title, comment,
+				AttachmentResultsBean.class));
+	}
+
+	/**
+	 * Uploads the file, data or stream of the attachment, in this order of
+	 * preference, so that the upload has a known length if possible.
+	 */
+	protected <T> CompletableFuture<T> executePostRequestForUploadAsync(URIBuilder uriBuilder,
+			AttachmentBean attachment, String comment, Class<T> resultClass) {
+		String title = attachment.getTitle();
+		if (requestService instanceof AsyncRequestService) {
+			AsyncRequestService asyncRequestService = (AsyncRequestService) requestService;
+			try {
+				URI uri = uriBuilder.build();
+				if (attachment.getFile() != null) {
+					return asyncRequestService.executePostRequestForUploadAsync(uri, attachment.getFile(), title,
+							comment, resultClass);
+				} else if (attachment.getData() != null) {
+					return asyncRequestService.executePostRequestForUploadAsync(uri, attachment.getData(), title,
+							comment, resultClass);
+				}
+				return asyncRequestService.executePostRequestForUploadAsync(uri, attachment.getInputStream(), title,
+						comment, resultClass);
+			} catch (URISyntaxException e) {
+				return failed(e);
+			}
+		}
+		return submit(() -> {
+			URI uri = uriBuilder.build();
+			if (attachment.getFile() != null) {
+				return requestService.executePostRequestForUpload(uri, attachment.getFile(), title, comment,
+						resultClass);
+			} else if (attachment.getData() != null) {
+				return requestService.executePostRequestForUpload(uri, attachment.getData(), title, comment,
+						resultClass);
+			}
+			return requestService.executePostRequestForUpload(uri, attachment.getInputStream(), title, comment,
+					resultClass);
+		});
+	}
+
+	protected static <T> CompletableFuture<T> failed(Throwable throwable) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		future.completeExceptionally(throwable);
+		return future;
+	}
 }
@@ -0,0 +1,219 @@
+package de.itboehmer.confluence.rest.client.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.itboehmer.confluence.rest.core.domain.content.AttachmentBean;
+import de.itboehmer.confluence.rest.core.domain.content.ContentBean;
+import de.itboehmer.confluence.rest.core.misc.AttachmentComparison;
+
+/**
+ * Uploads a set of attachments to a content, skipping the unchanged ones. The
+ * existing attachments are listed once and matched by title. Attachments
+ * without a match are uploaded, changed ones are uploaded as new version of
+ * their match. At most the given number of uploads, including the downloads
+ * needed to compare content, run at the same time.
+ */
+class BulkAttachmentUpload {
+
+    private final Logger log = LoggerFactory.getLogger(BulkAttachmentUpload.class);
+
+    private static final int PAGE_SIZE = 200;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ContentClientImpl contentClient;
+    private final ContentBean parentContent;
+    private final AttachmentComparison comparison;
+    private final int parallelism;
+
+    private final AtomicInteger skipped = new AtomicInteger();
+
+    BulkAttachmentUpload(ContentClientImpl contentClient, ContentBean parentContent, AttachmentComparison comparison,
+            int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        this.contentClient = contentClient;
+        this.parentContent = parentContent;
+        this.comparison = comparison;
+        this.parallelism = parallelism;
+    }
+
+    CompletableFuture<List<AttachmentBean>> run(List<AttachmentBean> attachments) {
+        return listExisting(0, new HashMap<>()).thenCompose(existing -> {
+            return forEachBounded(attachments, attachment -> upload(attachment, existing.get(attachment.getTitle())));
+        }).thenApply(results -> {
+            log.info("Uploaded " + (attachments.size() - skipped.get()) + " attachments to content "
+                    + parentContent.getId() + ", skipped " + skipped.get() + " unchanged ones");
+            return results;
+        });
+    }
+
+    private CompletableFuture<Map<String, AttachmentBean>> listExisting(int start,
+            Map<String, AttachmentBean> existing) {
+        return contentClient.getAttachmentsAsync(parentContent, start, PAGE_SIZE).thenCompose(page -> {
+            List<AttachmentBean> results = page.getResults();
+            for (AttachmentBean attachment : results) {
+                existing.put(attachment.getTitle(), attachment);
+            }
+            // The server may cap the limit requested
+            int pageSize = (page.getLimit() != null && page.getLimit() > 0) ? Math.min(page.getLimit(), PAGE_SIZE)
+                    : PAGE_SIZE;
+            if (results.isEmpty() || results.size() < pageSize) {
+                return CompletableFuture.completedFuture(existing);
+            }
+            return listExisting(start + results.size(), existing);
+        });
+    }
+
+    private CompletableFuture<AttachmentBean> upload(AttachmentBean attachment, AttachmentBean existing) {
+        if (existing == null) {
+            return contentClient.uploadAttachmentAsync(attachment, parentContent);
+        }
+        long size = getSize(attachment);
+        Long existingSize = (existing.getExtensions() != null) ? existing.getExtensions().getFileSize() : null;
+        if (size < 0 || existingSize == null || existingSize != size) {
+            return contentClient.updateAttachmentDataAsync(existing, attachment, parentContent);
+        }
+        if (comparison == AttachmentComparison.SIZE) {
+            return unchanged(existing);
+        }
+        return contentClient.downloadAttachementAsync(existing).thenCompose(existingData -> {
+            return contentClient.submit(() -> Arrays.equals(hash(existingData), hash(attachment)));
+        }).thenCompose(equal -> {
+            if (equal) {
+                return unchanged(existing);
+            }
+            return contentClient.updateAttachmentDataAsync(existing, attachment, parentContent);
+        });
+    }
+
+    private CompletableFuture<AttachmentBean> unchanged(AttachmentBean existing) {
+        log.debug("Skipping unchanged attachment " + existing.getTitle());
+        skipped.incrementAndGet();
+        return CompletableFuture.completedFuture(existing);
+    }
+
+    /**
+     * @return size of the attachment's data, or -1 if it is a stream
+     */
+    private static long getSize(AttachmentBean attachment) {
+        try {
+            if (attachment.getFile() != null) {
+                return Files.size(attachment.getFile());
+            }
+        } catch (IOException e) {
+            // The upload will report the problem
+            return -1;
+        }
+        return (attachment.getData() != null) ? attachment.getData().length : -1;
+    }
+
+    private static byte[] hash(AttachmentBean attachment) throws IOException {
+        if (attachment.getData() != null) {
+            return createDigest().digest(attachment.getData());
+        }
+        return hash(attachment.getInputStream());
+    }
+
+    private static byte[] hash(InputStream inputStream) throws IOException {
+        MessageDigest digest = createDigest();
+        try (InputStream in = inputStream) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Applies the task to all items, running at most the given number of tasks
+     * at the same time. Fails with the first failure, without starting further
+     * tasks.
+     */
+    private <T, R> CompletableFuture<List<R>> forEachBounded(List<T> items, Function<T, CompletableFuture<R>> task) {
+        CompletableFuture<List<R>> result = new CompletableFuture<>();
+        AtomicReferenceArray<R> results = new AtomicReferenceArray<>(items.size());
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger remaining = new AtomicInteger(items.size());
+        BiConsumer<Integer, R> completed = (index, value) -> {
+            results.set(index, value);
+            if (remaining.decrementAndGet() == 0) {
+                List<R> list = new ArrayList<>(items.size());
+                for (int i = 0; i < items.size(); i++) {
+                    list.add(results.get(i));
+                }
+                result.complete(list);
+            }
+        };
+        Runnable startNext = new Runnable() {
+
+            @Override
+            public void run() {
+                // Tasks completing right away, e.g. skipped attachments, are
+                // handled in this loop rather than recursively
+                while (true) {
+                    int index = next.getAndIncrement();
+                    if (index >= items.size() || result.isDone()) {
+                        return;
+                    }
+                    CompletableFuture<R> future;
+                    try {
+                        future = task.apply(items.get(index));
+                    } catch (RuntimeException e) {
+                        result.completeExceptionally(e);
+                        return;
+                    }
+                    boolean done = future.isDone();
+                    future.whenComplete((value, throwable) -> {
+                        if (throwable != null) {
+                            result.completeExceptionally(throwable);
+                            return;
+                        }
+                        completed.accept(index, value);
+                        if (!done) {
+                            run();
+                        }
+                    });
+                    if (!done) {
+                        return;
+                    }
+                }
+            }
+        };
+        if (items.isEmpty()) {
+            result.complete(new ArrayList<>());
+        }
+        for (int i = 0; i < Math.min(parallelism, items.size()); i++) {
+            startNext.run();
+        }
+        return result;
+    }
+
+}
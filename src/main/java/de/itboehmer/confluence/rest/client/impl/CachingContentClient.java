@@ -0,0 +1,375 @@
+package de.itboehmer.confluence.rest.client.impl;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import de.itboehmer.confluence.rest.client.ContentClient;
+import de.itboehmer.confluence.rest.core.custom.DomainTypeAdapterFactory;
+import de.itboehmer.confluence.rest.core.domain.content.AncestorBean;
+import de.itboehmer.confluence.rest.core.domain.content.AttachmentBean;
+import de.itboehmer.confluence.rest.core.domain.content.AttachmentResultsBean;
+import de.itboehmer.confluence.rest.core.domain.content.BodyBean;
+import de.itboehmer.confluence.rest.core.domain.content.ContentBean;
+import de.itboehmer.confluence.rest.core.domain.content.ContentResultsBean;
+import de.itboehmer.confluence.rest.core.domain.content.LabelBean;
+import de.itboehmer.confluence.rest.core.domain.content.LabelsBean;
+import de.itboehmer.confluence.rest.core.misc.AttachmentComparison;
+import de.itboehmer.confluence.rest.core.misc.ContentStatus;
+import de.itboehmer.confluence.rest.core.misc.ContentType;
+import de.itboehmer.confluence.rest.core.misc.ExpandField;
+
+/**
+ * {@link ContentClient} decorator caching the results of
+ * {@link #getContentById(String, int, List)} in memory. Entries are keyed by
+ * ID, version and the set of expanded fields.
+ * <p>
+ * A specific version of content never changes, so it is cached until evicted.
+ * Content requested with version 0, i.e. the latest version, is served from the
+ * cache for a short time to live. After that, the current version number is
+ * fetched, which is cheap, and the cached content is reused as long as the
+ * version did not change. Updates made through this client invalidate the
+ * cached content.
+ * <p>
+ * The cache keeps copies of the beans and hands out copies of them, so callers
+ * may modify the beans they receive, e.g. to update the content.
+ */
+public class CachingContentClient implements ContentClient {
+
+    private final Logger log = LoggerFactory.getLogger(CachingContentClient.class);
+
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+    public static final long DEFAULT_MAX_WEIGHT = 64L * 1024 * 1024;
+    public static final long DEFAULT_LATEST_TTL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private static final List<String> VERSION_ONLY = Collections.singletonList(ExpandField.VERSION.getName());
+
+    /** Copies beans through a JSON tree, with the same bindings as the request services. */
+    private static final Gson COPIER = new GsonBuilder().excludeFieldsWithoutExposeAnnotation()
+            .registerTypeAdapterFactory(new DomainTypeAdapterFactory()).create();
+
+    private final ContentClient contentClient;
+    private final SegmentedLruCache<ContentKey, CachedContent> cache;
+    private final long latestTtlNanos;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong revalidationCount = new AtomicLong();
+
+    public CachingContentClient(ContentClient contentClient) {
+        this(contentClient, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_WEIGHT, DEFAULT_LATEST_TTL_MILLIS);
+    }
+
+    /**
+     * @param contentClient the client to cache the results of
+     * @param maxEntries maximum number of cached content beans
+     * @param maxWeight maximum approximate size of all cached content beans in
+     *            bytes
+     * @param latestTtlMillis time the latest version of content is served from
+     *            the cache before its version is checked again
+     */
+    public CachingContentClient(ContentClient contentClient, int maxEntries, long maxWeight, long latestTtlMillis) {
+        Validate.notNull(contentClient);
+        this.contentClient = contentClient;
+        this.cache = new SegmentedLruCache<>(maxEntries, maxWeight, cached -> estimateSize(cached.content));
+        this.latestTtlNanos = TimeUnit.MILLISECONDS.toNanos(latestTtlMillis);
+    }
+
+    @Override
+    public Future<ContentBean> getContentById(String id, int version, List<String> expand) {
+        return getContentByIdAsync(id, version, expand);
+    }
+
+    @Override
+    public CompletableFuture<ContentBean> getContentByIdAsync(String id, int version, List<String> expand) {
+        ContentKey key = new ContentKey(id, version, expand);
+        CachedContent cached = cache.get(key);
+        if (cached == null) {
+            missCount.incrementAndGet();
+            return load(key);
+        }
+        if (version > 0 || System.nanoTime() - cached.expiresAt < 0) {
+            hitCount.incrementAndGet();
+            return CompletableFuture.completedFuture(copy(cached.content));
+        }
+        return revalidate(key, cached);
+    }
+
+    private CompletableFuture<ContentBean> load(ContentKey key) {
+        return contentClient.getContentByIdAsync(key.id, key.version, key.getExpand()).thenApply(content -> {
+            store(key, content);
+            return content;
+        }).toCompletableFuture();
+    }
+
+    private CompletableFuture<ContentBean> revalidate(ContentKey key, CachedContent cached) {
+        Integer cachedVersion = getVersionNumber(cached.content);
+        if (cachedVersion == null) {
+            missCount.incrementAndGet();
+            return load(key);
+        }
+        revalidationCount.incrementAndGet();
+        return contentClient.getContentByIdAsync(key.id, 0, VERSION_ONLY).thenCompose(current -> {
+            if (cachedVersion.equals(getVersionNumber(current))) {
+                log.debug("Content " + key.id + " is still at version " + cachedVersion);
+                cache.put(key, new CachedContent(cached.content, System.nanoTime() + latestTtlNanos));
+                return CompletableFuture.completedFuture(copy(cached.content));
+            }
+            return load(key);
+        }).toCompletableFuture();
+    }
+
+    private void store(ContentKey key, ContentBean loaded) {
+        ContentBean content = copy(loaded);
+        if (key.version > 0) {
+            cache.put(key, new CachedContent(content, Long.MAX_VALUE));
+            return;
+        }
+        cache.put(key, new CachedContent(content, System.nanoTime() + latestTtlNanos));
+        // The latest version is also the specific version it has right now
+        Integer versionNumber = getVersionNumber(content);
+        if (versionNumber != null) {
+            cache.put(new ContentKey(key.id, versionNumber, key.expand), new CachedContent(content, Long.MAX_VALUE));
+        }
+    }
+
+    /**
+     * Removes all cached versions of the content with the given ID.
+     */
+    public void invalidate(String id) {
+        cache.removeIf(key -> key.id.equals(id));
+    }
+
+    /**
+     * @return number of lookups served from the cache without a request
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return number of lookups which fetched the content
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return number of lookups which checked the version of cached content
+     */
+    public long getRevalidationCount() {
+        return revalidationCount.get();
+    }
+
+    /**
+     * @return number of cached content beans
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    @Override
+    public Future<ContentResultsBean> getContent(ContentType type, String spacekey, String title, ContentStatus status, Date postingDay, List<String> expand, int start, int limit) {
+        return contentClient.getContent(type, spacekey, title, status, postingDay, expand, start, limit);
+    }
+
+    @Override
+    public CompletionStage<ContentResultsBean> getContentAsync(ContentType type, String spacekey, String title, ContentStatus status, Date postingDay, List<String> expand, int start, int limit) {
+        return contentClient.getContentAsync(type, spacekey, title, status, postingDay, expand, start, limit);
+    }
+
+    @Override
+    public Stream<ContentBean> streamContent(ContentType type, String spacekey, String title, ContentStatus status, Date postingDay, List<String> expand, int pageSize, int prefetchPages) {
+        return contentClient.streamContent(type, spacekey, title, status, postingDay, expand, pageSize, prefetchPages);
+    }
+
+    @Override
+    public Future<ContentBean> createContent(ContentBean content) {
+        return contentClient.createContent(content);
+    }
+
+    @Override
+    public CompletionStage<ContentBean> createContentAsync(ContentBean content) {
+        return contentClient.createContentAsync(content);
+    }
+
+    @Override
+    public Future<ContentBean> updateContent(ContentBean content) {
+        return updateContentAsync(content).toCompletableFuture();
+    }
+
+    @Override
+    public CompletionStage<ContentBean> updateContentAsync(ContentBean content) {
+        return contentClient.updateContentAsync(content).whenComplete((updated, throwable) -> invalidate(content.getId()));
+    }
+
+    @Override
+    public Future<AttachmentBean> uploadAttachment(AttachmentBean attachment, ContentBean parentContent) {
+        return contentClient.uploadAttachment(attachment, parentContent);
+    }
+
+    @Override
+    public CompletionStage<AttachmentBean> uploadAttachmentAsync(AttachmentBean attachment, ContentBean parentContent) {
+        return contentClient.uploadAttachmentAsync(attachment, parentContent);
+    }
+
+    @Override
+    public Future<AttachmentResultsBean> getAttachments(ContentBean parentContent, int start, int limit) {
+        return contentClient.getAttachments(parentContent, start, limit);
+    }
+
+    @Override
+    public CompletionStage<AttachmentResultsBean> getAttachmentsAsync(ContentBean parentContent, int start, int limit) {
+        return contentClient.getAttachmentsAsync(parentContent, start, limit);
+    }
+
+    @Override
+    public Future<List<AttachmentBean>> uploadAttachments(ContentBean parentContent, List<AttachmentBean> attachments, AttachmentComparison comparison, int parallelism) {
+        return contentClient.uploadAttachments(parentContent, attachments, comparison, parallelism);
+    }
+
+    @Override
+    public CompletionStage<List<AttachmentBean>> uploadAttachmentsAsync(ContentBean parentContent, List<AttachmentBean> attachments, AttachmentComparison comparison, int parallelism) {
+        return contentClient.uploadAttachmentsAsync(parentContent, attachments, comparison, parallelism);
+    }
+
+    @Override
+    public Future<InputStream> downloadAttachement(AttachmentBean attachment) {
+        return contentClient.downloadAttachement(attachment);
+    }
+
+    @Override
+    public CompletionStage<InputStream> downloadAttachementAsync(AttachmentBean attachment) {
+        return contentClient.downloadAttachementAsync(attachment);
+    }
+
+    @Override
+    public Future<Long> downloadAttachment(AttachmentBean attachment, Path target) {
+        return contentClient.downloadAttachment(attachment, target);
+    }
+
+    @Override
+    public CompletionStage<Long> downloadAttachmentAsync(AttachmentBean attachment, Path target) {
+        return contentClient.downloadAttachmentAsync(attachment, target);
+    }
+
+    @Override
+    public Future<LabelsBean> addLabels(ContentBean content, List<LabelBean> labels) {
+        return addLabelsAsync(content, labels).toCompletableFuture();
+    }
+
+    @Override
+    public CompletionStage<LabelsBean> addLabelsAsync(ContentBean content, List<LabelBean> labels) {
+        return contentClient.addLabelsAsync(content, labels).whenComplete((added, throwable) -> invalidate(content.getId()));
+    }
+
+    private static ContentBean copy(ContentBean content) {
+        return (content != null) ? COPIER.fromJson(COPIER.toJsonTree(content), ContentBean.class) : null;
+    }
+
+    private static Integer getVersionNumber(ContentBean content) {
+        return (content != null && content.getVersion() != null) ? content.getVersion().getNumber() : null;
+    }
+
+    /**
+     * Estimates the memory used by a content bean, which is dominated by its
+     * body and ancestors.
+     */
+    private static long estimateSize(ContentBean content) {
+        long size = 512;
+        if (content == null) {
+            return size;
+        }
+        size += length(content.getTitle()) * 2L;
+        BodyBean body = content.getBody();
+        if (body != null) {
+            if (body.getStorage() != null) {
+                size += length(body.getStorage().getValue()) * 2L;
+            }
+            if (body.getView() != null) {
+                size += length(body.getView().getValue()) * 2L;
+            }
+        }
+        List<AncestorBean> ancestors = content.getAncestors();
+        if (ancestors != null) {
+            size += ancestors.size() * 256L;
+        }
+        return size;
+    }
+
+    private static int length(String value) {
+        return (value != null) ? value.length() : 0;
+    }
+
+    private static class ContentKey {
+
+        private final String id;
+        private final int version;
+        /** Sorted, so that the order of expanded fields does not matter. */
+        private final TreeSet<String> expand;
+
+        ContentKey(String id, int version, List<String> expand) {
+            this(id, version, (expand != null) ? new TreeSet<>(expand) : new TreeSet<>());
+        }
+
+        ContentKey(String id, int version, TreeSet<String> expand) {
+            this.id = id;
+            this.version = version;
+            this.expand = expand;
+        }
+
+        List<String> getExpand() {
+            return expand.isEmpty() ? null : new ArrayList<>(expand);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ContentKey)) {
+                return false;
+            }
+            ContentKey other = (ContentKey) obj;
+            return version == other.version && Objects.equals(id, other.id) && expand.equals(other.expand);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id, version, expand);
+        }
+
+    }
+
+    private static class CachedContent {
+
+        private final ContentBean content;
+        /**
+         * {@link System#nanoTime()} after which the latest version is
+         * revalidated; not used for specific versions.
+         */
+        private final long expiresAt;
+
+        CachedContent(ContentBean content, long expiresAt) {
+            this.content = content;
+            this.expiresAt = expiresAt;
+        }
+
+    }
+
+}
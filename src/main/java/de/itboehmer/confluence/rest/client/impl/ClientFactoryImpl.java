@@ -1,5 +1,6 @@
 package de.itboehmer.confluence.rest.client.impl;
 
+import java.net.URI;
 import java.util.concurrent.ExecutorService;
 
 import de.itboehmer.confluence.rest.client.ClientFactory;
@@ -7,21 +8,62 @@ import de.itboehmer.confluence.rest.client.ContentClient;
 import de.itboehmer.confluence.rest.client.SearchClient;
 import de.itboehmer.confluence.rest.client.SpaceClient;
 import de.itboehmer.confluence.rest.client.UserClient;
+import de.itboehmer.confluence.rest.core.AsyncRequestService;
 import de.itboehmer.confluence.rest.core.RequestService;
 import de.itboehmer.confluence.rest.core.impl.APIUriProvider;
+import de.itboehmer.confluence.rest.core.impl.ConnectionPoolConfig;
 
-public final class ClientFactoryImpl implements ClientFactory {
+public final class ClientFactoryImpl implements ClientFactory, AutoCloseable {
 
 	private final ExecutorService executorService;
 	private final RequestService requestService;
 	private final APIUriProvider apiConfig;
-	
+	private final boolean ownsExecutorService;
+
 	public ClientFactoryImpl(ExecutorService executorService, RequestService requestService, APIUriProvider apiConfig) {
+		this(executorService, requestService, apiConfig, false);
+	}
+
+	private ClientFactoryImpl(ExecutorService executorService, RequestService requestService,
+			APIUriProvider apiConfig, boolean ownsExecutorService) {
 		this.executorService = executorService;
 		this.requestService = requestService;
 		this.apiConfig = apiConfig;
+		this.ownsExecutorService = ownsExecutorService;
+	}
+
+	/**
+	 * Creates a factory whose clients run every call on a virtual thread of its
+	 * own. Blocking requests are cheap then, so no thread pool has to be sized.
+	 * The number of calls of this factory's clients running concurrently
+	 * against the Confluence host is capped by a semaphore.
+	 * <p>
+	 * The cap only applies to calls running on the executor. If the request
+	 * service is an {@link AsyncRequestService}, the <code>Async</code> client
+	 * methods do not use the executor; their concurrency is limited by the
+	 * connections per route of the service's {@link ConnectionPoolConfig}.
+	 * <p>
+	 * Virtual threads require Java 21 or later. On older runtimes, calls run on a
+	 * fixed pool of <code>maxConcurrentRequestsPerHost</code> platform threads.
+	 * Use {@link #close()} to shut down the executor created for this factory.
+	 *
+	 * @param requestService the request service to use
+	 * @param apiConfig the REST end point
+	 * @param maxConcurrentRequestsPerHost the maximum number of calls running
+	 *            concurrently against the host
+	 * @return the factory
+	 */
+	public static ClientFactoryImpl withVirtualThreads(RequestService requestService, APIUriProvider apiConfig,
+			int maxConcurrentRequestsPerHost) {
+		ExecutorService virtualThreads = VirtualThreadExecutors
+				.newVirtualThreadPerTaskExecutor(maxConcurrentRequestsPerHost);
+		URI baseUri = apiConfig.getBaseUri();
+		String host = baseUri.getScheme() + "://" + baseUri.getAuthority();
+		ExecutorService executorService = new ConcurrencyLimitedExecutorService(virtualThreads, host,
+				maxConcurrentRequestsPerHost);
+		return new ClientFactoryImpl(executorService, requestService, apiConfig, true);
 	}
-	
+
 	public UserClient getUserClient() {
 		return new UserClientImpl(executorService, requestService, apiConfig);
 	}
@@ -40,4 +82,15 @@ public final class ClientFactoryImpl implements ClientFactory {
 	public SearchClient getSearchClient() {
 		return new SearchClientImpl(executorService, requestService, apiConfig);
 	}
+
+	/**
+	 * Shuts down the {@link ExecutorService} if it was created by this factory.
+	 * Executors passed in by the caller are left untouched.
+	 */
+	@Override
+	public void close() {
+		if (ownsExecutorService) {
+			executorService.shutdown();
+		}
+	}
 }
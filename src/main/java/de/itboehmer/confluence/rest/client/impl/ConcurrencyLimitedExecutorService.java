@@ -0,0 +1,75 @@
+package de.itboehmer.confluence.rest.client.impl;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link ExecutorService} limiting the number of tasks that run concurrently
+ * against a single Confluence host. Tasks are handed to the delegate
+ * immediately and wait for a permit of a {@link Semaphore} before they start,
+ * which is cheap when the delegate runs them on virtual threads.
+ * <p>
+ * Each instance has permits of its own, so factories for the same host do not
+ * share their limits.
+ */
+class ConcurrencyLimitedExecutorService extends AbstractExecutorService {
+
+	private static final Logger log = LoggerFactory.getLogger(ConcurrencyLimitedExecutorService.class);
+
+	private final ExecutorService delegate;
+	private final Semaphore permits;
+
+	ConcurrencyLimitedExecutorService(ExecutorService delegate, String host, int maxConcurrentTasks) {
+		if (maxConcurrentTasks < 1) {
+			throw new IllegalArgumentException("maxConcurrentTasks must be positive: " + maxConcurrentTasks);
+		}
+		this.delegate = delegate;
+		this.permits = new Semaphore(maxConcurrentTasks, true);
+		log.debug("Limiting concurrent requests to " + host + " to " + maxConcurrentTasks);
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		delegate.execute(() -> {
+			// Tasks must run eventually so that their futures complete
+			permits.acquireUninterruptibly();
+			try {
+				command.run();
+			} finally {
+				permits.release();
+			}
+		});
+	}
+
+	@Override
+	public void shutdown() {
+		delegate.shutdown();
+	}
+
+	@Override
+	public List<Runnable> shutdownNow() {
+		return delegate.shutdownNow();
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return delegate.isShutdown();
+	}
+
+	@Override
+	public boolean isTerminated() {
+		return delegate.isTerminated();
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return delegate.awaitTermination(timeout, unit);
+	}
+
+}
@@ -27,18 +27,22 @@ import static de.itboehmer.confluence.rest.core.misc.RestParamConstants.TYPE;
 import static de.itboehmer.confluence.rest.core.misc.RestParamConstants.VERSION;
 import static de.itboehmer.confluence.rest.core.misc.RestPathConstants.CONTENT;
 import static de.itboehmer.confluence.rest.core.misc.RestPathConstants.CONTENT_ATTACHMENT;
+import static de.itboehmer.confluence.rest.core.misc.RestPathConstants.CONTENT_ATTACHMENT_DATA;
 import static de.itboehmer.confluence.rest.core.misc.RestPathConstants.CONTENT_LABEL;
 import static de.itboehmer.confluence.rest.core.misc.RestPathConstants.SPECIFIC_CONTENT;
 
 import java.io.InputStream;
-import java.net.URI;
+import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
+import java.nio.file.Path;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.NameValuePair;
@@ -56,6 +60,7 @@ import de.itboehmer.confluence.rest.core.domain.content.ContentResultsBean;
 import de.itboehmer.confluence.rest.core.domain.content.LabelBean;
 import de.itboehmer.confluence.rest.core.domain.content.LabelsBean;
 import de.itboehmer.confluence.rest.core.impl.APIUriProvider;
+import de.itboehmer.confluence.rest.core.misc.AttachmentComparison;
 import de.itboehmer.confluence.rest.core.misc.ContentStatus;
 import de.itboehmer.confluence.rest.core.misc.ContentType;
 import de.itboehmer.confluence.rest.core.misc.UnexpectedContentException;
@@ -76,26 +81,34 @@ public class ContentClientImpl extends BaseClientImpl implements ContentClient {
 
     @Override
     public Future<ContentBean> getContentById(String id, int version, List<String> expand) {
+        return getContentByIdAsync(id, version, expand);
+    }
+
+    @Override
+    public CompletableFuture<ContentBean> getContentByIdAsync(String id, int version, List<String> expand) {
         if (log.isInfoEnabled()) {
             String message = "Getting content by ID. ID=%1$s, version=%2$s, expand=%3$s";
             log.info(String.format(message, id, version, expand));
         }
-        return executorService.submit(() -> {
-            // URI with parameters
-            URIBuilder uriBuilder = buildPath(CONTENT, id);
-            if (version > 0) {
-                uriBuilder.addParameter(VERSION, String.valueOf(version));
-            }
-    		if (expand != null && !expand.isEmpty()) {
-                String join = StringUtils.join(expand, ",");
-                uriBuilder.addParameter(EXPAND, join);
-            }
-            return executeGetRequest(uriBuilder.build(), ContentBean.class);
-        });
+        // URI with parameters
+        URIBuilder uriBuilder = buildPath(CONTENT, id);
+        if (version > 0) {
+            uriBuilder.addParameter(VERSION, String.valueOf(version));
+        }
+        if (expand != null && !expand.isEmpty()) {
+            String join = StringUtils.join(expand, ",");
+            uriBuilder.addParameter(EXPAND, join);
+        }
+        return executeGetRequestAsync(uriBuilder, ContentBean.class);
     }
 
     @Override
     public Future<ContentResultsBean> getContent(ContentType type, String spacekey, String title, ContentStatus status, Date postingDay, List<String> expand, int start, int limit) {
+        return getContentAsync(type, spacekey, title, status, postingDay, expand, start, limit);
+    }
+
+    @Override
+    public CompletableFuture<ContentResultsBean> getContentAsync(ContentType type, String spacekey, String title, ContentStatus status, Date postingDay, List<String> expand, int start, int limit) {
         if (log.isInfoEnabled()) {
             String message = "Getting content. Type=%1$s, space=%2$s, title=%3$s, status=%4$s, postingDay=%5$s, expand=%6$s, start=%7$s, limit=%8$s";
             log.info(String.format(message, type, spacekey, title, status, postingDay, expand, start, limit));
@@ -130,68 +143,159 @@ public class ContentClientImpl extends BaseClientImpl implements ContentClient {
         }
         uriBuilder.addParameters(nameValuePairs);
         // Request
-        return executorService.submit(() -> {
-            return executeGetRequest(uriBuilder.build(), ContentResultsBean.class);
-        });
+        return executeGetRequestAsync(uriBuilder, ContentResultsBean.class);
+    }
+
+    @Override
+    public Stream<ContentBean> streamContent(ContentType type, String spacekey, String title, ContentStatus status, Date postingDay, List<String> expand, int pageSize, int prefetchPages) {
+        PagingIterator<ContentBean> iterator = new PagingIterator<>((start, limit) -> {
+            return getContentAsync(type, spacekey, title, status, postingDay, expand, start, limit)
+                    .thenApply(page -> new PagingIterator.Page<>(page.getResults(), page.getLimit()));
+        }, 0, pageSize, prefetchPages);
+        return iterator.stream();
     }
 
+    @Override
     public Future<ContentBean> createContent(ContentBean content) {
+        return createContentAsync(content);
+    }
+
+    @Override
+    public CompletableFuture<ContentBean> createContentAsync(ContentBean content) {
         if (log.isInfoEnabled()) {
             String message = "Creating content. Title=%1$s, space=%2$s";
             String spaceKey = (content.getSpace() != null) ? content.getSpace().getKey() : null;
             log.info(String.format(message, content.getTitle(), spaceKey));
         }
         // Request
-        return executorService.submit(() -> {
-            URI uri = buildPath(CONTENT).build();
-            return executePostRequest(uri, content, ContentBean.class);
-        });
+        return executePostRequestAsync(buildPath(CONTENT), content, ContentBean.class);
     }
 
-	@Override
+    @Override
     public Future<ContentBean> updateContent(ContentBean content) {
+        return updateContentAsync(content);
+    }
+
+    @Override
+    public CompletableFuture<ContentBean> updateContentAsync(ContentBean content) {
         if (log.isInfoEnabled()) {
             String message = "Updating content. Title=%1$s, space=%2$s";
             String spaceKey = (content.getSpace() != null) ? content.getSpace().getKey() : null;
             log.info(String.format(message, content.getTitle(), spaceKey));
         }
         // Request
-        return executorService.submit(() -> {
-            String contentUriPath = String.format(SPECIFIC_CONTENT, content.getId());
-            URI uri = buildPath(contentUriPath).build();
-            return executePostRequest(uri, content, ContentBean.class);
-        });
+        String contentUriPath = String.format(SPECIFIC_CONTENT, content.getId());
+        return executePostRequestAsync(buildPath(contentUriPath), content, ContentBean.class);
     }
 
     @Override
     public Future<AttachmentBean> uploadAttachment(AttachmentBean attachment, ContentBean parentContent) {
-        return executorService.submit(() -> {
-            // URI
-            String attachmentUriPath = String.format(CONTENT_ATTACHMENT, parentContent.getId());
-            URI uri = buildPath(attachmentUriPath).build();
-            // Check for comment
-            String comment = null;
-            if (attachment.getMetadata() != null && attachment.getMetadata().getComment() != null) {
-                comment = attachment.getMetadata().getComment();
-            }
-            // Request
-            AttachmentResultsBean results = executePostRequestForUpload(uri, attachment.getInputStream(), attachment.getTitle(), comment, AttachmentResultsBean.class);
-            
-            // Extract result
-            int numberOfResults = 0;
-            if (results.getResults() != null) {
-                numberOfResults = results.getResults().size();
-            }
-            if (numberOfResults == 1) {
-                return (AttachmentBean) results.getResults().get(0);
-            } else {
-                throw new UnexpectedContentException("Attachment result set with 1 element", "Attachemnt result set with " + numberOfResults + " elements");
-            }
-        });
+        return uploadAttachmentAsync(attachment, parentContent);
+    }
+
+    @Override
+    public CompletableFuture<AttachmentBean> uploadAttachmentAsync(AttachmentBean attachment, ContentBean parentContent) {
+        // URI
+        String attachmentUriPath = String.format(CONTENT_ATTACHMENT, parentContent.getId());
+        URIBuilder uriBuilder = buildPath(attachmentUriPath);
+        // Request
+        return executePostRequestForUploadAsync(uriBuilder, attachment, getComment(attachment), AttachmentResultsBean.class)
+                .thenCompose(this::extractAttachment);
+    }
+
+    /**
+     * Uploads the data of the attachment as new version of an existing
+     * attachment.
+     */
+    CompletableFuture<AttachmentBean> updateAttachmentDataAsync(AttachmentBean existing, AttachmentBean attachment, ContentBean parentContent) {
+        if (log.isInfoEnabled()) {
+            String message = "Updating attachment data. Content ID=%1$s, attachment ID=%2$s";
+            log.info(String.format(message, parentContent.getId(), existing.getId()));
+        }
+        // URI
+        String attachmentUriPath = String.format(CONTENT_ATTACHMENT_DATA, parentContent.getId(), existing.getId());
+        // Request
+        return executePostRequestForUploadAsync(buildPath(attachmentUriPath), attachment, getComment(attachment), AttachmentBean.class);
+    }
+
+    private static String getComment(AttachmentBean attachment) {
+        if (attachment.getMetadata() != null) {
+            return attachment.getMetadata().getComment();
+        }
+        return null;
     }
 
-	@Override
+    @Override
+    public Future<AttachmentResultsBean> getAttachments(ContentBean parentContent, int start, int limit) {
+        return getAttachmentsAsync(parentContent, start, limit);
+    }
+
+    @Override
+    public CompletableFuture<AttachmentResultsBean> getAttachmentsAsync(ContentBean parentContent, int start, int limit) {
+        if (log.isDebugEnabled()) {
+            String message = "Getting attachments. Content ID=%1$s, start=%2$s, limit=%3$s";
+            log.debug(String.format(message, parentContent.getId(), start, limit));
+        }
+        // URI
+        String attachmentUriPath = String.format(CONTENT_ATTACHMENT, parentContent.getId());
+        URIBuilder uriBuilder = buildPath(attachmentUriPath);
+        if (start > 0) {
+            uriBuilder.addParameter(START, String.valueOf(start));
+        }
+        if (limit > 0) {
+            uriBuilder.addParameter(LIMIT, String.valueOf(limit));
+        }
+        // Request
+        return executeGetRequestAsync(uriBuilder, AttachmentResultsBean.class);
+    }
+
+    @Override
+    public Future<List<AttachmentBean>> uploadAttachments(ContentBean parentContent, List<AttachmentBean> attachments, AttachmentComparison comparison, int parallelism) {
+        return uploadAttachmentsAsync(parentContent, attachments, comparison, parallelism);
+    }
+
+    @Override
+    public CompletableFuture<List<AttachmentBean>> uploadAttachmentsAsync(ContentBean parentContent, List<AttachmentBean> attachments, AttachmentComparison comparison, int parallelism) {
+        if (log.isInfoEnabled()) {
+            String message = "Uploading attachments. Content ID=%1$s, attachments=%2$s, comparison=%3$s";
+            log.info(String.format(message, parentContent.getId(), attachments.size(), comparison));
+        }
+        return new BulkAttachmentUpload(this, parentContent, comparison, parallelism).run(attachments);
+    }
+
+    private CompletableFuture<AttachmentBean> extractAttachment(AttachmentResultsBean results) {
+        int numberOfResults = 0;
+        if (results.getResults() != null) {
+            numberOfResults = results.getResults().size();
+        }
+        if (numberOfResults == 1) {
+            return CompletableFuture.completedFuture((AttachmentBean) results.getResults().get(0));
+        } else {
+            return failed(new UnexpectedContentException("Attachment result set with 1 element", "Attachemnt result set with " + numberOfResults + " elements"));
+        }
+    }
+
+    @Override
     public Future<InputStream> downloadAttachement(AttachmentBean attachment) {
+        return downloadAttachementAsync(attachment);
+    }
+
+    @Override
+    public CompletableFuture<InputStream> downloadAttachementAsync(AttachmentBean attachment) {
+        return getDownloadPath(attachment).thenCompose(this::executeGetRequestForDownloadAsync);
+    }
+
+    @Override
+    public Future<Long> downloadAttachment(AttachmentBean attachment, Path target) {
+        return downloadAttachmentAsync(attachment, target);
+    }
+
+    @Override
+    public CompletableFuture<Long> downloadAttachmentAsync(AttachmentBean attachment, Path target) {
+        return getDownloadPath(attachment).thenCompose(path -> executeGetRequestForDownloadAsync(path, target));
+    }
+
+    private CompletableFuture<URIBuilder> getDownloadPath(AttachmentBean attachment) {
         // Check input
         if (attachment.getId() == null) {
             throw new IllegalArgumentException("ID of the attachment cannot be null");
@@ -199,39 +303,41 @@ public class ContentClientImpl extends BaseClientImpl implements ContentClient {
         if (attachment.getTitle() == null) {
             throw new IllegalArgumentException("Title of the attachment cannot be null");
         }
-        return executorService.submit(() -> {
-            // Determine download URI
-            String downloadUriPath = null;
-            if (attachment.getLinks() != null) {
-                // Provided
-                downloadUriPath = attachment.getLinks().getDownload();
-            } else {
-                // Not Provided
-                Future<ContentBean> future = getContentById(attachment.getId(), 0, null);
-                ContentBean attachmentContent = future.get();
-                downloadUriPath = attachmentContent.getLinks().getDownload();
+        // Determine download URI
+        CompletableFuture<String> downloadUriPath;
+        if (attachment.getLinks() != null) {
+            // Provided
+            downloadUriPath = CompletableFuture.completedFuture(attachment.getLinks().getDownload());
+        } else {
+            // Not Provided
+            downloadUriPath = getContentByIdAsync(attachment.getId(), 0, null)
+                    .thenApply(attachmentContent -> attachmentContent.getLinks().getDownload());
+        }
+        return downloadUriPath.thenCompose(path -> {
+            try {
+                String decodedPath = URLDecoder.decode(path, "UTF-8");
+                return CompletableFuture.completedFuture(buildNonRestPath(decodedPath));
+            } catch (UnsupportedEncodingException e) {
+                return failed(e);
             }
-            downloadUriPath = URLDecoder.decode(downloadUriPath, "UTF-8");
-            URI uri = buildNonRestPath(downloadUriPath).build();
-            // Request
-            return executeGetRequestForDownload(uri);
         });
     }
 
     @Override
     public Future<LabelsBean> addLabels(ContentBean content, List<LabelBean> labels) {
+        return addLabelsAsync(content, labels);
+    }
+
+    @Override
+    public CompletableFuture<LabelsBean> addLabelsAsync(ContentBean content, List<LabelBean> labels) {
         if (log.isInfoEnabled()) {
             String message = "Adding labels to content. Content ID=%1$s, labels %2$s";
             log.info(String.format(message, content.getId(), labels));
         }
-
-        return executorService.submit(() -> {
-            // URI
-            String attachmentUriPath = String.format(CONTENT_LABEL, content.getId());
-            URI uri = buildPath(attachmentUriPath).build();
-            // Request
-            return executePostRequest(uri, content, LabelsBean.class);
-        });
+        // URI
+        String attachmentUriPath = String.format(CONTENT_LABEL, content.getId());
+        // Request
+        return executePostRequestAsync(buildPath(attachmentUriPath), content, LabelsBean.class);
     }
 
 }
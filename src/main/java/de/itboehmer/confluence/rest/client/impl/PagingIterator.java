@@ -0,0 +1,191 @@
+package de.itboehmer.confluence.rest.client.impl;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Iterates lazily over the elements of a paginated REST resource. Pages are
+ * fetched on demand; while the elements of one page are consumed, up to
+ * <code>prefetchPages</code> subsequent pages are requested in the background.
+ * At most the current page and the prefetched pages are held in memory.
+ * <p>
+ * The first page is fetched alone to learn the page size the server actually
+ * applies, as Confluence may reduce the requested limit. Iteration ends with
+ * the first page holding fewer elements than that. Failed requests are
+ * rethrown as {@link CompletionException}.
+ */
+class PagingIterator<T> implements Iterator<T>, AutoCloseable {
+
+	private final PageFetcher<T> pageFetcher;
+	private final int prefetchPages;
+	private final Deque<CompletableFuture<Page<T>>> pendingPages = new ArrayDeque<>();
+
+	private Iterator<T> currentPage = Collections.emptyIterator();
+	private int nextStart;
+	private int pageSize;
+	private boolean pageSizeKnown = false;
+	private boolean exhausted = false;
+
+	/**
+	 * @param pageFetcher fetches the page for a start index and limit
+	 * @param start index of the first element
+	 * @param pageSize requested number of elements per page
+	 * @param prefetchPages number of pages to request ahead; 0 fetches pages
+	 *            only when they are needed
+	 */
+	PagingIterator(PageFetcher<T> pageFetcher, int start, int pageSize, int prefetchPages) {
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+		}
+		if (prefetchPages < 0) {
+			throw new IllegalArgumentException("prefetchPages must not be negative: " + prefetchPages);
+		}
+		this.pageFetcher = pageFetcher;
+		this.nextStart = start;
+		this.pageSize = pageSize;
+		this.prefetchPages = prefetchPages;
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (!currentPage.hasNext()) {
+			if (exhausted) {
+				return false;
+			}
+			if (pendingPages.isEmpty()) {
+				requestNextPage();
+			}
+			Page<T> page = await(pendingPages.poll());
+			if (!pageSizeKnown) {
+				if (page.getLimit() > 0 && page.getLimit() < pageSize) {
+					// Only the first page has been requested so far
+					nextStart -= pageSize - page.getLimit();
+					pageSize = page.getLimit();
+				}
+				pageSizeKnown = true;
+			}
+			if (page.getResults().size() < pageSize) {
+				exhausted = true;
+				cancelPendingPages();
+			}
+			currentPage = page.getResults().iterator();
+			prefetch();
+		}
+		return true;
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return currentPage.next();
+	}
+
+	/**
+	 * Cancels pages requested in advance.
+	 */
+	@Override
+	public void close() {
+		exhausted = true;
+		currentPage = Collections.emptyIterator();
+		cancelPendingPages();
+	}
+
+	Stream<T> stream() {
+		Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(this,
+				Spliterator.ORDERED | Spliterator.NONNULL);
+		return StreamSupport.stream(spliterator, false).onClose(this::close);
+	}
+
+	private void prefetch() {
+		if (!pageSizeKnown) {
+			return;
+		}
+		while (!exhausted && pendingPages.size() < prefetchPages) {
+			requestNextPage();
+		}
+	}
+
+	private void requestNextPage() {
+		pendingPages.add(pageFetcher.fetch(nextStart, pageSize));
+		nextStart += pageSize;
+	}
+
+	private void cancelPendingPages() {
+		pendingPages.forEach(page -> page.cancel(false));
+		pendingPages.clear();
+	}
+
+	private Page<T> await(CompletableFuture<Page<T>> page) {
+		try {
+			return page.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			close();
+			throw new CompletionException(e);
+		} catch (ExecutionException e) {
+			close();
+			throw new CompletionException(e.getCause());
+		}
+	}
+
+	/**
+	 * Fetches a single page.
+	 */
+	@FunctionalInterface
+	interface PageFetcher<T> {
+
+		CompletableFuture<Page<T>> fetch(int start, int limit);
+
+	}
+
+	/**
+	 * The elements of a page, the limit the server applied and, if the resource
+	 * reports it, the total number of elements.
+	 */
+	static class Page<T> {
+
+		private final List<T> results;
+		private final int limit;
+		private final int totalSize;
+
+		Page(List<T> results, Integer limit) {
+			this(results, limit, -1);
+		}
+
+		Page(List<T> results, Integer limit, int totalSize) {
+			this.results = results != null ? results : Collections.<T>emptyList();
+			this.limit = limit != null ? limit : 0;
+			this.totalSize = totalSize;
+		}
+
+		List<T> getResults() {
+			return results;
+		}
+
+		int getLimit() {
+			return limit;
+		}
+
+		/**
+		 * @return the total number of elements, or -1 if unknown
+		 */
+		int getTotalSize() {
+			return totalSize;
+		}
+
+	}
+
+}
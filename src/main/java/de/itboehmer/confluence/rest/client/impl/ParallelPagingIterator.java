@@ -0,0 +1,166 @@
+package de.itboehmer.confluence.rest.client.impl;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import de.itboehmer.confluence.rest.client.impl.PagingIterator.Page;
+import de.itboehmer.confluence.rest.client.impl.PagingIterator.PageFetcher;
+
+/**
+ * Iterates over the elements of a paginated REST resource that reports its
+ * total size. Once the first page has been received, the start index of every
+ * remaining page is known and the pages are requested concurrently, with at
+ * most <code>maxPagesInFlight</code> pages requested but not yet consumed.
+ * <p>
+ * In ordered mode, elements are returned in the order of the resource. In
+ * unordered mode, pages are consumed as soon as they arrive. Failed requests
+ * are rethrown as {@link CompletionException}.
+ */
+class ParallelPagingIterator<T> implements Iterator<T>, AutoCloseable {
+
+	private final PageFetcher<T> pageFetcher;
+	private final int maxPagesInFlight;
+	private final boolean ordered;
+	/** Requested pages in the order of their start index */
+	private final Deque<CompletableFuture<Page<T>>> pagesInFlight = new ArrayDeque<>();
+	/** Pages in the order of their completion, used in unordered mode only */
+	private final BlockingQueue<CompletableFuture<Page<T>>> completedPages = new LinkedBlockingQueue<>();
+
+	private Iterator<T> currentPage = Collections.emptyIterator();
+	private int nextStart;
+	private int pageSize;
+	private int totalSize = -1;
+	private boolean closed = false;
+
+	/**
+	 * @param pageFetcher fetches the page for a start index and limit; pages
+	 *            must report the total size
+	 * @param start index of the first element
+	 * @param pageSize requested number of elements per page, 0 for the
+	 *            server's default
+	 * @param maxPagesInFlight maximum number of pages requested concurrently
+	 * @param ordered whether elements are returned in the order of the resource
+	 */
+	ParallelPagingIterator(PageFetcher<T> pageFetcher, int start, int pageSize, int maxPagesInFlight,
+			boolean ordered) {
+		if (maxPagesInFlight < 1) {
+			throw new IllegalArgumentException("maxPagesInFlight must be positive: " + maxPagesInFlight);
+		}
+		this.pageFetcher = pageFetcher;
+		this.nextStart = start;
+		this.pageSize = pageSize;
+		this.maxPagesInFlight = maxPagesInFlight;
+		this.ordered = ordered;
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (!currentPage.hasNext()) {
+			if (closed) {
+				return false;
+			}
+			if (totalSize < 0) {
+				currentPage = fetchFirstPage();
+			} else if (pagesInFlight.isEmpty()) {
+				close();
+			} else {
+				Page<T> page = ordered ? await(pagesInFlight.poll()) : awaitAny();
+				currentPage = page.getResults().iterator();
+			}
+			requestPages();
+		}
+		return true;
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return currentPage.next();
+	}
+
+	/**
+	 * Cancels pages requested in advance.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		currentPage = Collections.emptyIterator();
+		pagesInFlight.forEach(page -> page.cancel(false));
+		pagesInFlight.clear();
+		completedPages.clear();
+	}
+
+	Stream<T> stream() {
+		int characteristics = Spliterator.NONNULL | (ordered ? Spliterator.ORDERED : 0);
+		Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(this, characteristics);
+		return StreamSupport.stream(spliterator, false).onClose(this::close);
+	}
+
+	private Iterator<T> fetchFirstPage() {
+		Page<T> page = await(pageFetcher.fetch(nextStart, pageSize));
+		int received = page.getResults().size();
+		if (page.getLimit() > 0) {
+			pageSize = page.getLimit();
+		} else if (pageSize <= 0) {
+			pageSize = received;
+		}
+		totalSize = page.getTotalSize() >= 0 ? page.getTotalSize() : nextStart + received;
+		nextStart += pageSize;
+		if (received == 0 || pageSize <= 0) {
+			// Nothing more to request
+			totalSize = nextStart;
+		}
+		return page.getResults().iterator();
+	}
+
+	private void requestPages() {
+		while (!closed && nextStart < totalSize && pagesInFlight.size() < maxPagesInFlight) {
+			CompletableFuture<Page<T>> page = pageFetcher.fetch(nextStart, pageSize);
+			pagesInFlight.add(page);
+			if (!ordered) {
+				page.whenComplete((result, throwable) -> completedPages.add(page));
+			}
+			nextStart += pageSize;
+		}
+	}
+
+	private Page<T> awaitAny() {
+		try {
+			CompletableFuture<Page<T>> page = completedPages.take();
+			pagesInFlight.remove(page);
+			return await(page);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			close();
+			throw new CompletionException(e);
+		}
+	}
+
+	private Page<T> await(CompletableFuture<Page<T>> page) {
+		try {
+			return page.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			close();
+			throw new CompletionException(e);
+		} catch (ExecutionException e) {
+			close();
+			throw new CompletionException(e.getCause());
+		}
+	}
+
+}
@@ -26,8 +26,10 @@ import static de.itboehmer.confluence.rest.core.misc.RestPathConstants.SEARCH;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
@@ -39,6 +41,7 @@ import de.itboehmer.confluence.rest.client.SearchClient;
 import de.itboehmer.confluence.rest.core.RequestService;
 import de.itboehmer.confluence.rest.core.cql.CqlSearchBean;
 import de.itboehmer.confluence.rest.core.domain.cql.CqlSearchResult;
+import de.itboehmer.confluence.rest.core.domain.cql.SearchResultEntry;
 import de.itboehmer.confluence.rest.core.impl.APIUriProvider;
 
 /**
@@ -55,7 +58,27 @@ public class SearchClientImpl extends BaseClientImpl implements SearchClient {
 
 	@Override
 	public Future<CqlSearchResult> searchContent(CqlSearchBean searchBean) {
+		return searchContentAsync(searchBean);
+	}
+
+	@Override
+	public CompletableFuture<CqlSearchResult> searchContentAsync(CqlSearchBean searchBean) {
+		Validate.notNull(searchBean);
+		return searchContentAsync(searchBean, searchBean.getStart(), searchBean.getLimit());
+	}
+
+	@Override
+	public Stream<SearchResultEntry> searchContentParallel(CqlSearchBean searchBean, int maxPagesInFlight,
+			boolean ordered) {
 		Validate.notNull(searchBean);
+		ParallelPagingIterator<SearchResultEntry> iterator = new ParallelPagingIterator<>((start, limit) -> {
+			return searchContentAsync(searchBean, start, limit).thenApply(
+					result -> new PagingIterator.Page<>(result.getResults(), result.getLimit(), result.getTotalSize()));
+		}, searchBean.getStart(), searchBean.getLimit(), maxPagesInFlight, ordered);
+		return iterator.stream();
+	}
+
+	private CompletableFuture<CqlSearchResult> searchContentAsync(CqlSearchBean searchBean, int start, int limit) {
 		Validate.notNull(StringUtils.trimToNull(searchBean.getCql()));
 
 		String cql = searchBean.getCql();
@@ -72,17 +95,14 @@ public class SearchClientImpl extends BaseClientImpl implements SearchClient {
 			String join = StringUtils.join(expand, ",");
 			nameValuePairs.add(new BasicNameValuePair(EXPAND, join));
 		}
-		if (searchBean.getStart() > 0) {
-			nameValuePairs.add(new BasicNameValuePair(START, String.valueOf(searchBean.getStart())));
+		if (start > 0) {
+			nameValuePairs.add(new BasicNameValuePair(START, String.valueOf(start)));
 		}
-		if (searchBean.getLimit() > 0) {
-			nameValuePairs.add(new BasicNameValuePair(LIMIT, String.valueOf(searchBean.getLimit())));
+		if (limit > 0) {
+			nameValuePairs.add(new BasicNameValuePair(LIMIT, String.valueOf(limit)));
 		}
 		URIBuilder uriBuilder = buildPath(SEARCH).addParameters(nameValuePairs);
-		return executorService.submit(() -> {
-			return executeGetRequest(uriBuilder.build(), CqlSearchResult.class);
-		});
-
+		return executeGetRequestAsync(uriBuilder, CqlSearchResult.class);
 	}
 
 }
@@ -0,0 +1,207 @@
+package de.itboehmer.confluence.rest.client.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Bounded cache with segmented LRU eviction. New entries start in a
+ * probationary segment and are promoted to a protected segment when they are
+ * read again, so a burst of entries read only once cannot flush the entries
+ * read repeatedly. The cache is limited by the number of entries and by the
+ * sum of their weights, and split into independently locked shards for
+ * concurrent use.
+ */
+class SegmentedLruCache<K, V> {
+
+    private static final int SHARDS = 16;
+    /** Share of the capacity of a shard reserved for the protected segment. */
+    private static final double PROTECTED_RATIO = 0.8;
+
+    private final Shard[] shards;
+    private final ToLongFunction<V> weigher;
+
+    /**
+     * @param maxEntries maximum number of entries
+     * @param maxWeight maximum sum of the weights of all entries
+     * @param weigher computes the weight of a value, e.g. its approximate size
+     *            in bytes
+     */
+    @SuppressWarnings("unchecked")
+    SegmentedLruCache(int maxEntries, long maxWeight, ToLongFunction<V> weigher) {
+        this.weigher = weigher;
+        this.shards = (Shard[]) new SegmentedLruCache<?, ?>.Shard[SHARDS];
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard(Math.max(1, maxEntries / SHARDS), Math.max(1, maxWeight / SHARDS));
+        }
+    }
+
+    /**
+     * @return the cached value, or <code>null</code>
+     */
+    V get(K key) {
+        return shard(key).get(key);
+    }
+
+    void put(K key, V value) {
+        shard(key).put(key, value, weigher.applyAsLong(value));
+    }
+
+    void remove(K key) {
+        shard(key).remove(key);
+    }
+
+    /**
+     * Removes all entries whose key matches the predicate.
+     */
+    void removeIf(Predicate<K> predicate) {
+        for (Shard shard : shards) {
+            shard.removeIf(predicate);
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Shard shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    long weight() {
+        long weight = 0;
+        for (Shard shard : shards) {
+            weight += shard.weight();
+        }
+        return weight;
+    }
+
+    private Shard shard(K key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return shards[hash & (SHARDS - 1)];
+    }
+
+    private class Shard {
+
+        private final int maxEntries;
+        private final long maxWeight;
+        private final long maxProtectedWeight;
+
+        // Both in LRU order, the least recently used entry first
+        private final LinkedHashMap<K, Entry<V>> probation = new LinkedHashMap<>();
+        private final LinkedHashMap<K, Entry<V>> protectedEntries = new LinkedHashMap<>();
+        private long probationWeight;
+        private long protectedWeight;
+
+        Shard(int maxEntries, long maxWeight) {
+            this.maxEntries = maxEntries;
+            this.maxWeight = maxWeight;
+            this.maxProtectedWeight = (long) (maxWeight * PROTECTED_RATIO);
+        }
+
+        synchronized V get(K key) {
+            Entry<V> entry = protectedEntries.remove(key);
+            if (entry != null) {
+                protectedEntries.put(key, entry);
+                return entry.value;
+            }
+            entry = probation.remove(key);
+            if (entry == null) {
+                return null;
+            }
+            probationWeight -= entry.weight;
+            protectedEntries.put(key, entry);
+            protectedWeight += entry.weight;
+            while (protectedWeight > maxProtectedWeight && protectedEntries.size() > 1) {
+                demoteEldest();
+            }
+            return entry.value;
+        }
+
+        synchronized void put(K key, V value, long weight) {
+            remove(key);
+            if (weight > maxWeight) {
+                return;
+            }
+            probation.put(key, new Entry<>(value, weight));
+            probationWeight += weight;
+            while (size() > maxEntries || weight() > maxWeight) {
+                evictEldest();
+            }
+        }
+
+        synchronized void remove(K key) {
+            Entry<V> entry = probation.remove(key);
+            if (entry != null) {
+                probationWeight -= entry.weight;
+            }
+            entry = protectedEntries.remove(key);
+            if (entry != null) {
+                protectedWeight -= entry.weight;
+            }
+        }
+
+        synchronized void removeIf(Predicate<K> predicate) {
+            probationWeight -= removeIf(probation, predicate);
+            protectedWeight -= removeIf(protectedEntries, predicate);
+        }
+
+        synchronized int size() {
+            return probation.size() + protectedEntries.size();
+        }
+
+        synchronized long weight() {
+            return probationWeight + protectedWeight;
+        }
+
+        private long removeIf(Map<K, Entry<V>> entries, Predicate<K> predicate) {
+            long removedWeight = 0;
+            for (Iterator<Map.Entry<K, Entry<V>>> it = entries.entrySet().iterator(); it.hasNext();) {
+                Map.Entry<K, Entry<V>> entry = it.next();
+                if (predicate.test(entry.getKey())) {
+                    removedWeight += entry.getValue().weight;
+                    it.remove();
+                }
+            }
+            return removedWeight;
+        }
+
+        private void demoteEldest() {
+            Iterator<Map.Entry<K, Entry<V>>> it = protectedEntries.entrySet().iterator();
+            Map.Entry<K, Entry<V>> eldest = it.next();
+            it.remove();
+            protectedWeight -= eldest.getValue().weight;
+            probation.put(eldest.getKey(), eldest.getValue());
+            probationWeight += eldest.getValue().weight;
+        }
+
+        private void evictEldest() {
+            if (!probation.isEmpty()) {
+                Iterator<Entry<V>> it = probation.values().iterator();
+                probationWeight -= it.next().weight;
+                it.remove();
+            } else {
+                Iterator<Entry<V>> it = protectedEntries.values().iterator();
+                protectedWeight -= it.next().weight;
+                it.remove();
+            }
+        }
+
+    }
+
+    private static class Entry<V> {
+
+        private final V value;
+        private final long weight;
+
+        Entry(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+
+    }
+
+}
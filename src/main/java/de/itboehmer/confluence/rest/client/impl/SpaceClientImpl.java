@@ -27,6 +27,7 @@ import static de.itboehmer.confluence.rest.core.misc.RestPathConstants.SPACE;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 
@@ -55,6 +56,12 @@ public class SpaceClientImpl extends BaseClientImpl implements SpaceClient {
 	@Override
 	public Future<SpaceResultsBean> getSpaces(List<String> keys, SpaceType type, SpaceStatus status,
 			List<String> labels, List<String> expand, int start, int limit) throws URISyntaxException {
+		return getSpacesAsync(keys, type, status, labels, expand, start, limit);
+	}
+
+	@Override
+	public CompletableFuture<SpaceResultsBean> getSpacesAsync(List<String> keys, SpaceType type, SpaceStatus status,
+			List<String> labels, List<String> expand, int start, int limit) {
 		URIBuilder uriBuilder = buildPath(SPACE);
 		List<NameValuePair> nameValuePairs = new ArrayList<>();
 		if (keys != null && keys.isEmpty() == false) {
@@ -82,20 +89,21 @@ public class SpaceClientImpl extends BaseClientImpl implements SpaceClient {
 			nameValuePairs.add(new BasicNameValuePair(LIMIT, String.valueOf(limit)));
 		}
 		uriBuilder.addParameters(nameValuePairs);
-		return executorService.submit(() -> {
-			return executeGetRequest(uriBuilder.build(), SpaceResultsBean.class);
-		});
+		return executeGetRequestAsync(uriBuilder, SpaceResultsBean.class);
 	}
 
 	@Override
 	public Future<SpaceBean> getSpaceByKey(String key, List<String> expand) {
+		return getSpaceByKeyAsync(key, expand);
+	}
+
+	@Override
+	public CompletableFuture<SpaceBean> getSpaceByKeyAsync(String key, List<String> expand) {
 		URIBuilder uriBuilder = buildPath(SPACE, key);
 		if (expand != null && expand.isEmpty() == false) {
 			String join = StringUtils.join(expand, ",");
 			uriBuilder.addParameter(EXPAND, join);
 		}
-		return executorService.submit(() -> {
-			return executeGetRequest(uriBuilder.build(), SpaceBean.class);
-		});
+		return executeGetRequestAsync(uriBuilder, SpaceBean.class);
 	}
 }
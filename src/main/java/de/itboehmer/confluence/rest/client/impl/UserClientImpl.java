@@ -17,6 +17,7 @@
 package de.itboehmer.confluence.rest.client.impl;
 
 import java.net.URISyntaxException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 
@@ -46,16 +47,25 @@ public class UserClientImpl extends BaseClientImpl implements UserClient {
 
     @Override
     public Future<UserBean> getUserByUsername(String username) throws URISyntaxException {
+        return getUserByUsernameAsync(username);
+    }
+
+    @Override
+    public CompletableFuture<UserBean> getUserByUsernameAsync(String username) {
         log.info("Getting user by name '{}'.", username);
         Validate.notNull(username);
         URIBuilder uriBuilder = buildPath(RestPathConstants.USER);
         uriBuilder.addParameter(RestParamConstants.USERNAME, username);
         return getUser(uriBuilder);
-
     }
 
     @Override
     public Future<UserBean> getUserByKey(String key) throws URISyntaxException {
+        return getUserByKeyAsync(key);
+    }
+
+    @Override
+    public CompletableFuture<UserBean> getUserByKeyAsync(String key) {
         log.info("Getting user by key '{}'.", key);
         Validate.notNull(key);
         URIBuilder uriBuilder = buildPath(RestPathConstants.USER);
@@ -65,6 +75,11 @@ public class UserClientImpl extends BaseClientImpl implements UserClient {
 
     @Override
     public Future<UserBean> getCurrentUser() throws URISyntaxException {
+        return getCurrentUserAsync();
+    }
+
+    @Override
+    public CompletableFuture<UserBean> getCurrentUserAsync() {
         log.info("Getting current user");
         URIBuilder uriBuilder = buildPath(RestPathConstants.USER, RestPathConstants.CURRENT);
         return getUser(uriBuilder);
@@ -72,14 +87,17 @@ public class UserClientImpl extends BaseClientImpl implements UserClient {
 
     @Override
     public Future<UserBean> getAnonymousUser() throws URISyntaxException {
+        return getAnonymousUserAsync();
+    }
+
+    @Override
+    public CompletableFuture<UserBean> getAnonymousUserAsync() {
         log.info("Getting anonymous user");
         URIBuilder uriBuilder = buildPath(RestPathConstants.USER, RestPathConstants.ANONYMOUS);
         return getUser(uriBuilder);
     }
 
-    private Future<UserBean> getUser(URIBuilder uriBuilder) {
-        return executorService.submit(() -> {
-        		return executeGetRequest(uriBuilder.build(), UserBean.class);
-        });
+    private CompletableFuture<UserBean> getUser(URIBuilder uriBuilder) {
+        return executeGetRequestAsync(uriBuilder, UserBean.class);
     }
 }
@@ -0,0 +1,60 @@
+package de.itboehmer.confluence.rest.client.impl;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates executors running each task on a virtual thread. As the project
+ * targets Java 8, virtual threads are looked up reflectively. On runtimes
+ * without virtual thread support a fixed pool of platform threads is used
+ * instead.
+ */
+final class VirtualThreadExecutors {
+
+	private static final Logger log = LoggerFactory.getLogger(VirtualThreadExecutors.class);
+
+	private VirtualThreadExecutors() {
+	}
+
+	/**
+	 * @param fallbackPoolSize number of platform threads used if virtual threads
+	 *            are not available
+	 * @return a virtual thread per task executor or a fixed thread pool
+	 */
+	static ExecutorService newVirtualThreadPerTaskExecutor(int fallbackPoolSize) {
+		try {
+			Method factoryMethod = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			ExecutorService executorService = (ExecutorService) factoryMethod.invoke(null);
+			log.info("Running client calls on virtual threads");
+			return executorService;
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			log.info("Virtual threads are not available on this runtime");
+		} catch (InvocationTargetException e) {
+			// Preview feature not enabled on Java 19 and 20
+			log.info("Virtual threads are not enabled on this runtime: " + e.getCause());
+		}
+		log.info("Running client calls on a pool of " + fallbackPoolSize + " platform threads");
+		return Executors.newFixedThreadPool(fallbackPoolSize, new DaemonThreadFactory());
+	}
+
+	private static class DaemonThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "confluence-client-" + threadNumber.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	}
+
+}
@@ -1,26 +1,120 @@
 package de.itboehmer.confluence.rest.core.impl;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.protocol.ResponseContentEncoding;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
-import de.itboehmer.confluence.rest.core.custom.CqlSearchResultDeserializer;
-import de.itboehmer.confluence.rest.core.domain.cql.CqlSearchResult;
+import de.itboehmer.confluence.rest.core.DownloadRange;
+import de.itboehmer.confluence.rest.core.RestException;
+import de.itboehmer.confluence.rest.core.SecurityException;
+import de.itboehmer.confluence.rest.core.custom.CqlSearchResultTypeAdapterFactory;
+import de.itboehmer.confluence.rest.core.custom.DomainTypeAdapterFactory;
+import de.itboehmer.confluence.rest.core.impl.ConditionalResponseCache.CachedResponse;
+import de.itboehmer.confluence.rest.core.util.HttpMethodFactory;
+import de.itboehmer.confluence.rest.core.util.RangeHelper;
 
 public abstract class AbstractRequestService {
 
+	private static final Logger log = LoggerFactory.getLogger(AbstractRequestService.class);
+
+	private static final String HTTP = "http";
+	private static final String HTTPS = "https";
+
+	private static final String DOWNLOAD_KEY_PREFIX = "download ";
+
+	private static final String RESULTS = "results";
+
+	// Fails on unknown codings rather than passing them on to the parser
+	private final ResponseContentEncoding responseContentEncoding = new ResponseContentEncoding(false);
+
+	private ConditionalResponseCache responseCache;
+	private DiskResponseCache diskCache;
+	private boolean requestCompression;
+
 	public AbstractRequestService() {
 	}
 
+	/**
+	 * Enables conditional GET requests: responses with an <code>ETag</code> or
+	 * <code>Last-Modified</code> header are cached, and returned again if the
+	 * server answers a later request with <code>304 Not Modified</code>. The
+	 * cache keeps a copy of each result, and each cached result returned is a
+	 * copy, so callers may modify the results they receive.
+	 *
+	 * @param responseCache the cache, or <code>null</code> to disable caching,
+	 *            which is the default
+	 */
+	public void setResponseCache(ConditionalResponseCache responseCache) {
+		this.responseCache = responseCache;
+	}
+
+	/**
+	 * Enables gzip compression of JSON request bodies, which is worth it for
+	 * large page bodies. Only enable it if the server, or a proxy in front of
+	 * it, accepts requests with <code>Content-Encoding: gzip</code>.
+	 *
+	 * @param requestCompression <code>true</code> to compress, default is
+	 *            <code>false</code>
+	 */
+	public void setRequestCompression(boolean requestCompression) {
+		this.requestCompression = requestCompression;
+	}
+
+	protected boolean isRequestCompression() {
+		return requestCompression;
+	}
+
+	/**
+	 * Replaces a gzip or deflate compressed response body by one which is
+	 * decompressed while it is read, so the compressed body is never inflated
+	 * in memory as a whole.
+	 */
+	protected void decodeContent(HttpResponse response) throws IOException {
+		try {
+			responseContentEncoding.process(response, HttpClientContext.create());
+		} catch (HttpException e) {
+			throw new ClientProtocolException(e.getMessage(), e);
+		}
+	}
+
 	private final Gson gson = new GsonBuilder().excludeFieldsWithoutExposeAnnotation()
-			.registerTypeAdapter(CqlSearchResult.class, new CqlSearchResultDeserializer()).create();
-	
+			.registerTypeAdapterFactory(new DomainTypeAdapterFactory())
+			.registerTypeAdapterFactory(new CqlSearchResultTypeAdapterFactory()).create();
+
 	protected Gson getGson() {
 		return gson;
 	}
@@ -33,4 +127,482 @@ public abstract class AbstractRequestService {
 		return jsonReader;
 	}
 
+	/**
+	 * Creates a reader skipping all members which are not part of the given
+	 * projection, see {@link ProjectingJsonReader}.
+	 */
+	protected JsonReader toJsonReader(InputStream inputStream, Set<String> projection)
+			throws UnsupportedEncodingException {
+		Validate.notNull(inputStream);
+		Validate.notEmpty(projection);
+		InputStreamReader reader = new InputStreamReader(inputStream, "UTF-8");
+		JsonReader jsonReader = new ProjectingJsonReader(reader, projection);
+		jsonReader.setLenient(true);
+		return jsonReader;
+	}
+
+	/**
+	 * Extract port from URL
+	 *
+	 * @param endpointUrl
+	 * @return
+	 */
+	private int getPort(URL endpointUrl) {
+		int port = (endpointUrl.getPort() != -1 ? endpointUrl.getPort() : endpointUrl.getDefaultPort());
+		if (port != -1) {
+			return port;
+		}
+		if (HTTPS.equals(endpointUrl.getProtocol())) {
+			return 443;
+		}
+		return 80;
+	}
+
+	protected HttpHost getHttpHost(URI uri) throws URISyntaxException {
+		try {
+			String host = uri.getHost();
+			int port = getPort(uri.toURL());
+			String scheme = HTTP;
+			if (port == 443) {
+				scheme = HTTPS;
+			}
+			return new HttpHost(host, port, scheme);
+		} catch (MalformedURLException e) {
+			log.debug("Caught " + e + ". Transforming and throwing " + URISyntaxException.class);
+			throw new URISyntaxException(uri.toString(), "URI is not a valid URL: " + e.getMessage(), 0);
+		}
+	}
+
+	/**
+	 * Checks the status of the response and deserializes its JSON body into the
+	 * given result class.
+	 */
+	protected <T> T readResult(HttpResponse response, Class<T> resultClass) throws IOException, RestException {
+		return readResult(response, resultClass, null);
+	}
+
+	/**
+	 * Checks the status of the response and deserializes the projected members
+	 * of its JSON body into the given result class. A <code>null</code>
+	 * projection binds all members.
+	 */
+	protected <T> T readResult(HttpResponse response, Class<T> resultClass, Set<String> projection)
+			throws IOException, RestException {
+		int statusCode = response.getStatusLine().getStatusCode();
+		switch (statusCode) {
+		case HttpURLConnection.HTTP_OK:
+			log.debug("Tranforming result into " + resultClass);
+			HttpEntity entity = response.getEntity();
+			JsonReader jsonReader = (projection == null) ? toJsonReader(entity.getContent())
+					: toJsonReader(entity.getContent(), projection);
+			return getGson().fromJson(jsonReader, resultClass);
+		default:
+			throw createRestException(response);
+		}
+	}
+
+	/**
+	 * Checks the status of the response and passes the elements of the
+	 * <code>results</code> array of its JSON body to the consumer, each as soon
+	 * as it has been parsed.
+	 *
+	 * @return number of elements passed to the consumer
+	 */
+	protected <T> int readResults(HttpResponse response, Class<T> elementClass, Consumer<? super T> consumer)
+			throws IOException, RestException {
+		if (response.getStatusLine().getStatusCode() != HttpURLConnection.HTTP_OK) {
+			throw createRestException(response);
+		}
+		log.debug("Streaming results as " + elementClass);
+		JsonReader jsonReader = toJsonReader(response.getEntity().getContent());
+		int count = 0;
+		jsonReader.beginObject();
+		while (jsonReader.hasNext()) {
+			if (RESULTS.equals(jsonReader.nextName()) && jsonReader.peek() == JsonToken.BEGIN_ARRAY) {
+				jsonReader.beginArray();
+				while (jsonReader.hasNext()) {
+					T element = getGson().fromJson(jsonReader, elementClass);
+					consumer.accept(element);
+					count++;
+				}
+				jsonReader.endArray();
+			} else {
+				jsonReader.skipValue();
+			}
+		}
+		jsonReader.endObject();
+		return count;
+	}
+
+	/**
+	 * Enables serving GET requests and downloads from a cache on disk, which
+	 * survives restarts. Successful responses are stored in the cache while they
+	 * are read. Later requests for the same URI are conditional on the
+	 * validators of the cached response, and a <code>304 Not Modified</code>
+	 * answer is served from the cache. Responses within the freshness period of
+	 * the cache are served without a request. A POST drops the cached responses
+	 * of its URI, of the resources below it and of those above it, e.g. updating
+	 * a page drops its expansions and the content listings.
+	 *
+	 * @param diskCache the cache, or <code>null</code> to disable it, which is
+	 *            the default
+	 */
+	public void setDiskCache(DiskResponseCache diskCache) {
+		this.diskCache = diskCache;
+	}
+
+	/**
+	 * @return the result cached on disk for the URI if it is fresh, or
+	 *         <code>null</code>
+	 */
+	protected <T> T readDiskCachedResult(URI uri, Class<T> resultClass, Set<String> projection)
+			throws IOException {
+		DiskResponseCache.Entry entry = getDiskCacheEntry(uri.toString());
+		if (entry == null || !entry.isFresh()) {
+			return null;
+		}
+		log.debug("Using result cached on disk for " + uri);
+		return parse(new ByteBufferInputStream(entry.getBody()), resultClass, projection);
+	}
+
+	/**
+	 * @return the download cached on disk for the URI if it is fresh, or
+	 *         <code>null</code>
+	 */
+	protected InputStream readDiskCachedContent(URI uri) {
+		DiskResponseCache.Entry entry = getDiskCacheEntry(DOWNLOAD_KEY_PREFIX + uri);
+		if (entry == null || !entry.isFresh()) {
+			return null;
+		}
+		log.debug("Using download cached on disk for " + uri);
+		return new ByteBufferInputStream(entry.getBody());
+	}
+
+	private DiskResponseCache.Entry getDiskCacheEntry(String key) {
+		DiskResponseCache cache = this.diskCache;
+		return (cache != null) ? cache.getEntry(key) : null;
+	}
+
+	/**
+	 * Drops the responses cached on disk which a POST to the URI may have
+	 * changed: those of the same path, and of the paths below and above it.
+	 */
+	protected void invalidateDiskCache(URI uri) {
+		DiskResponseCache cache = this.diskCache;
+		if (cache == null) {
+			return;
+		}
+		String path = StringUtils.removeEnd(uri.getPath(), "/");
+		try {
+			cache.removeIf(key -> isRelatedPath(path, getPath(StringUtils.removeStart(key, DOWNLOAD_KEY_PREFIX))));
+		} catch (IOException e) {
+			log.warn("Cannot drop responses cached on disk for " + uri, e);
+		}
+	}
+
+	private static boolean isRelatedPath(String path, String other) {
+		if (other == null) {
+			return false;
+		}
+		return path.equals(other) || path.startsWith(other + "/") || other.startsWith(path + "/");
+	}
+
+	private static String getPath(String uri) {
+		try {
+			return StringUtils.removeEnd(new URI(uri).getPath(), "/");
+		} catch (URISyntaxException e) {
+			return null;
+		}
+	}
+
+	private <T> T parse(InputStream inputStream, Class<T> resultClass, Set<String> projection)
+			throws UnsupportedEncodingException {
+		JsonReader jsonReader = (projection == null) ? toJsonReader(inputStream)
+				: toJsonReader(inputStream, projection);
+		return getGson().fromJson(jsonReader, resultClass);
+	}
+
+	/**
+	 * @return the response cached for a GET request, or <code>null</code>
+	 */
+	protected CachedResponse getCachedResponse(URI uri, Class<?> resultClass, Set<String> projection) {
+		ConditionalResponseCache cache = this.responseCache;
+		return (cache != null) ? cache.get(uri, resultClass, projection) : null;
+	}
+
+	/**
+	 * Creates a GET method for JSON results, which is conditional on the
+	 * validators of the response cached in memory, or else of the one cached on
+	 * disk.
+	 */
+	protected ConditionalGet createGetMethod(URI uri, Class<?> resultClass, Set<String> projection) {
+		CachedResponse cached = getCachedResponse(uri, resultClass, projection);
+		if (cached != null) {
+			return new ConditionalGet(
+					HttpMethodFactory.createConditionalGetMethod(uri, cached.getEtag(), cached.getLastModified()),
+					cached, null);
+		}
+		DiskResponseCache.Entry entry = getDiskCacheEntry(uri.toString());
+		if (entry != null && entry.hasValidators()) {
+			return new ConditionalGet(
+					HttpMethodFactory.createConditionalGetMethod(uri, entry.getEtag(), entry.getLastModified()), null,
+					entry);
+		}
+		return new ConditionalGet(HttpMethodFactory.createGetMethod(uri), null, null);
+	}
+
+	/**
+	 * Creates a GET method for a download, which is conditional on the
+	 * validators of the response cached on disk.
+	 */
+	protected ConditionalGet createGetMethodForDownload(URI uri) {
+		HttpGet method = HttpMethodFactory.createGetMethodForDownload(uri);
+		DiskResponseCache.Entry entry = getDiskCacheEntry(DOWNLOAD_KEY_PREFIX + uri);
+		if (entry == null || !entry.hasValidators()) {
+			return new ConditionalGet(method, null, null);
+		}
+		if (entry.getEtag() != null) {
+			method.addHeader(HttpHeaders.IF_NONE_MATCH, entry.getEtag());
+		}
+		if (entry.getLastModified() != null) {
+			method.addHeader(HttpHeaders.IF_MODIFIED_SINCE, entry.getLastModified());
+		}
+		return new ConditionalGet(method, null, entry);
+	}
+
+	/**
+	 * Reads the result of a GET method created by
+	 * {@link #createGetMethod(URI, Class, Set)}. A result which has not been
+	 * modified is taken from the cached response the method was created with,
+	 * even if the cache has dropped it since; a new one is put into the caches.
+	 */
+	protected <T> T readResult(ConditionalGet request, HttpResponse response, Class<T> resultClass,
+			Set<String> projection) throws IOException, RestException {
+		URI uri = request.getMethod().getURI();
+		ConditionalResponseCache cache = this.responseCache;
+		if (response.getStatusLine().getStatusCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+			if (request.cachedResponse != null) {
+				log.debug("Not modified, using cached result for " + uri);
+				if (cache != null) {
+					cache.notModified();
+				}
+				EntityUtils.consume(response.getEntity());
+				return copy(resultClass.cast(request.cachedResponse.getResult()), resultClass);
+			}
+			if (request.diskEntry != null) {
+				log.debug("Not modified, using result cached on disk for " + uri);
+				EntityUtils.consume(response.getEntity());
+				return parse(new ByteBufferInputStream(request.diskEntry.getBody()), resultClass, projection);
+			}
+		}
+		T result = readAndStoreResult(uri, response, resultClass, projection);
+		if (cache != null) {
+			cache.put(uri, resultClass, projection, getHeaderValue(response, HttpHeaders.ETAG),
+					getHeaderValue(response, HttpHeaders.LAST_MODIFIED), copy(result, resultClass));
+		}
+		return result;
+	}
+
+	/**
+	 * Copies a result through a JSON tree, which costs far less than the
+	 * request a cached result saves.
+	 */
+	private <T> T copy(T result, Class<T> resultClass) {
+		return (result != null) ? getGson().fromJson(getGson().toJsonTree(result), resultClass) : null;
+	}
+
+	/**
+	 * Parses the result while it is copied into the disk cache, if there is
+	 * one.
+	 */
+	private <T> T readAndStoreResult(URI uri, HttpResponse response, Class<T> resultClass, Set<String> projection)
+			throws IOException, RestException {
+		DiskResponseCache.Writer writer = openDiskCacheWriter(uri.toString(), response);
+		if (writer == null) {
+			return readResult(response, resultClass, projection);
+		}
+		try {
+			InputStream content = new CachingInputStream(response.getEntity().getContent(), writer);
+			T result = parse(content, resultClass, projection);
+			// Reads what the parser left over, which completes the cached body
+			IOUtils.skip(content, Long.MAX_VALUE);
+			return result;
+		} finally {
+			// No effect once the body is complete
+			writer.abort();
+		}
+	}
+
+	/**
+	 * @return writer for caching the body of the response, or
+	 *         <code>null</code> if it is not cached
+	 */
+	private DiskResponseCache.Writer openDiskCacheWriter(String key, HttpResponse response) throws IOException {
+		DiskResponseCache cache = this.diskCache;
+		if (cache == null || response.getStatusLine().getStatusCode() != HttpURLConnection.HTTP_OK) {
+			return null;
+		}
+		return cache.openWriter(key, response.getEntity().getContentLength(),
+				getHeaderValue(response, HttpHeaders.ETAG), getHeaderValue(response, HttpHeaders.LAST_MODIFIED));
+	}
+
+	/**
+	 * Checks the status of the response to a GET method created by
+	 * {@link #createGetMethodForDownload(URI)} and returns its body as stream.
+	 * A body which has not been modified is read from the disk cache. Otherwise
+	 * the body is copied into the disk cache, if there is one, while it is read.
+	 */
+	protected InputStream readContent(ConditionalGet request, HttpResponse response)
+			throws IOException, RestException {
+		if (request.diskEntry != null
+				&& response.getStatusLine().getStatusCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+			log.debug("Not modified, using download cached on disk for " + request.getMethod().getURI());
+			EntityUtils.consume(response.getEntity());
+			return new ByteBufferInputStream(request.diskEntry.getBody());
+		}
+		InputStream content = readContent(response);
+		DiskResponseCache.Writer writer = openDiskCacheWriter(DOWNLOAD_KEY_PREFIX + request.getMethod().getURI(),
+				response);
+		return (writer != null) ? new CachingInputStream(content, writer) : content;
+	}
+
+	/**
+	 * Reads the result of a POST, after dropping the responses cached on disk
+	 * which it may have changed.
+	 */
+	protected <T> T readPostResult(URI uri, HttpResponse response, Class<T> resultClass)
+			throws IOException, RestException {
+		invalidateDiskCache(uri);
+		return readResult(response, resultClass);
+	}
+
+	private static String getHeaderValue(HttpResponse response, String name) {
+		Header header = response.getFirstHeader(name);
+		return (header != null) ? header.getValue() : null;
+	}
+
+	/**
+	 * Checks the status of the response and returns its body as stream.
+	 */
+	protected InputStream readContent(HttpResponse response) throws IOException, RestException {
+		int statusCode = response.getStatusLine().getStatusCode();
+		switch (statusCode) {
+		case HttpURLConnection.HTTP_OK:
+			log.debug("Transforming result into " + InputStream.class);
+			return response.getEntity().getContent();
+		default:
+			throw createRestException(response);
+		}
+	}
+
+	/**
+	 * Checks the status of the response to a range request and returns the
+	 * requested part of its body. If the server ignored the range and sent the
+	 * complete body, the stream is skipped to the offset. If the request was
+	 * conditional on a validator which the resource no longer matches, the
+	 * complete body is returned with offset 0.
+	 *
+	 * @param validator the validator sent as <code>If-Range</code>, or
+	 *            <code>null</code>
+	 */
+	protected DownloadRange readRangeContent(HttpResponse response, long offset, long length, String validator)
+			throws IOException, RestException {
+		int statusCode = response.getStatusLine().getStatusCode();
+		String current = getValidator(response);
+		switch (statusCode) {
+		case HttpURLConnection.HTTP_PARTIAL:
+			Header contentRange = response.getFirstHeader(HttpHeaders.CONTENT_RANGE);
+			if (RangeHelper.getFirstBytePosition((contentRange != null) ? contentRange.getValue() : null) != offset) {
+				throw new IOException("Unexpected " + contentRange + " for a range starting at " + offset);
+			}
+			return new DownloadRange(response.getEntity().getContent(), offset, current);
+		case HttpURLConnection.HTTP_OK:
+			if (validator != null && !validator.equals(current)) {
+				log.debug("Resource changed from " + validator + " to " + current + ", received it completely");
+				return new DownloadRange(response.getEntity().getContent(), 0, current);
+			}
+			log.debug("Server ignored the range, skipping to " + offset);
+			return new DownloadRange(RangeHelper.slice(response.getEntity().getContent(), offset, length), offset,
+					current);
+		default:
+			throw createRestException(response);
+		}
+	}
+
+	/**
+	 * @return the <code>ETag</code> of the response unless it is weak, else its
+	 *         <code>Last-Modified</code> date, or <code>null</code>
+	 */
+	private static String getValidator(HttpResponse response) {
+		String etag = getHeaderValue(response, HttpHeaders.ETAG);
+		if (etag != null && !etag.startsWith("W/")) {
+			return etag;
+		}
+		return getHeaderValue(response, HttpHeaders.LAST_MODIFIED);
+	}
+
+	protected RestException createRestException(HttpResponse response) {
+		switch (response.getStatusLine().getStatusCode()) {
+		case HttpURLConnection.HTTP_UNAUTHORIZED:
+		case HttpURLConnection.HTTP_FORBIDDEN:
+			return createRestException(response, SecurityException.class);
+		default:
+			return createRestException(response, RestException.class);
+		}
+	}
+
+	private Map<String, String> getHeaders(HttpResponse response) {
+		Map<String, String> headers = new HashMap<>();
+		for (Header header : response.getAllHeaders()) {
+			headers.putIfAbsent(header.getName(), header.getValue());
+		}
+		return headers;
+	}
+
+	private RestException createRestException(HttpResponse response, Class<? extends RestException> exclass) {
+		StatusLine statusLine = response.getStatusLine();
+		int statusCode = statusLine.getStatusCode();
+		String reasonPhrase = statusLine.getReasonPhrase();
+		String responseBody = null;
+		HttpEntity entity = response.getEntity();
+		try {
+			if (entity != null) {
+				// Reads the body completely, which releases the connection
+				responseBody = EntityUtils.toString(entity, StandardCharsets.UTF_8);
+			}
+		} catch (IOException ioe) {
+			log.warn(("Error reading response " + response));
+		} finally {
+			EntityUtils.consumeQuietly(entity);
+		}
+		boolean hasBody = (responseBody != null);
+		String message = "Status: " + statusCode + ". Reason: " + reasonPhrase + ". Has body: " + hasBody;
+		if (exclass.equals(RestException.class))
+			return new RestException(statusCode, reasonPhrase, responseBody, message, null, getHeaders(response));
+		if (exclass.equals(SecurityException.class))
+			return new SecurityException(statusCode, reasonPhrase, message, null);
+		throw new IllegalArgumentException("Unsupported exception class " + exclass);
+	}
+
+	/**
+	 * GET method together with the cached response it revalidates.
+	 */
+	protected static final class ConditionalGet {
+
+		private final HttpGet method;
+		private final CachedResponse cachedResponse;
+		private final DiskResponseCache.Entry diskEntry;
+
+		ConditionalGet(HttpGet method, CachedResponse cachedResponse, DiskResponseCache.Entry diskEntry) {
+			this.method = method;
+			this.cachedResponse = cachedResponse;
+			this.diskEntry = diskEntry;
+		}
+
+		public HttpGet getMethod() {
+			return method;
+		}
+
+	}
+
 }
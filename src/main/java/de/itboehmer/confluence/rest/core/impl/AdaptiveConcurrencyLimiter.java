@@ -0,0 +1,283 @@
+package de.itboehmer.confluence.rest.core.impl;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.http.HttpHost;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the number of concurrent requests per host, adapting the limit to how
+ * well the host copes (additive increase, multiplicative decrease). While
+ * requests succeed and the limit is in use, it grows by about one per round
+ * trip. When a request is throttled or fails, or the latency rises beyond
+ * {@link #setLatencyTolerance(double)} times the lowest latency seen recently,
+ * the limit is multiplied by {@link #setBackoffRatio(double)}, at most once per
+ * round trip. Requests beyond the limit wait for a permit, either blocking in
+ * {@link #acquire(HttpHost)} or queued by {@link #acquireAsync(HttpHost)}.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+	private static final Logger log = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+
+	public static final int DEFAULT_INITIAL_LIMIT = 20;
+	public static final int DEFAULT_MIN_LIMIT = 1;
+	public static final int DEFAULT_MAX_LIMIT = 200;
+	public static final double DEFAULT_BACKOFF_RATIO = 0.75;
+	public static final double DEFAULT_LATENCY_TOLERANCE = 2.0;
+
+	/** Number of samples after which the latency baseline is renewed. */
+	private static final int BASELINE_WINDOW = 500;
+	/** Weight of a new sample in the smoothed latency. */
+	private static final double SMOOTHING = 0.2;
+
+	private final ConcurrentMap<HttpHost, HostLimit> limits = new ConcurrentHashMap<>();
+
+	private final int initialLimit;
+	private final int minLimit;
+	private final int maxLimit;
+	private double backoffRatio = DEFAULT_BACKOFF_RATIO;
+	private double latencyTolerance = DEFAULT_LATENCY_TOLERANCE;
+
+	public AdaptiveConcurrencyLimiter() {
+		this(DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT);
+	}
+
+	/**
+	 * @param initialLimit limit for a host not seen before
+	 * @param minLimit lowest limit; should be at least 1
+	 * @param maxLimit highest limit, e.g. the maximum number of connections per
+	 *            host
+	 */
+	public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+		this.initialLimit = initialLimit;
+		this.minLimit = Math.max(1, minLimit);
+		this.maxLimit = maxLimit;
+	}
+
+	/**
+	 * @param backoffRatio factor, between 0 and 1, the limit is multiplied with
+	 *            when the host is overloaded
+	 */
+	public void setBackoffRatio(double backoffRatio) {
+		this.backoffRatio = backoffRatio;
+	}
+
+	/**
+	 * @param latencyTolerance factor by which the smoothed latency may exceed
+	 *            the recent minimum before the host is considered overloaded
+	 */
+	public void setLatencyTolerance(double latencyTolerance) {
+		this.latencyTolerance = latencyTolerance;
+	}
+
+	/**
+	 * Waits until a request to the given host is within the limit.
+	 *
+	 * @return the permit, which must be released once the response has arrived
+	 */
+	public Permit acquire(HttpHost host) throws InterruptedIOException {
+		HostLimit limit = limits.computeIfAbsent(host, HostLimit::new);
+		try {
+			limit.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a permit for " + host);
+		}
+		return new Permit(limit);
+	}
+
+	/**
+	 * Like {@link #acquire(HttpHost)}, without blocking. Waiting requests are
+	 * granted their permits in order, on the thread releasing a permit.
+	 * Cancelling the future gives up waiting.
+	 *
+	 * @return future of the permit, which must be released once the response
+	 *         has arrived
+	 */
+	public CompletableFuture<Permit> acquireAsync(HttpHost host) {
+		return limits.computeIfAbsent(host, HostLimit::new).acquireAsync();
+	}
+
+	/**
+	 * @return current limit for the host
+	 */
+	public int getLimit(HttpHost host) {
+		HostLimit limit = limits.get(host);
+		return (limit != null) ? limit.getLimit() : initialLimit;
+	}
+
+	/**
+	 * Permission to send one request.
+	 */
+	public static class Permit {
+
+		private final HostLimit limit;
+		private final long start = System.nanoTime();
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		private Permit(HostLimit limit) {
+			this.limit = limit;
+		}
+
+		/**
+		 * Releases the permit after a response has been received.
+		 *
+		 * @param throttled whether the host rejected the request because of
+		 *            overload, e.g. with 429 or 503
+		 */
+		public void release(boolean throttled) {
+			if (released.compareAndSet(false, true)) {
+				limit.release(System.nanoTime() - start, throttled);
+			}
+		}
+
+		/**
+		 * Releases the permit after the request failed without a response.
+		 */
+		public void releaseFailed() {
+			release(true);
+		}
+
+		/**
+		 * Returns the permit of a request which has been given up before its
+		 * response arrived, without taking its latency into account.
+		 */
+		void cancel() {
+			if (released.compareAndSet(false, true)) {
+				limit.release();
+			}
+		}
+
+	}
+
+	private class HostLimit {
+
+		private final HttpHost host;
+		private final Deque<CompletableFuture<Permit>> waiting = new ArrayDeque<>();
+		private double limit = initialLimit;
+		private int inFlight;
+		private double baselineLatency = Double.MAX_VALUE;
+		private double windowMinLatency = Double.MAX_VALUE;
+		private int windowSamples;
+		private double smoothedLatency;
+		private long lastDecrease = System.nanoTime() - TimeUnit.HOURS.toNanos(1);
+
+		HostLimit(HttpHost host) {
+			this.host = host;
+		}
+
+		synchronized int getLimit() {
+			return (int) limit;
+		}
+
+		synchronized void acquire() throws InterruptedException {
+			while (inFlight >= (int) limit) {
+				wait();
+			}
+			inFlight++;
+		}
+
+		synchronized CompletableFuture<Permit> acquireAsync() {
+			if (inFlight < (int) limit) {
+				inFlight++;
+				return CompletableFuture.completedFuture(new Permit(this));
+			}
+			CompletableFuture<Permit> permit = new CompletableFuture<>();
+			waiting.add(permit);
+			return permit;
+		}
+
+		void release(long latencyNanos, boolean throttled) {
+			List<CompletableFuture<Permit>> granted;
+			synchronized (this) {
+				boolean limitWasUsed = inFlight * 2 >= limit;
+				inFlight--;
+				sample(latencyNanos);
+				if (throttled || smoothedLatency > baselineLatency * latencyTolerance) {
+					decrease(throttled);
+				} else if (limitWasUsed) {
+					limit = Math.min(maxLimit, limit + 1 / limit);
+				}
+				granted = grantWaiting();
+			}
+			complete(granted);
+		}
+
+		void release() {
+			List<CompletableFuture<Permit>> granted;
+			synchronized (this) {
+				inFlight--;
+				granted = grantWaiting();
+			}
+			complete(granted);
+		}
+
+		private List<CompletableFuture<Permit>> grantWaiting() {
+			List<CompletableFuture<Permit>> granted = new ArrayList<>();
+			while (inFlight < (int) limit && !waiting.isEmpty()) {
+				CompletableFuture<Permit> permit = waiting.poll();
+				if (!permit.isDone()) {
+					inFlight++;
+					granted.add(permit);
+				}
+			}
+			notifyAll();
+			return granted;
+		}
+
+		/**
+		 * Completes the futures outside the lock, as their callbacks send the
+		 * requests.
+		 */
+		private void complete(List<CompletableFuture<Permit>> granted) {
+			for (CompletableFuture<Permit> future : granted) {
+				Permit permit = new Permit(this);
+				if (!future.complete(permit)) {
+					// Cancelled meanwhile
+					permit.cancel();
+				}
+			}
+		}
+
+		private void sample(long latencyNanos) {
+			smoothedLatency = (smoothedLatency == 0) ? latencyNanos
+					: smoothedLatency + SMOOTHING * (latencyNanos - smoothedLatency);
+			baselineLatency = Math.min(baselineLatency, latencyNanos);
+			windowMinLatency = Math.min(windowMinLatency, latencyNanos);
+			if (++windowSamples == BASELINE_WINDOW) {
+				// Let the baseline follow lasting changes, e.g. of the network
+				baselineLatency = windowMinLatency;
+				windowMinLatency = Double.MAX_VALUE;
+				windowSamples = 0;
+			}
+		}
+
+		private void decrease(boolean throttled) {
+			long now = System.nanoTime();
+			if (now - lastDecrease < smoothedLatency) {
+				// Already reacted to this round trip
+				return;
+			}
+			lastDecrease = now;
+			double previous = limit;
+			limit = Math.max(minLimit, limit * backoffRatio);
+			if ((int) previous != (int) limit) {
+				log.debug("Reduced concurrency limit for " + host + " to " + (int) limit + " because of "
+						+ (throttled ? "throttling" : "latency of " + TimeUnit.NANOSECONDS.toMillis((long) smoothedLatency)
+								+ " ms"));
+			}
+		}
+
+	}
+
+}
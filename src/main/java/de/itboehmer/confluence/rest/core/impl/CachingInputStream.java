@@ -0,0 +1,72 @@
+package de.itboehmer.confluence.rest.core.impl;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Stream passing the bytes read on to a {@link DiskResponseCache.Writer}. The
+ * body is cached once it has been read to its end. It is discarded if reading
+ * fails, if bytes are skipped, or if the stream is closed before the end.
+ */
+class CachingInputStream extends FilterInputStream {
+
+	private final DiskResponseCache.Writer writer;
+
+	CachingInputStream(InputStream in, DiskResponseCache.Writer writer) {
+		super(in);
+		this.writer = writer;
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] single = new byte[1];
+		int count = read(single, 0, 1);
+		return (count > 0) ? (single[0] & 0xFF) : -1;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int count;
+		try {
+			count = in.read(b, off, len);
+		} catch (IOException | RuntimeException e) {
+			writer.abort();
+			throw e;
+		}
+		if (count < 0) {
+			writer.commit();
+		} else {
+			writer.write(b, off, count);
+		}
+		return count;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		writer.abort();
+		return in.skip(n);
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {
+		// Not supported
+	}
+
+	@Override
+	public synchronized void reset() throws IOException {
+		throw new IOException("Mark not supported");
+	}
+
+	@Override
+	public void close() throws IOException {
+		writer.abort();
+		in.close();
+	}
+
+}
@@ -0,0 +1,327 @@
+package de.itboehmer.confluence.rest.core.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.itboehmer.confluence.rest.core.AsyncRequestService;
+import de.itboehmer.confluence.rest.core.DownloadRange;
+import de.itboehmer.confluence.rest.core.RequestService;
+import de.itboehmer.confluence.rest.core.RestException;
+import de.itboehmer.confluence.rest.core.StreamingRequestService;
+
+/**
+ * {@link RequestService} decorator letting concurrent identical GET requests
+ * share a single call. While a GET request for a URI is in flight, further
+ * requests for the same URI and result class wait for its outcome instead of
+ * issuing their own call, and receive the same result or exception. Results
+ * are not kept after the call completed.
+ * <p>
+ * As callers may share result beans, these must not be modified. Downloads and
+ * POST requests are passed through.
+ * <p>
+ * Create it with {@link #wrap(RequestService)} to keep the capabilities of the
+ * decorated service, like streaming results and non-blocking requests.
+ */
+public class CoalescingRequestService implements RequestService {
+
+	private static final Logger log = LoggerFactory.getLogger(CoalescingRequestService.class);
+
+	private final RequestService requestService;
+	private final ConcurrentMap<CallKey, CompletableFuture<Object>> calls = new ConcurrentHashMap<>();
+	private final AtomicLong coalescedCount = new AtomicLong();
+
+	public CoalescingRequestService(RequestService requestService) {
+		Validate.notNull(requestService);
+		this.requestService = requestService;
+	}
+
+	/**
+	 * @return decorator implementing the same request service interfaces as
+	 *         the given service
+	 */
+	public static CoalescingRequestService wrap(RequestService requestService) {
+		if (requestService instanceof AsyncRequestService) {
+			return new Async((AsyncRequestService) requestService);
+		}
+		if (requestService instanceof StreamingRequestService) {
+			return new Streaming((StreamingRequestService) requestService);
+		}
+		return new CoalescingRequestService(requestService);
+	}
+
+	@Override
+	public <T> T executeGetRequest(URI uri, Class<T> resultClass) throws IOException, RestException {
+		return execute(new CallKey(uri, resultClass, null), () -> requestService.executeGetRequest(uri, resultClass));
+	}
+
+	@Override
+	public <T> T executeGetRequest(URI uri, Class<T> resultClass, Set<String> projection)
+			throws IOException, RestException {
+		return execute(new CallKey(uri, resultClass, projection),
+				() -> requestService.executeGetRequest(uri, resultClass, projection));
+	}
+
+	@Override
+	public InputStream executeGetRequestForDownload(URI uri) throws IOException, RestException {
+		return requestService.executeGetRequestForDownload(uri);
+	}
+
+	@Override
+	public InputStream executeGetRequestForDownload(URI uri, long offset, long length)
+			throws IOException, RestException {
+		return requestService.executeGetRequestForDownload(uri, offset, length);
+	}
+
+	@Override
+	public DownloadRange executeGetRequestForDownload(URI uri, long offset, long length, String validator)
+			throws IOException, RestException {
+		return requestService.executeGetRequestForDownload(uri, offset, length, validator);
+	}
+
+	@Override
+	public <T> T executePostRequest(URI uri, Object content, Class<T> resultClass) throws IOException, RestException {
+		return requestService.executePostRequest(uri, content, resultClass);
+	}
+
+	@Override
+	public <T> T executePostRequestForUpload(URI uri, InputStream inputStream, String title, String comment,
+			Class<T> resultClass) throws IOException, RestException {
+		return requestService.executePostRequestForUpload(uri, inputStream, title, comment, resultClass);
+	}
+
+	@Override
+	public <T> T executePostRequestForUpload(URI uri, Path file, String title, String comment, Class<T> resultClass)
+			throws IOException, RestException {
+		return requestService.executePostRequestForUpload(uri, file, title, comment, resultClass);
+	}
+
+	@Override
+	public <T> T executePostRequestForUpload(URI uri, byte[] data, String title, String comment,
+			Class<T> resultClass) throws IOException, RestException {
+		return requestService.executePostRequestForUpload(uri, data, title, comment, resultClass);
+	}
+
+	/**
+	 * @return number of requests which were served by a call of another request
+	 */
+	public long getCoalescedCount() {
+		return coalescedCount.get();
+	}
+
+	private <T> T execute(CallKey key, Call<T> call) throws IOException, RestException {
+		CompletableFuture<Object> created = new CompletableFuture<>();
+		CompletableFuture<Object> inFlight = calls.putIfAbsent(key, created);
+		if (inFlight != null) {
+			log.debug("Joining request in flight for " + key.uri);
+			coalescedCount.incrementAndGet();
+			return await(inFlight);
+		}
+		try {
+			T result = call.execute();
+			created.complete(result);
+			return result;
+		} catch (IOException | RestException | RuntimeException | Error e) {
+			created.completeExceptionally(e);
+			throw e;
+		} finally {
+			calls.remove(key, created);
+		}
+	}
+
+	/**
+	 * Like {@link #execute(CallKey, Call)}, without blocking. Callers joining a
+	 * call in flight get a future of their own, so cancelling it does not
+	 * affect the others.
+	 */
+	@SuppressWarnings("unchecked")
+	<T> CompletableFuture<T> executeAsync(CallKey key, Supplier<CompletableFuture<T>> call) {
+		CompletableFuture<Object> created = new CompletableFuture<>();
+		CompletableFuture<Object> inFlight = calls.putIfAbsent(key, created);
+		if (inFlight != null) {
+			log.debug("Joining request in flight for " + key.uri);
+			coalescedCount.incrementAndGet();
+			return (CompletableFuture<T>) inFlight.thenApply(Function.identity());
+		}
+		try {
+			call.get().whenComplete((result, throwable) -> {
+				calls.remove(key, created);
+				if (throwable != null) {
+					created.completeExceptionally((throwable instanceof CompletionException
+							&& throwable.getCause() != null) ? throwable.getCause() : throwable);
+				} else {
+					created.complete(result);
+				}
+			});
+		} catch (RuntimeException | Error e) {
+			calls.remove(key, created);
+			created.completeExceptionally(e);
+		}
+		return (CompletableFuture<T>) created.thenApply(Function.identity());
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T await(CompletableFuture<?> future) throws IOException, RestException {
+		try {
+			return (T) future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for request in flight");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RestException) {
+				throw (RestException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw (Error) cause;
+		}
+	}
+
+	/**
+	 * Decorator of a {@link StreamingRequestService}.
+	 */
+	public static class Streaming extends CoalescingRequestService implements StreamingRequestService {
+
+		private final StreamingRequestService streamingService;
+
+		public Streaming(StreamingRequestService requestService) {
+			super(requestService);
+			this.streamingService = requestService;
+		}
+
+		@Override
+		public <T> int executeGetRequestForResults(URI uri, Class<T> elementClass, Consumer<? super T> consumer)
+				throws IOException, RestException {
+			// Each caller has its own consumer
+			return streamingService.executeGetRequestForResults(uri, elementClass, consumer);
+		}
+
+	}
+
+	/**
+	 * Decorator of an {@link AsyncRequestService}. Synchronous and asynchronous
+	 * requests join each other's calls.
+	 */
+	public static class Async extends Streaming implements AsyncRequestService {
+
+		private final AsyncRequestService asyncService;
+
+		public Async(AsyncRequestService requestService) {
+			super(requestService);
+			this.asyncService = requestService;
+		}
+
+		@Override
+		public <T> CompletableFuture<T> executeGetRequestAsync(URI uri, Class<T> resultClass) {
+			return executeAsync(new CallKey(uri, resultClass, null),
+					() -> asyncService.executeGetRequestAsync(uri, resultClass));
+		}
+
+		@Override
+		public <T> CompletableFuture<T> executeGetRequestAsync(URI uri, Class<T> resultClass, Set<String> projection) {
+			return executeAsync(new CallKey(uri, resultClass, projection),
+					() -> asyncService.executeGetRequestAsync(uri, resultClass, projection));
+		}
+
+		@Override
+		public <T> CompletableFuture<Integer> executeGetRequestForResultsAsync(URI uri, Class<T> elementClass,
+				Consumer<? super T> consumer) {
+			// Each caller has its own consumer
+			return asyncService.executeGetRequestForResultsAsync(uri, elementClass, consumer);
+		}
+
+		@Override
+		public CompletableFuture<InputStream> executeGetRequestForDownloadAsync(URI uri) {
+			return asyncService.executeGetRequestForDownloadAsync(uri);
+		}
+
+		@Override
+		public CompletableFuture<Long> executeGetRequestForDownloadAsync(URI uri, Path target) {
+			return asyncService.executeGetRequestForDownloadAsync(uri, target);
+		}
+
+		@Override
+		public <T> CompletableFuture<T> executePostRequestAsync(URI uri, Object content, Class<T> resultClass) {
+			return asyncService.executePostRequestAsync(uri, content, resultClass);
+		}
+
+		@Override
+		public <T> CompletableFuture<T> executePostRequestForUploadAsync(URI uri, InputStream inputStream,
+				String title, String comment, Class<T> resultClass) {
+			return asyncService.executePostRequestForUploadAsync(uri, inputStream, title, comment, resultClass);
+		}
+
+		@Override
+		public <T> CompletableFuture<T> executePostRequestForUploadAsync(URI uri, Path file, String title,
+				String comment, Class<T> resultClass) {
+			return asyncService.executePostRequestForUploadAsync(uri, file, title, comment, resultClass);
+		}
+
+		@Override
+		public <T> CompletableFuture<T> executePostRequestForUploadAsync(URI uri, byte[] data, String title,
+				String comment, Class<T> resultClass) {
+			return asyncService.executePostRequestForUploadAsync(uri, data, title, comment, resultClass);
+		}
+
+	}
+
+	@FunctionalInterface
+	private interface Call<T> {
+
+		T execute() throws IOException, RestException;
+
+	}
+
+	private static class CallKey {
+
+		private final URI uri;
+		private final Class<?> resultClass;
+		/** <code>null</code> binds all members, unlike an empty projection. */
+		private final Set<String> projection;
+
+		CallKey(URI uri, Class<?> resultClass, Set<String> projection) {
+			this.uri = uri;
+			this.resultClass = resultClass;
+			this.projection = projection;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof CallKey)) {
+				return false;
+			}
+			CallKey other = (CallKey) obj;
+			return uri.equals(other.uri) && resultClass.equals(other.resultClass)
+					&& Objects.equals(projection, other.projection);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(uri, resultClass, projection);
+		}
+
+	}
+
+}
@@ -0,0 +1,148 @@
+package de.itboehmer.confluence.rest.core.impl;
+
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the deserialized results of GET requests together with their
+ * <code>ETag</code> and <code>Last-Modified</code> validators. When a request
+ * service has a cached response for a request, it sends the validators along,
+ * and on <code>304 Not Modified</code> returns the cached result without
+ * transferring or parsing the body again. The least recently used responses are
+ * dropped beyond the maximum number of entries.
+ * <p>
+ * Request services put a copy of each result into the cache, and return a copy
+ * of the cached result on <code>304 Not Modified</code>, so callers may modify
+ * the results they receive. Results taken from the cache directly are shared
+ * and must not be modified.
+ */
+public class ConditionalResponseCache {
+
+	public static final int DEFAULT_MAX_ENTRIES = 10_000;
+
+	private final Map<Key, CachedResponse> responses;
+
+	private final AtomicLong notModifiedCount = new AtomicLong();
+
+	public ConditionalResponseCache() {
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
+	public ConditionalResponseCache(int maxEntries) {
+		this.responses = new LinkedHashMap<Key, CachedResponse>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, CachedResponse> eldest) {
+				return size() > maxEntries;
+			}
+
+		};
+	}
+
+	/**
+	 * @return the cached response, or <code>null</code>
+	 */
+	public CachedResponse get(URI uri, Class<?> resultClass, Set<String> projection) {
+		synchronized (responses) {
+			return responses.get(new Key(uri, resultClass, projection));
+		}
+	}
+
+	/**
+	 * Caches a response if it carries at least one validator.
+	 */
+	public void put(URI uri, Class<?> resultClass, Set<String> projection, String etag, String lastModified,
+			Object result) {
+		Key key = new Key(uri, resultClass, projection);
+		synchronized (responses) {
+			if (etag == null && lastModified == null) {
+				responses.remove(key);
+			} else {
+				responses.put(key, new CachedResponse(etag, lastModified, result));
+			}
+		}
+	}
+
+	public int size() {
+		synchronized (responses) {
+			return responses.size();
+		}
+	}
+
+	/**
+	 * @return number of responses answered with <code>304 Not Modified</code>
+	 */
+	public long getNotModifiedCount() {
+		return notModifiedCount.get();
+	}
+
+	void notModified() {
+		notModifiedCount.incrementAndGet();
+	}
+
+	/**
+	 * Deserialized result of a GET request with its validators.
+	 */
+	public static class CachedResponse {
+
+		private final String etag;
+		private final String lastModified;
+		private final Object result;
+
+		CachedResponse(String etag, String lastModified, Object result) {
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.result = result;
+		}
+
+		public String getEtag() {
+			return etag;
+		}
+
+		public String getLastModified() {
+			return lastModified;
+		}
+
+		public Object getResult() {
+			return result;
+		}
+
+	}
+
+	private static class Key {
+
+		private final URI uri;
+		private final Class<?> resultClass;
+		/** <code>null</code> binds all members, unlike an empty projection. */
+		private final Set<String> projection;
+
+		Key(URI uri, Class<?> resultClass, Set<String> projection) {
+			this.uri = uri;
+			this.resultClass = resultClass;
+			this.projection = projection;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return uri.equals(other.uri) && resultClass.equals(other.resultClass)
+					&& Objects.equals(projection, other.projection);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(uri, resultClass, projection);
+		}
+
+	}
+
+}
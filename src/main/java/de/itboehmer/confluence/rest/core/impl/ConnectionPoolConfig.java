@@ -0,0 +1,99 @@
+package de.itboehmer.confluence.rest.core.impl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Settings for the pooled connection manager used by
+ * {@link HttpAuthRequestService}. The defaults allow for a large number of
+ * parallel requests against a single Confluence host; size
+ * {@link #setMaxPerRoute(int)} to the number of threads issuing requests.
+ */
+public class ConnectionPoolConfig {
+
+	public static final int DEFAULT_MAX_TOTAL = 200;
+	public static final int DEFAULT_MAX_PER_ROUTE = 100;
+	public static final long DEFAULT_MAX_IDLE_TIME_MILLIS = TimeUnit.SECONDS.toMillis(30);
+	public static final int DEFAULT_VALIDATE_AFTER_INACTIVITY_MILLIS = 2000;
+	public static final long DEFAULT_TIME_TO_LIVE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+	private int maxTotal = DEFAULT_MAX_TOTAL;
+	private int maxPerRoute = DEFAULT_MAX_PER_ROUTE;
+	private long maxIdleTimeMillis = DEFAULT_MAX_IDLE_TIME_MILLIS;
+	private int validateAfterInactivityMillis = DEFAULT_VALIDATE_AFTER_INACTIVITY_MILLIS;
+	private long timeToLiveMillis = DEFAULT_TIME_TO_LIVE_MILLIS;
+
+	public ConnectionPoolConfig() {
+	}
+
+	public ConnectionPoolConfig(int maxTotal, int maxPerRoute) {
+		this.maxTotal = maxTotal;
+		this.maxPerRoute = maxPerRoute;
+	}
+
+	public int getMaxTotal() {
+		return maxTotal;
+	}
+
+	/**
+	 * @param maxTotal maximum number of connections across all routes
+	 */
+	public void setMaxTotal(int maxTotal) {
+		this.maxTotal = maxTotal;
+	}
+
+	public int getMaxPerRoute() {
+		return maxPerRoute;
+	}
+
+	/**
+	 * @param maxPerRoute maximum number of connections to a single host
+	 */
+	public void setMaxPerRoute(int maxPerRoute) {
+		this.maxPerRoute = maxPerRoute;
+	}
+
+	public long getMaxIdleTimeMillis() {
+		return maxIdleTimeMillis;
+	}
+
+	/**
+	 * @param maxIdleTimeMillis idle time after which pooled connections are
+	 *            evicted by a background thread; 0 or less disables eviction
+	 */
+	public void setMaxIdleTimeMillis(long maxIdleTimeMillis) {
+		this.maxIdleTimeMillis = maxIdleTimeMillis;
+	}
+
+	public int getValidateAfterInactivityMillis() {
+		return validateAfterInactivityMillis;
+	}
+
+	/**
+	 * @param validateAfterInactivityMillis inactivity period after which a
+	 *            pooled connection is checked for staleness before being
+	 *            leased again
+	 */
+	public void setValidateAfterInactivityMillis(int validateAfterInactivityMillis) {
+		this.validateAfterInactivityMillis = validateAfterInactivityMillis;
+	}
+
+	public long getTimeToLiveMillis() {
+		return timeToLiveMillis;
+	}
+
+	/**
+	 * @param timeToLiveMillis total life time of a pooled connection; 0 or less
+	 *            keeps connections open indefinitely
+	 */
+	public void setTimeToLiveMillis(long timeToLiveMillis) {
+		this.timeToLiveMillis = timeToLiveMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "maxTotal=" + maxTotal + ", maxPerRoute=" + maxPerRoute + ", maxIdleTimeMillis=" + maxIdleTimeMillis
+				+ ", validateAfterInactivityMillis=" + validateAfterInactivityMillis + ", timeToLiveMillis="
+				+ timeToLiveMillis;
+	}
+
+}
@@ -0,0 +1,87 @@
+package de.itboehmer.confluence.rest.core.impl;
+
+/**
+ * Snapshot of the connection pool of {@link HttpAuthRequestService}. Every
+ * leased connection is expected to belong either to a request in flight or to
+ * an open download stream. Leased connections beyond that are reported as
+ * suspected leaks, e.g. download streams which were never closed. As the
+ * counters are sampled one after another, a small non-zero value may be
+ * transient; a value growing over time is not.
+ */
+public class ConnectionPoolMetrics {
+
+	private final int leased;
+	private final int available;
+	private final int pending;
+	private final int max;
+	private final int requestsInFlight;
+	private final int openDownloads;
+
+	public ConnectionPoolMetrics(int leased, int available, int pending, int max, int requestsInFlight,
+			int openDownloads) {
+		this.leased = leased;
+		this.available = available;
+		this.pending = pending;
+		this.max = max;
+		this.requestsInFlight = requestsInFlight;
+		this.openDownloads = openDownloads;
+	}
+
+	/**
+	 * @return number of connections currently handed out by the pool
+	 */
+	public int getLeased() {
+		return leased;
+	}
+
+	/**
+	 * @return number of idle connections kept by the pool
+	 */
+	public int getAvailable() {
+		return available;
+	}
+
+	/**
+	 * @return number of requests waiting for a connection
+	 */
+	public int getPending() {
+		return pending;
+	}
+
+	/**
+	 * @return maximum number of connections of the pool
+	 */
+	public int getMax() {
+		return max;
+	}
+
+	/**
+	 * @return number of requests currently executed or read
+	 */
+	public int getRequestsInFlight() {
+		return requestsInFlight;
+	}
+
+	/**
+	 * @return number of download streams which have not been closed yet
+	 */
+	public int getOpenDownloads() {
+		return openDownloads;
+	}
+
+	/**
+	 * @return number of leased connections not accounted for by requests in
+	 *         flight or open download streams
+	 */
+	public int getSuspectedLeaks() {
+		return Math.max(0, leased - requestsInFlight - openDownloads);
+	}
+
+	@Override
+	public String toString() {
+		return "ConnectionPoolMetrics [leased=" + leased + ", available=" + available + ", pending=" + pending
+				+ ", max=" + max + ", requestsInFlight=" + requestsInFlight + ", openDownloads=" + openDownloads
+				+ ", suspectedLeaks=" + getSuspectedLeaks() + "]";
+	}
+
+}
@@ -0,0 +1,731 @@
+package de.itboehmer.confluence.rest.core.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent cache of response bodies, surviving restarts of the process.
+ * <p>
+ * Bodies are appended to memory-mapped segment files of a fixed size in a
+ * directory, together with the validators of their response. An in-memory
+ * index maps each key to the location of its latest record; it is rebuilt by
+ * scanning the segments when the cache is opened. Records carry a checksum, so
+ * a record torn by a crash ends the scan of its segment. Cached bodies are
+ * returned as read-only views of the mapped files and are not copied to the
+ * heap. Bodies are written through a {@link Writer} while they are received,
+ * straight into space reserved in a segment.
+ * <p>
+ * Whenever a segment is full, a new one is started. Older segments of which
+ * less than half of the bytes are still live are compacted, i.e. their live
+ * records are copied to the new segment and the file is deleted. If the
+ * segments exceed the maximum size, the oldest ones are deleted. Records older
+ * than the maximum age are treated as missing. Records younger than the
+ * freshness period may be used without asking the server, older ones have to
+ * be revalidated.
+ */
+public class DiskResponseCache implements Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(DiskResponseCache.class);
+
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+	public static final long DEFAULT_MAX_SIZE = 1024L * 1024 * 1024;
+	public static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".dat";
+	private static final int MAGIC = 0x43524332;
+	/**
+	 * magic, record length, key length, validators length, value length,
+	 * timestamp, checksum
+	 */
+	private static final int HEADER_SIZE = 4 + 4 + 4 + 4 + 4 + 8 + 8;
+	private static final int TOMBSTONE = -1;
+	private static final double MIN_LIVE_RATIO = 0.5;
+	private static final char VALIDATOR_SEPARATOR = '\n';
+
+	private final Path directory;
+	private final int segmentSize;
+	private final long maxSize;
+	private final long maxAgeMillis;
+	private volatile long freshnessMillis;
+
+	private final ConcurrentMap<String, Location> index = new ConcurrentHashMap<>();
+	/** Segments by ascending ID, the last one is written to. */
+	private final TreeMap<Long, Segment> segments = new TreeMap<>();
+	private Segment activeSegment;
+	/** Counts removals, which discard bodies still being written. */
+	private long removals;
+
+	public DiskResponseCache(Path directory) throws IOException {
+		this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_SIZE, DEFAULT_MAX_AGE_MILLIS);
+	}
+
+	/**
+	 * Opens the cache in the given directory, reading the segments written
+	 * before.
+	 *
+	 * @param directory directory of the segment files, created if missing
+	 * @param segmentSize size of a segment file; larger bodies are not cached
+	 * @param maxSize maximum size of all segment files
+	 * @param maxAgeMillis time after which cached bodies expire
+	 */
+	public DiskResponseCache(Path directory, int segmentSize, long maxSize, long maxAgeMillis) throws IOException {
+		Validate.notNull(directory);
+		Validate.isTrue(segmentSize > HEADER_SIZE, "Segment size too small");
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.maxSize = Math.max(maxSize, segmentSize);
+		this.maxAgeMillis = maxAgeMillis;
+		Files.createDirectories(directory);
+		open();
+	}
+
+	/**
+	 * Sets the time during which cached bodies may be used without asking the
+	 * server whether they are still current. Only use a freshness period if the
+	 * content is not changed by anyone else meanwhile, e.g. for a read-only
+	 * export.
+	 *
+	 * @param freshnessMillis the period, default is 0, which revalidates every
+	 *            cached body before it is used
+	 */
+	public void setFreshnessMillis(long freshnessMillis) {
+		this.freshnessMillis = freshnessMillis;
+	}
+
+	/**
+	 * @return read-only view of the cached body, or <code>null</code> if there
+	 *         is none or it expired
+	 */
+	public ByteBuffer get(String key) {
+		Entry entry = getEntry(key);
+		return (entry != null) ? entry.getBody() : null;
+	}
+
+	/**
+	 * @return the cached body with the validators of its response, or
+	 *         <code>null</code> if there is none or it expired
+	 */
+	public Entry getEntry(String key) {
+		Location location = index.get(key);
+		if (location == null || isExpired(location.timestamp)) {
+			return null;
+		}
+		ByteBuffer buffer = location.segment.buffer.asReadOnlyBuffer();
+		buffer.position(location.offset + HEADER_SIZE + location.keyLength);
+		buffer.limit(location.valueOffset());
+		byte[] validators = new byte[location.validatorsLength];
+		buffer.get(validators);
+		buffer.limit(location.valueOffset() + location.valueLength);
+		boolean fresh = System.currentTimeMillis() - location.timestamp < freshnessMillis;
+		return new Entry(buffer.slice(), new String(validators, StandardCharsets.UTF_8), location.timestamp, fresh);
+	}
+
+	/**
+	 * Caches the body under the key, replacing a previously cached one. Bodies
+	 * larger than a segment are ignored.
+	 */
+	public synchronized void put(String key, byte[] value) throws IOException {
+		put(key, value, null, null);
+	}
+
+	/**
+	 * Caches the body with the validators of its response under the key,
+	 * replacing a previously cached one. Bodies larger than a segment are
+	 * ignored.
+	 */
+	public synchronized void put(String key, byte[] value, String etag, String lastModified) throws IOException {
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		byte[] validators = encodeValidators(etag, lastModified);
+		if (HEADER_SIZE + keyBytes.length + validators.length + (long) value.length > segmentSize) {
+			log.debug("Not caching " + key + ", " + value.length + " bytes exceed the segment size");
+			return;
+		}
+		append(keyBytes, validators, ByteBuffer.wrap(value), System.currentTimeMillis(), true);
+	}
+
+	/**
+	 * Starts caching a body which is passed to the returned writer while it is
+	 * received. Space for it is reserved in a segment right away: the given
+	 * length if it is known, else the rest of a segment which is at least half
+	 * empty. The body replaces a previously cached one once it is committed.
+	 *
+	 * @param length length of the body, or a negative value if it is unknown
+	 * @param etag the <code>ETag</code> of the response, or <code>null</code>
+	 * @param lastModified the <code>Last-Modified</code> date of the response,
+	 *            or <code>null</code>
+	 * @return the writer, or <code>null</code> if the body does not fit into a
+	 *         segment
+	 */
+	public synchronized Writer openWriter(String key, long length, String etag, String lastModified)
+			throws IOException {
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		byte[] validators = encodeValidators(etag, lastModified);
+		int fixedSize = HEADER_SIZE + keyBytes.length + validators.length;
+		long minSize = fixedSize + Math.max(0, length);
+		if (minSize > segmentSize || (length < 0 && minSize > segmentSize / 2)) {
+			log.debug("Not caching " + key + ", " + length + " bytes exceed the segment size");
+			return null;
+		}
+		ensureSpace((length >= 0) ? (int) minSize : segmentSize / 2, true);
+		Segment segment = activeSegment;
+		int position = segment.usedBytes;
+		int recordLength = (length >= 0) ? (int) minSize : segmentSize - position;
+		ByteBuffer buffer = segment.buffer.duplicate();
+		buffer.position(position + HEADER_SIZE);
+		buffer.put(keyBytes);
+		buffer.put(validators);
+		// Skipped by the scan until the record is committed
+		writeHeader(segment, position, recordLength, 0, 0, 0, 0, 0);
+		segment.usedBytes += recordLength;
+		terminate(segment);
+		segment.writers++;
+		return new Writer(segment, position, recordLength, keyBytes, validators);
+	}
+
+	/**
+	 * @return whether a body of the given length can be cached under the key
+	 */
+	public boolean fits(String key, long valueLength) {
+		return HEADER_SIZE + key.getBytes(StandardCharsets.UTF_8).length + valueLength <= segmentSize;
+	}
+
+	public synchronized void remove(String key) throws IOException {
+		removals++;
+		if (index.containsKey(key)) {
+			append(key.getBytes(StandardCharsets.UTF_8), new byte[0], null, System.currentTimeMillis(), true);
+		}
+	}
+
+	/**
+	 * Removes all bodies of which the key matches, and discards those still
+	 * being written.
+	 */
+	public synchronized void removeIf(Predicate<String> keyFilter) throws IOException {
+		removals++;
+		for (String key : new ArrayList<>(index.keySet())) {
+			if (keyFilter.test(key)) {
+				append(key.getBytes(StandardCharsets.UTF_8), new byte[0], null, System.currentTimeMillis(), true);
+			}
+		}
+	}
+
+	/**
+	 * @return number of cached bodies, including expired ones not yet dropped
+	 */
+	public int size() {
+		return index.size();
+	}
+
+	/**
+	 * @return number of segment files
+	 */
+	public synchronized int getSegmentCount() {
+		return segments.size();
+	}
+
+	/**
+	 * Writes the active segment to disk.
+	 */
+	@Override
+	public synchronized void close() {
+		if (activeSegment != null) {
+			activeSegment.buffer.force();
+		}
+	}
+
+	private boolean isExpired(long timestamp) {
+		return maxAgeMillis > 0 && System.currentTimeMillis() - timestamp > maxAgeMillis;
+	}
+
+	private static byte[] encodeValidators(String etag, String lastModified) {
+		if (etag == null && lastModified == null) {
+			return new byte[0];
+		}
+		String validators = StringUtils.defaultString(etag) + VALIDATOR_SEPARATOR
+				+ StringUtils.defaultString(lastModified);
+		return validators.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private synchronized void open() throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				try {
+					long id = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+					segments.put(id, new Segment(id, file));
+				} catch (NumberFormatException e) {
+					log.warn("Ignoring unexpected file " + file);
+				}
+			}
+		}
+		for (Segment segment : segments.values()) {
+			scan(segment);
+		}
+		if (segments.isEmpty()) {
+			roll();
+		} else {
+			activeSegment = segments.lastEntry().getValue();
+		}
+		log.info("Opened disk cache in " + directory + " with " + index.size() + " entries in " + segments.size()
+				+ " segments");
+	}
+
+	private void scan(Segment segment) {
+		ByteBuffer buffer = segment.buffer;
+		int position = 0;
+		while (position + HEADER_SIZE <= segmentSize && buffer.getInt(position) == MAGIC) {
+			int recordLength = buffer.getInt(position + 4);
+			int keyLength = buffer.getInt(position + 8);
+			int validatorsLength = buffer.getInt(position + 12);
+			int valueLength = buffer.getInt(position + 16);
+			long timestamp = buffer.getLong(position + 20);
+			long checksum = buffer.getLong(position + 28);
+			int dataLength = keyLength + validatorsLength + Math.max(0, valueLength);
+			if (keyLength < 0 || validatorsLength < 0 || valueLength < TOMBSTONE
+					|| recordLength < HEADER_SIZE + dataLength || position + recordLength > segmentSize
+					|| checksum(buffer, position + HEADER_SIZE, dataLength) != checksum) {
+				log.warn("Truncating " + segment.file + " at torn record at " + position);
+				break;
+			}
+			segment.usedBytes = position + recordLength;
+			if (keyLength == 0) {
+				// Body which was not committed
+				position += recordLength;
+				continue;
+			}
+			byte[] keyBytes = new byte[keyLength];
+			ByteBuffer keyBuffer = buffer.duplicate();
+			keyBuffer.position(position + HEADER_SIZE);
+			keyBuffer.get(keyBytes);
+			String key = new String(keyBytes, StandardCharsets.UTF_8);
+			if (valueLength == TOMBSTONE) {
+				release(index.remove(key));
+			} else {
+				Location location = new Location(segment, position, keyLength, validatorsLength, valueLength,
+						timestamp);
+				segment.liveBytes += location.recordSize();
+				release(index.put(key, location));
+			}
+			position += recordLength;
+		}
+		segment.usedBytes = position;
+	}
+
+	/**
+	 * Appends a record, or a tombstone if the value is <code>null</code>.
+	 */
+	private void append(byte[] keyBytes, byte[] validators, ByteBuffer value, long timestamp, boolean maintain)
+			throws IOException {
+		int valueLength = (value != null) ? value.remaining() : TOMBSTONE;
+		int recordLength = HEADER_SIZE + keyBytes.length + validators.length + Math.max(0, valueLength);
+		ensureSpace(recordLength, maintain);
+		Segment segment = activeSegment;
+		int position = segment.usedBytes;
+		ByteBuffer buffer = segment.buffer.duplicate();
+		buffer.position(position + HEADER_SIZE);
+		buffer.put(keyBytes);
+		buffer.put(validators);
+		if (value != null) {
+			buffer.put(value.duplicate());
+		}
+		writeHeader(segment, position, recordLength, keyBytes.length, validators.length, valueLength, timestamp,
+				checksum(segment.buffer, position + HEADER_SIZE, recordLength - HEADER_SIZE));
+		segment.usedBytes += recordLength;
+		terminate(segment);
+		String key = new String(keyBytes, StandardCharsets.UTF_8);
+		if (value == null) {
+			release(index.remove(key));
+		} else {
+			Location location = new Location(segment, position, keyBytes.length, validators.length, valueLength,
+					timestamp);
+			segment.liveBytes += location.recordSize();
+			release(index.put(key, location));
+		}
+	}
+
+	private static void writeHeader(Segment segment, int position, int recordLength, int keyLength,
+			int validatorsLength, int valueLength, long timestamp, long checksum) {
+		ByteBuffer buffer = segment.buffer.duplicate();
+		buffer.position(position);
+		buffer.putInt(MAGIC);
+		buffer.putInt(recordLength);
+		buffer.putInt(keyLength);
+		buffer.putInt(validatorsLength);
+		buffer.putInt(valueLength);
+		buffer.putLong(timestamp);
+		buffer.putLong(checksum);
+	}
+
+	private void terminate(Segment segment) {
+		if (segment.usedBytes + 4 <= segmentSize) {
+			// Ends the scan here, even if an older record was torn at this position
+			segment.buffer.putInt(segment.usedBytes, 0);
+		}
+	}
+
+	private void release(Location replaced) {
+		if (replaced != null) {
+			replaced.segment.liveBytes -= replaced.recordSize();
+		}
+	}
+
+	/**
+	 * Starts a new segment if the active one has not enough space left. If
+	 * maintaining, sparse and excess segments are cleaned up, and yet another
+	 * segment is started if the compacted records took the space.
+	 */
+	private void ensureSpace(int length, boolean maintain) throws IOException {
+		if (activeSegment.usedBytes + length <= segmentSize) {
+			return;
+		}
+		roll();
+		if (maintain) {
+			compact();
+			enforceMaxSize();
+			if (activeSegment.usedBytes + length > segmentSize) {
+				roll();
+			}
+		}
+	}
+
+	private void roll() throws IOException {
+		long id = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+		Path file = directory.resolve(SEGMENT_PREFIX + id + SEGMENT_SUFFIX);
+		Segment segment = new Segment(id, file);
+		if (activeSegment != null) {
+			activeSegment.buffer.force();
+		}
+		segments.put(id, segment);
+		activeSegment = segment;
+		log.debug("Started segment " + file);
+	}
+
+	/**
+	 * Copies the live records of sparsely used segments to the active segment
+	 * and deletes them. Segments with bodies still being written are left
+	 * alone.
+	 */
+	private void compact() throws IOException {
+		List<Segment> sparse = new ArrayList<>();
+		for (Segment segment : segments.values()) {
+			if (segment != activeSegment && segment.writers == 0
+					&& segment.liveBytes < segment.usedBytes * MIN_LIVE_RATIO) {
+				sparse.add(segment);
+			}
+		}
+		for (Segment segment : sparse) {
+			log.debug("Compacting " + segment.file + " with " + segment.liveBytes + " of " + segment.usedBytes
+					+ " bytes live");
+			for (Map.Entry<String, Location> entry : new ArrayList<>(index.entrySet())) {
+				Location location = entry.getValue();
+				if (location.segment != segment) {
+					continue;
+				}
+				if (isExpired(location.timestamp)) {
+					index.remove(entry.getKey(), location);
+					continue;
+				}
+				byte[] validators = new byte[location.validatorsLength];
+				ByteBuffer buffer = segment.buffer.duplicate();
+				buffer.position(location.offset + HEADER_SIZE + location.keyLength);
+				buffer.get(validators);
+				buffer.limit(location.valueOffset() + location.valueLength);
+				append(entry.getKey().getBytes(StandardCharsets.UTF_8), validators, buffer, location.timestamp,
+						false);
+			}
+			delete(segment);
+		}
+	}
+
+	/**
+	 * Deletes the oldest segments while the cache exceeds its maximum size.
+	 * Segments with bodies still being written are left alone.
+	 */
+	private void enforceMaxSize() {
+		List<Segment> candidates = new ArrayList<>(segments.values());
+		for (Segment oldest : candidates) {
+			if ((long) segments.size() * segmentSize <= maxSize) {
+				break;
+			}
+			if (oldest == activeSegment || oldest.writers > 0) {
+				continue;
+			}
+			log.debug("Dropping " + oldest.file + " to stay within " + maxSize + " bytes");
+			for (Iterator<Location> it = index.values().iterator(); it.hasNext();) {
+				if (it.next().segment == oldest) {
+					it.remove();
+				}
+			}
+			delete(oldest);
+		}
+	}
+
+	private void delete(Segment segment) {
+		segments.remove(segment.id);
+		try {
+			// Buffers handed out stay readable until they are garbage collected
+			Files.delete(segment.file);
+		} catch (IOException e) {
+			log.warn("Cannot delete " + segment.file + ": " + e);
+		}
+	}
+
+	private static long checksum(ByteBuffer buffer, int offset, int length) {
+		ByteBuffer data = buffer.duplicate();
+		data.position(offset);
+		data.limit(offset + length);
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		return crc.getValue();
+	}
+
+	/**
+	 * Body cached on disk, with the validators of its response.
+	 */
+	public static class Entry {
+
+		private final ByteBuffer body;
+		private final String etag;
+		private final String lastModified;
+		private final long timestamp;
+		private final boolean fresh;
+
+		Entry(ByteBuffer body, String validators, long timestamp, boolean fresh) {
+			this.body = body;
+			int separator = validators.indexOf(VALIDATOR_SEPARATOR);
+			this.etag = (separator > 0) ? validators.substring(0, separator) : null;
+			this.lastModified = (separator >= 0 && separator < validators.length() - 1)
+					? validators.substring(separator + 1) : null;
+			this.timestamp = timestamp;
+			this.fresh = fresh;
+		}
+
+		/**
+		 * @return read-only view of the body
+		 */
+		public ByteBuffer getBody() {
+			return body.duplicate();
+		}
+
+		/**
+		 * @return the <code>ETag</code> of the response, or <code>null</code>
+		 */
+		public String getEtag() {
+			return etag;
+		}
+
+		/**
+		 * @return the <code>Last-Modified</code> date of the response, or
+		 *         <code>null</code>
+		 */
+		public String getLastModified() {
+			return lastModified;
+		}
+
+		public boolean hasValidators() {
+			return etag != null || lastModified != null;
+		}
+
+		/**
+		 * @return time the body was cached, in milliseconds since the epoch
+		 */
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		/**
+		 * @return whether the body is within the freshness period, and may be
+		 *         used without revalidating it
+		 */
+		public boolean isFresh() {
+			return fresh;
+		}
+
+	}
+
+	/**
+	 * Writes a body into the space reserved for it in a segment. The body is
+	 * cached once it is committed; it is discarded if it is aborted, if it
+	 * outgrows the reserved space, or if bodies are removed from the cache
+	 * meanwhile, since it might be outdated then. Writing is not synchronized,
+	 * a writer must be used by one thread at a time.
+	 */
+	public class Writer {
+
+		private final Segment segment;
+		private final int position;
+		private final int recordLength;
+		private final byte[] keyBytes;
+		private final byte[] validators;
+		private final ByteBuffer buffer;
+		private final CRC32 crc = new CRC32();
+		private final long removalsAtStart;
+		private boolean done;
+
+		Writer(Segment segment, int position, int recordLength, byte[] keyBytes, byte[] validators) {
+			this.segment = segment;
+			this.position = position;
+			this.recordLength = recordLength;
+			this.keyBytes = keyBytes;
+			this.validators = validators;
+			this.removalsAtStart = removals;
+			int valueOffset = position + HEADER_SIZE + keyBytes.length + validators.length;
+			this.buffer = segment.buffer.duplicate();
+			this.buffer.position(valueOffset);
+			this.buffer.limit(position + recordLength);
+			this.crc.update(keyBytes);
+			this.crc.update(validators);
+		}
+
+		/**
+		 * Appends the bytes to the body.
+		 *
+		 * @return <code>false</code> if the body is no longer written, since it
+		 *         has been finished or has outgrown its space
+		 */
+		public boolean write(byte[] bytes, int offset, int length) {
+			if (done) {
+				return false;
+			}
+			if (length > buffer.remaining()) {
+				log.debug("Not caching " + new String(keyBytes, StandardCharsets.UTF_8)
+						+ ", it exceeds the reserved space");
+				abort();
+				return false;
+			}
+			buffer.put(bytes, offset, length);
+			crc.update(bytes, offset, length);
+			return true;
+		}
+
+		/**
+		 * Caches the body written so far.
+		 */
+		public void commit() {
+			synchronized (DiskResponseCache.this) {
+				if (done) {
+					return;
+				}
+				if (removals != removalsAtStart) {
+					log.debug("Not caching " + new String(keyBytes, StandardCharsets.UTF_8)
+							+ ", the cache has been invalidated meanwhile");
+					abort();
+					return;
+				}
+				done = true;
+				segment.writers--;
+				int valueLength = buffer.position() - (position + HEADER_SIZE + keyBytes.length + validators.length);
+				Location location = new Location(segment, position, keyBytes.length, validators.length, valueLength,
+						System.currentTimeMillis());
+				int length = recordLength;
+				if (isLast()) {
+					// Gives back the unused reserved space
+					length = location.recordSize();
+					segment.usedBytes = position + length;
+					terminate(segment);
+				}
+				writeHeader(segment, position, length, keyBytes.length, validators.length, valueLength,
+						location.timestamp, crc.getValue());
+				segment.liveBytes += location.recordSize();
+				release(index.put(new String(keyBytes, StandardCharsets.UTF_8), location));
+			}
+		}
+
+		/**
+		 * Discards the body, unless it has been committed.
+		 */
+		public void abort() {
+			synchronized (DiskResponseCache.this) {
+				if (done) {
+					return;
+				}
+				done = true;
+				segment.writers--;
+				if (isLast()) {
+					segment.usedBytes = position;
+					terminate(segment);
+				}
+			}
+		}
+
+		private boolean isLast() {
+			return segment == activeSegment && segment.usedBytes == position + recordLength;
+		}
+
+	}
+
+	private class Segment {
+
+		private final long id;
+		private final Path file;
+		private final MappedByteBuffer buffer;
+		private int usedBytes;
+		private long liveBytes;
+		/** Number of bodies being written into the segment */
+		private int writers;
+
+		Segment(long id, Path file) throws IOException {
+			this.id = id;
+			this.file = file;
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE)) {
+				// The mapping stays valid after the channel is closed
+				this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+			}
+		}
+
+	}
+
+	private static class Location {
+
+		private final Segment segment;
+		private final int offset;
+		private final int keyLength;
+		private final int validatorsLength;
+		private final int valueLength;
+		private final long timestamp;
+
+		Location(Segment segment, int offset, int keyLength, int validatorsLength, int valueLength, long timestamp) {
+			this.segment = segment;
+			this.offset = offset;
+			this.keyLength = keyLength;
+			this.validatorsLength = validatorsLength;
+			this.valueLength = valueLength;
+			this.timestamp = timestamp;
+		}
+
+		int valueOffset() {
+			return offset + HEADER_SIZE + keyLength + validatorsLength;
+		}
+
+		int recordSize() {
+			return HEADER_SIZE + keyLength + validatorsLength + valueLength;
+		}
+
+	}
+
+}
@@ -0,0 +1,769 @@
+package de.itboehmer.confluence.rest.core.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.AuthCache;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.auth.BasicScheme;
+import org.apache.http.impl.client.BasicAuthCache;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.conn.DefaultProxyRoutePlanner;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.ManagedNHttpClientConnectionFactory;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.client.methods.ZeroCopyConsumer;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.protocol.BasicAsyncResponseConsumer;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.itboehmer.confluence.rest.core.AsyncRequestService;
+import de.itboehmer.confluence.rest.core.DownloadRange;
+import de.itboehmer.confluence.rest.core.RequestService;
+import de.itboehmer.confluence.rest.core.RestException;
+import de.itboehmer.confluence.rest.core.impl.AdaptiveConcurrencyLimiter.Permit;
+import de.itboehmer.confluence.rest.core.util.FileHelper;
+import de.itboehmer.confluence.rest.core.util.HttpMethodFactory;
+
+/**
+ * Non-blocking {@link RequestService} implementation based on basic
+ * authentication. Requests are executed by an I/O reactor, which completes the
+ * returned futures once a response has been received. A small number of
+ * dispatcher threads can thus serve a large number of concurrent requests.
+ * <p>
+ * JSON responses are buffered in memory before they are deserialized.
+ * Compressed responses stay compressed in the buffer and are decompressed while
+ * they are parsed. Deserialization runs on a small pool of completion threads,
+ * so that the I/O dispatcher threads keep serving other connections; see
+ * {@link #setCompletionExecutor(Executor)}. Downloads and streamed results are
+ * not buffered: their bodies are filled by the I/O reactor while they are
+ * read, and a completion thread stays busy reading them.
+ */
+public class HttpAsyncAuthRequestService extends AbstractRequestService implements AsyncRequestService {
+
+	private static final Logger log = LoggerFactory.getLogger(HttpAsyncAuthRequestService.class);
+
+	private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+	private CloseableHttpAsyncClient httpclient;
+	private PoolingNHttpClientConnectionManager connectionManager;
+	private ScheduledExecutorService connectionEvictor;
+	private AuthCache authCache;
+	private Executor completionExecutor;
+	private ExecutorService defaultCompletionExecutor;
+	private AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+	public void connect(URI uri, String username, String password) throws URISyntaxException, IOException {
+		connect(uri, username, password, null);
+	}
+
+	public void connect(URI uri, String username, String password, HttpHost proxyHost)
+			throws URISyntaxException, IOException {
+		connect(uri, username, password, proxyHost, new ConnectionPoolConfig());
+	}
+
+	public void connect(URI uri, String username, String password, HttpHost proxyHost, ConnectionPoolConfig poolConfig)
+			throws URISyntaxException, IOException {
+		log.info("Setting up asynchronous REST client:");
+		// Authentication
+		log.info("  Using Basic Authentiction for user " + username);
+		HttpHost target = getHttpHost(uri);
+		log.debug("  Authentication scope is " + target);
+		CredentialsProvider credsProvider = new BasicCredentialsProvider();
+		credsProvider.setCredentials(new AuthScope(target.getHostName(), target.getPort()),
+				new UsernamePasswordCredentials(username, password));
+		this.authCache = new BasicAuthCache();
+		this.authCache.put(target, new BasicScheme());
+		// Connection pool
+		log.info("  Using connection pool: " + poolConfig);
+		this.connectionManager = createConnectionManager(poolConfig);
+		// Client
+		HttpAsyncClientBuilder clientBuilder = HttpAsyncClients.custom().setDefaultCredentialsProvider(credsProvider)
+				.setConnectionManager(this.connectionManager);
+		// Proxy
+		if (proxyHost != null) {
+			log.info("  Using proxy: " + proxyHost);
+			clientBuilder.setRoutePlanner(new DefaultProxyRoutePlanner(proxyHost));
+		} else {
+			log.info("  No proxy specified");
+		}
+		this.httpclient = clientBuilder.build();
+		this.httpclient.start();
+		startConnectionEvictor(poolConfig);
+		if (this.completionExecutor == null) {
+			this.defaultCompletionExecutor = createCompletionExecutor();
+			this.completionExecutor = this.defaultCompletionExecutor;
+		}
+	}
+
+	private static ExecutorService createCompletionExecutor() {
+		AtomicInteger threadCount = new AtomicInteger();
+		return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+			Thread thread = new Thread(runnable, "confluence-async-completion-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	private PoolingNHttpClientConnectionManager createConnectionManager(ConnectionPoolConfig poolConfig)
+			throws IOException {
+		Registry<SchemeIOSessionStrategy> registry = RegistryBuilder.<SchemeIOSessionStrategy>create()
+				.register("http", NoopIOSessionStrategy.INSTANCE)
+				.register("https", SSLIOSessionStrategy.getDefaultStrategy()).build();
+		long timeToLive = poolConfig.getTimeToLiveMillis() > 0 ? poolConfig.getTimeToLiveMillis() : -1;
+		PoolingNHttpClientConnectionManager manager = new PoolingNHttpClientConnectionManager(
+				new DefaultConnectingIOReactor(), ManagedNHttpClientConnectionFactory.INSTANCE, registry, null, null,
+				timeToLive, TimeUnit.MILLISECONDS);
+		manager.setMaxTotal(poolConfig.getMaxTotal());
+		manager.setDefaultMaxPerRoute(poolConfig.getMaxPerRoute());
+		return manager;
+	}
+
+	private void startConnectionEvictor(ConnectionPoolConfig poolConfig) {
+		long maxIdleTime = poolConfig.getMaxIdleTimeMillis();
+		if (maxIdleTime <= 0) {
+			return;
+		}
+		this.connectionEvictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "confluence-async-connection-evictor");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.connectionEvictor.scheduleWithFixedDelay(() -> {
+			this.connectionManager.closeExpiredConnections();
+			this.connectionManager.closeIdleConnections(maxIdleTime, TimeUnit.MILLISECONDS);
+		}, maxIdleTime, maxIdleTime, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Sets the executor used to check responses and deserialize their bodies,
+	 * and which completes the returned futures. Defaults to a pool with one
+	 * thread per processor, created on connect.
+	 * <p>
+	 * The executor must not run tasks on the calling thread, which is an I/O
+	 * dispatcher: while a response is deserialized there, all other connections
+	 * of the dispatcher stall, and the body of a download cannot be received at
+	 * all.
+	 */
+	public void setCompletionExecutor(Executor completionExecutor) {
+		this.completionExecutor = completionExecutor;
+	}
+
+	/**
+	 * Limits the number of concurrent requests per host adaptively. Requests
+	 * hold a permit until the response headers have arrived. Requests beyond
+	 * the limit do not block the caller: they are queued, and sent from a
+	 * completion thread once a permit is released.
+	 *
+	 * @param concurrencyLimiter the limiter, or <code>null</code> to send all
+	 *            requests right away, which is the default
+	 */
+	public void setConcurrencyLimiter(AdaptiveConcurrencyLimiter concurrencyLimiter) {
+		this.concurrencyLimiter = concurrencyLimiter;
+	}
+
+	/**
+	 * Closes the HTTP client and its I/O reactor.
+	 */
+	public void close() {
+		log.debug("Closing asynchronous HTTP client");
+		if (this.connectionEvictor != null) {
+			this.connectionEvictor.shutdownNow();
+		}
+		if (this.defaultCompletionExecutor != null) {
+			this.defaultCompletionExecutor.shutdown();
+		}
+		try {
+			this.httpclient.close();
+		} catch (IOException ex) {
+			log.error("Error closing asynchronous HTTP client", ex);
+		}
+	}
+
+	@Override
+	public <T> CompletableFuture<T> executeGetRequestAsync(URI uri, Class<T> resultClass) {
+		return executeGetRequestAsync(uri, resultClass, null);
+	}
+
+	@Override
+	public <T> CompletableFuture<T> executeGetRequestAsync(URI uri, Class<T> resultClass, Set<String> projection) {
+		try {
+			T cached = readDiskCachedResult(uri, resultClass, projection);
+			if (cached != null) {
+				return CompletableFuture.completedFuture(cached);
+			}
+		} catch (IOException | RuntimeException e) {
+			log.warn("Ignoring unreadable result cached on disk for " + uri, e);
+		}
+		log.debug("Executing request " + uri);
+		ConditionalGet request = createGetMethod(uri, resultClass, projection);
+		return execute(request.getMethod(), response -> readResult(request, response, resultClass, projection));
+	}
+
+	/**
+	 * Parses the results while they are received, on the completion executor.
+	 * Results are not cached.
+	 */
+	@Override
+	public <T> CompletableFuture<Integer> executeGetRequestForResultsAsync(URI uri, Class<T> elementClass,
+			Consumer<? super T> consumer) {
+		log.debug("Executing request " + uri + " streaming results");
+		HttpGet method = HttpMethodFactory.createGetMethod(uri);
+		return executeStreaming(method, response -> {
+			try {
+				int count = readResults(response, elementClass, consumer);
+				// Drain what the parser left over, so the connection can be reused
+				EntityUtils.consume(response.getEntity());
+				return count;
+			} catch (IOException | RestException | RuntimeException e) {
+				// Aborts the exchange rather than receiving the rest of the body
+				response.getEntity().getContent().close();
+				throw e;
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<InputStream> executeGetRequestForDownloadAsync(URI uri) {
+		InputStream cached = readDiskCachedContent(uri);
+		if (cached != null) {
+			return CompletableFuture.completedFuture(cached);
+		}
+		log.debug("Executing request " + uri);
+		ConditionalGet request = createGetMethodForDownload(uri);
+		return executeStreaming(request.getMethod(), response -> readContent(request, response));
+	}
+
+	/**
+	 * Like {@link #executeGetRequestForDownload(URI, long, long)}, without
+	 * blocking. The range is not buffered: its stream is filled by the I/O
+	 * reactor while it is read.
+	 */
+	public CompletableFuture<InputStream> executeGetRequestForDownloadAsync(URI uri, long offset, long length) {
+		return executeGetRequestForDownloadAsync(uri, offset, length, null).thenApply(DownloadRange::getContent);
+	}
+
+	/**
+	 * Like {@link #executeGetRequestForDownload(URI, long, long, String)},
+	 * without blocking. The range is not buffered: its stream is filled by the
+	 * I/O reactor while it is read.
+	 */
+	public CompletableFuture<DownloadRange> executeGetRequestForDownloadAsync(URI uri, long offset, long length,
+			String validator) {
+		log.debug("Executing request " + uri + " from byte " + offset);
+		HttpGet method = HttpMethodFactory.createGetMethodForDownload(uri, offset, length, validator);
+		return executeStreaming(method, response -> readRangeContent(response, offset, length, validator));
+	}
+
+	/**
+	 * Streams the response body from the socket into a temporary file using
+	 * {@link FileChannel#transferFrom(java.nio.channels.ReadableByteChannel, long, long)},
+	 * without buffering it in memory.
+	 */
+	@Override
+	public CompletableFuture<Long> executeGetRequestForDownloadAsync(URI uri, Path target) {
+		HttpGet method = HttpMethodFactory.createGetMethodForDownload(uri);
+		Path temp;
+		PermitConsumer<Long> consumer;
+		try {
+			InputStream cached = readDiskCachedContent(uri);
+			if (cached != null) {
+				return CompletableFuture.completedFuture(FileHelper.write(cached, target));
+			}
+			temp = FileHelper.createTempFile(target);
+			consumer = createFileConsumer(method, temp, target);
+		} catch (IOException e) {
+			return failed(e);
+		}
+		log.debug("Executing request " + uri + " into " + target);
+		CompletableFuture<Long> result = withPermit(uri, method.toString(),
+				permit -> send(method, consumer, permit));
+		result.whenComplete((size, throwable) -> {
+			try {
+				// Gone after a successful move
+				Files.deleteIfExists(temp);
+			} catch (IOException e) {
+				log.warn("Cannot delete " + temp + ": " + e);
+			}
+		});
+		return result;
+	}
+
+	private CompletableFuture<Long> send(HttpGet method, PermitConsumer<Long> consumer, Permit permit) {
+		consumer.setPermit(permit);
+		CompletableFuture<Long> result = new CompletableFuture<>();
+		Future<Long> httpFuture = this.httpclient.execute(HttpAsyncMethods.create(method), consumer, createContext(),
+				new FutureCallback<Long>() {
+
+					@Override
+					public void completed(Long size) {
+						result.complete(size);
+					}
+
+					@Override
+					public void failed(Exception ex) {
+						result.completeExceptionally(ex);
+					}
+
+					@Override
+					public void cancelled() {
+						result.cancel(false);
+					}
+				});
+		result.whenComplete((size, throwable) -> {
+			if (result.isCancelled()) {
+				httpFuture.cancel(true);
+			}
+			releaseUnanswered(permit, result);
+		});
+		return result;
+	}
+
+	@Override
+	public <T> CompletableFuture<T> executePostRequestAsync(URI uri, Object content, Class<T> resultClass) {
+		try {
+			HttpPost method = HttpMethodFactory.createPostMethod(uri, getGson(), content, isRequestCompression());
+			// Serialized here rather than on the I/O dispatcher thread, straight
+			// into a byte array without an intermediate String
+			method.setEntity(bufferEntity(method.getEntity()));
+			return execute(method, response -> readPostResult(uri, response, resultClass));
+		} catch (IOException e) {
+			return failed(e);
+		}
+	}
+
+	@Override
+	public <T> CompletableFuture<T> executePostRequestForUploadAsync(URI uri, InputStream inputStream, String title,
+			String comment, Class<T> resultClass) {
+		try {
+			HttpPost method = HttpMethodFactory.createPostMethodForUpload(uri, inputStream, title, comment);
+			// Multipart entities cannot be streamed by the I/O reactor
+			method.setEntity(bufferEntity(method.getEntity()));
+			return execute(method, response -> readPostResult(uri, response, resultClass));
+		} catch (IOException e) {
+			return failed(e);
+		}
+	}
+
+	/**
+	 * Streams the file from the file system cache to the socket, without
+	 * buffering it in memory.
+	 */
+	@Override
+	public <T> CompletableFuture<T> executePostRequestForUploadAsync(URI uri, Path file, String title, String comment,
+			Class<T> resultClass) {
+		try {
+			MultipartFileRequestProducer producer = new MultipartFileRequestProducer(uri, file, title, comment);
+			return execute(uri, producer, "POST " + uri, response -> readPostResult(uri, response, resultClass));
+		} catch (IOException e) {
+			return failed(e);
+		}
+	}
+
+	@Override
+	public <T> CompletableFuture<T> executePostRequestForUploadAsync(URI uri, byte[] data, String title,
+			String comment, Class<T> resultClass) {
+		try {
+			HttpPost method = HttpMethodFactory.createPostMethodForUpload(uri, data, title, comment);
+			// Multipart entities cannot be streamed by the I/O reactor
+			method.setEntity(bufferEntity(method.getEntity()));
+			return execute(method, response -> readPostResult(uri, response, resultClass));
+		} catch (IOException e) {
+			return failed(e);
+		}
+	}
+
+	@Override
+	public <T> T executeGetRequest(URI uri, Class<T> resultClass) throws IOException, RestException {
+		return await(executeGetRequestAsync(uri, resultClass));
+	}
+
+	@Override
+	public <T> T executeGetRequest(URI uri, Class<T> resultClass, Set<String> projection)
+			throws IOException, RestException {
+		return await(executeGetRequestAsync(uri, resultClass, projection));
+	}
+
+	@Override
+	public <T> int executeGetRequestForResults(URI uri, Class<T> elementClass, Consumer<? super T> consumer)
+			throws IOException, RestException {
+		return await(executeGetRequestForResultsAsync(uri, elementClass, consumer));
+	}
+
+	@Override
+	public InputStream executeGetRequestForDownload(URI uri) throws IOException, RestException {
+		return await(executeGetRequestForDownloadAsync(uri));
+	}
+
+	@Override
+	public InputStream executeGetRequestForDownload(URI uri, long offset, long length)
+			throws IOException, RestException {
+		return await(executeGetRequestForDownloadAsync(uri, offset, length));
+	}
+
+	@Override
+	public DownloadRange executeGetRequestForDownload(URI uri, long offset, long length, String validator)
+			throws IOException, RestException {
+		return await(executeGetRequestForDownloadAsync(uri, offset, length, validator));
+	}
+
+	@Override
+	public long executeGetRequestForDownload(URI uri, Path target) throws IOException, RestException {
+		return await(executeGetRequestForDownloadAsync(uri, target));
+	}
+
+	@Override
+	public <T> T executePostRequest(URI uri, Object content, Class<T> resultClass) throws IOException, RestException {
+		return await(executePostRequestAsync(uri, content, resultClass));
+	}
+
+	@Override
+	public <T> T executePostRequestForUpload(URI uri, InputStream inputStream, String title, String comment,
+			Class<T> resultClass) throws IOException, RestException {
+		return await(executePostRequestForUploadAsync(uri, inputStream, title, comment, resultClass));
+	}
+
+	private <T> CompletableFuture<T> execute(HttpRequestBase httpRequest, ResponseReader<T> responseReader) {
+		return withPermit(httpRequest.getURI(), httpRequest.toString(),
+				permit -> send(HttpAsyncMethods.create(httpRequest), httpRequest.toString(), responseReader, permit));
+	}
+
+	private <T> CompletableFuture<T> execute(URI uri, HttpAsyncRequestProducer requestProducer, String description,
+			ResponseReader<T> responseReader) {
+		return withPermit(uri, description, permit -> send(requestProducer, description, responseReader, permit));
+	}
+
+	private <T> CompletableFuture<T> send(HttpAsyncRequestProducer requestProducer, String description,
+			ResponseReader<T> responseReader, Permit permit) {
+		CompletableFuture<T> result = new CompletableFuture<>();
+		BasicAsyncResponseConsumer consumer = new BasicAsyncResponseConsumer() {
+
+			@Override
+			protected void onResponseReceived(HttpResponse response) throws IOException {
+				super.onResponseReceived(response);
+				release(permit, response);
+			}
+		};
+		Future<HttpResponse> httpFuture = this.httpclient.execute(requestProducer, consumer, createContext(),
+				new FutureCallback<HttpResponse>() {
+
+					@Override
+					public void completed(HttpResponse response) {
+						log.debug("Received status code " + response.getStatusLine().getStatusCode() + " from "
+								+ description);
+						try {
+							completionExecutor.execute(() -> {
+								try {
+									decodeContent(response);
+									result.complete(responseReader.read(response));
+								} catch (Exception e) {
+									result.completeExceptionally(e);
+								}
+							});
+						} catch (RuntimeException e) {
+							result.completeExceptionally(e);
+						}
+					}
+
+					@Override
+					public void failed(Exception ex) {
+						result.completeExceptionally(ex);
+					}
+
+					@Override
+					public void cancelled() {
+						result.cancel(false);
+					}
+				});
+		result.whenComplete((value, throwable) -> {
+			if (result.isCancelled()) {
+				httpFuture.cancel(true);
+			}
+			releaseUnanswered(permit, result);
+		});
+		return result;
+	}
+
+	/**
+	 * Executes the request and completes the future with the result of the
+	 * reader once the response headers have arrived. The response body is
+	 * streamed through {@link StreamingResponseConsumer}; the reader must either
+	 * return a stream which reads it, or read it completely.
+	 */
+	private <T> CompletableFuture<T> executeStreaming(HttpRequestBase httpRequest, ResponseReader<T> responseReader) {
+		return withPermit(httpRequest.getURI(), httpRequest.toString(),
+				permit -> sendStreaming(httpRequest, responseReader, permit));
+	}
+
+	private <T> CompletableFuture<T> sendStreaming(HttpRequestBase httpRequest, ResponseReader<T> responseReader,
+			Permit permit) {
+		CompletableFuture<T> result = new CompletableFuture<>();
+		StreamingResponseConsumer consumer = new StreamingResponseConsumer();
+		consumer.getHeaders().whenComplete((response, throwable) -> {
+			if (throwable != null) {
+				result.completeExceptionally(throwable);
+				return;
+			}
+			release(permit, response);
+			log.debug("Received status code " + response.getStatusLine().getStatusCode() + " from " + httpRequest);
+			try {
+				completionExecutor.execute(() -> {
+					try {
+						decodeContent(response);
+						result.complete(responseReader.read(response));
+					} catch (Exception e) {
+						EntityUtils.consumeQuietly(response.getEntity());
+						result.completeExceptionally(e);
+					}
+				});
+			} catch (RuntimeException e) {
+				EntityUtils.consumeQuietly(response.getEntity());
+				result.completeExceptionally(e);
+			}
+		});
+		Future<HttpResponse> httpFuture = this.httpclient.execute(HttpAsyncMethods.create(httpRequest), consumer,
+				createContext(), null);
+		consumer.setExchange(httpFuture);
+		result.whenComplete((value, throwable) -> {
+			if (result.isCancelled()) {
+				httpFuture.cancel(true);
+			}
+			releaseUnanswered(permit, result);
+		});
+		return result;
+	}
+
+	/**
+	 * Sends a request once the concurrency limiter, if any, grants a permit
+	 * for the host of the URI.
+	 *
+	 * @param exchange sends the request; the permit is <code>null</code>
+	 *            without limiter
+	 */
+	private <T> CompletableFuture<T> withPermit(URI uri, String description,
+			Function<Permit, CompletableFuture<T>> exchange) {
+		AdaptiveConcurrencyLimiter limiter = this.concurrencyLimiter;
+		if (limiter == null) {
+			return exchange.apply(null);
+		}
+		CompletableFuture<Permit> permit;
+		try {
+			permit = limiter.acquireAsync(getHttpHost(uri));
+		} catch (URISyntaxException e) {
+			return failed(new IOException(e));
+		}
+		if (permit.isDone()) {
+			return exchange.apply(permit.join());
+		}
+		log.debug("Waiting for a permit for " + description);
+		CompletableFuture<T> result = new CompletableFuture<>();
+		// Not sent on the thread releasing the permit, which may be an I/O
+		// dispatcher
+		permit.thenAcceptAsync(granted -> {
+			if (result.isDone()) {
+				granted.cancel();
+				return;
+			}
+			CompletableFuture<T> exchanged = exchange.apply(granted);
+			exchanged.whenComplete((value, throwable) -> {
+				if (throwable == null) {
+					result.complete(value);
+				} else {
+					result.completeExceptionally(throwable);
+				}
+			});
+			result.whenComplete((value, throwable) -> {
+				if (result.isCancelled()) {
+					exchanged.cancel(false);
+				}
+			});
+		}, this.completionExecutor).exceptionally(throwable -> {
+			// Rejected by the completion executor, or not sent
+			permit.thenAccept(Permit::cancel);
+			result.completeExceptionally(throwable);
+			return null;
+		});
+		result.whenComplete((value, throwable) -> {
+			if (result.isCancelled()) {
+				// Gives up waiting
+				permit.cancel(false);
+			}
+		});
+		return result;
+	}
+
+	private static void release(Permit permit, HttpResponse response) {
+		if (permit != null) {
+			int statusCode = response.getStatusLine().getStatusCode();
+			permit.release(statusCode == HTTP_TOO_MANY_REQUESTS || statusCode == HttpURLConnection.HTTP_UNAVAILABLE);
+		}
+	}
+
+	/**
+	 * Releases the permit of an exchange which ended without response. Has no
+	 * effect if the permit was released when the response arrived.
+	 */
+	private static void releaseUnanswered(Permit permit, CompletableFuture<?> result) {
+		if (permit == null) {
+			return;
+		}
+		if (result.isCancelled()) {
+			permit.cancel();
+		} else {
+			permit.releaseFailed();
+		}
+	}
+
+	/**
+	 * @return consumer writing the response body to the temporary file, which
+	 *         is moved to the target if the status is OK
+	 */
+	private PermitConsumer<Long> createFileConsumer(HttpGet method, Path temp, Path target)
+			throws FileNotFoundException {
+		return new PermitConsumer<Long>(temp.toFile()) {
+
+			@Override
+			protected Long process(HttpResponse response, File file, ContentType contentType) throws Exception {
+				log.debug("Received status code " + response.getStatusLine().getStatusCode() + " from " + method);
+				if (response.getStatusLine().getStatusCode() != HttpURLConnection.HTTP_OK) {
+					throw createRestException(response);
+				}
+				long size = file.length();
+				FileHelper.move(temp, target);
+				return size;
+			}
+		};
+	}
+
+	@Override
+	public <T> T executePostRequestForUpload(URI uri, Path file, String title, String comment, Class<T> resultClass)
+			throws IOException, RestException {
+		return await(executePostRequestForUploadAsync(uri, file, title, comment, resultClass));
+	}
+
+	@Override
+	public <T> T executePostRequestForUpload(URI uri, byte[] data, String title, String comment,
+			Class<T> resultClass) throws IOException, RestException {
+		return await(executePostRequestForUploadAsync(uri, data, title, comment, resultClass));
+	}
+
+	private HttpClientContext createContext() {
+		HttpClientContext context = HttpClientContext.create();
+		context.setAuthCache(this.authCache);
+		return context;
+	}
+
+	private HttpEntity bufferEntity(HttpEntity entity) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		entity.writeTo(out);
+		ByteArrayEntity buffered = new ByteArrayEntity(out.toByteArray());
+		buffered.setContentType(entity.getContentType());
+		buffered.setContentEncoding(entity.getContentEncoding());
+		return buffered;
+	}
+
+	private static <T> CompletableFuture<T> failed(Throwable throwable) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		future.completeExceptionally(throwable);
+		return future;
+	}
+
+	private static <T> T await(CompletableFuture<T> future) throws IOException, RestException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for response");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RestException) {
+				throw (RestException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * {@link ZeroCopyConsumer} releasing the permit of its request once the
+	 * response headers have arrived.
+	 */
+	private abstract static class PermitConsumer<T> extends ZeroCopyConsumer<T> {
+
+		private volatile Permit permit;
+
+		PermitConsumer(File file) throws FileNotFoundException {
+			super(file);
+		}
+
+		void setPermit(Permit permit) {
+			this.permit = permit;
+		}
+
+		@Override
+		protected void onResponseReceived(HttpResponse response) {
+			super.onResponseReceived(response);
+			release(this.permit, response);
+		}
+
+	}
+
+	@FunctionalInterface
+	private interface ResponseReader<T> {
+
+		T read(HttpResponse response) throws IOException, RestException;
+
+	}
+
+}
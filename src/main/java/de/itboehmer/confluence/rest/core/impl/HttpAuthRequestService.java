@@ -1,19 +1,21 @@
 package de.itboehmer.confluence.rest.core.impl;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URL;
+import java.nio.file.Path;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
-import org.apache.commons.io.IOUtils;
-import org.apache.http.HttpEntity;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
-import org.apache.http.StatusLine;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.AuthCache;
@@ -31,36 +33,50 @@ import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.DefaultProxyRoutePlanner;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.gson.stream.JsonReader;
-
+import de.itboehmer.confluence.rest.core.DownloadRange;
 import de.itboehmer.confluence.rest.core.RequestService;
 import de.itboehmer.confluence.rest.core.RestException;
 import de.itboehmer.confluence.rest.core.SecurityException;
+import de.itboehmer.confluence.rest.core.StreamingRequestService;
+import de.itboehmer.confluence.rest.core.impl.AdaptiveConcurrencyLimiter.Permit;
 import de.itboehmer.confluence.rest.core.util.HttpMethodFactory;
 
 /**
  * {@link RequestService} implementation based on basic authentication.
  */
-public class HttpAuthRequestService extends AbstractRequestService implements RequestService {
+public class HttpAuthRequestService extends AbstractRequestService implements StreamingRequestService {
 
 	private static final Logger log = LoggerFactory.getLogger(HttpAuthRequestService.class);
 
-	private static final String HTTP = "http";
-	private static final String HTTPS = "https";
+	private static final int HTTP_TOO_MANY_REQUESTS = 429;
 
 	private CloseableHttpClient httpclient;
+	private PoolingHttpClientConnectionManager connectionManager;
 	private HttpHost proxy;
 	private HttpClientContext clientContext;
 
+	private AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+	private final AtomicInteger requestsInFlight = new AtomicInteger();
+	private final AtomicInteger openDownloads = new AtomicInteger();
+
 	public void connect(URI uri, String username, String password) throws URISyntaxException, SecurityException {
 		connect(uri, username, password, null);
 	}
 
 	public void connect(URI uri, String username, String password, HttpHost proxyHost)
 			throws URISyntaxException, SecurityException {
+		connect(uri, username, password, proxyHost, new ConnectionPoolConfig());
+	}
+
+	public void connect(URI uri, String username, String password, HttpHost proxyHost, ConnectionPoolConfig poolConfig)
+			throws URISyntaxException, SecurityException {
 		log.info("Setting up REST client:");
 		this.proxy = proxyHost;
 		// Authentication
@@ -81,8 +97,18 @@ public class HttpAuthRequestService extends AbstractRequestService implements Re
 		// Add AuthCache to the execution context
 		this.clientContext = HttpClientContext.create();
 		this.clientContext.setAuthCache(authCache);
+		// Connection pool
+		log.info("  Using connection pool: " + poolConfig);
+		this.connectionManager = createConnectionManager(poolConfig);
 		// Client
-		HttpClientBuilder clientBuilder = HttpClients.custom().setDefaultCredentialsProvider(credsProvider);
+		HttpClientBuilder clientBuilder = HttpClients.custom().setDefaultCredentialsProvider(credsProvider)
+				.setConnectionManager(this.connectionManager);
+		// Content codings are negotiated by HttpMethodFactory and decoded in execute()
+		clientBuilder.disableContentCompression();
+		if (poolConfig.getMaxIdleTimeMillis() > 0) {
+			clientBuilder.evictExpiredConnections();
+			clientBuilder.evictIdleConnections(poolConfig.getMaxIdleTimeMillis(), TimeUnit.MILLISECONDS);
+		}
 		// Proxy
 		if (this.proxy != null) {
 			log.info("  Using proxy: " + this.proxy);
@@ -94,6 +120,37 @@ public class HttpAuthRequestService extends AbstractRequestService implements Re
 		this.httpclient = clientBuilder.build();
 	}
 
+	private PoolingHttpClientConnectionManager createConnectionManager(ConnectionPoolConfig poolConfig) {
+		long timeToLive = poolConfig.getTimeToLiveMillis() > 0 ? poolConfig.getTimeToLiveMillis() : -1;
+		PoolingHttpClientConnectionManager manager = new PoolingHttpClientConnectionManager(timeToLive,
+				TimeUnit.MILLISECONDS);
+		manager.setMaxTotal(poolConfig.getMaxTotal());
+		manager.setDefaultMaxPerRoute(poolConfig.getMaxPerRoute());
+		manager.setValidateAfterInactivity(poolConfig.getValidateAfterInactivityMillis());
+		return manager;
+	}
+
+	/**
+	 * Limits the number of concurrent requests per host adaptively. Requests
+	 * hold a permit until the response headers have arrived.
+	 *
+	 * @param concurrencyLimiter the limiter, or <code>null</code> to send all
+	 *            requests right away, which is the default
+	 */
+	public void setConcurrencyLimiter(AdaptiveConcurrencyLimiter concurrencyLimiter) {
+		this.concurrencyLimiter = concurrencyLimiter;
+	}
+
+	/**
+	 * @return current usage of the connection pool, for detecting connections
+	 *         which are never returned
+	 */
+	public ConnectionPoolMetrics getConnectionPoolMetrics() {
+		PoolStats stats = this.connectionManager.getTotalStats();
+		return new ConnectionPoolMetrics(stats.getLeased(), stats.getAvailable(), stats.getPending(),
+				stats.getMax(), requestsInFlight.get(), openDownloads.get());
+	}
+
 	/**
 	 * Closes the Confluence client and associated resources, like the HTTP client
 	 * and the {@link ExecutorService}.
@@ -107,129 +164,237 @@ public class HttpAuthRequestService extends AbstractRequestService implements Re
 		}
 	}
 
+	@Override
+	public <T> T executeGetRequest(URI uri, Class<T> resultClass) throws IOException, RestException {
+		T cached = readDiskCachedResultQuietly(uri, resultClass, null);
+		if (cached != null) {
+			return cached;
+		}
+		log.debug("Executing request " + uri);
+		return executeConditionalGetRequest(uri, resultClass, null);
+	}
+
+	@Override
+	public <T> T executeGetRequest(URI uri, Class<T> resultClass, Set<String> projection)
+			throws IOException, RestException {
+		T cached = readDiskCachedResultQuietly(uri, resultClass, projection);
+		if (cached != null) {
+			return cached;
+		}
+		log.debug("Executing request " + uri + " projecting " + projection);
+		return executeConditionalGetRequest(uri, resultClass, projection);
+	}
+
+	private <T> T executeConditionalGetRequest(URI uri, Class<T> resultClass, Set<String> projection)
+			throws IOException, RestException {
+		ConditionalGet request = createGetMethod(uri, resultClass, projection);
+		return executeRequest(request.getMethod(), response -> readResult(request, response, resultClass, projection));
+	}
+
+	private <T> T readDiskCachedResultQuietly(URI uri, Class<T> resultClass, Set<String> projection) {
+		try {
+			return readDiskCachedResult(uri, resultClass, projection);
+		} catch (IOException | RuntimeException e) {
+			log.warn("Ignoring unreadable result cached on disk for " + uri, e);
+			return null;
+		}
+	}
+
 	/**
-	 * Extract port from URL
-	 *
-	 * @param endpointUrl
-	 * @return
+	 * Executes the request and reads the result. The response is always closed:
+	 * after a complete read the connection is returned to the pool for reuse,
+	 * after a failure while reading it is discarded.
 	 */
-	private int getPort(URL endpointUrl) {
-		int port = (endpointUrl.getPort() != -1 ? endpointUrl.getPort() : endpointUrl.getDefaultPort());
-		if (port != -1) {
-			return port;
-		}
-		if (HTTPS.equals(endpointUrl.getProtocol())) {
-			return 443;
+	private <T> T executeRequest(HttpRequestBase httpRequest, ResultReader<T> resultReader)
+			throws ClientProtocolException, IOException, RestException {
+		requestsInFlight.incrementAndGet();
+		try (CloseableHttpResponse response = execute(httpRequest)) {
+			log.debug("Received status code " + response.getStatusLine().getStatusCode() + " from " + httpRequest);
+			T result = resultReader.read(response);
+			// Drain what the parser left over, so the connection can be reused
+			EntityUtils.consume(response.getEntity());
+			return result;
+		} finally {
+			requestsInFlight.decrementAndGet();
 		}
-		return 80;
 	}
 
-	private HttpHost getHttpHost(URI uri) throws URISyntaxException {
+	/**
+	 * Sends the request and returns the response, with a compressed body
+	 * decompressed while it is read.
+	 */
+	private CloseableHttpResponse execute(HttpRequestBase httpRequest) throws IOException {
+		CloseableHttpResponse response = send(httpRequest);
 		try {
-			String host = uri.getHost();
-			int port = getPort(uri.toURL());
-			String scheme = HTTP;
-			if (port == 443) {
-				scheme = HTTPS;
-			}
-			return new HttpHost(host, port, scheme);
-		} catch (MalformedURLException e) {
-			log.debug("Caught " + e + ". Transforming and throwing " + URISyntaxException.class);
-			throw new URISyntaxException(uri.toString(), "URI is not a valid URL: " + e.getMessage(), 0);
+			decodeContent(response);
+		} catch (IOException e) {
+			response.close();
+			throw e;
 		}
+		return response;
 	}
 
-	private JsonReader getJsonReader(CloseableHttpResponse response) throws IOException {
-		HttpEntity entity = response.getEntity();
-		InputStream inputStream = entity.getContent();
-		return toJsonReader(inputStream);
+	private CloseableHttpResponse send(HttpRequestBase httpRequest) throws IOException {
+		AdaptiveConcurrencyLimiter limiter = this.concurrencyLimiter;
+		if (limiter == null) {
+			return this.httpclient.execute(httpRequest, this.clientContext);
+		}
+		HttpHost host;
+		try {
+			host = getHttpHost(httpRequest.getURI());
+		} catch (URISyntaxException e) {
+			throw new IOException(e);
+		}
+		Permit permit = limiter.acquire(host);
+		try {
+			CloseableHttpResponse response = this.httpclient.execute(httpRequest, this.clientContext);
+			int statusCode = response.getStatusLine().getStatusCode();
+			permit.release(statusCode == HTTP_TOO_MANY_REQUESTS || statusCode == HttpURLConnection.HTTP_UNAVAILABLE);
+			return response;
+		} finally {
+			// No effect if the permit was released above
+			permit.releaseFailed();
+		}
 	}
 
+	/**
+	 * Parses the results while they are received. Results are not cached.
+	 */
 	@Override
-	public <T> T executeGetRequest(URI uri, Class<T> resultClass) throws IOException, RestException {
-		log.debug("Executing request " + uri);
+	public <T> int executeGetRequestForResults(URI uri, Class<T> elementClass, Consumer<? super T> consumer)
+			throws IOException, RestException {
+		log.debug("Executing request " + uri + " streaming results");
 		HttpGet httpRequest = HttpMethodFactory.createGetMethod(uri);
-		return executeRequest(httpRequest, resultClass);
-	}
-
-	private <T> T executeRequest(HttpRequestBase httpRequest, Class<T> resultClass)
-			throws ClientProtocolException, IOException, RestException {
-		CloseableHttpResponse response = this.httpclient.execute(httpRequest, this.clientContext);
-		int statusCode = response.getStatusLine().getStatusCode();
-		log.debug("Received status code " + statusCode + " from " + httpRequest);
-		switch (statusCode) {
-		case HttpURLConnection.HTTP_OK:
-			log.debug("Tranforming result into " + resultClass);
-			JsonReader jsonReader = getJsonReader(response);
-			T result = getGson().fromJson(jsonReader, resultClass);
-			httpRequest.releaseConnection();
-			return result;
-		case HttpURLConnection.HTTP_UNAUTHORIZED:
-		case HttpURLConnection.HTTP_FORBIDDEN:
-			throw createRestException(response, SecurityException.class);
-		default:
-			throw createRestException(response, RestException.class);
+		requestsInFlight.incrementAndGet();
+		try (CloseableHttpResponse response = execute(httpRequest)) {
+			int count = readResults(response, elementClass, consumer);
+			// Drain what the parser left over, so the connection can be reused
+			EntityUtils.consume(response.getEntity());
+			return count;
+		} finally {
+			requestsInFlight.decrementAndGet();
 		}
 	}
 
 	@Override
 	public InputStream executeGetRequestForDownload(URI uri) throws IOException, RestException {
+		InputStream cached = readDiskCachedContent(uri);
+		if (cached != null) {
+			return cached;
+		}
 		log.debug("Executing request " + uri);
-		HttpGet method = HttpMethodFactory.createGetMethodForDownload(uri);
-		return executeRequest(method);
+		ConditionalGet request = createGetMethodForDownload(uri);
+		return executeDownloadRequest(request.getMethod(),
+				response -> new DownloadRange(readContent(request, response), 0, null)).getContent();
+	}
+
+	@Override
+	public InputStream executeGetRequestForDownload(URI uri, long offset, long length)
+			throws IOException, RestException {
+		return executeGetRequestForDownload(uri, offset, length, null).getContent();
 	}
 
+	@Override
+	public DownloadRange executeGetRequestForDownload(URI uri, long offset, long length, String validator)
+			throws IOException, RestException {
+		log.debug("Executing request " + uri + " from byte " + offset);
+		HttpGet method = HttpMethodFactory.createGetMethodForDownload(uri, offset, length, validator);
+		return executeDownloadRequest(method, response -> readRangeContent(response, offset, length, validator));
+	}
 
-	private InputStream executeRequest(HttpGet httpRequest) throws IOException, RestException {
+	/**
+	 * Executes the request and returns the response body. The connection stays
+	 * leased until the returned stream is closed.
+	 */
+	private DownloadRange executeDownloadRequest(HttpGet httpRequest, ContentReader contentReader)
+			throws IOException, RestException {
 		log.debug("Executing request " + httpRequest);
-		CloseableHttpResponse response = this.httpclient.execute(httpRequest, this.clientContext);
-		int statusCode = response.getStatusLine().getStatusCode();
-		log.debug("Received status code " + statusCode + " from " + httpRequest);
-		switch (statusCode) {
-		case HttpURLConnection.HTTP_OK:
-			log.debug("Transforming result into " + InputStream.class);
-			return response.getEntity().getContent();
-		case HttpURLConnection.HTTP_UNAUTHORIZED:
-		case HttpURLConnection.HTTP_FORBIDDEN:
-			throw createRestException(response, SecurityException.class);
-		default:
-			throw createRestException(response, RestException.class);
+		requestsInFlight.incrementAndGet();
+		CloseableHttpResponse response = null;
+		try {
+			response = execute(httpRequest);
+			log.debug("Received status code " + response.getStatusLine().getStatusCode() + " from " + httpRequest);
+			DownloadRange range = contentReader.read(response);
+			InputStream content = new ResponseInputStream(range.getContent(), response);
+			response = null;
+			return new DownloadRange(content, range.getOffset(), range.getValidator());
+		} finally {
+			requestsInFlight.decrementAndGet();
+			if (response != null) {
+				response.close();
+			}
 		}
 	}
 
 	@Override
 	public <T> T executePostRequest(URI uri, Object content, Class<T> resultClass) throws IOException, RestException {
-		String body = getGson().toJson(content);
-		HttpPost method = HttpMethodFactory.createPostMethod(uri, body);
-		return executeRequest(method, resultClass);
+		HttpPost method = HttpMethodFactory.createPostMethod(uri, getGson(), content, isRequestCompression());
+		return executeRequest(method, response -> readPostResult(uri, response, resultClass));
 	}
 
 	@Override
 	public <T> T executePostRequestForUpload(URI uri, InputStream inputStream, String title, String comment,
 			Class<T> resultClass) throws IOException, RestException {
 		HttpPost method = HttpMethodFactory.createPostMethodForUpload(uri, inputStream, title, comment);
-		return executeRequest(method, resultClass);
+		return executeRequest(method, response -> readPostResult(uri, response, resultClass));
 	}
 
-	private RestException createRestException(HttpResponse response, Class<? extends RestException> exclass) {
-		StatusLine statusLine = response.getStatusLine();
-		int statusCode = statusLine.getStatusCode();
-		String reasonPhrase = statusLine.getReasonPhrase();
-		String responseBody = null;
-		try {
-			if (response.getEntity() != null && response.getEntity().getContent() != null) {
-				responseBody = IOUtils.toString(response.getEntity().getContent());
+	@Override
+	public <T> T executePostRequestForUpload(URI uri, Path file, String title, String comment, Class<T> resultClass)
+			throws IOException, RestException {
+		HttpPost method = HttpMethodFactory.createPostMethodForUpload(uri, file, title, comment);
+		return executeRequest(method, response -> readPostResult(uri, response, resultClass));
+	}
+
+	@Override
+	public <T> T executePostRequestForUpload(URI uri, byte[] data, String title, String comment,
+			Class<T> resultClass) throws IOException, RestException {
+		HttpPost method = HttpMethodFactory.createPostMethodForUpload(uri, data, title, comment);
+		return executeRequest(method, response -> readPostResult(uri, response, resultClass));
+	}
+
+	@FunctionalInterface
+	private interface ResultReader<T> {
+
+		T read(HttpResponse response) throws IOException, RestException;
+
+	}
+
+	@FunctionalInterface
+	private interface ContentReader {
+
+		DownloadRange read(HttpResponse response) throws IOException, RestException;
+
+	}
+
+	/**
+	 * Download stream closing its response, and with it the leased connection,
+	 * exactly once.
+	 */
+	private class ResponseInputStream extends FilterInputStream {
+
+		private final CloseableHttpResponse response;
+		private final AtomicBoolean closed = new AtomicBoolean();
+
+		ResponseInputStream(InputStream in, CloseableHttpResponse response) {
+			super(in);
+			this.response = response;
+			openDownloads.incrementAndGet();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (!closed.compareAndSet(false, true)) {
+				return;
+			}
+			openDownloads.decrementAndGet();
+			try {
+				super.close();
+			} finally {
+				response.close();
 			}
-		} catch (IOException ioe) {
-			log.warn(("Error reading response " + response));
-		}
-		boolean hasBody = (responseBody != null);
-		String message = "Status: " + statusCode + ". Reason: " + reasonPhrase + ". Has body: " + hasBody;
-		if (exclass.equals(RestException.class))
-			return new RestException(statusCode, reasonPhrase, responseBody, message, null);
-		if (exclass.equals(SecurityException.class))
-			return new SecurityException(statusCode, reasonPhrase, message, null);
-		throw new IllegalArgumentException("Unsupported exception class " + exclass);
+		}
+
 	}
 
 }
@@ -0,0 +1,167 @@
+package de.itboehmer.confluence.rest.core.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.FileContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
+import org.apache.http.protocol.HttpContext;
+
+import de.itboehmer.confluence.rest.core.util.HttpMethodFactory;
+
+/**
+ * Produces a multipart upload of a file for the I/O reactor without buffering
+ * the file in memory. The multipart framing is taken from the entity built by
+ * {@link HttpMethodFactory} for an empty file, so both upload paths send the
+ * same format. The file is transferred with
+ * {@link FileContentEncoder#transfer(FileChannel, long, long)}, i.e. from the
+ * file system cache to the socket, where the encoder supports it.
+ */
+class MultipartFileRequestProducer implements HttpAsyncRequestProducer {
+
+	private static final byte[] END_OF_HEADERS = { '\r', '\n', '\r', '\n' };
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final HttpHost target;
+	private final HttpPost request;
+	private final Path file;
+	private final long fileSize;
+	/** Framing before and after the file data. */
+	private final ByteBuffer head;
+	private final ByteBuffer tail;
+
+	private FileChannel channel;
+	private ByteBuffer buffer;
+	private long position;
+
+	MultipartFileRequestProducer(URI uri, Path file, String filename, String comment) throws IOException {
+		this.file = file;
+		this.fileSize = Files.size(file);
+		this.target = URIUtils.extractHost(uri);
+		this.request = HttpMethodFactory.createPostMethodForUpload(uri, new byte[0], filename, comment);
+		HttpEntity framing = request.getEntity();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		framing.writeTo(out);
+		byte[] bytes = out.toByteArray();
+		// The file is the first part, its data starts after the part's headers
+		int split = indexOf(bytes, END_OF_HEADERS) + END_OF_HEADERS.length;
+		this.head = ByteBuffer.wrap(bytes, 0, split).slice();
+		this.tail = ByteBuffer.wrap(bytes, split, bytes.length - split).slice();
+		BasicHttpEntity entity = new BasicHttpEntity();
+		entity.setContentLength(bytes.length + fileSize);
+		entity.setContentType(framing.getContentType());
+		request.setEntity(entity);
+	}
+
+	@Override
+	public HttpHost getTarget() {
+		return target;
+	}
+
+	@Override
+	public HttpRequest generateRequest() {
+		return request;
+	}
+
+	@Override
+	public void produceContent(ContentEncoder encoder, IOControl ioctrl) throws IOException {
+		if (head.hasRemaining()) {
+			encoder.write(head);
+			if (head.hasRemaining()) {
+				return;
+			}
+		}
+		if (position < fileSize) {
+			if (channel == null) {
+				channel = FileChannel.open(file, StandardOpenOption.READ);
+			}
+			position += write(encoder);
+			if (position < fileSize) {
+				return;
+			}
+		}
+		if (tail.hasRemaining()) {
+			encoder.write(tail);
+			if (tail.hasRemaining()) {
+				return;
+			}
+		}
+		encoder.complete();
+	}
+
+	private long write(ContentEncoder encoder) throws IOException {
+		long remaining = fileSize - position;
+		if (encoder instanceof FileContentEncoder) {
+			return ((FileContentEncoder) encoder).transfer(channel, position, remaining);
+		}
+		// E.g. TLS, where the data has to pass through the encryption
+		if (buffer == null) {
+			buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		}
+		buffer.clear();
+		if (remaining < buffer.capacity()) {
+			buffer.limit((int) remaining);
+		}
+		if (channel.read(buffer, position) < 0) {
+			throw new IOException(file + " was truncated during the upload");
+		}
+		buffer.flip();
+		// Bytes not taken by the encoder are read again next time
+		return encoder.write(buffer);
+	}
+
+	@Override
+	public void requestCompleted(HttpContext context) {
+	}
+
+	@Override
+	public void failed(Exception ex) {
+	}
+
+	@Override
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	@Override
+	public void resetRequest() throws IOException {
+		head.rewind();
+		tail.rewind();
+		position = 0;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (channel != null) {
+			channel.close();
+			channel = null;
+		}
+	}
+
+	private static int indexOf(byte[] bytes, byte[] pattern) {
+		outer: for (int i = 0; i <= bytes.length - pattern.length; i++) {
+			for (int j = 0; j < pattern.length; j++) {
+				if (bytes[i + j] != pattern[j]) {
+					continue outer;
+				}
+			}
+			return i;
+		}
+		throw new IllegalStateException("Unexpected multipart framing");
+	}
+
+}
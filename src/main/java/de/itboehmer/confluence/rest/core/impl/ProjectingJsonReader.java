@@ -0,0 +1,166 @@
+package de.itboehmer.confluence.rest.core.impl;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * {@link JsonReader} hiding all object members which are not part of a
+ * projection. Hidden members are skipped at the token level, so neither their
+ * values nor any beans for them are created.
+ * <p>
+ * A projection is a set of dot separated property paths, like
+ * <code>title</code> or <code>version.number</code>, relative to the top level
+ * object. Arrays do not add a path segment, i.e. <code>results.title</code>
+ * selects the title of every entry of the <code>results</code> array. A member
+ * is kept if its path is part of the projection, is on the way to such a path,
+ * or is below such a path.
+ * <p>
+ * Objects bound to a <code>Map</code> are not supported, since Gson reads their
+ * keys bypassing the public API of the reader.
+ */
+class ProjectingJsonReader extends JsonReader {
+
+	private final Set<String> projection;
+	private final Set<String> parents = new HashSet<>();
+
+	/** Paths of the open objects and arrays. */
+	private final Deque<Scope> scopes = new ArrayDeque<>();
+	/** Name of the next member of the current object, already read ahead. */
+	private String pendingName;
+	/** Name of the member whose value is read next. */
+	private String currentName;
+
+	ProjectingJsonReader(Reader in, Set<String> projection) {
+		super(in);
+		this.projection = projection;
+		for (String path : projection) {
+			for (int i = path.indexOf('.'); i != -1; i = path.indexOf('.', i + 1)) {
+				parents.add(path.substring(0, i));
+			}
+		}
+	}
+
+	@Override
+	public void beginObject() throws IOException {
+		String path = valuePath();
+		super.beginObject();
+		scopes.push(new Scope(path, false));
+	}
+
+	@Override
+	public void endObject() throws IOException {
+		super.endObject();
+		scopes.pop();
+	}
+
+	@Override
+	public void beginArray() throws IOException {
+		String path = valuePath();
+		super.beginArray();
+		scopes.push(new Scope(path, true));
+	}
+
+	@Override
+	public void endArray() throws IOException {
+		super.endArray();
+		scopes.pop();
+	}
+
+	@Override
+	public boolean hasNext() throws IOException {
+		skipHiddenMembers();
+		return pendingName != null || super.hasNext();
+	}
+
+	@Override
+	public JsonToken peek() throws IOException {
+		skipHiddenMembers();
+		return pendingName != null ? JsonToken.NAME : super.peek();
+	}
+
+	@Override
+	public String nextName() throws IOException {
+		skipHiddenMembers();
+		if (pendingName == null) {
+			// Let the underlying reader report the unexpected token
+			currentName = super.nextName();
+		} else {
+			currentName = pendingName;
+			pendingName = null;
+		}
+		return currentName;
+	}
+
+	@Override
+	public void skipValue() throws IOException {
+		if (pendingName != null) {
+			// Skipping a name skips the member
+			pendingName = null;
+		}
+		super.skipValue();
+	}
+
+	private void skipHiddenMembers() throws IOException {
+		Scope scope = scopes.peek();
+		if (scope == null || scope.array) {
+			return;
+		}
+		while (pendingName == null && super.peek() == JsonToken.NAME) {
+			String name = super.nextName();
+			if (isKept(scope.child(name))) {
+				pendingName = name;
+			} else {
+				super.skipValue();
+			}
+		}
+	}
+
+	private String valuePath() {
+		Scope scope = scopes.peek();
+		if (scope == null) {
+			return "";
+		}
+		return scope.array ? scope.path : scope.child(currentName);
+	}
+
+	private boolean isKept(String path) {
+		if (parents.contains(path)) {
+			return true;
+		}
+		for (String p = path; p != null; p = parent(p)) {
+			if (projection.contains(p)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String parent(String path) {
+		int index = path.lastIndexOf('.');
+		return index != -1 ? path.substring(0, index) : null;
+	}
+
+	private static class Scope {
+
+		private final String path;
+		private final boolean array;
+
+		Scope(String path, boolean array) {
+			this.path = path;
+			this.array = array;
+		}
+
+		String child(String name) {
+			return path.isEmpty() ? name : path + "." + name;
+		}
+
+	}
+
+}
@@ -0,0 +1,172 @@
+package de.itboehmer.confluence.rest.core.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Settings for {@link RetryingRequestService}. A failed request is retried up
+ * to {@link #getMaxAttempts()} attempts in total, waiting for an exponentially
+ * growing, jittered backoff in between, unless the server tells how long to
+ * wait. Retries are additionally limited by a budget shared by all requests:
+ * every request earns {@link #getRetryBudgetRatio()} retries, and every retry
+ * spends one. This stops retries from multiplying the load on a server which
+ * is already overloaded.
+ */
+public class RetryPolicy {
+
+	public static final int DEFAULT_MAX_ATTEMPTS = 5;
+	public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 500;
+	public static final long DEFAULT_MAX_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(30);
+	public static final double DEFAULT_BACKOFF_MULTIPLIER = 2.0;
+	public static final double DEFAULT_JITTER = 0.5;
+	public static final long DEFAULT_MAX_RETRY_AFTER_MILLIS = TimeUnit.MINUTES.toMillis(2);
+	public static final double DEFAULT_RETRY_BUDGET_RATIO = 0.2;
+	public static final int DEFAULT_MAX_RETRY_BUDGET = 20;
+	public static final int DEFAULT_MAX_REPLAY_BYTES = 8 * 1024 * 1024;
+
+	private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+	private long initialBackoffMillis = DEFAULT_INITIAL_BACKOFF_MILLIS;
+	private long maxBackoffMillis = DEFAULT_MAX_BACKOFF_MILLIS;
+	private double backoffMultiplier = DEFAULT_BACKOFF_MULTIPLIER;
+	private double jitter = DEFAULT_JITTER;
+	private long maxRetryAfterMillis = DEFAULT_MAX_RETRY_AFTER_MILLIS;
+	private double retryBudgetRatio = DEFAULT_RETRY_BUDGET_RATIO;
+	private int maxRetryBudget = DEFAULT_MAX_RETRY_BUDGET;
+	private int maxReplayBytes = DEFAULT_MAX_REPLAY_BYTES;
+	private Set<Integer> retryableStatusCodes = new HashSet<>(Arrays.asList(429, 503));
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * @param maxAttempts maximum number of attempts per request, including the
+	 *            first one; 1 disables retries
+	 */
+	public void setMaxAttempts(int maxAttempts) {
+		this.maxAttempts = maxAttempts;
+	}
+
+	public long getInitialBackoffMillis() {
+		return initialBackoffMillis;
+	}
+
+	/**
+	 * @param initialBackoffMillis backoff before the first retry
+	 */
+	public void setInitialBackoffMillis(long initialBackoffMillis) {
+		this.initialBackoffMillis = initialBackoffMillis;
+	}
+
+	public long getMaxBackoffMillis() {
+		return maxBackoffMillis;
+	}
+
+	/**
+	 * @param maxBackoffMillis upper limit of the exponential backoff
+	 */
+	public void setMaxBackoffMillis(long maxBackoffMillis) {
+		this.maxBackoffMillis = maxBackoffMillis;
+	}
+
+	public double getBackoffMultiplier() {
+		return backoffMultiplier;
+	}
+
+	/**
+	 * @param backoffMultiplier factor the backoff grows by with every retry
+	 */
+	public void setBackoffMultiplier(double backoffMultiplier) {
+		this.backoffMultiplier = backoffMultiplier;
+	}
+
+	public double getJitter() {
+		return jitter;
+	}
+
+	/**
+	 * @param jitter share of the backoff, between 0 and 1, which is randomized
+	 *            so that clients throttled at the same time do not retry at the
+	 *            same time
+	 */
+	public void setJitter(double jitter) {
+		this.jitter = jitter;
+	}
+
+	public long getMaxRetryAfterMillis() {
+		return maxRetryAfterMillis;
+	}
+
+	/**
+	 * @param maxRetryAfterMillis longest wait requested by the server through
+	 *            <code>Retry-After</code> or <code>X-RateLimit-Reset</code>
+	 *            which is honored; requests asked to wait longer fail
+	 */
+	public void setMaxRetryAfterMillis(long maxRetryAfterMillis) {
+		this.maxRetryAfterMillis = maxRetryAfterMillis;
+	}
+
+	public double getRetryBudgetRatio() {
+		return retryBudgetRatio;
+	}
+
+	/**
+	 * @param retryBudgetRatio retries earned by every request, e.g. 0.2 allows
+	 *            one retry per five requests in the long run
+	 */
+	public void setRetryBudgetRatio(double retryBudgetRatio) {
+		this.retryBudgetRatio = retryBudgetRatio;
+	}
+
+	public int getMaxRetryBudget() {
+		return maxRetryBudget;
+	}
+
+	/**
+	 * @param maxRetryBudget number of retries the budget can save up; it starts
+	 *            out full
+	 */
+	public void setMaxRetryBudget(int maxRetryBudget) {
+		this.maxRetryBudget = maxRetryBudget;
+	}
+
+	public int getMaxReplayBytes() {
+		return maxReplayBytes;
+	}
+
+	/**
+	 * @param maxReplayBytes read limit passed to {@link java.io.InputStream#mark(int)}
+	 *            for uploads from a stream; streams like
+	 *            {@link java.io.BufferedInputStream} keep up to this many bytes
+	 *            in memory to replay them, and longer uploads are not retried
+	 */
+	public void setMaxReplayBytes(int maxReplayBytes) {
+		this.maxReplayBytes = maxReplayBytes;
+	}
+
+	public Set<Integer> getRetryableStatusCodes() {
+		return Collections.unmodifiableSet(retryableStatusCodes);
+	}
+
+	/**
+	 * @param retryableStatusCodes status codes signalling that the server did
+	 *            not process the request and it can be repeated, by default 429
+	 *            and 503
+	 */
+	public void setRetryableStatusCodes(Set<Integer> retryableStatusCodes) {
+		this.retryableStatusCodes = new HashSet<>(retryableStatusCodes);
+	}
+
+	@Override
+	public String toString() {
+		return "maxAttempts=" + maxAttempts + ", initialBackoffMillis=" + initialBackoffMillis + ", maxBackoffMillis="
+				+ maxBackoffMillis + ", backoffMultiplier=" + backoffMultiplier + ", jitter=" + jitter
+				+ ", maxRetryAfterMillis=" + maxRetryAfterMillis + ", retryBudgetRatio=" + retryBudgetRatio
+				+ ", maxRetryBudget=" + maxRetryBudget + ", maxReplayBytes=" + maxReplayBytes + ", retryableStatusCodes="
+				+ retryableStatusCodes;
+	}
+
+}
@@ -0,0 +1,554 @@
+package de.itboehmer.confluence.rest.core.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.lang3.Validate;
+import org.apache.http.client.utils.DateUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.itboehmer.confluence.rest.core.AsyncRequestService;
+import de.itboehmer.confluence.rest.core.DownloadRange;
+import de.itboehmer.confluence.rest.core.RequestService;
+import de.itboehmer.confluence.rest.core.RestException;
+import de.itboehmer.confluence.rest.core.StreamingRequestService;
+
+/**
+ * {@link RequestService} decorator retrying requests which were throttled or
+ * failed temporarily, according to a {@link RetryPolicy}.
+ * <p>
+ * GET requests are idempotent and retried after an {@link IOException} as well
+ * as after a response with one of the retryable status codes. POST requests are
+ * only retried after such a response, since the server did not process them
+ * then; after an {@link IOException} it is unknown whether the server did.
+ * Uploads from a stream are only retried if it supports
+ * {@link InputStream#mark(int)} and no more than
+ * {@link RetryPolicy#getMaxReplayBytes()} have been read, so that it can be
+ * replayed; uploads of files and byte arrays can always be replayed.
+ * <p>
+ * The time to wait is taken from the <code>Retry-After</code> header, or from
+ * <code>X-RateLimit-Reset</code> if <code>X-RateLimit-Remaining</code> is 0.
+ * Otherwise an exponential backoff with jitter is used.
+ * <p>
+ * Create it with {@link #wrap(RequestService, RetryPolicy)} to keep the
+ * capabilities of the decorated service, like streaming results and
+ * non-blocking requests.
+ */
+public class RetryingRequestService implements RequestService {
+
+	private static final Logger log = LoggerFactory.getLogger(RetryingRequestService.class);
+
+	private static final String RETRY_AFTER = "Retry-After";
+	private static final String RATE_LIMIT_REMAINING = "X-RateLimit-Remaining";
+	private static final String RATE_LIMIT_RESET = "X-RateLimit-Reset";
+
+	private final RequestService requestService;
+	private final RetryPolicy policy;
+	private final RetryBudget budget;
+
+	public RetryingRequestService(RequestService requestService) {
+		this(requestService, new RetryPolicy());
+	}
+
+	public RetryingRequestService(RequestService requestService, RetryPolicy policy) {
+		Validate.notNull(requestService);
+		Validate.notNull(policy);
+		this.requestService = requestService;
+		this.policy = policy;
+		this.budget = new RetryBudget(policy.getRetryBudgetRatio(), policy.getMaxRetryBudget());
+	}
+
+	/**
+	 * @return decorator implementing the same request service interfaces as
+	 *         the given service
+	 */
+	public static RetryingRequestService wrap(RequestService requestService, RetryPolicy policy) {
+		if (requestService instanceof AsyncRequestService) {
+			return new Async((AsyncRequestService) requestService, policy);
+		}
+		if (requestService instanceof StreamingRequestService) {
+			return new Streaming((StreamingRequestService) requestService, policy);
+		}
+		return new RetryingRequestService(requestService, policy);
+	}
+
+	@Override
+	public <T> T executeGetRequest(URI uri, Class<T> resultClass) throws IOException, RestException {
+		return execute("GET " + uri, () -> requestService.executeGetRequest(uri, resultClass), true, null);
+	}
+
+	@Override
+	public <T> T executeGetRequest(URI uri, Class<T> resultClass, Set<String> projection)
+			throws IOException, RestException {
+		return execute("GET " + uri, () -> requestService.executeGetRequest(uri, resultClass, projection), true,
+				null);
+	}
+
+	@Override
+	public InputStream executeGetRequestForDownload(URI uri) throws IOException, RestException {
+		return execute("GET " + uri, () -> requestService.executeGetRequestForDownload(uri), true, null);
+	}
+
+	@Override
+	public InputStream executeGetRequestForDownload(URI uri, long offset, long length)
+			throws IOException, RestException {
+		return execute("GET " + uri, () -> requestService.executeGetRequestForDownload(uri, offset, length), true,
+				null);
+	}
+
+	@Override
+	public DownloadRange executeGetRequestForDownload(URI uri, long offset, long length, String validator)
+			throws IOException, RestException {
+		return execute("GET " + uri,
+				() -> requestService.executeGetRequestForDownload(uri, offset, length, validator), true, null);
+	}
+
+	@Override
+	public <T> T executePostRequest(URI uri, Object content, Class<T> resultClass) throws IOException, RestException {
+		return execute("POST " + uri, () -> requestService.executePostRequest(uri, content, resultClass), false,
+				null);
+	}
+
+	@Override
+	public <T> T executePostRequestForUpload(URI uri, InputStream inputStream, String title, String comment,
+			Class<T> resultClass) throws IOException, RestException {
+		if (!inputStream.markSupported()) {
+			log.debug("Upload stream cannot be replayed, not retrying POST " + uri);
+			return requestService.executePostRequestForUpload(uri, inputStream, title, comment, resultClass);
+		}
+		inputStream.mark(policy.getMaxReplayBytes());
+		try {
+			// Upload bodies close their stream once written, which would prevent a reset
+			return execute("POST " + uri, () -> requestService.executePostRequestForUpload(uri,
+					new CloseShieldInputStream(inputStream), title, comment, resultClass), false, inputStream::reset);
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	@Override
+	public <T> T executePostRequestForUpload(URI uri, Path file, String title, String comment, Class<T> resultClass)
+			throws IOException, RestException {
+		return execute("POST " + uri,
+				() -> requestService.executePostRequestForUpload(uri, file, title, comment, resultClass), false, null);
+	}
+
+	@Override
+	public <T> T executePostRequestForUpload(URI uri, byte[] data, String title, String comment,
+			Class<T> resultClass) throws IOException, RestException {
+		return execute("POST " + uri,
+				() -> requestService.executePostRequestForUpload(uri, data, title, comment, resultClass), false, null);
+	}
+
+	<T> T execute(String description, Attempt<T> attempt, boolean idempotent, Replay replay)
+			throws IOException, RestException {
+		budget.deposit();
+		for (int attemptNumber = 1;; attemptNumber++) {
+			try {
+				return attempt.execute();
+			} catch (IOException | RestException e) {
+				long delayMillis = getRetryDelayMillis(description, attemptNumber, e, idempotent);
+				if (delayMillis < 0) {
+					throw e;
+				}
+				sleep(delayMillis);
+				if (replay != null) {
+					try {
+						replay.prepare();
+					} catch (IOException replayFailure) {
+						log.warn("Cannot replay " + description + ": " + replayFailure);
+						throw e;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Like {@link #execute(String, Attempt, boolean, Replay)}, but waits for the
+	 * next attempt on the scheduler instead of blocking.
+	 */
+	<T> CompletableFuture<T> executeAsync(String description, AsyncAttempt<T> attempt, boolean idempotent,
+			Replay replay) {
+		budget.deposit();
+		CompletableFuture<T> result = new CompletableFuture<>();
+		executeAsync(description, attempt, idempotent, replay, 1, result);
+		return result;
+	}
+
+	private <T> void executeAsync(String description, AsyncAttempt<T> attempt, boolean idempotent, Replay replay,
+			int attemptNumber, CompletableFuture<T> result) {
+		CompletableFuture<T> future;
+		try {
+			future = attempt.execute();
+		} catch (RuntimeException e) {
+			result.completeExceptionally(e);
+			return;
+		}
+		result.whenComplete((value, throwable) -> {
+			if (result.isCancelled()) {
+				future.cancel(true);
+			}
+		});
+		future.whenComplete((value, throwable) -> {
+			if (throwable == null) {
+				result.complete(value);
+				return;
+			}
+			Throwable failure = (throwable instanceof CompletionException && throwable.getCause() != null)
+					? throwable.getCause() : throwable;
+			long delayMillis = (failure instanceof IOException || failure instanceof RestException)
+					? getRetryDelayMillis(description, attemptNumber, (Exception) failure, idempotent) : -1;
+			if (delayMillis < 0 || result.isDone()) {
+				result.completeExceptionally(failure);
+				return;
+			}
+			Async.SCHEDULER.schedule(() -> {
+				if (replay != null) {
+					try {
+						replay.prepare();
+					} catch (IOException replayFailure) {
+						log.warn("Cannot replay " + description + ": " + replayFailure);
+						result.completeExceptionally(failure);
+						return;
+					}
+				}
+				executeAsync(description, attempt, idempotent, replay, attemptNumber + 1, result);
+			}, delayMillis, TimeUnit.MILLISECONDS);
+		});
+	}
+
+	/**
+	 * Decides whether to retry after a failed attempt, and spends a retry of the
+	 * budget if so.
+	 *
+	 * @param failure an {@link IOException} or a {@link RestException}
+	 * @return the time to wait before the next attempt, or -1 to give up
+	 */
+	private long getRetryDelayMillis(String description, int attemptNumber, Exception failure, boolean idempotent) {
+		long delayMillis;
+		if (failure instanceof RestException) {
+			RestException exception = (RestException) failure;
+			if (!policy.getRetryableStatusCodes().contains(exception.getStatusCode())) {
+				return -1;
+			}
+			delayMillis = getDelayMillis(attemptNumber, exception);
+		} else {
+			if (!idempotent || isInterruption((IOException) failure)) {
+				return -1;
+			}
+			delayMillis = getDelayMillis(attemptNumber, null);
+		}
+		if (attemptNumber >= policy.getMaxAttempts()) {
+			log.warn("Giving up " + description + " after " + attemptNumber + " attempts");
+			return -1;
+		}
+		if (delayMillis < 0) {
+			log.warn("Giving up " + description + ", server asked to wait longer than "
+					+ policy.getMaxRetryAfterMillis() + " ms");
+			return -1;
+		}
+		if (!budget.withdraw()) {
+			log.warn("Giving up " + description + ", retry budget exhausted");
+			return -1;
+		}
+		log.info("Retrying " + description + " in " + delayMillis + " ms after attempt " + attemptNumber
+				+ " failed: " + failure.getMessage());
+		return delayMillis;
+	}
+
+	/**
+	 * Computes the time to wait before the next attempt.
+	 *
+	 * @param attemptNumber number of the failed attempt, starting with 1
+	 * @param exception the failure of the attempt, or <code>null</code> if no
+	 *            response was received
+	 * @return the time to wait, or -1 if the server asked to wait longer than
+	 *         the policy allows
+	 */
+	long getDelayMillis(int attemptNumber, RestException exception) {
+		long serverDelay = (exception != null) ? getServerDelayMillis(exception) : -1;
+		if (serverDelay > policy.getMaxRetryAfterMillis()) {
+			return -1;
+		}
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		if (serverDelay >= 0) {
+			// Spread the clients told to come back at the same time
+			return serverDelay + (long) (policy.getInitialBackoffMillis() * policy.getJitter() * random.nextDouble());
+		}
+		double backoff = policy.getInitialBackoffMillis() * Math.pow(policy.getBackoffMultiplier(), attemptNumber - 1);
+		backoff = Math.min(backoff, policy.getMaxBackoffMillis());
+		return (long) (backoff - backoff * policy.getJitter() * random.nextDouble());
+	}
+
+	private long getServerDelayMillis(RestException exception) {
+		String retryAfter = exception.getHeader(RETRY_AFTER);
+		if (retryAfter != null) {
+			long delay = parseDelayMillis(retryAfter.trim(), false);
+			if (delay >= 0) {
+				return delay;
+			}
+		}
+		String remaining = exception.getHeader(RATE_LIMIT_REMAINING);
+		String reset = exception.getHeader(RATE_LIMIT_RESET);
+		if (reset != null && remaining != null && remaining.trim().equals("0")) {
+			return parseDelayMillis(reset.trim(), true);
+		}
+		return -1;
+	}
+
+	/**
+	 * Parses a delay in seconds, an epoch second, an HTTP date or an ISO-8601
+	 * timestamp into the time to wait from now.
+	 */
+	private long parseDelayMillis(String value, boolean epochSeconds) {
+		long now = System.currentTimeMillis();
+		try {
+			long number = Long.parseLong(value);
+			if (epochSeconds && number > 1_000_000_000L) {
+				return Math.max(0, number * 1000 - now);
+			}
+			return Math.max(0, number * 1000);
+		} catch (NumberFormatException e) {
+			// Not a number
+		}
+		Date date = DateUtils.parseDate(value);
+		if (date != null) {
+			return Math.max(0, date.getTime() - now);
+		}
+		try {
+			Instant instant = OffsetDateTime.parse(value).toInstant();
+			return Math.max(0, instant.toEpochMilli() - now);
+		} catch (DateTimeParseException e) {
+			log.debug("Ignoring unparsable rate limit header value " + value);
+			return -1;
+		}
+	}
+
+	private static boolean isInterruption(IOException e) {
+		return e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException);
+	}
+
+	private static void sleep(long millis) throws InterruptedIOException {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to retry");
+		}
+	}
+
+	/**
+	 * Decorator of a {@link StreamingRequestService}.
+	 */
+	public static class Streaming extends RetryingRequestService implements StreamingRequestService {
+
+		private final StreamingRequestService streamingService;
+
+		public Streaming(StreamingRequestService requestService, RetryPolicy policy) {
+			super(requestService, policy);
+			this.streamingService = requestService;
+		}
+
+		/**
+		 * Only retried as long as no result has been passed to the consumer, so
+		 * that it does not receive results twice.
+		 */
+		@Override
+		public <T> int executeGetRequestForResults(URI uri, Class<T> elementClass, Consumer<? super T> consumer)
+				throws IOException, RestException {
+			AtomicInteger passed = new AtomicInteger();
+			Consumer<T> counting = element -> {
+				passed.incrementAndGet();
+				consumer.accept(element);
+			};
+			return execute("GET " + uri,
+					() -> streamingService.executeGetRequestForResults(uri, elementClass, counting), true, () -> {
+						if (passed.get() > 0) {
+							throw new IOException(passed.get() + " results already passed to the consumer");
+						}
+					});
+		}
+
+	}
+
+	/**
+	 * Decorator of an {@link AsyncRequestService}. The asynchronous methods do
+	 * not block while waiting for the next attempt either: it is started by a
+	 * shared scheduler thread.
+	 */
+	public static class Async extends Streaming implements AsyncRequestService {
+
+		private static final ScheduledExecutorService SCHEDULER = Executors
+				.newSingleThreadScheduledExecutor(runnable -> {
+					Thread thread = new Thread(runnable, "confluence-retry-scheduler");
+					thread.setDaemon(true);
+					return thread;
+				});
+
+		private final AsyncRequestService asyncService;
+		private final RetryPolicy retryPolicy;
+
+		public Async(AsyncRequestService requestService, RetryPolicy policy) {
+			super(requestService, policy);
+			this.asyncService = requestService;
+			this.retryPolicy = policy;
+		}
+
+		@Override
+		public <T> CompletableFuture<T> executeGetRequestAsync(URI uri, Class<T> resultClass) {
+			return executeAsync("GET " + uri, () -> asyncService.executeGetRequestAsync(uri, resultClass), true,
+					null);
+		}
+
+		@Override
+		public <T> CompletableFuture<T> executeGetRequestAsync(URI uri, Class<T> resultClass, Set<String> projection) {
+			return executeAsync("GET " + uri,
+					() -> asyncService.executeGetRequestAsync(uri, resultClass, projection), true, null);
+		}
+
+		/**
+		 * Only retried as long as no result has been passed to the consumer, so
+		 * that it does not receive results twice.
+		 */
+		@Override
+		public <T> CompletableFuture<Integer> executeGetRequestForResultsAsync(URI uri, Class<T> elementClass,
+				Consumer<? super T> consumer) {
+			AtomicInteger passed = new AtomicInteger();
+			Consumer<T> counting = element -> {
+				passed.incrementAndGet();
+				consumer.accept(element);
+			};
+			return executeAsync("GET " + uri,
+					() -> asyncService.executeGetRequestForResultsAsync(uri, elementClass, counting), true, () -> {
+						if (passed.get() > 0) {
+							throw new IOException(passed.get() + " results already passed to the consumer");
+						}
+					});
+		}
+
+		@Override
+		public CompletableFuture<InputStream> executeGetRequestForDownloadAsync(URI uri) {
+			return executeAsync("GET " + uri, () -> asyncService.executeGetRequestForDownloadAsync(uri), true,
+					null);
+		}
+
+		@Override
+		public CompletableFuture<Long> executeGetRequestForDownloadAsync(URI uri, Path target) {
+			return executeAsync("GET " + uri, () -> asyncService.executeGetRequestForDownloadAsync(uri, target),
+					true, null);
+		}
+
+		@Override
+		public <T> CompletableFuture<T> executePostRequestAsync(URI uri, Object content, Class<T> resultClass) {
+			return executeAsync("POST " + uri,
+					() -> asyncService.executePostRequestAsync(uri, content, resultClass), false, null);
+		}
+
+		@Override
+		public <T> CompletableFuture<T> executePostRequestForUploadAsync(URI uri, InputStream inputStream,
+				String title, String comment, Class<T> resultClass) {
+			if (!inputStream.markSupported()) {
+				log.debug("Upload stream cannot be replayed, not retrying POST " + uri);
+				return asyncService.executePostRequestForUploadAsync(uri, inputStream, title, comment, resultClass);
+			}
+			inputStream.mark(retryPolicy.getMaxReplayBytes());
+			// Upload bodies close their stream once written, which would prevent a reset
+			CompletableFuture<T> result = executeAsync("POST " + uri,
+					() -> asyncService.executePostRequestForUploadAsync(uri, new CloseShieldInputStream(inputStream),
+							title, comment, resultClass),
+					false, inputStream::reset);
+			result.whenComplete((value, throwable) -> IOUtils.closeQuietly(inputStream));
+			return result;
+		}
+
+		@Override
+		public <T> CompletableFuture<T> executePostRequestForUploadAsync(URI uri, Path file, String title,
+				String comment, Class<T> resultClass) {
+			return executeAsync("POST " + uri,
+					() -> asyncService.executePostRequestForUploadAsync(uri, file, title, comment, resultClass), false,
+					null);
+		}
+
+		@Override
+		public <T> CompletableFuture<T> executePostRequestForUploadAsync(URI uri, byte[] data, String title,
+				String comment, Class<T> resultClass) {
+			return executeAsync("POST " + uri,
+					() -> asyncService.executePostRequestForUploadAsync(uri, data, title, comment, resultClass), false,
+					null);
+		}
+
+	}
+
+	@FunctionalInterface
+	interface Attempt<T> {
+
+		T execute() throws IOException, RestException;
+
+	}
+
+	@FunctionalInterface
+	interface AsyncAttempt<T> {
+
+		CompletableFuture<T> execute();
+
+	}
+
+	@FunctionalInterface
+	interface Replay {
+
+		void prepare() throws IOException;
+
+	}
+
+	/**
+	 * Retries shared by all requests. Every request earns a fraction of a retry,
+	 * up to a maximum, and every retry spends a whole one.
+	 */
+	private static class RetryBudget {
+
+		private final double ratio;
+		private final double max;
+		private double balance;
+
+		RetryBudget(double ratio, int max) {
+			this.ratio = ratio;
+			this.max = max;
+			this.balance = max;
+		}
+
+		synchronized void deposit() {
+			balance = Math.min(max, balance + ratio);
+		}
+
+		synchronized boolean withdraw() {
+			if (balance < 1) {
+				return false;
+			}
+			balance -= 1;
+			return true;
+		}
+
+	}
+
+}
@@ -0,0 +1,482 @@
+package de.itboehmer.confluence.rest.core.impl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.itboehmer.confluence.rest.core.DownloadRange;
+import de.itboehmer.confluence.rest.core.RequestService;
+import de.itboehmer.confluence.rest.core.RestException;
+import de.itboehmer.confluence.rest.core.util.FileHelper;
+
+/**
+ * Downloads large files with HTTP range requests, so that an interrupted
+ * download continues where it stopped instead of starting over.
+ * <p>
+ * Data is written to <code>&lt;target&gt;.part</code>, which replaces the
+ * target once it is complete and its checksum was verified. If the size is
+ * known, the file is split into segments fetched in parallel on the
+ * {@link ExecutorService}, each written at its position in the file. A segment
+ * whose connection fails is requested again from its last written byte. When a
+ * download fails, the progress is kept next to the part file, so that a later
+ * call for the same target resumes it. Downloads of unknown size are fetched
+ * in a single segment and resumed from the length of the part file.
+ * <p>
+ * The validator of the resource, its <code>ETag</code> or
+ * <code>Last-Modified</code> date, is recorded with the progress, and further
+ * ranges are requested with <code>If-Range</code>. If the resource has changed
+ * meanwhile, the server sends it completely, and the download starts over once.
+ */
+public class SegmentedDownloader {
+
+	private static final Logger log = LoggerFactory.getLogger(SegmentedDownloader.class);
+
+	public static final int DEFAULT_MAX_SEGMENTS = 4;
+	public static final long DEFAULT_MIN_SEGMENT_SIZE = 8L * 1024 * 1024;
+	public static final int DEFAULT_MAX_ATTEMPTS = 5;
+	public static final long DEFAULT_RETRY_DELAY_MILLIS = 1000;
+	public static final String DEFAULT_DIGEST_ALGORITHM = "SHA-256";
+
+	private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+	private static final String PART_SUFFIX = ".part";
+	private static final String PROGRESS_SUFFIX = ".progress";
+	/** Bytes transferred per call, bounding the native buffer of a transfer. */
+	private static final long TRANSFER_CHUNK_SIZE = 1024 * 1024;
+
+	private final RequestService requestService;
+	private final ExecutorService executorService;
+
+	private int maxSegments = DEFAULT_MAX_SEGMENTS;
+	private long minSegmentSize = DEFAULT_MIN_SEGMENT_SIZE;
+	private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+	private long retryDelayMillis = DEFAULT_RETRY_DELAY_MILLIS;
+	private String digestAlgorithm = DEFAULT_DIGEST_ALGORITHM;
+
+	/**
+	 * @param requestService service executing the range requests
+	 * @param executorService executor fetching segments in parallel, or
+	 *            <code>null</code> to fetch them one after another
+	 */
+	public SegmentedDownloader(RequestService requestService, ExecutorService executorService) {
+		Validate.notNull(requestService);
+		this.requestService = requestService;
+		this.executorService = executorService;
+	}
+
+	/**
+	 * Downloads the resource into the target file, replacing it.
+	 *
+	 * @param uri the resource to download
+	 * @param target the file to write
+	 * @param size the size of the resource in bytes, or a negative number if it
+	 *            is unknown
+	 * @param expectedDigest hex encoded digest the downloaded data must have, or
+	 *            <code>null</code> to accept any
+	 * @return hex encoded digest of the downloaded data
+	 * @throws IOException if the download failed or the data does not match the
+	 *             size or digest; in the last case nothing is kept
+	 */
+	public String download(URI uri, Path target, long size, String expectedDigest) throws IOException, RestException {
+		Path part = target.resolveSibling(target.getFileName() + PART_SUFFIX);
+		Path progress = target.resolveSibling(target.getFileName() + PART_SUFFIX + PROGRESS_SUFFIX);
+		AtomicReference<String> validator = new AtomicReference<>();
+		List<Segment> segments = readProgress(progress, size, validator);
+		if (segments == null) {
+			segments = split(size);
+		}
+		boolean complete = false;
+		boolean corrupt = false;
+		try (FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			prepare(channel, segments, size);
+			try {
+				fetch(uri, channel, segments, validator);
+			} catch (ResourceChangedException e) {
+				log.info("Restarting download of " + uri + ": " + e.getMessage());
+				segments = split(size);
+				validator.set(null);
+				channel.truncate(0);
+				prepare(channel, segments, size);
+				fetch(uri, channel, segments, validator);
+			} finally {
+				channel.force(false);
+			}
+			String digest = digest(channel);
+			if (expectedDigest != null && !expectedDigest.equalsIgnoreCase(digest)) {
+				corrupt = true;
+				throw new IOException("Checksum mismatch for " + uri + ": expected " + expectedDigest + ", got "
+						+ digest);
+			}
+			complete = true;
+			log.debug("Downloaded " + channel.size() + " bytes of " + uri + " with " + digestAlgorithm + " " + digest);
+			return digest;
+		} finally {
+			if (complete) {
+				FileHelper.move(part, target);
+				Files.deleteIfExists(progress);
+			} else if (corrupt) {
+				// Start over next time
+				Files.deleteIfExists(part);
+				Files.deleteIfExists(progress);
+			} else {
+				writeProgress(progress, size, validator.get(), segments);
+			}
+		}
+	}
+
+	/**
+	 * Splits a download of known size into at most the maximum number of
+	 * segments, none smaller than the minimum segment size.
+	 */
+	List<Segment> split(long size) {
+		List<Segment> segments = new ArrayList<>();
+		if (size < 0) {
+			segments.add(new Segment(0, -1));
+			return segments;
+		}
+		long count = Math.max(1, Math.min(maxSegments, size / Math.max(1, minSegmentSize)));
+		long segmentSize = size / count;
+		for (int i = 0; i < count; i++) {
+			long offset = i * segmentSize;
+			long length = (i == count - 1) ? size - offset : segmentSize;
+			segments.add(new Segment(offset, length));
+		}
+		return segments;
+	}
+
+	private void prepare(FileChannel channel, List<Segment> segments, long size) throws IOException {
+		if (size < 0) {
+			// Written sequentially, so the length of the file is the progress
+			segments.get(0).written = channel.size();
+			log.debug("Resuming download at byte " + channel.size());
+			return;
+		}
+		if (channel.size() > size) {
+			channel.truncate(size);
+		}
+		if (channel.size() < size) {
+			// Extends the file, so that segments can be written at their position
+			channel.write(ByteBuffer.allocate(1), size - 1);
+		}
+	}
+
+	private void fetch(URI uri, FileChannel channel, List<Segment> segments, AtomicReference<String> validator)
+			throws IOException, RestException {
+		List<Segment> pending = new ArrayList<>();
+		for (Segment segment : segments) {
+			if (!segment.isComplete()) {
+				pending.add(segment);
+			}
+		}
+		if (executorService == null || pending.size() < 2) {
+			for (Segment segment : pending) {
+				fetch(uri, channel, segment, validator);
+			}
+			return;
+		}
+		List<Future<Void>> futures = new ArrayList<>();
+		for (Segment segment : pending) {
+			futures.add(executorService.submit(() -> {
+				fetch(uri, channel, segment, validator);
+				return null;
+			}));
+		}
+		Exception failure = null;
+		for (Future<Void> future : futures) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				futures.forEach(f -> f.cancel(true));
+				throw new InterruptedIOException("Interrupted while downloading " + uri);
+			} catch (ExecutionException e) {
+				if (failure == null && e.getCause() instanceof Exception) {
+					failure = (Exception) e.getCause();
+				}
+			}
+		}
+		if (failure instanceof IOException) {
+			throw (IOException) failure;
+		}
+		if (failure instanceof RestException) {
+			throw (RestException) failure;
+		}
+		if (failure != null) {
+			throw new IOException(failure);
+		}
+	}
+
+	/**
+	 * Fetches the rest of the segment, requesting it again after a failed
+	 * connection. Attempts which transferred data do not count.
+	 */
+	private void fetch(URI uri, FileChannel channel, Segment segment, AtomicReference<String> validator)
+			throws IOException, RestException {
+		for (int attempt = 1;; attempt++) {
+			long before = segment.written;
+			try {
+				transfer(uri, channel, segment, validator);
+				if (segment.isComplete() || segment.length < 0) {
+					return;
+				}
+				throw new IOException("Premature end of range at byte " + (segment.offset + segment.written));
+			} catch (RestException e) {
+				if (e.getStatusCode() == HTTP_RANGE_NOT_SATISFIABLE && segment.length < 0 && segment.written > 0) {
+					// The part file of unknown size was already complete
+					return;
+				}
+				throw e;
+			} catch (IOException e) {
+				if (e instanceof InterruptedIOException || e instanceof ResourceChangedException) {
+					throw e;
+				}
+				if (segment.written > before) {
+					attempt = 0;
+				}
+				if (attempt >= maxAttempts) {
+					throw e;
+				}
+				log.info("Resuming download of " + uri + " at byte " + (segment.offset + segment.written) + " after "
+						+ e.getMessage());
+				sleep(retryDelayMillis);
+			}
+		}
+	}
+
+	private void transfer(URI uri, FileChannel channel, Segment segment, AtomicReference<String> validator)
+			throws IOException, RestException {
+		long position = segment.offset + segment.written;
+		try (DownloadRange range = requestService.executeGetRequestForDownload(uri, position, segment.remaining(),
+				validator.get()); ReadableByteChannel source = Channels.newChannel(range.getContent())) {
+			checkVersion(range, position, validator);
+			long chunkSize = (segment.length < 0) ? TRANSFER_CHUNK_SIZE
+					: Math.min(TRANSFER_CHUNK_SIZE, segment.remaining());
+			long transferred;
+			// A blocking source only transfers nothing at its end
+			while (chunkSize > 0 && (transferred = channel.transferFrom(source, position, chunkSize)) > 0) {
+				position += transferred;
+				segment.written += transferred;
+				if (segment.length >= 0) {
+					chunkSize = Math.min(TRANSFER_CHUNK_SIZE, segment.remaining());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks that the range belongs to the same version of the resource as the
+	 * ranges before, and records its validator if it is the first one.
+	 *
+	 * @throws ResourceChangedException if the resource has changed
+	 */
+	private static void checkVersion(DownloadRange range, long position, AtomicReference<String> validator)
+			throws ResourceChangedException {
+		if (range.getOffset() != position) {
+			throw new ResourceChangedException("Received the complete resource instead of a range at byte "
+					+ position);
+		}
+		String current = range.getValidator();
+		if (current != null && !validator.compareAndSet(null, current) && !current.equals(validator.get())) {
+			throw new ResourceChangedException("Validator changed from " + validator.get() + " to " + current);
+		}
+	}
+
+	private String digest(FileChannel channel) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(digestAlgorithm);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		ByteBuffer buffer = ByteBuffer.allocateDirect((int) TRANSFER_CHUNK_SIZE);
+		long position = 0;
+		int read;
+		while ((read = channel.read(buffer, position)) > 0) {
+			position += read;
+			buffer.flip();
+			digest.update(buffer);
+			buffer.clear();
+		}
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest()) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Reads the progress recorded for a download of the given size. The first
+	 * line holds the size and the validator of the resource, if known, and
+	 * each further line a segment.
+	 *
+	 * @param validator set to the recorded validator
+	 * @return the recorded segments, or <code>null</code> if there are none
+	 */
+	private List<Segment> readProgress(Path progress, long size, AtomicReference<String> validator) {
+		if (!Files.exists(progress)) {
+			return null;
+		}
+		try {
+			List<String> lines = Files.readAllLines(progress, StandardCharsets.UTF_8);
+			String[] header = lines.isEmpty() ? null : lines.get(0).split(" ", 2);
+			if (header == null || Long.parseLong(header[0]) != size) {
+				return null;
+			}
+			List<Segment> segments = new ArrayList<>();
+			for (String line : lines.subList(1, lines.size())) {
+				String[] fields = line.split(" ");
+				Segment segment = new Segment(Long.parseLong(fields[0]), Long.parseLong(fields[1]));
+				segment.written = Long.parseLong(fields[2]);
+				segments.add(segment);
+			}
+			validator.set((header.length > 1) ? header[1] : null);
+			log.debug("Resuming download from " + progress);
+			return segments;
+		} catch (IOException | RuntimeException e) {
+			log.warn("Ignoring unreadable " + progress + ": " + e);
+			return null;
+		}
+	}
+
+	private void writeProgress(Path progress, long size, String validator, List<Segment> segments) {
+		List<String> lines = new ArrayList<>();
+		lines.add((validator != null) ? size + " " + validator : String.valueOf(size));
+		for (Segment segment : segments) {
+			lines.add(segment.offset + " " + segment.length + " " + segment.written);
+		}
+		try {
+			Files.write(progress, lines, StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			log.warn("Cannot record progress in " + progress + ": " + e);
+		}
+	}
+
+	private static void sleep(long millis) throws InterruptedIOException {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to resume download");
+		}
+	}
+
+	public int getMaxSegments() {
+		return maxSegments;
+	}
+
+	/**
+	 * @param maxSegments maximum number of ranges fetched in parallel
+	 */
+	public void setMaxSegments(int maxSegments) {
+		Validate.isTrue(maxSegments > 0, "At least one segment is required");
+		this.maxSegments = maxSegments;
+	}
+
+	public long getMinSegmentSize() {
+		return minSegmentSize;
+	}
+
+	/**
+	 * @param minSegmentSize minimum size of a range in bytes; smaller downloads
+	 *            are fetched in one piece
+	 */
+	public void setMinSegmentSize(long minSegmentSize) {
+		this.minSegmentSize = minSegmentSize;
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * @param maxAttempts maximum number of consecutive attempts of a segment
+	 *            which did not transfer any data
+	 */
+	public void setMaxAttempts(int maxAttempts) {
+		this.maxAttempts = maxAttempts;
+	}
+
+	public long getRetryDelayMillis() {
+		return retryDelayMillis;
+	}
+
+	public void setRetryDelayMillis(long retryDelayMillis) {
+		this.retryDelayMillis = retryDelayMillis;
+	}
+
+	public String getDigestAlgorithm() {
+		return digestAlgorithm;
+	}
+
+	/**
+	 * @param digestAlgorithm name of the {@link MessageDigest} algorithm used to
+	 *            verify downloads, like <code>SHA-256</code> or <code>MD5</code>
+	 */
+	public void setDigestAlgorithm(String digestAlgorithm) {
+		this.digestAlgorithm = digestAlgorithm;
+	}
+
+	static class Segment {
+
+		private final long offset;
+		/** Negative if the segment extends to the unknown end. */
+		private final long length;
+		private volatile long written;
+
+		Segment(long offset, long length) {
+			this.offset = offset;
+			this.length = length;
+		}
+
+		long getOffset() {
+			return offset;
+		}
+
+		long getLength() {
+			return length;
+		}
+
+		boolean isComplete() {
+			return length >= 0 && written >= length;
+		}
+
+		long remaining() {
+			return (length < 0) ? -1 : length - written;
+		}
+
+	}
+
+	/**
+	 * Thrown if the resource changed while it was downloaded.
+	 */
+	private static class ResourceChangedException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		ResourceChangedException(String message) {
+			super(message);
+		}
+
+	}
+
+}
@@ -0,0 +1,151 @@
+package de.itboehmer.confluence.rest.core.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+import org.apache.http.ConnectionClosedException;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.nio.util.SharedInputBuffer;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Response consumer passing the body on while it is received, instead of
+ * buffering it as a whole. The response is available as soon as its headers
+ * have arrived; its entity reads from a buffer of fixed size, which the I/O
+ * reactor fills. Input is suspended while the buffer is full, so a slow reader
+ * throttles the transfer rather than growing the heap.
+ * <p>
+ * The entity must be read from a thread other than the I/O dispatcher. Reading
+ * fails if the connection breaks before the body is complete. Closing it before
+ * the end aborts the exchange, which discards the connection.
+ */
+class StreamingResponseConsumer extends AbstractAsyncResponseConsumer<HttpResponse> {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final SharedInputBuffer buffer = new SharedInputBuffer(BUFFER_SIZE);
+	private final CompletableFuture<HttpResponse> headers = new CompletableFuture<>();
+
+	private HttpResponse response;
+	private volatile boolean bodyComplete;
+	private volatile Exception failure;
+	private volatile Future<?> exchange;
+	private volatile boolean closed;
+
+	/**
+	 * @return future completed with the response once its headers have been
+	 *         received, on the I/O dispatcher thread
+	 */
+	CompletableFuture<HttpResponse> getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * Sets the exchange cancelled when the body is closed before its end.
+	 */
+	void setExchange(Future<?> exchange) {
+		this.exchange = exchange;
+		if (closed) {
+			exchange.cancel(true);
+		}
+	}
+
+	@Override
+	protected void onResponseReceived(HttpResponse response) {
+		this.response = response;
+	}
+
+	@Override
+	protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) {
+		BasicHttpEntity streamed = new BasicHttpEntity();
+		streamed.setContent(new BodyInputStream());
+		streamed.setContentLength(entity.getContentLength());
+		streamed.setContentType(entity.getContentType());
+		streamed.setContentEncoding(entity.getContentEncoding());
+		streamed.setChunked(entity.isChunked());
+		this.response.setEntity(streamed);
+		headers.complete(this.response);
+	}
+
+	@Override
+	protected void onContentReceived(ContentDecoder decoder, IOControl ioctrl) throws IOException {
+		buffer.consumeContent(decoder, ioctrl);
+	}
+
+	@Override
+	protected HttpResponse buildResult(HttpContext context) {
+		bodyComplete = true;
+		// Responses without a body are complete with their headers
+		headers.complete(this.response);
+		return this.response;
+	}
+
+	@Override
+	protected void releaseResources() {
+		if (bodyComplete) {
+			buffer.close();
+			return;
+		}
+		Exception exception = getException();
+		failure = (exception != null) ? exception
+				: new ConnectionClosedException("Response was not received completely");
+		headers.completeExceptionally(failure);
+		// Wakes up a waiting reader, which then reports the failure
+		buffer.shutdown();
+	}
+
+	private class BodyInputStream extends InputStream {
+
+		@Override
+		public int read() throws IOException {
+			return checkEnd(buffer.read());
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			return checkEnd(buffer.read(b, off, len));
+		}
+
+		@Override
+		public int available() {
+			// available() of the buffer is its free capacity
+			return buffer.length();
+		}
+
+		private int checkEnd(int result) throws IOException {
+			Exception exception = failure;
+			if (result < 0 && exception != null) {
+				throw (exception instanceof IOException) ? (IOException) exception : new IOException(exception);
+			}
+			return result;
+		}
+
+		@Override
+		public void close() {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			if (!bodyComplete) {
+				buffer.shutdown();
+				Future<?> future = exchange;
+				if (future != null) {
+					future.cancel(true);
+				}
+			}
+		}
+
+	}
+
+}
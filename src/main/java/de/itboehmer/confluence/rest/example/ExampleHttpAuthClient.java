@@ -12,6 +12,7 @@ import java.util.concurrent.Executors;
 
 import de.itboehmer.confluence.rest.core.impl.APIAuthConfig;
 import de.itboehmer.confluence.rest.core.impl.APIUriProvider;
+import de.itboehmer.confluence.rest.core.impl.ConnectionPoolConfig;
 import de.itboehmer.confluence.rest.core.impl.HttpAuthRequestService;
 
 public class ExampleHttpAuthClient {
@@ -22,11 +23,13 @@ public class ExampleHttpAuthClient {
 
 	private void run() {
 		try {
-			ExecutorService executorService = Executors.newFixedThreadPool(100);
+			int threads = 100;
+			ExecutorService executorService = Executors.newFixedThreadPool(threads);
 			
 			APIAuthConfig conf = loadAuthConfig();
 			HttpAuthRequestService requestService = new HttpAuthRequestService();
-			requestService.connect(new URI(conf.getBaseUrl()), conf.getUser(), conf.getPassword());
+			ConnectionPoolConfig poolConfig = new ConnectionPoolConfig(threads, threads);
+			requestService.connect(new URI(conf.getBaseUrl()), conf.getUser(), conf.getPassword(), null, poolConfig);
 			
 			APIUriProvider uriProvider = new APIUriProvider(new URI(conf.getBaseUrl() + "/wiki"));
 			
@@ -0,0 +1,228 @@
+package de.itboehmer.confluence.rest.client.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.itboehmer.confluence.rest.core.RequestService;
+import de.itboehmer.confluence.rest.core.domain.common.LinksBean;
+import de.itboehmer.confluence.rest.core.domain.content.AttachmentBean;
+import de.itboehmer.confluence.rest.core.domain.content.AttachmentResultsBean;
+import de.itboehmer.confluence.rest.core.domain.content.ContentBean;
+import de.itboehmer.confluence.rest.core.domain.content.ExtensionsBean;
+import de.itboehmer.confluence.rest.core.impl.APIUriProvider;
+import de.itboehmer.confluence.rest.core.misc.AttachmentComparison;
+
+/**
+ * Tests {@link BulkAttachmentUpload}.
+ */
+public class BulkAttachmentUploadTest {
+
+    private final ExecutorService executorService = Executors.newFixedThreadPool(4);
+
+    private final FakeRequestService requestService = new FakeRequestService();
+
+    @After
+    public void tearDown() {
+        executorService.shutdown();
+    }
+
+    @Test
+    public void skipsAttachmentsWithSameContent() throws Exception {
+        List<AttachmentBean> result = upload(AttachmentComparison.CONTENT);
+
+        Assert.assertEquals(Arrays.asList("/rest/api/content/1/child/attachment",
+                "/rest/api/content/1/child/attachment/b/data", "/rest/api/content/1/child/attachment/c/data"),
+                requestService.getUploads());
+        Assert.assertEquals(Arrays.asList("/download/a.txt", "/download/b.txt"), requestService.getDownloads());
+        Assert.assertEquals("a", result.get(0).getId());
+        Assert.assertEquals("uploaded d.txt", result.get(3).getId());
+    }
+
+    @Test
+    public void skipsAttachmentsWithSameSize() throws Exception {
+        List<AttachmentBean> result = upload(AttachmentComparison.SIZE);
+
+        Assert.assertEquals(Arrays.asList("/rest/api/content/1/child/attachment",
+                "/rest/api/content/1/child/attachment/c/data"), requestService.getUploads());
+        Assert.assertTrue(requestService.getDownloads().isEmpty());
+        Assert.assertEquals("b", result.get(1).getId());
+        Assert.assertEquals("uploaded c.txt", result.get(2).getId());
+    }
+
+    @Test
+    public void listsAllPages() throws Exception {
+        for (int i = 0; i < 450; i++) {
+            requestService.existing.add(createExisting(String.valueOf(i), "file" + i, "x"));
+        }
+        ContentClientImpl client = new ContentClientImpl(executorService, requestService,
+                new APIUriProvider(new URI("http://localhost")));
+
+        List<AttachmentBean> result = client.uploadAttachments(new ContentBean("1"),
+                Collections.singletonList(new AttachmentBean(bytes("x"), "file449", null)), AttachmentComparison.SIZE,
+                1).get();
+
+        Assert.assertEquals("449", result.get(0).getId());
+        Assert.assertEquals(3, requestService.listings.get());
+        Assert.assertTrue(requestService.getUploads().isEmpty());
+    }
+
+    @Test
+    public void listsAllPagesOfCappedLimit() throws Exception {
+        requestService.maxLimit = 50;
+        for (int i = 0; i < 120; i++) {
+            requestService.existing.add(createExisting(String.valueOf(i), "file" + i, "x"));
+        }
+        ContentClientImpl client = new ContentClientImpl(executorService, requestService,
+                new APIUriProvider(new URI("http://localhost")));
+
+        List<AttachmentBean> result = client.uploadAttachments(new ContentBean("1"),
+                Collections.singletonList(new AttachmentBean(bytes("x"), "file119", null)), AttachmentComparison.SIZE,
+                1).get();
+
+        Assert.assertEquals("119", result.get(0).getId());
+        Assert.assertEquals(3, requestService.listings.get());
+        Assert.assertTrue(requestService.getUploads().isEmpty());
+    }
+
+    @Test
+    public void limitsParallelism() throws Exception {
+        List<AttachmentBean> attachments = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            attachments.add(new AttachmentBean(bytes("data"), "new" + i, null));
+        }
+        ContentClientImpl client = new ContentClientImpl(executorService, requestService,
+                new APIUriProvider(new URI("http://localhost")));
+
+        List<AttachmentBean> result = client.uploadAttachments(new ContentBean("1"), attachments,
+                AttachmentComparison.CONTENT, 2).get();
+
+        Assert.assertEquals(20, result.size());
+        Assert.assertEquals("uploaded new19", result.get(19).getId());
+        Assert.assertTrue(requestService.maxConcurrentUploads.get() <= 2);
+    }
+
+    private List<AttachmentBean> upload(AttachmentComparison comparison) throws Exception {
+        requestService.existing.add(createExisting("a", "a.txt", "abc"));
+        requestService.existing.add(createExisting("b", "b.txt", "abc"));
+        requestService.existing.add(createExisting("c", "c.txt", "abcde"));
+        ContentClientImpl client = new ContentClientImpl(executorService, requestService,
+                new APIUriProvider(new URI("http://localhost")));
+        List<AttachmentBean> attachments = Arrays.asList(new AttachmentBean(bytes("abc"), "a.txt", null),
+                new AttachmentBean(bytes("xyz"), "b.txt", null), new AttachmentBean(bytes("abc"), "c.txt", null),
+                new AttachmentBean(bytes("abc"), "d.txt", null));
+        return client.uploadAttachments(new ContentBean("1"), attachments, comparison, 2).get();
+    }
+
+    private AttachmentBean createExisting(String id, String title, String data) {
+        AttachmentBean attachment = new AttachmentBean(id);
+        attachment.setTitle(title);
+        ExtensionsBean extensions = new ExtensionsBean();
+        extensions.setFileSize((long) data.length());
+        attachment.setExtensions(extensions);
+        LinksBean links = new LinksBean();
+        links.setDownload("/download/" + title);
+        attachment.setLinks(links);
+        return attachment;
+    }
+
+    private static byte[] bytes(String data) {
+        return data.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static class FakeRequestService implements RequestService {
+
+        private final List<AttachmentBean> existing = new ArrayList<>();
+        private final List<String> uploads = Collections.synchronizedList(new ArrayList<>());
+        private final List<String> downloads = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicInteger listings = new AtomicInteger();
+        private final AtomicInteger concurrentUploads = new AtomicInteger();
+        private final AtomicInteger maxConcurrentUploads = new AtomicInteger();
+        /** Limit the fake server applies at most, like Confluence does. */
+        private int maxLimit = Integer.MAX_VALUE;
+
+        List<String> getUploads() {
+            List<String> sorted = new ArrayList<>(uploads);
+            Collections.sort(sorted);
+            return sorted;
+        }
+
+        List<String> getDownloads() {
+            List<String> sorted = new ArrayList<>(downloads);
+            Collections.sort(sorted);
+            return sorted;
+        }
+
+        @Override
+        public <T> T executeGetRequest(URI uri, Class<T> resultClass) {
+            listings.incrementAndGet();
+            int start = getParameter(uri, "start");
+            int limit = Math.min(getParameter(uri, "limit"), maxLimit);
+            AttachmentResultsBean results = new AttachmentResultsBean();
+            results.setStart(start);
+            results.setLimit(limit);
+            results.setResults(new ArrayList<>(existing.subList(Math.min(start, existing.size()),
+                    Math.min(start + limit, existing.size()))));
+            return resultClass.cast(results);
+        }
+
+        private static int getParameter(URI uri, String name) {
+            for (String parameter : uri.getQuery().split("&")) {
+                if (parameter.startsWith(name + "=")) {
+                    return Integer.parseInt(parameter.substring(name.length() + 1));
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public InputStream executeGetRequestForDownload(URI uri) {
+            downloads.add(uri.getPath());
+            return new ByteArrayInputStream(bytes("abc"));
+        }
+
+        @Override
+        public <T> T executePostRequest(URI uri, Object content, Class<T> resultClass) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <T> T executePostRequestForUpload(URI uri, InputStream inputStream, String title, String comment,
+                Class<T> resultClass) throws IOException {
+            int concurrent = concurrentUploads.incrementAndGet();
+            maxConcurrentUploads.accumulateAndGet(concurrent, Math::max);
+            try {
+                IOUtils.toByteArray(inputStream);
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                concurrentUploads.decrementAndGet();
+            }
+            uploads.add(uri.getPath());
+            AttachmentBean attachment = new AttachmentBean("uploaded " + title);
+            if (resultClass == AttachmentBean.class) {
+                return resultClass.cast(attachment);
+            }
+            AttachmentResultsBean results = new AttachmentResultsBean();
+            results.setResults(Collections.singletonList(attachment));
+            return resultClass.cast(results);
+        }
+
+    }
+
+}
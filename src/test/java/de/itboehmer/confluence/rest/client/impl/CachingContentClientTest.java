@@ -0,0 +1,104 @@
+package de.itboehmer.confluence.rest.client.impl;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.itboehmer.confluence.rest.client.ContentClient;
+import de.itboehmer.confluence.rest.core.domain.content.ContentBean;
+import de.itboehmer.confluence.rest.core.domain.content.VersionBean;
+
+/**
+ * Tests {@link CachingContentClient}.
+ */
+public class CachingContentClientTest {
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger currentVersion = new AtomicInteger(3);
+
+    @Test
+    public void servesSpecificVersionFromCache() throws Exception {
+        CachingContentClient client = new CachingContentClient(createContentClient());
+
+        client.getContentById("42", 2, Arrays.asList("body.storage", "version")).get();
+        ContentBean content = client.getContentById("42", 2, Arrays.asList("version", "body.storage")).get();
+
+        Assert.assertEquals(Integer.valueOf(2), content.getVersion().getNumber());
+        Assert.assertEquals(1, requests.get());
+        Assert.assertEquals(1, client.getHitCount());
+    }
+
+    @Test
+    public void handsOutCopies() throws Exception {
+        CachingContentClient client = new CachingContentClient(createContentClient());
+
+        client.getContentById("42", 2, null).get().setTitle("Changed by first caller");
+        ContentBean content = client.getContentById("42", 2, null).get();
+        content.getVersion().setNumber(7);
+
+        Assert.assertEquals("Page 42", content.getTitle());
+        Assert.assertEquals(Integer.valueOf(2), client.getContentById("42", 2, null).get().getVersion().getNumber());
+        Assert.assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void revalidatesLatestVersion() throws Exception {
+        CachingContentClient client = new CachingContentClient(createContentClient(), 100, 1_000_000, 0);
+
+        client.getContentById("42", 0, null).get();
+        client.getContentById("42", 0, null).get();
+        Assert.assertEquals(2, requests.get());
+        Assert.assertEquals(1, client.getRevalidationCount());
+
+        currentVersion.set(4);
+        ContentBean content = client.getContentById("42", 0, null).get();
+        Assert.assertEquals(Integer.valueOf(4), content.getVersion().getNumber());
+        Assert.assertEquals(4, requests.get());
+
+        // The latest version was also cached as version 4
+        client.getContentById("42", 4, null).get();
+        Assert.assertEquals(4, requests.get());
+    }
+
+    @Test
+    public void evictsBeyondMaxEntries() throws Exception {
+        CachingContentClient client = new CachingContentClient(createContentClient(), 16, 1_000_000, 0);
+
+        for (int i = 0; i < 1000; i++) {
+            client.getContentById(String.valueOf(i), 1, null).get();
+        }
+
+        Assert.assertTrue(client.size() <= 16);
+    }
+
+    private ContentClient createContentClient() {
+        return (ContentClient) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ContentClient.class },
+                (proxy, method, args) -> {
+                    if (!method.getName().equals("getContentByIdAsync")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    requests.incrementAndGet();
+                    int version = (Integer) args[1];
+                    @SuppressWarnings("unchecked")
+                    List<String> expand = (List<String>) args[2];
+                    return CompletableFuture.completedFuture(createContent((String) args[0],
+                            (version > 0) ? version : currentVersion.get(), expand));
+                });
+    }
+
+    private static ContentBean createContent(String id, int versionNumber, List<String> expand) {
+        ContentBean content = new ContentBean();
+        content.setId(id);
+        content.setTitle("Page " + id);
+        VersionBean version = new VersionBean();
+        version.setNumber(versionNumber);
+        content.setVersion(version);
+        return content;
+    }
+
+}
@@ -0,0 +1,72 @@
+package de.itboehmer.confluence.rest.client.impl;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link ConcurrencyLimitedExecutorService}.
+ */
+public class ConcurrencyLimitedExecutorServiceTest {
+
+    private static final String HOST = "https://example.com";
+
+    private final ExecutorService threads = Executors.newCachedThreadPool();
+
+    @After
+    public void shutDown() {
+        threads.shutdownNow();
+    }
+
+    @Test
+    public void limitsConcurrentTasks() throws Exception {
+        ConcurrencyLimitedExecutorService executor = new ConcurrencyLimitedExecutorService(threads, HOST, 2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(10);
+
+        for (int i = 0; i < 10; i++) {
+            executor.execute(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(2, maxRunning.get());
+    }
+
+    @Test
+    public void keepsLimitsOfInstancesApart() throws Exception {
+        ConcurrencyLimitedExecutorService first = new ConcurrencyLimitedExecutorService(threads, HOST, 1);
+        ConcurrencyLimitedExecutorService second = new ConcurrencyLimitedExecutorService(threads, HOST, 1);
+        CountDownLatch bothRunning = new CountDownLatch(2);
+
+        first.execute(() -> awaitQuietly(bothRunning));
+        second.execute(() -> awaitQuietly(bothRunning));
+
+        Assert.assertTrue(bothRunning.await(5, TimeUnit.SECONDS));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        latch.countDown();
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
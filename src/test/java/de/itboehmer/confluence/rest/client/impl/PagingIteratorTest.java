@@ -0,0 +1,70 @@
+package de.itboehmer.confluence.rest.client.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link PagingIterator}.
+ */
+public class PagingIteratorTest {
+
+    @Test
+    public void iteratesAllPagesInOrder() {
+        List<Integer> requestedStarts = new ArrayList<>();
+        PagingIterator<Integer> iterator = new PagingIterator<>((start, limit) -> {
+            requestedStarts.add(start);
+            return page(start, limit, 23, limit);
+        }, 0, 5, 2);
+
+        List<Integer> elements = iterator.stream().collect(Collectors.toList());
+
+        Assert.assertEquals(range(0, 23), elements);
+        Assert.assertEquals(0, (int) requestedStarts.get(0));
+        Assert.assertEquals(5, (int) requestedStarts.get(1));
+    }
+
+    @Test
+    public void adoptsLimitAppliedByServer() {
+        PagingIterator<Integer> iterator = new PagingIterator<>((start, limit) -> page(start, limit, 12, 4), 0, 10, 1);
+
+        List<Integer> elements = iterator.stream().collect(Collectors.toList());
+
+        Assert.assertEquals(range(0, 12), elements);
+    }
+
+    @Test
+    public void emptyResource() {
+        PagingIterator<Integer> iterator = new PagingIterator<>((start, limit) -> page(start, limit, 0, limit), 0, 10, 3);
+
+        Assert.assertFalse(iterator.hasNext());
+    }
+
+    @Test(expected = CompletionException.class)
+    public void rethrowsFailedRequests() {
+        PagingIterator<Integer> iterator = new PagingIterator<>((start, limit) -> {
+            CompletableFuture<PagingIterator.Page<Integer>> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalStateException("failed"));
+            return failed;
+        }, 0, 10, 3);
+
+        iterator.hasNext();
+    }
+
+    private static CompletableFuture<PagingIterator.Page<Integer>> page(int start, int limit, int total, int serverLimit) {
+        int effectiveLimit = Math.min(limit, serverLimit);
+        List<Integer> results = range(Math.min(start, total), Math.min(start + effectiveLimit, total));
+        return CompletableFuture.completedFuture(new PagingIterator.Page<>(results, serverLimit));
+    }
+
+    private static List<Integer> range(int from, int to) {
+        return IntStream.range(from, to).boxed().collect(Collectors.toList());
+    }
+
+}
@@ -0,0 +1,97 @@
+package de.itboehmer.confluence.rest.client.impl;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link ParallelPagingIterator}.
+ */
+public class ParallelPagingIteratorTest {
+
+    private final ExecutorService executorService = Executors.newFixedThreadPool(4);
+
+    @After
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void orderedModeKeepsOrder() {
+        ParallelPagingIterator<Integer> iterator = new ParallelPagingIterator<>((start, limit) -> page(start, limit, 47), 0, 10, 3, true);
+
+        List<Integer> elements = iterator.stream().collect(Collectors.toList());
+
+        Assert.assertEquals(range(0, 47), elements);
+    }
+
+    @Test
+    public void unorderedModeReturnsEveryElementOnce() {
+        ParallelPagingIterator<Integer> iterator = new ParallelPagingIterator<>((start, limit) -> page(start, limit, 47), 0, 10, 3, false);
+
+        List<Integer> elements = iterator.stream().sorted().collect(Collectors.toList());
+
+        Assert.assertEquals(range(0, 47), elements);
+    }
+
+    @Test
+    public void limitsPagesInFlight() {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        ParallelPagingIterator<Integer> iterator = new ParallelPagingIterator<>((start, limit) -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            return slowPage(start, limit, 100).whenComplete((page, throwable) -> inFlight.decrementAndGet());
+        }, 0, 5, 2, true);
+
+        Assert.assertEquals(100, iterator.stream().count());
+        // Requests overlapped, but never more than the window
+        Assert.assertEquals(2, maxInFlight.get());
+    }
+
+    @Test
+    public void singlePage() {
+        AtomicInteger requests = new AtomicInteger();
+        ParallelPagingIterator<Integer> iterator = new ParallelPagingIterator<>((start, limit) -> {
+            requests.incrementAndGet();
+            return page(start, limit, 7);
+        }, 0, 10, 3, true);
+
+        Assert.assertEquals(range(0, 7), iterator.stream().collect(Collectors.toList()));
+        Assert.assertEquals(1, requests.get());
+    }
+
+    private CompletableFuture<PagingIterator.Page<Integer>> page(int start, int limit, int total) {
+        return CompletableFuture.supplyAsync(() -> {
+            List<Integer> results = range(Math.min(start, total), Math.min(start + limit, total));
+            return new PagingIterator.Page<>(results, limit, total);
+        }, executorService);
+    }
+
+    /**
+     * Completes the page on another thread after a delay, so that subsequent
+     * requests are issued while it is still in flight.
+     */
+    private CompletableFuture<PagingIterator.Page<Integer>> slowPage(int start, int limit, int total) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }, executorService).thenCompose(ignored -> page(start, limit, total));
+    }
+
+    private static List<Integer> range(int from, int to) {
+        return IntStream.range(from, to).boxed().collect(Collectors.toList());
+    }
+
+}
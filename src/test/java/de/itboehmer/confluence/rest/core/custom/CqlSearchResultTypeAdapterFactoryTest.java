@@ -0,0 +1,71 @@
+package de.itboehmer.confluence.rest.core.custom;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import de.itboehmer.confluence.rest.core.domain.content.ContentBean;
+import de.itboehmer.confluence.rest.core.domain.cql.CqlSearchResult;
+import de.itboehmer.confluence.rest.core.domain.space.SpaceBean;
+
+/**
+ * Tests {@link CqlSearchResultTypeAdapterFactory}.
+ */
+public class CqlSearchResultTypeAdapterFactoryTest {
+
+    private final Gson gson = new GsonBuilder().excludeFieldsWithoutExposeAnnotation()
+            .registerTypeAdapterFactory(new CqlSearchResultTypeAdapterFactory()).create();
+
+    @Test
+    public void readsSearchResult() throws IOException {
+        CqlSearchResult result = gson.fromJson(readResource("/cql-search-result.json"), CqlSearchResult.class);
+
+        Assert.assertEquals(0, result.getStart());
+        Assert.assertEquals(25, result.getLimit());
+        Assert.assertEquals(3, result.getSize());
+        Assert.assertEquals(3, result.getTotalSize());
+        Assert.assertEquals("space = ENG", result.getCqlQuery());
+        Assert.assertEquals(42, result.getSearchDuration());
+        Assert.assertEquals("https://example.com", result.get_links().getBase());
+
+        // The user result is neither content nor space
+        Assert.assertEquals(2, result.getResults().size());
+
+        ContentBean content = (ContentBean) result.getResults().get(0).getBean();
+        Assert.assertEquals("65538", content.getId());
+        Assert.assertEquals("Home", content.getTitle());
+        Assert.assertEquals("/display/ENG/Home", content.getLinks().getWebui());
+        Assert.assertEquals(LocalDateTime.of(2017, 3, 1, 10, 15, 30), result.getResults().get(0).getLastModified());
+
+        SpaceBean space = (SpaceBean) result.getResults().get(1).getBean();
+        Assert.assertEquals("ENG", space.getKey());
+        Assert.assertEquals(LocalDateTime.of(2017, 2, 1, 8, 0), result.getResults().get(1).getLastModified());
+    }
+
+    @Test
+    public void writesWithDefaultAdapter() {
+        CqlSearchResult result = new CqlSearchResult();
+        result.setTotalSize(7);
+        result.setCqlQuery("type = page");
+
+        String json = gson.toJson(result);
+
+        CqlSearchResult read = gson.fromJson(json, CqlSearchResult.class);
+        Assert.assertEquals(7, read.getTotalSize());
+        Assert.assertEquals("type = page", read.getCqlQuery());
+        Assert.assertTrue(read.getResults().isEmpty());
+    }
+
+    private String readResource(String filename) throws IOException {
+        InputStream in = getClass().getResourceAsStream(filename);
+        return IOUtils.toString(in, "utf8");
+    }
+
+}
@@ -0,0 +1,206 @@
+package de.itboehmer.confluence.rest.core.custom;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParser;
+
+import de.itboehmer.confluence.rest.core.domain.ProfilePictureBean;
+import de.itboehmer.confluence.rest.core.domain.UserBean;
+import de.itboehmer.confluence.rest.core.domain.common.LinksBean;
+import de.itboehmer.confluence.rest.core.domain.common.PlainBean;
+import de.itboehmer.confluence.rest.core.domain.content.AncestorBean;
+import de.itboehmer.confluence.rest.core.domain.content.AttachmentBean;
+import de.itboehmer.confluence.rest.core.domain.content.AttachmentResultsBean;
+import de.itboehmer.confluence.rest.core.domain.content.BodyBean;
+import de.itboehmer.confluence.rest.core.domain.content.ContainerBean;
+import de.itboehmer.confluence.rest.core.domain.content.ContentBean;
+import de.itboehmer.confluence.rest.core.domain.content.ContentResultsBean;
+import de.itboehmer.confluence.rest.core.domain.content.ExtensionsBean;
+import de.itboehmer.confluence.rest.core.domain.content.HistoryBean;
+import de.itboehmer.confluence.rest.core.domain.content.LabelBean;
+import de.itboehmer.confluence.rest.core.domain.content.LabelsBean;
+import de.itboehmer.confluence.rest.core.domain.content.MetadataBean;
+import de.itboehmer.confluence.rest.core.domain.content.StorageBean;
+import de.itboehmer.confluence.rest.core.domain.content.VersionBean;
+import de.itboehmer.confluence.rest.core.domain.space.DescriptionBean;
+import de.itboehmer.confluence.rest.core.domain.space.SpaceBean;
+import de.itboehmer.confluence.rest.core.domain.space.SpaceResultsBean;
+
+/**
+ * Tests {@link DomainTypeAdapterFactory}.
+ */
+public class DomainTypeAdapterFactoryTest {
+
+    private final Gson reflective = new GsonBuilder().excludeFieldsWithoutExposeAnnotation().create();
+
+    private final Gson gson = new GsonBuilder().excludeFieldsWithoutExposeAnnotation()
+            .registerTypeAdapterFactory(new DomainTypeAdapterFactory()).create();
+
+    @Test
+    public void writesSameJsonAsReflection() {
+        ContentBean content = createContent();
+
+        JsonParser parser = new JsonParser();
+        Assert.assertEquals(parser.parse(reflective.toJson(content)), parser.parse(gson.toJson(content)));
+    }
+
+    @Test
+    public void readsReflectiveJson() {
+        String json = reflective.toJson(createContent());
+
+        ContentBean content = gson.fromJson(json, ContentBean.class);
+
+        Assert.assertEquals("123", content.getId());
+        Assert.assertEquals("page", content.getType());
+        Assert.assertEquals("Home", content.getTitle());
+        Assert.assertEquals("ENG", content.getSpace().getKey());
+        Assert.assertEquals(Integer.valueOf(4), content.getVersion().getNumber());
+        Assert.assertEquals("admin", content.getVersion().getBy().getUsername());
+        Assert.assertEquals("99", content.getAncestors().get(0).getId());
+        Assert.assertEquals("/display/ENG/Home", content.getLinks().getWebui());
+    }
+
+    @Test
+    public void skipsUnknownProperties() {
+        ContentBean content = gson.fromJson("{\"id\":\"1\",\"extensions\":{\"position\":\"none\"},\"title\":\"T\"}",
+                ContentBean.class);
+
+        Assert.assertEquals("1", content.getId());
+        Assert.assertEquals("T", content.getTitle());
+    }
+
+    @Test
+    public void bindsResultPagesLikeReflection() {
+        ContentResultsBean contents = new ContentResultsBean();
+        contents.setResults(Collections.singletonList(createExpandedContent()));
+        contents.setStart(0);
+        contents.setLimit(25);
+        contents.setSize(1);
+        AttachmentResultsBean attachments = new AttachmentResultsBean();
+        attachments.setResults(Collections.singletonList(createAttachment()));
+        attachments.setLimit(50);
+        SpaceResultsBean spaces = new SpaceResultsBean();
+        spaces.setResults(Collections.singletonList(createContent().getSpace()));
+        spaces.setSize(1);
+
+        for (Object page : Arrays.asList(contents, attachments, spaces)) {
+            JsonParser parser = new JsonParser();
+            String json = reflective.toJson(page);
+            Assert.assertEquals(parser.parse(json), parser.parse(gson.toJson(page)));
+            Object read = gson.fromJson(json, page.getClass());
+            Assert.assertEquals(parser.parse(json), parser.parse(reflective.toJson(read)));
+        }
+    }
+
+    @Test
+    public void readsExpandedContent() {
+        String json = reflective.toJson(createExpandedContent());
+
+        ContentBean content = gson.fromJson(json, ContentBean.class);
+
+        Assert.assertEquals("<p>Hi</p>", content.getBody().getStorage().getValue());
+        Assert.assertTrue(content.getHistory().isLatest());
+        Assert.assertEquals("admin", content.getHistory().getCreatedBy().getUsername());
+        Assert.assertEquals("draft", content.getMetadata().getLabels().getResults().get(0).getName());
+        Assert.assertEquals(1, content.getMetadata().getLabels().getSize());
+        Assert.assertEquals("ENG", content.getContainer().getKey());
+    }
+
+    @Test
+    public void keepsPrimitivesOnNull() {
+        LabelsBean labels = gson.fromJson("{\"size\":null,\"limit\":200}", LabelsBean.class);
+        Assert.assertEquals(0, labels.getSize());
+        Assert.assertEquals(200, labels.getLimit());
+
+        Assert.assertFalse(gson.fromJson("{\"latest\":null}", HistoryBean.class).isLatest());
+    }
+
+    private ContentBean createExpandedContent() {
+        ContentBean content = createContent();
+        StorageBean storage = new StorageBean();
+        storage.setValue("<p>Hi</p>");
+        storage.setRepresentation("storage");
+        BodyBean body = new BodyBean();
+        body.setStorage(storage);
+        content.setBody(body);
+        HistoryBean history = new HistoryBean();
+        history.setLatest(true);
+        history.setCreatedBy(content.getVersion().getBy());
+        history.setCreatedDate(new Date(0));
+        content.setHistory(history);
+        LabelsBean labels = new LabelsBean();
+        labels.setResults(Collections.singletonList(new LabelBean("global", "draft", "7")));
+        labels.setSize(1);
+        MetadataBean metadata = new MetadataBean();
+        metadata.setLabels(labels);
+        content.setMetadata(metadata);
+        content.setContainer(createContainer());
+        return content;
+    }
+
+    private ContainerBean createContainer() {
+        PlainBean plain = new PlainBean();
+        plain.setValue("Engineering space");
+        plain.setRepresentation("plain");
+        DescriptionBean description = new DescriptionBean();
+        description.setPlain(plain);
+        ContainerBean container = new ContainerBean();
+        container.setId(5);
+        container.setKey("ENG");
+        container.setName("Engineering");
+        container.setDescription(description);
+        container.setMetadata(new MetadataBean());
+        return container;
+    }
+
+    private AttachmentBean createAttachment() {
+        ExtensionsBean extensions = new ExtensionsBean();
+        extensions.setMediaType("image/png");
+        extensions.setFileSize(1024L);
+        AttachmentBean attachment = new AttachmentBean("att1");
+        attachment.setTitle("logo.png");
+        attachment.setExtensions(extensions);
+        ProfilePictureBean picture = new ProfilePictureBean();
+        picture.setPath("/images/admin.png");
+        picture.setDefault(Boolean.TRUE);
+        UserBean user = new UserBean();
+        user.setProfilePicture(picture);
+        VersionBean version = new VersionBean();
+        version.setBy(user);
+        attachment.setVersion(version);
+        return attachment;
+    }
+
+    private ContentBean createContent() {
+        SpaceBean space = new SpaceBean();
+        space.setKey("ENG");
+        space.setName("Engineering");
+        UserBean user = new UserBean();
+        user.setUsername("admin");
+        VersionBean version = new VersionBean();
+        version.setNumber(4);
+        version.setBy(user);
+        version.setMinorEdit(Boolean.FALSE);
+        AncestorBean ancestor = new AncestorBean();
+        ancestor.setId("99");
+        LinksBean links = new LinksBean();
+        links.setWebui("/display/ENG/Home");
+        ContentBean content = new ContentBean();
+        content.setId("123");
+        content.setType("page");
+        content.setTitle("Home");
+        content.setSpace(space);
+        content.setVersion(version);
+        content.setAncestors(Collections.singletonList(ancestor));
+        content.setLinks(links);
+        return content;
+    }
+
+}
@@ -0,0 +1,68 @@
+package de.itboehmer.confluence.rest.core.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.gson.JsonSyntaxException;
+
+import de.itboehmer.confluence.rest.core.RestException;
+import de.itboehmer.confluence.rest.core.domain.content.ContentBean;
+
+/**
+ * Tests {@link AbstractRequestService}.
+ */
+public class AbstractRequestServiceTest {
+
+    private final AbstractRequestService service = new AbstractRequestService() {
+    };
+
+    @Test
+    public void streamsResults() throws Exception {
+        List<ContentBean> results = new ArrayList<>();
+        String body = "{\"start\":0,\"_links\":{\"results\":[\"ignored\"]},\"results\":[{\"id\":\"1\",\"title\":\"One\"},"
+                + "{\"id\":\"2\",\"title\":\"Two\",\"body\":{\"storage\":{\"value\":\"<p/>\"}}}],\"size\":2}";
+
+        int count = service.readResults(createResponse(200, body), ContentBean.class, results::add);
+
+        Assert.assertEquals(2, count);
+        Assert.assertEquals("One", results.get(0).getTitle());
+        Assert.assertEquals("2", results.get(1).getId());
+    }
+
+    @Test
+    public void passesResultsBeforePageIsComplete() throws Exception {
+        List<ContentBean> results = new ArrayList<>();
+        String body = "{\"results\":[{\"id\":\"1\",\"title\":\"One\"},{\"id\":";
+
+        try {
+            service.readResults(createResponse(200, body), ContentBean.class, results::add);
+            Assert.fail();
+        } catch (JsonSyntaxException e) {
+            Assert.assertEquals(1, results.size());
+        }
+    }
+
+    @Test
+    public void failsOnErrorStatus() throws Exception {
+        try {
+            service.readResults(createResponse(404, "{}"), ContentBean.class, result -> Assert.fail());
+            Assert.fail();
+        } catch (RestException e) {
+            Assert.assertEquals(404, e.getStatusCode());
+        }
+    }
+
+    private static HttpResponse createResponse(int statusCode, String body) throws Exception {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, statusCode, null);
+        response.setEntity(new StringEntity(body, "UTF-8"));
+        return response;
+    }
+
+}
@@ -0,0 +1,104 @@
+package de.itboehmer.confluence.rest.core.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.itboehmer.confluence.rest.core.impl.AdaptiveConcurrencyLimiter.Permit;
+
+/**
+ * Tests {@link AdaptiveConcurrencyLimiter}.
+ */
+public class AdaptiveConcurrencyLimiterTest {
+
+    private static final HttpHost HOST = new HttpHost("example.com", 443, "https");
+
+    @Test
+    public void growsWhileLimitIsUsed() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 100);
+        // Latency plays no role as long as it stays constant
+        limiter.setLatencyTolerance(Double.MAX_VALUE);
+
+        for (int round = 0; round < 20; round++) {
+            List<Permit> permits = new ArrayList<>();
+            for (int i = 0; i < limiter.getLimit(HOST); i++) {
+                permits.add(limiter.acquire(HOST));
+            }
+            permits.forEach(permit -> permit.release(false));
+        }
+
+        Assert.assertTrue(limiter.getLimit(HOST) > 10);
+    }
+
+    @Test
+    public void shrinksWhenThrottled() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 2, 100);
+        limiter.setBackoffRatio(0.5);
+
+        limiter.acquire(HOST).release(true);
+        Assert.assertEquals(10, limiter.getLimit(HOST));
+
+        for (int i = 0; i < 10; i++) {
+            Thread.sleep(1);
+            limiter.acquire(HOST).releaseFailed();
+        }
+        Assert.assertEquals(2, limiter.getLimit(HOST));
+    }
+
+    @Test
+    public void blocksBeyondLimit() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1);
+        Permit first = limiter.acquire(HOST);
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiting = new Thread(() -> {
+            try {
+                limiter.acquire(HOST).release(false);
+                acquired.countDown();
+            } catch (Exception e) {
+                // Fails the test by timeout
+            }
+        });
+        waiting.start();
+
+        Assert.assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+        first.release(false);
+        Assert.assertTrue(acquired.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void queuesAsyncBeyondLimit() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1);
+        Permit first = limiter.acquireAsync(HOST).get();
+        CompletableFuture<Permit> second = limiter.acquireAsync(HOST);
+        CompletableFuture<Permit> third = limiter.acquireAsync(HOST);
+
+        Assert.assertFalse(second.isDone());
+        first.release(false);
+        Assert.assertTrue(second.isDone());
+        Assert.assertFalse(third.isDone());
+        second.get().release(false);
+        Assert.assertTrue(third.isDone());
+    }
+
+    @Test
+    public void skipsCancelledWaiters() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1);
+        Permit first = limiter.acquire(HOST);
+        CompletableFuture<Permit> cancelled = limiter.acquireAsync(HOST);
+        CompletableFuture<Permit> waiting = limiter.acquireAsync(HOST);
+
+        cancelled.cancel(false);
+        first.release(false);
+        Assert.assertTrue(waiting.isDone());
+        // A given up request does not hold on to its permit
+        waiting.get().cancel();
+        Assert.assertTrue(limiter.acquireAsync(HOST).isDone());
+    }
+
+}
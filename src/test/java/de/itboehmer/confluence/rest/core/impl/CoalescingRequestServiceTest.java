@@ -0,0 +1,166 @@
+package de.itboehmer.confluence.rest.core.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.Validate;
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.itboehmer.confluence.rest.core.AsyncRequestService;
+import de.itboehmer.confluence.rest.core.RequestService;
+import de.itboehmer.confluence.rest.core.RestException;
+import de.itboehmer.confluence.rest.core.StreamingRequestService;
+
+/**
+ * Tests {@link CoalescingRequestService}.
+ */
+public class CoalescingRequestServiceTest {
+
+    private static final URI URI = java.net.URI.create("http://localhost/rest/api/space/ENG");
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Test
+    public void sharesRequestInFlight() throws Exception {
+        CoalescingRequestService service = new CoalescingRequestService(new BlockingRequestService());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<StringBuilder> first = executor.submit(() -> service.executeGetRequest(URI, StringBuilder.class));
+            while (calls.get() == 0) {
+                Thread.sleep(1);
+            }
+            Future<StringBuilder> second = executor.submit(() -> service.executeGetRequest(URI, StringBuilder.class));
+            while (service.getCoalescedCount() == 0) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            Assert.assertSame(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+            Assert.assertEquals(1, calls.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void callsAgainAfterCompletion() throws Exception {
+        release.countDown();
+        CoalescingRequestService service = new CoalescingRequestService(new BlockingRequestService());
+
+        service.executeGetRequest(URI, StringBuilder.class);
+        service.executeGetRequest(URI, StringBuilder.class);
+
+        Assert.assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void keepsCapabilitiesOfWrappedService() {
+        RequestService plain = CoalescingRequestService.wrap(new BlockingRequestService());
+        RequestService streaming = CoalescingRequestService.wrap(new HttpAuthRequestService());
+
+        Assert.assertFalse(plain instanceof StreamingRequestService);
+        Assert.assertTrue(streaming instanceof StreamingRequestService);
+    }
+
+    @Test
+    public void coalescesAsyncRequests() throws Exception {
+        CompletableFuture<Object> response = new CompletableFuture<>();
+        AsyncRequestService asyncDelegate = new HttpAsyncAuthRequestService() {
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public <T> CompletableFuture<T> executeGetRequestAsync(URI uri, Class<T> resultClass) {
+                calls.incrementAndGet();
+                return (CompletableFuture<T>) response;
+            }
+        };
+        CoalescingRequestService service = CoalescingRequestService.wrap(asyncDelegate);
+
+        CompletableFuture<StringBuilder> first = ((AsyncRequestService) service).executeGetRequestAsync(URI,
+                StringBuilder.class);
+        CompletableFuture<StringBuilder> second = ((AsyncRequestService) service).executeGetRequestAsync(URI,
+                StringBuilder.class);
+        second.cancel(false);
+        response.complete(new StringBuilder("result"));
+
+        Assert.assertEquals("result", first.get(5, TimeUnit.SECONDS).toString());
+        Assert.assertEquals(1, calls.get());
+        Assert.assertEquals(1, service.getCoalescedCount());
+    }
+
+    @Test
+    public void keepsEmptyProjectionApart() throws Exception {
+        CoalescingRequestService service = new CoalescingRequestService(new BlockingRequestService());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            executor.submit(() -> service.executeGetRequest(URI, StringBuilder.class));
+            while (calls.get() == 0) {
+                Thread.sleep(1);
+            }
+            Future<StringBuilder> projected = executor
+                    .submit(() -> service.executeGetRequest(URI, StringBuilder.class, Collections.<String> emptySet()));
+            try {
+                projected.get(5, TimeUnit.SECONDS);
+                Assert.fail();
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
+            }
+            Assert.assertEquals(0, service.getCoalescedCount());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private class BlockingRequestService implements RequestService {
+
+        @Override
+        public <T> T executeGetRequest(URI uri, Class<T> resultClass, Set<String> projection)
+                throws IOException, RestException {
+            Validate.notEmpty(projection);
+            return executeGetRequest(uri, resultClass);
+        }
+
+        @Override
+        public <T> T executeGetRequest(URI uri, Class<T> resultClass) throws IOException, RestException {
+            calls.incrementAndGet();
+            try {
+                release.await();
+                return resultClass.getDeclaredConstructor().newInstance();
+            } catch (InterruptedException | ReflectiveOperationException e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public InputStream executeGetRequestForDownload(URI uri) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <T> T executePostRequest(URI uri, Object content, Class<T> resultClass) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <T> T executePostRequestForUpload(URI uri, InputStream inputStream, String title, String comment,
+                Class<T> resultClass) {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+}
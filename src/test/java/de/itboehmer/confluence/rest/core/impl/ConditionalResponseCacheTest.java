@@ -0,0 +1,107 @@
+package de.itboehmer.confluence.rest.core.impl;
+
+import java.net.URI;
+import java.util.Collections;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.itboehmer.confluence.rest.core.domain.content.ContentBean;
+import de.itboehmer.confluence.rest.core.impl.AbstractRequestService.ConditionalGet;
+
+/**
+ * Tests {@link ConditionalResponseCache} as used by
+ * {@link AbstractRequestService}.
+ */
+public class ConditionalResponseCacheTest {
+
+    private static final URI URI = java.net.URI.create("http://localhost/rest/api/content/42");
+
+    private final ConditionalResponseCache cache = new ConditionalResponseCache();
+
+    private final AbstractRequestService requestService = new AbstractRequestService() {
+    };
+
+    @Test
+    public void returnsCachedResultIfNotModified() throws Exception {
+        requestService.setResponseCache(cache);
+
+        ContentBean content = readOk();
+
+        ConditionalGet second = requestService.createGetMethod(URI, ContentBean.class, null);
+        Assert.assertEquals("\"v3\"", second.getMethod().getFirstHeader(HttpHeaders.IF_NONE_MATCH).getValue());
+        HttpResponse notModified = new BasicHttpResponse(HttpVersion.HTTP_1_1, 304, "Not Modified");
+
+        ContentBean cached = requestService.readResult(second, notModified, ContentBean.class, null);
+        Assert.assertNotSame(content, cached);
+        Assert.assertEquals("Home", cached.getTitle());
+        Assert.assertEquals(1, cache.getNotModifiedCount());
+    }
+
+    @Test
+    public void handsOutCopiesOfCachedResult() throws Exception {
+        requestService.setResponseCache(cache);
+        readOk().setTitle("Changed by the first caller");
+
+        ConditionalGet second = requestService.createGetMethod(URI, ContentBean.class, null);
+        HttpResponse notModified = new BasicHttpResponse(HttpVersion.HTTP_1_1, 304, "Not Modified");
+        requestService.readResult(second, notModified, ContentBean.class, null).setTitle("Changed by the second");
+
+        ConditionalGet third = requestService.createGetMethod(URI, ContentBean.class, null);
+        ContentBean content = requestService.readResult(third, notModified, ContentBean.class, null);
+        Assert.assertEquals("Home", content.getTitle());
+    }
+
+    @Test
+    public void returnsResultDroppedWhileRevalidating() throws Exception {
+        ConditionalResponseCache smallCache = new ConditionalResponseCache(1);
+        requestService.setResponseCache(smallCache);
+        ContentBean content = readOk();
+
+        ConditionalGet request = requestService.createGetMethod(URI, ContentBean.class, null);
+        // Another request pushes the entry out before the response arrives
+        smallCache.put(java.net.URI.create("http://localhost/rest/api/content/43"), ContentBean.class, null,
+                "\"v1\"", null, new ContentBean());
+        HttpResponse notModified = new BasicHttpResponse(HttpVersion.HTTP_1_1, 304, "Not Modified");
+
+        Assert.assertEquals(content.getId(),
+                requestService.readResult(request, notModified, ContentBean.class, null).getId());
+    }
+
+    @Test
+    public void keepsEmptyProjectionApart() throws Exception {
+        requestService.setResponseCache(cache);
+        readOk();
+
+        Assert.assertNull(requestService.getCachedResponse(URI, ContentBean.class, Collections.<String> emptySet()));
+    }
+
+    @Test
+    public void doesNotCacheResponsesWithoutValidators() throws Exception {
+        requestService.setResponseCache(cache);
+
+        ConditionalGet request = requestService.createGetMethod(URI, ContentBean.class, null);
+        HttpResponse ok = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        ok.setEntity(new StringEntity("{\"id\":\"42\"}", ContentType.APPLICATION_JSON));
+        requestService.readResult(request, ok, ContentBean.class, null);
+
+        Assert.assertEquals(0, cache.size());
+    }
+
+    private ContentBean readOk() throws Exception {
+        Assert.assertNull(requestService.getCachedResponse(URI, ContentBean.class, null));
+        ConditionalGet request = requestService.createGetMethod(URI, ContentBean.class, null);
+        Assert.assertFalse(request.getMethod().containsHeader(HttpHeaders.IF_NONE_MATCH));
+        HttpResponse ok = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        ok.setHeader(HttpHeaders.ETAG, "\"v3\"");
+        ok.setEntity(new StringEntity("{\"id\":\"42\",\"title\":\"Home\"}", ContentType.APPLICATION_JSON));
+        return requestService.readResult(request, ok, ContentBean.class, null);
+    }
+
+}
@@ -0,0 +1,231 @@
+package de.itboehmer.confluence.rest.core.impl;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.itboehmer.confluence.rest.core.domain.content.ContentBean;
+import de.itboehmer.confluence.rest.core.impl.AbstractRequestService.ConditionalGet;
+
+/**
+ * Tests {@link DiskResponseCache}.
+ */
+public class DiskResponseCacheTest {
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void keepsEntriesAcrossRestarts() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        try (DiskResponseCache cache = new DiskResponseCache(directory, 4096, 65536, DAY)) {
+            cache.put("a", bytes("first"));
+            cache.put("b", bytes("second"));
+            cache.put("a", bytes("third"));
+            cache.remove("b");
+        }
+
+        try (DiskResponseCache cache = new DiskResponseCache(directory, 4096, 65536, DAY)) {
+            Assert.assertEquals(1, cache.size());
+            Assert.assertEquals("third", string(cache.get("a")));
+            Assert.assertNull(cache.get("b"));
+        }
+    }
+
+    @Test
+    public void compactsOverwrittenSegments() throws Exception {
+        try (DiskResponseCache cache = new DiskResponseCache(folder.getRoot().toPath(), 256, 65536, DAY)) {
+            cache.put("kept", bytes("value"));
+            for (int i = 0; i < 100; i++) {
+                cache.put("overwritten", bytes("value " + i));
+            }
+
+            Assert.assertTrue(cache.getSegmentCount() <= 3);
+            Assert.assertEquals("value", string(cache.get("kept")));
+            Assert.assertEquals("value 99", string(cache.get("overwritten")));
+        }
+    }
+
+    @Test
+    public void dropsOldestSegmentsBeyondMaxSize() throws Exception {
+        try (DiskResponseCache cache = new DiskResponseCache(folder.getRoot().toPath(), 256, 1024, DAY)) {
+            for (int i = 0; i < 100; i++) {
+                cache.put("key " + i, bytes("value " + i));
+            }
+
+            Assert.assertTrue(cache.getSegmentCount() <= 4);
+            Assert.assertNull(cache.get("key 0"));
+            Assert.assertEquals("value 99", string(cache.get("key 99")));
+        }
+    }
+
+    @Test
+    public void keepsBodiesWrittenWhileReceived() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        try (DiskResponseCache cache = new DiskResponseCache(directory, 4096, 65536, DAY)) {
+            DiskResponseCache.Writer pending = cache.openWriter("pending", 5, null, null);
+            DiskResponseCache.Writer writer = cache.openWriter("streamed", -1, "\"v1\"", null);
+            writer.write(bytes("Hello "), 0, 6);
+            writer.write(bytes("world"), 0, 5);
+            writer.commit();
+            cache.put("after", bytes("value"));
+            pending.abort();
+        }
+
+        try (DiskResponseCache cache = new DiskResponseCache(directory, 4096, 65536, DAY)) {
+            DiskResponseCache.Entry entry = cache.getEntry("streamed");
+            Assert.assertEquals("Hello world", string(entry.getBody()));
+            Assert.assertEquals("\"v1\"", entry.getEtag());
+            Assert.assertNull(entry.getLastModified());
+            Assert.assertEquals("value", string(cache.get("after")));
+            Assert.assertNull(cache.get("pending"));
+        }
+    }
+
+    @Test
+    public void discardsBodiesOutgrowingTheirSpace() throws Exception {
+        try (DiskResponseCache cache = new DiskResponseCache(folder.getRoot().toPath(), 4096, 65536, DAY)) {
+            DiskResponseCache.Writer writer = cache.openWriter("key", 3, null, null);
+
+            Assert.assertFalse(writer.write(bytes("value"), 0, 5));
+            writer.commit();
+            Assert.assertNull(cache.get("key"));
+        }
+    }
+
+    @Test
+    public void discardsBodiesWrittenAcrossRemovals() throws Exception {
+        try (DiskResponseCache cache = new DiskResponseCache(folder.getRoot().toPath(), 4096, 65536, DAY)) {
+            DiskResponseCache.Writer writer = cache.openWriter("key", -1, null, null);
+            writer.write(bytes("old"), 0, 3);
+            cache.removeIf(key -> key.equals("key"));
+            writer.commit();
+
+            Assert.assertNull(cache.get("key"));
+        }
+    }
+
+    @Test
+    public void revalidatesStoredResults() throws Exception {
+        URI uri = URI.create("http://localhost/rest/api/content/42");
+        AbstractRequestService requestService = new AbstractRequestService() {
+        };
+        try (DiskResponseCache cache = new DiskResponseCache(folder.getRoot().toPath())) {
+            requestService.setDiskCache(cache);
+            readOk(requestService, uri);
+            Assert.assertNull(requestService.readDiskCachedResult(uri, ContentBean.class, null));
+
+            ConditionalGet request = requestService.createGetMethod(uri, ContentBean.class, null);
+            Assert.assertEquals("\"v3\"", request.getMethod().getFirstHeader(HttpHeaders.IF_NONE_MATCH).getValue());
+            HttpResponse notModified = new BasicHttpResponse(HttpVersion.HTTP_1_1, 304, "Not Modified");
+            ContentBean cached = requestService.readResult(request, notModified, ContentBean.class, null);
+
+            Assert.assertEquals("42", cached.getId());
+            Assert.assertEquals("Home", cached.getTitle());
+        }
+    }
+
+    @Test
+    public void servesFreshResultsWithoutRequest() throws Exception {
+        URI uri = URI.create("http://localhost/rest/api/content/42");
+        AbstractRequestService requestService = new AbstractRequestService() {
+        };
+        try (DiskResponseCache cache = new DiskResponseCache(folder.getRoot().toPath())) {
+            cache.setFreshnessMillis(DAY);
+            requestService.setDiskCache(cache);
+            Assert.assertNull(requestService.readDiskCachedResult(uri, ContentBean.class, null));
+            readOk(requestService, uri);
+
+            ContentBean cached = requestService.readDiskCachedResult(uri, ContentBean.class, null);
+            Assert.assertEquals("42", cached.getId());
+            Assert.assertEquals("Home", cached.getTitle());
+        }
+    }
+
+    @Test
+    public void dropsResultsChangedByPost() throws Exception {
+        AbstractRequestService requestService = new AbstractRequestService() {
+        };
+        try (DiskResponseCache cache = new DiskResponseCache(folder.getRoot().toPath())) {
+            requestService.setDiskCache(cache);
+            readOk(requestService, URI.create("http://localhost/rest/api/content/42?expand=body.storage"));
+            readOk(requestService, URI.create("http://localhost/rest/api/content?spaceKey=DOC"));
+            readOk(requestService, URI.create("http://localhost/rest/api/content/421"));
+
+            HttpResponse ok = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+            ok.setEntity(new StringEntity("{\"id\":\"42\"}", ContentType.APPLICATION_JSON));
+            requestService.readPostResult(URI.create("http://localhost/rest/api/content/42/label"), ok,
+                    ContentBean.class);
+
+            Assert.assertNull(cache.get("http://localhost/rest/api/content/42?expand=body.storage"));
+            Assert.assertNull(cache.get("http://localhost/rest/api/content?spaceKey=DOC"));
+            Assert.assertNotNull(cache.get("http://localhost/rest/api/content/421"));
+        }
+    }
+
+    @Test
+    public void storesDownloadsReadToTheirEnd() throws Exception {
+        URI complete = URI.create("http://localhost/download/attachments/42/complete.txt");
+        URI closed = URI.create("http://localhost/download/attachments/42/closed.txt");
+        AbstractRequestService requestService = new AbstractRequestService() {
+        };
+        try (DiskResponseCache cache = new DiskResponseCache(folder.getRoot().toPath())) {
+            cache.setFreshnessMillis(DAY);
+            requestService.setDiskCache(cache);
+
+            try (InputStream content = requestService.readContent(requestService.createGetMethodForDownload(complete),
+                    createDownload())) {
+                Assert.assertEquals("attachment data", IOUtils.toString(content, StandardCharsets.UTF_8));
+            }
+            try (InputStream content = requestService.readContent(requestService.createGetMethodForDownload(closed),
+                    createDownload())) {
+                Assert.assertEquals('a', content.read());
+            }
+
+            Assert.assertEquals("attachment data",
+                    IOUtils.toString(requestService.readDiskCachedContent(complete), StandardCharsets.UTF_8));
+            Assert.assertNull(requestService.readDiskCachedContent(closed));
+        }
+    }
+
+    private static ContentBean readOk(AbstractRequestService requestService, URI uri) throws Exception {
+        ConditionalGet request = requestService.createGetMethod(uri, ContentBean.class, null);
+        HttpResponse ok = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        ok.setHeader(HttpHeaders.ETAG, "\"v3\"");
+        ok.setEntity(new StringEntity("{\"id\":\"42\",\"title\":\"Home\"}", ContentType.APPLICATION_JSON));
+        return requestService.readResult(request, ok, ContentBean.class, null);
+    }
+
+    private static HttpResponse createDownload() {
+        HttpResponse ok = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        ok.setEntity(new StringEntity("attachment data", ContentType.APPLICATION_OCTET_STREAM));
+        return ok;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
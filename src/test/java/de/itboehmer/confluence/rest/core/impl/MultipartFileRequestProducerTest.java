@@ -0,0 +1,94 @@
+package de.itboehmer.confluence.rest.core.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentEncoder;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests {@link MultipartFileRequestProducer}.
+ */
+public class MultipartFileRequestProducerTest {
+
+    private static final URI URI = java.net.URI.create("http://localhost/rest/api/content/1/child/attachment");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void producesMultipartBodyOfDeclaredLength() throws Exception {
+        byte[] data = new byte[200_000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + i % 26);
+        }
+        Path file = folder.getRoot().toPath().resolve("data.txt");
+        Files.write(file, data);
+
+        try (MultipartFileRequestProducer producer = new MultipartFileRequestProducer(URI, file, "data.txt",
+                "A comment")) {
+            HttpEntityEnclosingRequest request = (HttpEntityEnclosingRequest) producer.generateRequest();
+            String boundary = ContentType.get(request.getEntity()).getParameter("boundary");
+
+            String body = produce(producer);
+            Assert.assertEquals(request.getEntity().getContentLength(), body.length());
+            Assert.assertTrue(body.startsWith("--" + boundary + "\r\n"));
+            Assert.assertTrue(body.contains("filename=\"data.txt\"\r\n"));
+            Assert.assertTrue(body.contains("\r\n\r\n" + new String(data, StandardCharsets.ISO_8859_1) + "\r\n--"));
+            Assert.assertTrue(body.endsWith("A comment\r\n--" + boundary + "--\r\n"));
+            Assert.assertEquals("no-check", request.getFirstHeader("X-Atlassian-Token").getValue());
+
+            Assert.assertTrue(producer.isRepeatable());
+            producer.resetRequest();
+            Assert.assertEquals(body, produce(producer));
+        }
+    }
+
+    private static String produce(MultipartFileRequestProducer producer) throws IOException {
+        ThrottledEncoder encoder = new ThrottledEncoder();
+        while (!encoder.isCompleted()) {
+            producer.produceContent(encoder, null);
+        }
+        return new String(encoder.out.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Takes at most 1000 bytes per write, like a socket with a full buffer.
+     */
+    private static class ThrottledEncoder implements ContentEncoder {
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private boolean completed;
+
+        @Override
+        public int write(ByteBuffer src) {
+            int count = Math.min(1000, src.remaining());
+            for (int i = 0; i < count; i++) {
+                out.write(src.get());
+            }
+            return count;
+        }
+
+        @Override
+        public void complete() {
+            completed = true;
+        }
+
+        @Override
+        public boolean isCompleted() {
+            return completed;
+        }
+
+    }
+
+}
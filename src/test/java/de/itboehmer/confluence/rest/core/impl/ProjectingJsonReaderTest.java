@@ -0,0 +1,63 @@
+package de.itboehmer.confluence.rest.core.impl;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import de.itboehmer.confluence.rest.core.custom.DomainTypeAdapterFactory;
+import de.itboehmer.confluence.rest.core.domain.content.ContentBean;
+import de.itboehmer.confluence.rest.core.domain.content.ContentResultsBean;
+
+/**
+ * Tests {@link ProjectingJsonReader}.
+ */
+public class ProjectingJsonReaderTest {
+
+    private static final String JSON = "{\"results\":[" //
+            + "{\"id\":\"1\",\"title\":\"One\",\"version\":{\"number\":3,\"by\":{\"username\":\"admin\"}}," //
+            + "\"body\":{\"view\":{\"value\":\"<p>1</p>\"}},\"_links\":{\"webui\":\"/1\"}}," //
+            + "{\"id\":\"2\",\"title\":\"Two\",\"_expandable\":{\"space\":\"/space/ENG\"}}]," //
+            + "\"start\":0,\"limit\":25,\"size\":2}";
+
+    private final Gson gson = new GsonBuilder().excludeFieldsWithoutExposeAnnotation()
+            .registerTypeAdapterFactory(new DomainTypeAdapterFactory()).create();
+
+    @Test
+    public void bindsProjectedMembersOnly() {
+        ContentResultsBean result = read("results.title", "results.version.number", "size");
+
+        Assert.assertEquals(2, result.getResults().size());
+        Assert.assertEquals(Integer.valueOf(2), result.getSize());
+        Assert.assertNull(result.getStart());
+        ContentBean first = result.getResults().get(0);
+        Assert.assertEquals("One", first.getTitle());
+        Assert.assertEquals(Integer.valueOf(3), first.getVersion().getNumber());
+        Assert.assertNull(first.getVersion().getBy());
+        Assert.assertNull(first.getId());
+        Assert.assertNull(first.getBody());
+        Assert.assertNull(first.getLinks());
+        Assert.assertEquals("Two", result.getResults().get(1).getTitle());
+    }
+
+    @Test
+    public void bindsSubtreeOfProjectedMember() {
+        ContentResultsBean result = read("results.version");
+
+        ContentBean first = result.getResults().get(0);
+        Assert.assertEquals("admin", first.getVersion().getBy().getUsername());
+        Assert.assertNull(first.getTitle());
+    }
+
+    private ContentResultsBean read(String... projection) {
+        ProjectingJsonReader reader = new ProjectingJsonReader(new StringReader(JSON),
+                new HashSet<>(Arrays.asList(projection)));
+        return gson.fromJson(reader, ContentResultsBean.class);
+    }
+
+}
@@ -0,0 +1,268 @@
+package de.itboehmer.confluence.rest.core.impl;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.apache.http.client.methods.HttpPost;
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.itboehmer.confluence.rest.core.AsyncRequestService;
+import de.itboehmer.confluence.rest.core.RequestService;
+import de.itboehmer.confluence.rest.core.RestException;
+import de.itboehmer.confluence.rest.core.StreamingRequestService;
+import de.itboehmer.confluence.rest.core.util.HttpMethodFactory;
+
+/**
+ * Tests {@link RetryingRequestService}.
+ */
+public class RetryingRequestServiceTest {
+
+    private static final URI URI = java.net.URI.create("http://localhost/rest/api/content");
+    private static final byte[] DATA = "Data larger than the buffer of the stream".getBytes(StandardCharsets.ISO_8859_1);
+
+    private final ScriptedRequestService delegate = new ScriptedRequestService();
+
+    @Test
+    public void retriesThrottledGet() throws Exception {
+        delegate.failures.add(throttled(503, Collections.<String, String> emptyMap()));
+        delegate.failures.add(new IOException("Connection reset"));
+
+        String result = createService(5).executeGetRequest(URI, String.class);
+
+        Assert.assertEquals("ok", result);
+        Assert.assertEquals(3, delegate.calls);
+    }
+
+    @Test
+    public void givesUpAfterMaxAttempts() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            delegate.failures.add(throttled(429, Collections.<String, String> emptyMap()));
+        }
+        try {
+            createService(3).executeGetRequest(URI, String.class);
+            Assert.fail();
+        } catch (RestException e) {
+            Assert.assertEquals(429, e.getStatusCode());
+        }
+        Assert.assertEquals(3, delegate.calls);
+    }
+
+    @Test
+    public void retriesThrottledGetWithoutBlocking() throws Exception {
+        delegate.failures.add(throttled(503, Collections.<String, String> emptyMap()));
+        delegate.failures.add(new IOException("Connection reset"));
+        AsyncRequestService asyncDelegate = new HttpAsyncAuthRequestService() {
+
+            @Override
+            public <T> CompletableFuture<T> executeGetRequestAsync(URI uri, Class<T> resultClass) {
+                CompletableFuture<T> future = new CompletableFuture<>();
+                try {
+                    future.complete(delegate.executeGetRequest(uri, resultClass));
+                } catch (IOException | RestException e) {
+                    future.completeExceptionally(e);
+                }
+                return future;
+            }
+        };
+        RetryPolicy policy = new RetryPolicy();
+        policy.setInitialBackoffMillis(1);
+        RequestService service = RetryingRequestService.wrap(asyncDelegate, policy);
+
+        Assert.assertTrue(service instanceof AsyncRequestService);
+        String result = ((AsyncRequestService) service).executeGetRequestAsync(URI, String.class).get(5,
+                TimeUnit.SECONDS);
+
+        Assert.assertEquals("ok", result);
+        Assert.assertEquals(3, delegate.calls);
+    }
+
+    @Test
+    public void doesNotRetryPostAfterIOException() throws Exception {
+        delegate.failures.add(new IOException("Connection reset"));
+        try {
+            createService(5).executePostRequest(URI, "content", String.class);
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertEquals(1, delegate.calls);
+        }
+    }
+
+    @Test
+    public void doesNotRetryResultsAlreadyPassed() throws Exception {
+        delegate.failures.add(new IOException("Connection reset"));
+        List<String> results = new ArrayList<>();
+        try {
+            ((StreamingRequestService) createService(5)).executeGetRequestForResults(URI, String.class, results::add);
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertEquals(1, delegate.calls);
+            Assert.assertEquals(Collections.singletonList("ok"), results);
+        }
+    }
+
+    @Test
+    public void doesNotRetryOtherStatusCodes() throws Exception {
+        delegate.failures.add(throttled(404, Collections.<String, String> emptyMap()));
+        try {
+            createService(5).executeGetRequest(URI, String.class);
+            Assert.fail();
+        } catch (RestException e) {
+            Assert.assertEquals(1, delegate.calls);
+        }
+    }
+
+    @Test
+    public void replaysUploadStream() throws Exception {
+        delegate.failures.add(throttled(429, Collections.<String, String> emptyMap()));
+        InputStream inputStream = new BufferedInputStream(new ByteArrayInputStream(DATA), 16);
+
+        createService(5).executePostRequestForUpload(URI, inputStream, "title", null, String.class);
+
+        Assert.assertEquals(2, delegate.uploads.size());
+        for (String upload : delegate.uploads) {
+            Assert.assertTrue(upload.contains("\r\n\r\n" + new String(DATA, StandardCharsets.ISO_8859_1) + "\r\n"));
+        }
+        try {
+            inputStream.read();
+            Assert.fail("Stream not closed");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void doesNotReplayBeyondMaxReplayBytes() throws Exception {
+        delegate.failures.add(throttled(429, Collections.<String, String> emptyMap()));
+        RetryPolicy policy = new RetryPolicy();
+        policy.setInitialBackoffMillis(1);
+        policy.setMaxReplayBytes(16);
+        InputStream inputStream = new BufferedInputStream(new ByteArrayInputStream(DATA), 16);
+
+        try {
+            new RetryingRequestService(delegate, policy).executePostRequestForUpload(URI, inputStream, "title", null,
+                    String.class);
+            Assert.fail();
+        } catch (RestException e) {
+            Assert.assertEquals(1, delegate.calls);
+        }
+    }
+
+    @Test
+    public void honorsRetryAfter() {
+        RetryPolicy policy = new RetryPolicy();
+        policy.setJitter(0);
+        RetryingRequestService service = new RetryingRequestService(delegate, policy);
+
+        Assert.assertEquals(7000, service.getDelayMillis(1, throttled(429, header("Retry-After", "7"))));
+        Assert.assertEquals(-1, service.getDelayMillis(1, throttled(429, header("Retry-After", "3600"))));
+
+        Map<String, String> rateLimit = header("X-RateLimit-Reset",
+                OffsetDateTime.now(ZoneOffset.UTC).plusMinutes(1).toString());
+        rateLimit.put("X-RateLimit-Remaining", "0");
+        long delay = service.getDelayMillis(1, throttled(429, rateLimit));
+        Assert.assertTrue(delay > 50000 && delay <= 60000);
+    }
+
+    @Test
+    public void backsOffExponentially() {
+        RetryPolicy policy = new RetryPolicy();
+        policy.setJitter(0);
+        policy.setInitialBackoffMillis(100);
+        policy.setMaxBackoffMillis(1000);
+        RetryingRequestService service = new RetryingRequestService(delegate, policy);
+
+        Assert.assertEquals(100, service.getDelayMillis(1, null));
+        Assert.assertEquals(400, service.getDelayMillis(3, null));
+        Assert.assertEquals(1000, service.getDelayMillis(5, null));
+    }
+
+    private RetryingRequestService createService(int maxAttempts) {
+        RetryPolicy policy = new RetryPolicy();
+        policy.setMaxAttempts(maxAttempts);
+        policy.setInitialBackoffMillis(1);
+        return RetryingRequestService.wrap(delegate, policy);
+    }
+
+    private static RestException throttled(int statusCode, Map<String, String> headers) {
+        return new RestException(statusCode, "Throttled", null, "Status: " + statusCode, null, headers);
+    }
+
+    private static Map<String, String> header(String name, String value) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put(name, value);
+        return headers;
+    }
+
+    private static class ScriptedRequestService implements StreamingRequestService {
+
+        private final List<Exception> failures = new ArrayList<>();
+        private final List<String> uploads = new ArrayList<>();
+        private int calls;
+
+        @Override
+        public <T> T executeGetRequest(URI uri, Class<T> resultClass) throws IOException, RestException {
+            return next(resultClass);
+        }
+
+        @Override
+        public <T> int executeGetRequestForResults(URI uri, Class<T> elementClass, Consumer<? super T> consumer)
+                throws IOException, RestException {
+            // Fails, if scripted, after passing the first result
+            consumer.accept(elementClass.cast("ok"));
+            consumer.accept(next(elementClass));
+            return 2;
+        }
+
+        @Override
+        public InputStream executeGetRequestForDownload(URI uri) throws IOException, RestException {
+            return next(InputStream.class);
+        }
+
+        @Override
+        public <T> T executePostRequest(URI uri, Object content, Class<T> resultClass)
+                throws IOException, RestException {
+            return next(resultClass);
+        }
+
+        @Override
+        public <T> T executePostRequestForUpload(URI uri, InputStream inputStream, String title, String comment,
+                Class<T> resultClass) throws IOException, RestException {
+            // Sends the stream the way the request services do
+            HttpPost method = HttpMethodFactory.createPostMethodForUpload(uri, inputStream, title, comment);
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            method.getEntity().writeTo(body);
+            uploads.add(new String(body.toByteArray(), StandardCharsets.ISO_8859_1));
+            return next(resultClass);
+        }
+
+        private <T> T next(Class<T> resultClass) throws IOException, RestException {
+            calls++;
+            if (!failures.isEmpty()) {
+                Exception failure = failures.remove(0);
+                if (failure instanceof RestException) {
+                    throw (RestException) failure;
+                }
+                throw (IOException) failure;
+            }
+            return resultClass.cast("ok");
+        }
+
+    }
+
+}
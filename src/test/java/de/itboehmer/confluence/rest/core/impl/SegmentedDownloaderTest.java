@@ -0,0 +1,237 @@
+package de.itboehmer.confluence.rest.core.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.itboehmer.confluence.rest.core.DownloadRange;
+import de.itboehmer.confluence.rest.core.RequestService;
+
+/**
+ * Tests {@link SegmentedDownloader}.
+ */
+public class SegmentedDownloaderTest {
+
+    private static final URI URI = java.net.URI.create("http://localhost/download/attachments/1/file.bin");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final byte[] data = new byte[100_000];
+
+    private ExecutorService executor;
+    private RangeRequestService requestService;
+    private SegmentedDownloader downloader;
+    private Path target;
+
+    @Before
+    public void setUp() {
+        new Random(42).nextBytes(data);
+        executor = Executors.newFixedThreadPool(4);
+        requestService = new RangeRequestService();
+        downloader = new SegmentedDownloader(requestService, executor);
+        downloader.setMinSegmentSize(10_000);
+        downloader.setRetryDelayMillis(0);
+        target = folder.getRoot().toPath().resolve("file.bin");
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void downloadsSegmentsInParallel() throws Exception {
+        String digest = downloader.download(URI, target, data.length, sha256(data));
+
+        Assert.assertEquals(sha256(data), digest);
+        Assert.assertArrayEquals(data, Files.readAllBytes(target));
+        Assert.assertEquals(4, requestService.requests.get());
+        Assert.assertEquals(data.length, requestService.bytesServed.get());
+        Assert.assertEquals(1, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void resumesSegmentAfterBrokenConnection() throws Exception {
+        requestService.failAfterBytes = 5_000;
+        requestService.failures.set(3);
+
+        downloader.download(URI, target, data.length, null);
+
+        Assert.assertArrayEquals(data, Files.readAllBytes(target));
+        Assert.assertEquals(7, requestService.requests.get());
+        Assert.assertEquals(data.length, requestService.bytesServed.get());
+    }
+
+    @Test
+    public void resumesFailedDownloadInLaterCall() throws Exception {
+        downloader.setMaxAttempts(1);
+        requestService.failAfterBytes = 2_000;
+        requestService.failures.set(4);
+        requestService.downAfterFailure = true;
+        try {
+            downloader.download(URI, target, data.length, null);
+            Assert.fail("Expected an IOException");
+        } catch (IOException e) {
+            Assert.assertEquals("Connection refused", e.getMessage());
+        }
+        Assert.assertTrue(Files.exists(target.resolveSibling("file.bin.part.progress")));
+        requestService.failures.set(0);
+        requestService.down = false;
+
+        downloader.download(URI, target, data.length, sha256(data));
+
+        Assert.assertArrayEquals(data, Files.readAllBytes(target));
+        Assert.assertEquals(data.length, requestService.bytesServed.get());
+        Assert.assertEquals(1, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void restartsDownloadOfChangedResource() throws Exception {
+        downloader.setMaxAttempts(1);
+        requestService.failAfterBytes = 2_000;
+        requestService.failures.set(4);
+        requestService.downAfterFailure = true;
+        try {
+            downloader.download(URI, target, data.length, null);
+            Assert.fail("Expected an IOException");
+        } catch (IOException e) {
+            Assert.assertEquals("Connection refused", e.getMessage());
+        }
+        Path progress = target.resolveSibling("file.bin.part.progress");
+        Assert.assertEquals(data.length + " \"v1\"", Files.readAllLines(progress).get(0));
+        requestService.failures.set(0);
+        requestService.down = false;
+        new Random(43).nextBytes(data);
+        requestService.etag = "\"v2\"";
+
+        downloader.download(URI, target, data.length, sha256(data));
+
+        Assert.assertArrayEquals(data, Files.readAllBytes(target));
+        Assert.assertEquals(1, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void discardsDownloadWithWrongChecksum() throws Exception {
+        try {
+            downloader.download(URI, target, data.length, "00");
+            Assert.fail("Expected an IOException");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().startsWith("Checksum mismatch"));
+        }
+
+        Assert.assertEquals(0, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void downloadsUnknownSizeInOneSegment() throws Exception {
+        requestService.failAfterBytes = 30_000;
+        requestService.failures.set(1);
+
+        downloader.download(URI, target, -1, sha256(data));
+
+        Assert.assertArrayEquals(data, Files.readAllBytes(target));
+        Assert.assertEquals(2, requestService.requests.get());
+    }
+
+    private static String sha256(byte[] bytes) throws Exception {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Serves ranges of the data, breaking the connection of the first requests
+     * after a number of bytes.
+     */
+    private class RangeRequestService implements RequestService {
+
+        private final AtomicInteger requests = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicLong bytesServed = new AtomicLong();
+        private volatile int failAfterBytes;
+        private volatile boolean downAfterFailure;
+        private volatile boolean down;
+        private volatile String etag = "\"v1\"";
+
+        /**
+         * Serves the complete data if the validator does not match.
+         */
+        @Override
+        public DownloadRange executeGetRequestForDownload(URI uri, long offset, long length, String validator)
+                throws IOException {
+            requests.incrementAndGet();
+            if (down) {
+                throw new IOException("Connection refused");
+            }
+            if (validator != null && !validator.equals(etag)) {
+                offset = 0;
+                length = -1;
+            }
+            return new DownloadRange(serve(offset, length), offset, etag);
+        }
+
+        private InputStream serve(long offset, long length) {
+            int end = (length < 0) ? data.length : (int) (offset + length);
+            boolean fail = failures.getAndDecrement() > 0;
+            int limit = fail ? (int) Math.min(end, offset + failAfterBytes) : end;
+            return new FilterInputStream(new ByteArrayInputStream(data, (int) offset, limit - (int) offset)) {
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int read = super.read(b, off, len);
+                    if (read < 0 && fail) {
+                        down = downAfterFailure;
+                        throw new IOException("Connection reset");
+                    }
+                    if (read > 0) {
+                        bytesServed.addAndGet(read);
+                    }
+                    return read;
+                }
+            };
+        }
+
+        @Override
+        public <T> T executeGetRequest(URI uri, Class<T> resultClass) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public InputStream executeGetRequestForDownload(URI uri) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <T> T executePostRequest(URI uri, Object content, Class<T> resultClass) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <T> T executePostRequestForUpload(URI uri, InputStream inputStream, String title, String comment,
+                Class<T> resultClass) {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+}
@@ -0,0 +1,117 @@
+package de.itboehmer.confluence.rest.core.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.protocol.BasicHttpContext;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link StreamingResponseConsumer}.
+ */
+public class StreamingResponseConsumerTest {
+
+    @Test
+    public void passesBodyOnWhileReceiving() throws Exception {
+        StreamingResponseConsumer consumer = new StreamingResponseConsumer();
+        consumer.responseReceived(createResponse());
+        HttpResponse response = consumer.getHeaders().getNow(null);
+        Assert.assertNotNull(response);
+
+        InputStream content = response.getEntity().getContent();
+        CompletableFuture<String> body = CompletableFuture.supplyAsync(() -> {
+            try {
+                return IOUtils.toString(content, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        consumer.consumeContent(new StringDecoder("Hello ", false), null);
+        consumer.consumeContent(new StringDecoder("world", true), null);
+        consumer.responseCompleted(new BasicHttpContext());
+
+        Assert.assertEquals("Hello world", body.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void reportsReceivedBytesAsAvailable() throws Exception {
+        StreamingResponseConsumer consumer = new StreamingResponseConsumer();
+        consumer.responseReceived(createResponse());
+        InputStream content = consumer.getHeaders().getNow(null).getEntity().getContent();
+        Assert.assertEquals(0, content.available());
+
+        consumer.consumeContent(new StringDecoder("Hello ", false), null);
+
+        Assert.assertEquals(6, content.available());
+    }
+
+    @Test
+    public void failsReadingIncompleteBody() throws Exception {
+        StreamingResponseConsumer consumer = new StreamingResponseConsumer();
+        consumer.responseReceived(createResponse());
+        InputStream content = consumer.getHeaders().getNow(null).getEntity().getContent();
+        consumer.consumeContent(new StringDecoder("Hello ", false), null);
+        consumer.failed(new IOException("Connection reset"));
+
+        try {
+            IOUtils.toByteArray(content);
+            Assert.fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void failsWithoutResponse() throws Exception {
+        StreamingResponseConsumer consumer = new StreamingResponseConsumer();
+        consumer.failed(new IOException("Connection refused"));
+
+        Assert.assertTrue(consumer.getHeaders().isCompletedExceptionally());
+    }
+
+    private static HttpResponse createResponse() {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        BasicHttpEntity entity = new BasicHttpEntity();
+        entity.setContentLength(11);
+        response.setEntity(entity);
+        return response;
+    }
+
+    private static class StringDecoder implements ContentDecoder {
+
+        private final ByteBuffer data;
+        private final boolean last;
+
+        StringDecoder(String data, boolean last) {
+            this.data = ByteBuffer.wrap(data.getBytes(StandardCharsets.UTF_8));
+            this.last = last;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            int count = Math.min(dst.remaining(), data.remaining());
+            for (int i = 0; i < count; i++) {
+                dst.put(data.get());
+            }
+            return count;
+        }
+
+        @Override
+        public boolean isCompleted() {
+            return last && !data.hasRemaining();
+        }
+
+    }
+
+}
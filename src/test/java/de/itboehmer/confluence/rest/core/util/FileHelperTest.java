@@ -0,0 +1,65 @@
+package de.itboehmer.confluence.rest.core.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests {@link FileHelper}.
+ */
+public class FileHelperTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replacesTargetWithCompleteDownload() throws Exception {
+        Path target = folder.getRoot().toPath().resolve("attachment.bin");
+        Files.write(target, "old".getBytes(StandardCharsets.UTF_8));
+        byte[] data = new byte[3 * 1024 * 1024 + 17];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+
+        Assert.assertEquals(data.length, FileHelper.write(new ByteArrayInputStream(data), target));
+
+        Assert.assertArrayEquals(data, Files.readAllBytes(target));
+        Assert.assertEquals(1, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void keepsTargetIfDownloadFails() throws Exception {
+        Path target = folder.getRoot().toPath().resolve("attachment.bin");
+        Files.write(target, "old".getBytes(StandardCharsets.UTF_8));
+        InputStream failing = new FilterInputStream(new ByteArrayInputStream(new byte[1024])) {
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (super.read(b, off, len) < 0) {
+                    throw new IOException("Connection reset");
+                }
+                return len;
+            }
+        };
+
+        try {
+            FileHelper.write(failing, target);
+            Assert.fail("Expected an IOException");
+        } catch (IOException e) {
+            Assert.assertEquals("Connection reset", e.getMessage());
+        }
+
+        Assert.assertEquals("old", new String(Files.readAllBytes(target), StandardCharsets.UTF_8));
+        Assert.assertEquals(1, folder.getRoot().list().length);
+    }
+
+}
@@ -0,0 +1,135 @@
+package de.itboehmer.confluence.rest.core.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import de.itboehmer.confluence.rest.core.domain.content.ContentBean;
+
+/**
+ * Tests {@link HttpMethodFactory}.
+ */
+public class HttpMethodFactoryTest {
+
+    private final Gson gson = new GsonBuilder().excludeFieldsWithoutExposeAnnotation().create();
+
+    @Test
+    public void acceptsCompressedJson() throws Exception {
+        URI uri = new URI("http://localhost/rest/api/content");
+
+        Assert.assertEquals("gzip, deflate",
+                HttpMethodFactory.createGetMethod(uri).getFirstHeader(HttpHeaders.ACCEPT_ENCODING).getValue());
+        Assert.assertEquals("identity", HttpMethodFactory.createGetMethodForDownload(uri)
+                .getFirstHeader(HttpHeaders.ACCEPT_ENCODING).getValue());
+    }
+
+    @Test
+    public void requestsRangeOfSameVersion() throws Exception {
+        URI uri = new URI("http://localhost/download/attachments/1/file.bin");
+        HttpGet method = HttpMethodFactory.createGetMethodForDownload(uri, 100, 50, "\"v1\"");
+
+        Assert.assertEquals("bytes=100-149", method.getFirstHeader(HttpHeaders.RANGE).getValue());
+        Assert.assertEquals("\"v1\"", method.getFirstHeader(HttpHeaders.IF_RANGE).getValue());
+        Assert.assertFalse(HttpMethodFactory.createGetMethodForDownload(uri, 100, -1).containsHeader(
+                HttpHeaders.IF_RANGE));
+    }
+
+    @Test
+    public void streamsJsonBody() throws Exception {
+        ContentBean content = createContent();
+        HttpPost method = HttpMethodFactory.createPostMethod(new URI("http://localhost/rest/api/content"), gson,
+                content, false);
+        HttpEntity entity = method.getEntity();
+
+        Assert.assertNull(entity.getContentEncoding());
+        Assert.assertTrue(entity.isRepeatable());
+        for (int i = 0; i < 2; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            entity.writeTo(out);
+            Assert.assertEquals(gson.toJson(content), new String(out.toByteArray(), StandardCharsets.UTF_8));
+        }
+        Assert.assertEquals(gson.toJson(content), IOUtils.toString(entity.getContent(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void compressesJsonBody() throws Exception {
+        ContentBean content = createContent();
+        HttpPost method = HttpMethodFactory.createPostMethod(new URI("http://localhost/rest/api/content"), gson,
+                content, true);
+        HttpEntity entity = method.getEntity();
+
+        Assert.assertEquals("gzip", entity.getContentEncoding().getValue());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeTo(out);
+        byte[] body = IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())));
+        Assert.assertEquals(gson.toJson(content), new String(body, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void leavesStreamOpenAfterCompressing() throws Exception {
+        HttpEntity entity = HttpMethodFactory.createPostMethod(new URI("http://localhost/rest/api/content"), gson,
+                createContent(), true).getEntity();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AtomicBoolean closed = new AtomicBoolean();
+        FilterOutputStream stream = new FilterOutputStream(out) {
+
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        };
+
+        entity.writeTo(stream);
+        stream.write('x');
+
+        Assert.assertFalse(closed.get());
+        Assert.assertEquals('x', out.toByteArray()[out.size() - 1]);
+    }
+
+    @Test
+    public void compressesAgainAfterFailedAttempt() throws Exception {
+        ContentBean content = createContent();
+        HttpEntity entity = HttpMethodFactory.createPostMethod(new URI("http://localhost/rest/api/content"), gson,
+                content, true).getEntity();
+        try {
+            entity.writeTo(new FilterOutputStream(new ByteArrayOutputStream()) {
+
+                @Override
+                public void write(int b) throws IOException {
+                    throw new IOException("Connection reset");
+                }
+            });
+            Assert.fail("Expected an IOException");
+        } catch (IOException e) {
+            Assert.assertEquals("Connection reset", e.getMessage());
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeTo(out);
+        byte[] body = IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())));
+        Assert.assertEquals(gson.toJson(content), new String(body, StandardCharsets.UTF_8));
+    }
+
+    private static ContentBean createContent() {
+        ContentBean content = new ContentBean("42");
+        content.setTitle("Grüße <&>");
+        return content;
+    }
+
+}
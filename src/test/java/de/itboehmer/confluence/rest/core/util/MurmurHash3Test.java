@@ -0,0 +1,34 @@
+package de.itboehmer.confluence.rest.core.util;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.codec.binary.Hex;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link MurmurHash3}.
+ */
+public class MurmurHash3Test {
+
+    @Test
+    public void matchesReferenceImplementation() {
+        Assert.assertEquals("00000000000000000000000000000000", hash(0, ""));
+        Assert.assertEquals("67f8103e69429962" + "4753ebba820bdb92", hash(0, "hell"));
+        Assert.assertEquals("108daeadf5df8da7" + "35019020ef008912", hash(1, "hello"));
+        Assert.assertEquals("6c1b07bc7bbc4be3" + "47939ac4a93c437a", hash(0, "The quick brown fox jumps over the lazy dog"));
+    }
+
+    @Test
+    public void separatesStrings() {
+        byte[] ab = new MurmurHash3().update("a").update("b").digest();
+        byte[] a = new MurmurHash3().update("ab").update("").digest();
+
+        Assert.assertFalse(Hex.encodeHexString(ab).equals(Hex.encodeHexString(a)));
+    }
+
+    private static String hash(int seed, String data) {
+        return Hex.encodeHexString(new MurmurHash3(seed).update(data.getBytes(StandardCharsets.UTF_8)).digest());
+    }
+
+}
@@ -65,6 +65,80 @@ public class StorageFormatHelperTest {
         Assert.assertFalse(StorageFormatHelper.equalsIgnoreWhitespace(referenceXhtml, testXhtml));
     }
 
+    @Test
+    public void xmlEqualsIgnoresCommentsAndAttributeOrder() {
+        String xml = "<ac:structured-macro ac:name=\"toc\" ac:schema-version=\"1\"><p>Text <b>bold</b></p></ac:structured-macro>";
+
+        Assert.assertTrue(StorageFormatHelper.xmlEquals(xml, xml));
+        Assert.assertTrue(StorageFormatHelper.xmlEquals(xml,
+                "<ac:structured-macro ac:schema-version='1' ac:name='toc'><p>Te<!-- x -->xt <b>bold</b></p></ac:structured-macro>"));
+        Assert.assertTrue(StorageFormatHelper.xmlEquals(xml,
+                "<ac:structured-macro ac:name=\"toc\" ac:schema-version=\"1\"><p>Text <b><![CDATA[bo]]>ld</b></p></ac:structured-macro>"));
+        Assert.assertTrue(StorageFormatHelper.xmlEquals("<p>&#252;<br/></p>", "<p>\u00fc<br></br></p>"));
+    }
+
+    @Test
+    public void xmlEqualsDetectsDifferences() {
+        String xml = "<ac:structured-macro ac:name=\"toc\"><p>Text</p></ac:structured-macro>";
+
+        Assert.assertFalse(StorageFormatHelper.xmlEquals(xml, "<ac:structured-macro ac:name=\"toc\"><p>Text </p></ac:structured-macro>"));
+        Assert.assertFalse(StorageFormatHelper.xmlEquals(xml, "<ac:structured-macro ac:name=\"toc\"> <p>Text</p></ac:structured-macro>"));
+        Assert.assertFalse(StorageFormatHelper.xmlEquals(xml, "<ac:structured-macro ac:name=\"info\"><p>Text</p></ac:structured-macro>"));
+        Assert.assertFalse(StorageFormatHelper.xmlEquals(xml, "<ac:structured-macro ri:name=\"toc\"><p>Text</p></ac:structured-macro>"));
+        Assert.assertFalse(StorageFormatHelper.xmlEquals(xml, "<ac:structured-macro ac:name=\"toc\"><p>Text</p><p/></ac:structured-macro>"));
+        Assert.assertFalse(StorageFormatHelper.xmlEquals(xml, "<ac:structured-macro ac:name=\"toc\"><p>Text</p>"));
+        Assert.assertFalse(StorageFormatHelper.xmlEquals(xml, null));
+    }
+
+    @Test
+    public void fingerprintIgnoresFormatting() throws IOException {
+        String xml = "<p>Some <b>bold</b> text</p><ac:structured-macro ac:name=\"toc\" ac:schema-version=\"1\"/>";
+        String fingerprint = StorageFormatHelper.fingerprint(xml);
+
+        Assert.assertEquals(32, fingerprint.length());
+        Assert.assertEquals(fingerprint, StorageFormatHelper.fingerprint(
+                "\n<p>\n  Some <b>bold</b>\ttext <!-- draft -->\n</p>\n<ac:structured-macro ac:schema-version='1' ac:name='toc'></ac:structured-macro>\n"));
+        // Uses HTML entities
+        String referenceXhtml = readResource("/xml-reference.xml");
+        Assert.assertEquals(StorageFormatHelper.fingerprint(referenceXhtml),
+                StorageFormatHelper.fingerprint(readResource("/t2-xml-eq.xml")));
+    }
+
+    @Test
+    public void fingerprintResolvesHtmlEntities() {
+        String xml = "<p class=\"a\" title=\"Gr&uuml;&szlig;e\">&Auml;rger&nbsp;&amp; <b>M&uuml;he</b></p>";
+        String fingerprint = StorageFormatHelper.fingerprint(xml);
+
+        Assert.assertEquals(fingerprint, StorageFormatHelper.fingerprint(
+                "<p title='Gr\u00fc\u00dfe' class='a'><!-- draft -->\u00c4rger\u00a0&#38; <b>M&#252;he</b></p>"));
+        Assert.assertEquals(StorageFormatHelper.fingerprint("<?xml version=\"1.0\"?><p>&uuml;</p>"),
+                StorageFormatHelper.fingerprint("<?xml version=\"1.0\"?><p>\u00fc</p>"));
+        Assert.assertNotEquals(fingerprint, StorageFormatHelper.fingerprint(xml.replace("&nbsp;", " ")));
+        Assert.assertTrue(StorageFormatHelper.xmlEquals(xml,
+                "<p title=\"Gr\u00fc\u00dfe\" class=\"a\">\u00c4rger&#160;&amp; <b>M\u00fche</b></p>"));
+    }
+
+    @Test
+    public void fingerprintFallsBackToTextForBrokenMarkup() {
+        String fingerprint = StorageFormatHelper.fingerprint("<p>Unclosed <b>bold</p>");
+
+        Assert.assertEquals(fingerprint, StorageFormatHelper.fingerprint("<p>\n  Unclosed <b>bold\n</p>"));
+        Assert.assertNotEquals(fingerprint, StorageFormatHelper.fingerprint("<p>Unclosed <i>bold</p>"));
+    }
+
+    @Test
+    public void fingerprintDetectsChanges() throws IOException {
+        String xml = "<p>Some <b>bold</b> text</p><ac:structured-macro ac:name=\"toc\"/>";
+        String fingerprint = StorageFormatHelper.fingerprint(xml);
+
+        Assert.assertNotEquals(fingerprint, StorageFormatHelper.fingerprint("<p>Some <b>bold</b> test</p><ac:structured-macro ac:name=\"toc\"/>"));
+        Assert.assertNotEquals(fingerprint, StorageFormatHelper.fingerprint("<p>Some <i>bold</i> text</p><ac:structured-macro ac:name=\"toc\"/>"));
+        Assert.assertNotEquals(fingerprint, StorageFormatHelper.fingerprint("<p>Some <b>bold</b> text</p><ac:structured-macro ac:name=\"info\"/>"));
+        Assert.assertNotEquals(fingerprint, StorageFormatHelper.fingerprint("<p>Some <b>bold</b> text</p>"));
+        Assert.assertNotEquals(StorageFormatHelper.fingerprint(readResource("/xml-reference.xml")),
+                StorageFormatHelper.fingerprint(readResource("/t3-neq.xml")));
+    }
+
     private String readResource(String filename) throws IOException {
         InputStream in = getClass().getResourceAsStream(filename);
         return IOUtils.toString(in, "utf8");
@@ -0,0 +1,50 @@
+package de.itboehmer.confluence.rest.core.util;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link StorageFormatReader}.
+ */
+public class StorageFormatReaderTest {
+
+    @Test
+    public void declaresEntitiesOnlyIfUsed() throws Exception {
+        try (StorageFormatReader reader = StorageFormatReader.create("<p>a &amp; b &#228;</p>")) {
+            Assert.assertEquals(XMLStreamConstants.START_ELEMENT, reader.next());
+            // Parsed without a document type in front
+            Assert.assertEquals(3, reader.getReader().getLocation().getCharacterOffset());
+        }
+        try (StorageFormatReader reader = StorageFormatReader.create("<p>&auml;</p>")) {
+            Assert.assertEquals(XMLStreamConstants.START_ELEMENT, reader.next());
+            Assert.assertEquals(XMLStreamConstants.CHARACTERS, reader.next());
+            Assert.assertEquals("ä", reader.getText().toString());
+        }
+    }
+
+    @Test
+    public void reportsErrorsAtLocationInGivenDocument() throws Exception {
+        XMLStreamException plain = readAll("<?xml version=\"1.0\"?><p>&#228;</b>\n<p></b>");
+        XMLStreamException declared = readAll("<?xml version=\"1.0\"?><p>&auml;</b>\n<p></b>");
+
+        Assert.assertEquals(1, declared.getLocation().getLineNumber());
+        Assert.assertEquals(plain.getLocation().getColumnNumber(), declared.getLocation().getColumnNumber());
+        Assert.assertEquals(plain.getLocation().getCharacterOffset(), declared.getLocation().getCharacterOffset());
+        Assert.assertEquals(plain.getMessage(), declared.getMessage());
+    }
+
+    private static XMLStreamException readAll(String xml) throws Exception {
+        try (StorageFormatReader reader = StorageFormatReader.create(xml)) {
+            while (reader.next() != XMLStreamConstants.END_DOCUMENT) {
+                // Reads on until the error
+            }
+        } catch (XMLStreamException e) {
+            return e;
+        }
+        throw new AssertionError("Not well-formed: " + xml);
+    }
+
+}